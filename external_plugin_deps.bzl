@@ -20,3 +20,30 @@ def external_plugin_deps():
     artifact = "org.mockito:mockito-all:1.10.19",
     sha1 = "539df70269cc254a58cccc5d8e43286b4a73bf30",
   )
+
+  # JMH and its runtime dependencies, only used by the benchmarks target.
+  JMH_VERSION = "1.21"
+
+  maven_jar(
+    name = "jmh_core",
+    artifact = "org.openjdk.jmh:jmh-core:" + JMH_VERSION,
+    sha1 = "442447101f63074c61063858033fbfde8a076873",
+  )
+
+  maven_jar(
+    name = "jmh_generator_annprocess",
+    artifact = "org.openjdk.jmh:jmh-generator-annprocess:" + JMH_VERSION,
+    sha1 = "7aac374614a8a76cad16b91f1a4419d31a7dcda3",
+  )
+
+  maven_jar(
+    name = "jopt_simple",
+    artifact = "net.sf.jopt-simple:jopt-simple:4.6",
+    sha1 = "306816fb57cf94f108a43c95731b08934dcae15c",
+  )
+
+  maven_jar(
+    name = "commons_math3",
+    artifact = "org.apache.commons:commons-math3:3.2",
+    sha1 = "ec2544ab27e110d2d431bdad7d538ed509b21e62",
+  )
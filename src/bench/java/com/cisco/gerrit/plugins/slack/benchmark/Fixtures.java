@@ -0,0 +1,179 @@
+/*
+ * Copyright 2017 Cisco Systems, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package com.cisco.gerrit.plugins.slack.benchmark;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.mockito.Mockito.withSettings;
+
+import com.cisco.gerrit.plugins.slack.config.ProjectConfig;
+import com.google.common.base.Suppliers;
+import com.google.gerrit.extensions.client.ChangeKind;
+import com.google.gerrit.reviewdb.client.Project;
+import com.google.gerrit.server.StandardKeyEncoder;
+import com.google.gerrit.server.config.PluginConfig;
+import com.google.gerrit.server.config.PluginConfigFactory;
+import com.google.gerrit.server.data.AccountAttribute;
+import com.google.gerrit.server.data.ApprovalAttribute;
+import com.google.gerrit.server.data.ChangeAttribute;
+import com.google.gerrit.server.data.PatchSetAttribute;
+import com.google.gerrit.server.events.ChangeMergedEvent;
+import com.google.gerrit.server.events.CommentAddedEvent;
+import com.google.gerrit.server.events.Event;
+import com.google.gerrit.server.events.PatchSetCreatedEvent;
+import com.google.gerrit.server.events.PrivateStateChangedEvent;
+import com.google.gerrit.server.events.ReviewerAddedEvent;
+import com.google.gerrit.server.events.WorkInProgressStateChangedEvent;
+import com.google.gwtorm.client.KeyUtil;
+import org.eclipse.jgit.lib.Config;
+
+/**
+ * Builds the configuration and events shared by the benchmarks. Events are stub-only mocks with
+ * their public fields filled in, so reading them costs the same as reading a real event.
+ */
+final class Fixtures {
+  static final String PROJECT = "benchmark-project";
+
+  static {
+    // Gerrit installs the key encoder at startup, Project.NameKey.parse fails without it
+    KeyUtil.setEncoderImpl(new StandardKeyEncoder());
+  }
+
+  // Made private to prevent instantiation.
+  private Fixtures() {}
+
+  static PluginConfigFactory newConfigFactory() throws Exception {
+    return newConfigFactory("https://hooks.example.com/hook");
+  }
+
+  /**
+   * Creates a PluginConfigFactory that serves a real PluginConfig for every project.
+   *
+   * @param webhookUrl The webhook URL to publish to.
+   * @return The config factory.
+   * @throws Exception if stubbing fails.
+   */
+  static PluginConfigFactory newConfigFactory(String webhookUrl) throws Exception {
+    Config config;
+    config = new Config();
+    config.setBoolean("plugin", ProjectConfig.CONFIG_NAME, "enabled", true);
+    config.setString("plugin", ProjectConfig.CONFIG_NAME, "webhookurl", webhookUrl);
+    config.setString("plugin", ProjectConfig.CONFIG_NAME, "channel", "benchmark");
+    config.setString("plugin", ProjectConfig.CONFIG_NAME, "ignore", "^WIP.*");
+
+    PluginConfig pluginConfig;
+    pluginConfig = new PluginConfig(ProjectConfig.CONFIG_NAME, config);
+
+    PluginConfigFactory configFactory;
+    configFactory = mock(PluginConfigFactory.class, withSettings().stubOnly());
+
+    when(configFactory.getFromProjectConfigWithInheritance(any(Project.NameKey.class), anyString()))
+        .thenReturn(pluginConfig);
+    when(configFactory.getFromGerritConfig(anyString())).thenReturn(pluginConfig);
+
+    return configFactory;
+  }
+
+  /**
+   * Creates an event of the given type about a typical change.
+   *
+   * @param type The Gerrit event type.
+   * @return The event.
+   */
+  static Event newEvent(String type) {
+    AccountAttribute account;
+    account = new AccountAttribute();
+    account.name = "Benchmark User";
+    account.username = "benchmark";
+    account.email = "benchmark@example.com";
+
+    ChangeAttribute change;
+    change = new ChangeAttribute();
+    change.project = PROJECT;
+    change.branch = "master";
+    change.number = 12345;
+    change.url = "https://gerrit.example.com/c/" + PROJECT + "/+/12345";
+    change.commitMessage =
+        "Make the widget frobnicator \"fast\"\n\nThe frobnicator now caches its widgets.\n\n"
+            + "Change-Id: I0123456789abcdef0123456789abcdef01234567\n";
+    change.wip = false;
+    change.isPrivate = false;
+
+    PatchSetAttribute patchSet;
+    patchSet = new PatchSetAttribute();
+    patchSet.number = 3;
+    patchSet.kind = ChangeKind.REWORK;
+
+    switch (type) {
+      case "patchset-created":
+        PatchSetCreatedEvent patchSetCreated;
+        patchSetCreated = mock(PatchSetCreatedEvent.class, withSettings().stubOnly());
+        patchSetCreated.change = Suppliers.ofInstance(change);
+        patchSetCreated.patchSet = Suppliers.ofInstance(patchSet);
+        patchSetCreated.uploader = Suppliers.ofInstance(account);
+        return patchSetCreated;
+      case "change-merged":
+        ChangeMergedEvent changeMerged;
+        changeMerged = mock(ChangeMergedEvent.class, withSettings().stubOnly());
+        changeMerged.change = Suppliers.ofInstance(change);
+        changeMerged.patchSet = Suppliers.ofInstance(patchSet);
+        changeMerged.submitter = Suppliers.ofInstance(account);
+        return changeMerged;
+      case "comment-added":
+        ApprovalAttribute approval;
+        approval = new ApprovalAttribute();
+        approval.type = "Code-Review";
+        approval.value = "1";
+        approval.oldValue = "0";
+
+        CommentAddedEvent commentAdded;
+        commentAdded = mock(CommentAddedEvent.class, withSettings().stubOnly());
+        commentAdded.change = Suppliers.ofInstance(change);
+        commentAdded.patchSet = Suppliers.ofInstance(patchSet);
+        commentAdded.author = Suppliers.ofInstance(account);
+        commentAdded.approvals = Suppliers.ofInstance(new ApprovalAttribute[] {approval});
+        commentAdded.comment = "Patch Set 3: Code-Review+1\n\nLooks good, one nit inline.";
+        return commentAdded;
+      case "reviewer-added":
+        ReviewerAddedEvent reviewerAdded;
+        reviewerAdded = mock(ReviewerAddedEvent.class, withSettings().stubOnly());
+        reviewerAdded.change = Suppliers.ofInstance(change);
+        reviewerAdded.patchSet = Suppliers.ofInstance(patchSet);
+        reviewerAdded.reviewer = Suppliers.ofInstance(account);
+        return reviewerAdded;
+      case "wip-state-changed":
+        WorkInProgressStateChangedEvent wipStateChanged;
+        wipStateChanged = mock(WorkInProgressStateChangedEvent.class, withSettings().stubOnly());
+        wipStateChanged.change = Suppliers.ofInstance(change);
+        wipStateChanged.patchSet = Suppliers.ofInstance(patchSet);
+        wipStateChanged.changer = Suppliers.ofInstance(account);
+        return wipStateChanged;
+      case "private-state-changed":
+        PrivateStateChangedEvent privateStateChanged;
+        privateStateChanged = mock(PrivateStateChangedEvent.class, withSettings().stubOnly());
+        privateStateChanged.change = Suppliers.ofInstance(change);
+        privateStateChanged.patchSet = Suppliers.ofInstance(patchSet);
+        privateStateChanged.changer = Suppliers.ofInstance(account);
+        return privateStateChanged;
+      default:
+        throw new IllegalArgumentException("Unsupported event type: " + type);
+    }
+  }
+}
@@ -0,0 +1,352 @@
+/*
+ * Copyright 2017 Cisco Systems, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package com.cisco.gerrit.plugins.slack.benchmark;
+
+import com.cisco.gerrit.plugins.slack.Module;
+import com.cisco.gerrit.plugins.slack.PublishEventListener;
+import com.cisco.gerrit.plugins.slack.metrics.LatencyHistogram;
+import com.cisco.gerrit.plugins.slack.metrics.PipelineMetrics;
+import com.cisco.gerrit.plugins.slack.metrics.PipelineStatus;
+import com.cisco.gerrit.plugins.slack.sidecar.EventParser;
+import com.cisco.gerrit.plugins.slack.testing.WebhookStubServer;
+import com.google.gerrit.extensions.annotations.PluginData;
+import com.google.gerrit.lifecycle.LifecycleManager;
+import com.google.gerrit.metrics.DisabledMetricMaker;
+import com.google.gerrit.metrics.MetricMaker;
+import com.google.gerrit.server.config.PluginConfigFactory;
+import com.google.gerrit.server.events.Event;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.google.inject.AbstractModule;
+import com.google.inject.Guice;
+import com.google.inject.Injector;
+import java.io.BufferedReader;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Drives PublishEventListener.onEvent at a fixed rate with events replayed from a stream-events
+ * capture or synthesized, delivering to an embedded webhook stub. Reports throughput, end-to-end
+ * latency percentiles, dropped messages and heap usage.
+ *
+ * <pre>
+ * --capture FILE       replay a stream-events capture (one JSON event per line), looping as needed
+ * --events N           number of events to offer (default 10000)
+ * --rate N             events offered per second (default 200)
+ * --projects N         projects to spread synthesized events across (default 100)
+ * --latency MS         delay before the stub responds (default 0)
+ * --error-rate F       fraction of posts answered with a 500 (default 0)
+ * --throttle-rate F    fraction of posts answered with a 429 (default 0)
+ * --drop-rate F        fraction of posts whose connection is dropped (default 0)
+ * --seed N             seed for synthesized events (default 1)
+ * </pre>
+ */
+public class LoadTest {
+  /** Every event's change URL is tagged with its sequence number to match posts to events. */
+  private static final Pattern SEQUENCE = Pattern.compile("\"title_link\": \"[^\"]*#(\\d+)\"");
+
+  private static final long DRAIN_TIMEOUT_MILLIS = TimeUnit.MINUTES.toMillis(2);
+
+  public static void main(String[] args) throws Exception {
+    Map<String, String> options;
+    options = parseOptions(args);
+
+    int events;
+    events = Integer.parseInt(options.getOrDefault("events", "10000"));
+
+    int rate;
+    rate = Integer.parseInt(options.getOrDefault("rate", "200"));
+
+    List<JsonObject> capture;
+    capture = null;
+    if (options.containsKey("capture")) {
+      capture = readCapture(options.get("capture"));
+    }
+
+    SyntheticEvents synthetic;
+    synthetic =
+        new SyntheticEvents(
+            Long.parseLong(options.getOrDefault("seed", "1")),
+            Integer.parseInt(options.getOrDefault("projects", "100")));
+
+    try (WebhookStubServer stub = new WebhookStubServer(8)) {
+      stub.setLatency(Long.parseLong(options.getOrDefault("latency", "0")), TimeUnit.MILLISECONDS);
+      stub.setErrorRate(Double.parseDouble(options.getOrDefault("error-rate", "0")));
+      stub.setThrottleRate(Double.parseDouble(options.getOrDefault("throttle-rate", "0")));
+      stub.setDropRate(Double.parseDouble(options.getOrDefault("drop-rate", "0")));
+      stub.setRecording(false);
+
+      AtomicLongArray sentAt;
+      sentAt = new AtomicLongArray(events);
+
+      LatencyHistogram latency;
+      latency = new LatencyHistogram();
+
+      stub.setListener(
+          payload -> {
+            Matcher matcher;
+            matcher = SEQUENCE.matcher(payload);
+
+            if (matcher.find()) {
+              long elapsed;
+              elapsed = System.nanoTime() - sentAt.get(Integer.parseInt(matcher.group(1)));
+
+              latency.record(TimeUnit.NANOSECONDS.toMicros(elapsed));
+            }
+          });
+
+      PluginConfigFactory configFactory;
+      configFactory = Fixtures.newConfigFactory(stub.getUrl());
+
+      Path dataDirectory;
+      dataDirectory = Files.createTempDirectory("slack-integration-load-test");
+
+      Injector injector;
+      injector =
+          Guice.createInjector(
+              new Module(),
+              new AbstractModule() {
+                @Override
+                protected void configure() {
+                  bind(PluginConfigFactory.class).toInstance(configFactory);
+                  bind(MetricMaker.class).to(DisabledMetricMaker.class);
+                  bind(Path.class).annotatedWith(PluginData.class).toInstance(dataDirectory);
+                }
+              });
+
+      PublishEventListener listener;
+      listener = injector.getInstance(PublishEventListener.class);
+
+      MemoryMXBean memory;
+      memory = ManagementFactory.getMemoryMXBean();
+
+      AtomicLong peakHeap;
+      peakHeap = new AtomicLong();
+
+      ScheduledExecutorService sampler;
+      sampler = Executors.newSingleThreadScheduledExecutor();
+      sampler.scheduleAtFixedRate(
+          () -> peakHeap.accumulateAndGet(memory.getHeapMemoryUsage().getUsed(), Math::max),
+          0,
+          100,
+          TimeUnit.MILLISECONDS);
+
+      // Starts the timer, dispatcher, shards and load shedder the same way Gerrit does
+      LifecycleManager manager;
+      manager = new LifecycleManager();
+      manager.add(injector);
+      manager.start();
+
+      EventParser parser;
+      parser = new EventParser();
+
+      long period;
+      period = TimeUnit.SECONDS.toNanos(1) / rate;
+
+      int skipped;
+      skipped = 0;
+
+      long start;
+      start = System.nanoTime();
+
+      for (int i = 0; i < events; i++) {
+        JsonObject record;
+        int loop;
+        if (capture != null) {
+          record = capture.get(i % capture.size()).deepCopy();
+          loop = i / capture.size();
+        } else {
+          record = synthetic.next();
+          loop = 0;
+        }
+
+        Event event;
+        event = parser.parse(tag(record, i, loop));
+        if (event == null) {
+          skipped++;
+          continue;
+        }
+
+        long wait;
+        while ((wait = start + (i - skipped) * period - System.nanoTime()) > 0) {
+          LockSupport.parkNanos(wait);
+        }
+
+        sentAt.set(i, System.nanoTime());
+        listener.onEvent(event);
+      }
+
+      long offered;
+      offered = System.nanoTime() - start;
+
+      PipelineMetrics metrics;
+      metrics = injector.getInstance(PipelineMetrics.class);
+
+      PipelineStatus status;
+      status = injector.getInstance(PipelineStatus.class);
+
+      awaitDrained(metrics, status);
+
+      long drained;
+      drained = System.nanoTime() - start;
+
+      manager.stop();
+      sampler.shutdownNow();
+
+      long dispatched;
+      dispatched = 0;
+      for (Map.Entry<String, Long> entry : status.getTopProjects(Integer.MAX_VALUE)) {
+        dispatched += entry.getValue();
+      }
+
+      System.gc();
+
+      System.out.printf(
+          "Offered      %d events in %.1f s (%.1f/s, target %d/s), %d of unsupported types%n",
+          events - skipped,
+          seconds(offered),
+          (events - skipped) / seconds(offered),
+          rate,
+          skipped);
+      System.out.printf(
+          "Dispatched   %d messages, %d events filtered by the plugin%n",
+          dispatched, events - skipped - dispatched);
+      System.out.printf(
+          "Delivered    %d messages (%.1f/s), stub answered %d with 429 and %d with 500, "
+              + "dropped %d connections%n",
+          stub.getAccepted(),
+          stub.getAccepted() / seconds(drained),
+          stub.getThrottled(),
+          stub.getFailed(),
+          stub.getDropped());
+      System.out.printf("Dropped      %d messages%n", dispatched - stub.getAccepted());
+      System.out.printf(
+          "Latency ms   p50 %.1f, p95 %.1f, p99 %.1f, max %.1f%n",
+          latency.getPercentile(50) / 1000.0,
+          latency.getPercentile(95) / 1000.0,
+          latency.getPercentile(99) / 1000.0,
+          latency.getMax() / 1000.0);
+      System.out.printf(
+          "Heap MB      peak %.1f, after GC %.1f%n",
+          peakHeap.get() / 1048576.0,
+          memory.getHeapMemoryUsage().getUsed() / 1048576.0);
+    }
+  }
+
+  /**
+   * Makes a record look freshly created and tags its change URL with the sequence number. Each
+   * further pass over a capture moves the changes to new numbers, otherwise the plugin would drop
+   * the replayed events as duplicates.
+   *
+   * @param record The stream-events record.
+   * @param sequence The sequence number of the event.
+   * @param loop The number of times the capture has been replayed before.
+   * @return The record.
+   */
+  private static JsonObject tag(JsonObject record, int sequence, int loop) {
+    record.addProperty("eventCreatedOn", System.currentTimeMillis() / 1000);
+
+    JsonObject change;
+    change = record.getAsJsonObject("change");
+    if (change != null) {
+      if (loop > 0 && change.has("number")) {
+        change.addProperty("number", change.get("number").getAsInt() + loop * 1_000_000);
+      }
+      if (change.has("url")) {
+        change.addProperty("url", change.get("url").getAsString() + "#" + sequence);
+      }
+    }
+
+    return record;
+  }
+
+  private static void awaitDrained(PipelineMetrics metrics, PipelineStatus status)
+      throws InterruptedException {
+    long deadline;
+    deadline = System.currentTimeMillis() + DRAIN_TIMEOUT_MILLIS;
+
+    while (System.currentTimeMillis() < deadline) {
+      int pending;
+      pending = metrics.getQueueDepth() + metrics.getInFlight();
+      for (PipelineStatus.Destination destination : status.getDestinations().values()) {
+        pending += destination.getPending();
+      }
+
+      if (pending == 0) {
+        return;
+      }
+      Thread.sleep(50);
+    }
+
+    System.out.println("Gave up waiting for the pipeline to drain");
+  }
+
+  private static List<JsonObject> readCapture(String path) throws Exception {
+    List<JsonObject> records;
+    records = new ArrayList<>();
+
+    try (BufferedReader reader = Files.newBufferedReader(Paths.get(path), StandardCharsets.UTF_8)) {
+      String line;
+      while ((line = reader.readLine()) != null) {
+        if (!line.trim().isEmpty()) {
+          records.add(new JsonParser().parse(line).getAsJsonObject());
+        }
+      }
+    }
+
+    if (records.isEmpty()) {
+      throw new IllegalArgumentException("No events found in " + path);
+    }
+
+    return records;
+  }
+
+  private static Map<String, String> parseOptions(String[] args) {
+    Map<String, String> options;
+    options = new HashMap<>();
+
+    for (int i = 0; i < args.length; i++) {
+      if (!args[i].startsWith("--") || i + 1 == args.length) {
+        throw new IllegalArgumentException("Expected --option value pairs, got: " + args[i]);
+      }
+      options.put(args[i].substring(2), args[++i]);
+    }
+
+    return options;
+  }
+
+  private static double seconds(long nanos) {
+    return nanos / 1e9;
+  }
+}
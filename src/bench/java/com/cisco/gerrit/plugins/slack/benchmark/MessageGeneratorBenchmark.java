@@ -0,0 +1,102 @@
+/*
+ * Copyright 2017 Cisco Systems, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package com.cisco.gerrit.plugins.slack.benchmark;
+
+import com.cisco.gerrit.plugins.slack.config.ProjectConfig;
+import com.cisco.gerrit.plugins.slack.message.MessageGenerator;
+import com.cisco.gerrit.plugins.slack.message.MessageGeneratorFactory;
+import com.google.gerrit.server.events.ChangeMergedEvent;
+import com.google.gerrit.server.events.CommentAddedEvent;
+import com.google.gerrit.server.events.Event;
+import com.google.gerrit.server.events.PatchSetCreatedEvent;
+import com.google.gerrit.server.events.PrivateStateChangedEvent;
+import com.google.gerrit.server.events.ReviewerAddedEvent;
+import com.google.gerrit.server.events.WorkInProgressStateChangedEvent;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures filtering and rendering for each supported event type. A generator is created per
+ * operation, as the event listener does for every event.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MessageGeneratorBenchmark {
+  @Param({
+    "patchset-created",
+    "change-merged",
+    "comment-added",
+    "reviewer-added",
+    "wip-state-changed",
+    "private-state-changed"
+  })
+  public String eventType;
+
+  private Supplier<MessageGenerator> generators;
+
+  @Setup
+  public void setup() throws Exception {
+    ProjectConfig config;
+    config = new ProjectConfig(Fixtures.newConfigFactory(), Fixtures.PROJECT);
+
+    Event event;
+    event = Fixtures.newEvent(eventType);
+
+    if (event instanceof PatchSetCreatedEvent) {
+      generators = () -> MessageGeneratorFactory.newInstance((PatchSetCreatedEvent) event, config);
+    } else if (event instanceof ChangeMergedEvent) {
+      generators = () -> MessageGeneratorFactory.newInstance((ChangeMergedEvent) event, config);
+    } else if (event instanceof CommentAddedEvent) {
+      generators = () -> MessageGeneratorFactory.newInstance((CommentAddedEvent) event, config);
+    } else if (event instanceof ReviewerAddedEvent) {
+      generators = () -> MessageGeneratorFactory.newInstance((ReviewerAddedEvent) event, config);
+    } else if (event instanceof WorkInProgressStateChangedEvent) {
+      generators =
+          () ->
+              MessageGeneratorFactory.newInstance((WorkInProgressStateChangedEvent) event, config);
+    } else {
+      generators =
+          () -> MessageGeneratorFactory.newInstance((PrivateStateChangedEvent) event, config);
+    }
+  }
+
+  @Benchmark
+  public boolean shouldPublish() {
+    return generators.get().shouldPublish();
+  }
+
+  @Benchmark
+  public String generate() {
+    return generators.get().generate();
+  }
+}
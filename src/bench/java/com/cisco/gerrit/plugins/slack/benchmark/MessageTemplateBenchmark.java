@@ -0,0 +1,57 @@
+/*
+ * Copyright 2017 Cisco Systems, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package com.cisco.gerrit.plugins.slack.benchmark;
+
+import com.cisco.gerrit.plugins.slack.message.MessageTemplate;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** Measures rendering a message, including escaping of the change title and comment. */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MessageTemplateBenchmark {
+  @Benchmark
+  public String render() {
+    MessageTemplate template;
+    template = new MessageTemplate();
+
+    template.setChannel("benchmark");
+    template.setName("Benchmark User");
+    template.setAction("commented on");
+    template.setProject(Fixtures.PROJECT);
+    template.setBranch("master");
+    template.setUrl("https://gerrit.example.com/c/benchmark-project/+/12345");
+    template.setNumber(12345);
+    template.setTitle("Make the widget frobnicator \"fast\" & <small>");
+    template.setMessage("Patch Set 3: Code-Review+1\n\nLooks good, one nit inline.");
+
+    return template.render();
+  }
+}
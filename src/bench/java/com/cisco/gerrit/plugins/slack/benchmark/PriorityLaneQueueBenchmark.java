@@ -0,0 +1,104 @@
+/*
+ * Copyright 2017 Cisco Systems, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package com.cisco.gerrit.plugins.slack.benchmark;
+
+import com.cisco.gerrit.plugins.slack.util.PriorityLaneQueue;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures offering and taking messages from a delivery queue that holds a backlog spread across
+ * many projects and all priorities, one noisy project carrying half of it.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PriorityLaneQueueBenchmark {
+  private static final int LANES = 3;
+
+  @Param({"10", "1000"})
+  public int projects;
+
+  @Param({"10000"})
+  public int backlog;
+
+  private PriorityLaneQueue<Message> queue;
+  private Message[] messages;
+  private int next;
+
+  @Setup(Level.Trial)
+  public void setup() {
+    queue =
+        new PriorityLaneQueue<>(
+            LANES,
+            message -> message.lane,
+            message -> message.project,
+            message -> message.weight,
+            2,
+            TimeUnit.SECONDS);
+
+    messages = new Message[backlog];
+    for (int i = 0; i < backlog; i++) {
+      int project;
+      project = i % projects;
+
+      // Every other message is the noisy project's, every seventh project has weight 2
+      if (i % 2 == 0) {
+        messages[i] = new Message("noisy", i % LANES, 1);
+      } else {
+        messages[i] = new Message("project-" + project, i % LANES, project % 7 == 0 ? 2 : 1);
+      }
+      queue.offer(messages[i]);
+    }
+  }
+
+  @Benchmark
+  public Message offerAndTake() {
+    queue.offer(messages[next]);
+    next = (next + 1) % messages.length;
+
+    return queue.poll();
+  }
+
+  /** A message of a project, with the lane and weight it is queued with. */
+  public static final class Message {
+    private final String project;
+    private final int lane;
+    private final int weight;
+
+    Message(String project, int lane, int weight) {
+      this.project = project;
+      this.lane = lane;
+      this.weight = weight;
+    }
+  }
+}
@@ -0,0 +1,173 @@
+/*
+ * Copyright 2017 Cisco Systems, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package com.cisco.gerrit.plugins.slack.benchmark;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import java.util.Random;
+
+/**
+ * Generates stream-events records with a mix of event types similar to a busy Gerrit site:
+ * mostly comments and new patch sets, and a long tail of projects where a few projects produce
+ * most of the traffic.
+ */
+final class SyntheticEvents {
+  private static final String[] TYPES = {
+    "comment-added",
+    "patchset-created",
+    "reviewer-added",
+    "change-merged",
+    "wip-state-changed",
+    "private-state-changed"
+  };
+
+  /** Cumulative weights of the types above, out of 100. */
+  private static final int[] WEIGHTS = {45, 75, 87, 95, 98, 100};
+
+  private static final int USERS = 500;
+
+  private final Random random;
+  private final int projects;
+
+  /**
+   * Creates a new SyntheticEvents source.
+   *
+   * @param seed The random seed, so runs can be repeated.
+   * @param projects The number of projects to spread events across.
+   */
+  SyntheticEvents(long seed, int projects) {
+    this.random = new Random(seed);
+    this.projects = projects;
+  }
+
+  /**
+   * Generates the next event.
+   *
+   * @return A stream-events record.
+   */
+  JsonObject next() {
+    int roll;
+    roll = random.nextInt(100);
+
+    String type;
+    type = TYPES[TYPES.length - 1];
+    for (int i = 0; i < WEIGHTS.length; i++) {
+      if (roll < WEIGHTS[i]) {
+        type = TYPES[i];
+        break;
+      }
+    }
+
+    // Cubing skews the distribution so that low numbered projects are the busiest
+    double skew;
+    skew = random.nextDouble();
+
+    String project;
+    project = "project-" + (int) (projects * skew * skew * skew);
+
+    int number;
+    number = 10_000 + random.nextInt(90_000);
+
+    JsonObject owner;
+    owner = account(random.nextInt(USERS));
+
+    JsonObject change;
+    change = new JsonObject();
+    change.addProperty("project", project);
+    change.addProperty("branch", "master");
+    change.addProperty("id", "I" + Long.toHexString(random.nextLong()));
+    change.addProperty("number", number);
+    change.addProperty("subject", "Change the frobnicator in " + project);
+    change.add("owner", owner);
+    change.addProperty("url", "https://gerrit.example.com/c/" + project + "/+/" + number);
+    change.addProperty(
+        "commitMessage",
+        "Change the frobnicator in "
+            + project
+            + "\n\nThe frobnicator now caches its widgets, which makes rendering the"
+            + " \"widget\" page faster.\n\nChange-Id: I0123456789abcdef\n");
+    change.addProperty("status", "NEW");
+
+    JsonObject patchSet;
+    patchSet = new JsonObject();
+    patchSet.addProperty("number", 1 + random.nextInt(5));
+    patchSet.addProperty("revision", Long.toHexString(random.nextLong()));
+    patchSet.addProperty("ref", "refs/changes/" + number % 100 + "/" + number + "/1");
+    patchSet.add("uploader", owner);
+    patchSet.addProperty("kind", random.nextInt(10) == 0 ? "TRIVIAL_REBASE" : "REWORK");
+
+    JsonObject event;
+    event = new JsonObject();
+    event.addProperty("type", type);
+    event.add("change", change);
+    event.add("patchSet", patchSet);
+    event.addProperty("project", project);
+    event.addProperty("refName", "refs/heads/master");
+    event.addProperty("eventCreatedOn", System.currentTimeMillis() / 1000);
+
+    JsonObject actor;
+    actor = account(random.nextInt(USERS));
+
+    switch (type) {
+      case "comment-added":
+        JsonObject approval;
+        approval = new JsonObject();
+        approval.addProperty("type", "Code-Review");
+        approval.addProperty("description", "Code-Review");
+        approval.addProperty("value", String.valueOf(random.nextInt(5) - 2));
+        approval.addProperty("oldValue", "0");
+
+        JsonArray approvals;
+        approvals = new JsonArray();
+        approvals.add(approval);
+
+        event.add("author", actor);
+        event.add("approvals", approvals);
+        event.addProperty(
+            "comment",
+            "Patch Set 1:\n\n(" + (1 + random.nextInt(8)) + " comments)\n\nLooks good overall.");
+        break;
+      case "patchset-created":
+        event.add("uploader", owner);
+        break;
+      case "reviewer-added":
+        event.add("reviewer", actor);
+        event.add("adder", owner);
+        break;
+      case "change-merged":
+        event.add("submitter", actor);
+        event.addProperty("newRev", Long.toHexString(random.nextLong()));
+        break;
+      default:
+        event.add("changer", owner);
+        break;
+    }
+
+    return event;
+  }
+
+  private static JsonObject account(int user) {
+    JsonObject account;
+    account = new JsonObject();
+    account.addProperty("name", "User " + user);
+    account.addProperty("email", "user" + user + "@example.com");
+    account.addProperty("username", "user" + user);
+
+    return account;
+  }
+}
@@ -0,0 +1,71 @@
+/*
+ * Copyright 2017 Cisco Systems, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package com.cisco.gerrit.plugins.slack.benchmark;
+
+import com.cisco.gerrit.plugins.slack.util.TimingWheel;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures scheduling and cancelling timers spread across debounce windows, retry backoffs and
+ * digest intervals, from several threads at once.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(4)
+public class TimingWheelBenchmark {
+  private static final Runnable TASK = () -> {};
+
+  private TimingWheel wheel;
+
+  @Setup(Level.Trial)
+  public void setup() {
+    wheel = new TimingWheel(10, TimeUnit.MILLISECONDS, 512, "timing-wheel-benchmark");
+    wheel.start();
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() {
+    wheel.stop();
+  }
+
+  @Benchmark
+  public boolean scheduleAndCancel() {
+    long delay;
+    delay = ThreadLocalRandom.current().nextLong(100, TimeUnit.MINUTES.toMillis(10));
+
+    return wheel.schedule(TASK, delay, TimeUnit.MILLISECONDS).cancel();
+  }
+}
@@ -0,0 +1,68 @@
+/*
+ * Copyright 2017 Cisco Systems, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package com.cisco.gerrit.plugins.slack.benchmark;
+
+import com.cisco.gerrit.plugins.slack.client.WebhookClient;
+import com.cisco.gerrit.plugins.slack.testing.WebhookStubServer;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures posting a message to a webhook stub on the loopback interface, which answers "ok"
+ * immediately. The result is the client's own overhead plus the local HTTP round trip.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class WebhookClientBenchmark {
+  private WebhookStubServer server;
+  private WebhookClient client;
+  private String payload;
+
+  @Setup
+  public void setup() throws Exception {
+    server = new WebhookStubServer();
+    client = new WebhookClient();
+    payload =
+        "{\"channel\": \"#benchmark\", \"text\": \"Benchmark User proposed"
+            + " <https://gerrit.example.com/c/benchmark-project/+/12345|12345>\"}";
+  }
+
+  @TearDown
+  public void tearDown() {
+    server.close();
+  }
+
+  @Benchmark
+  public boolean publish() {
+    return client.publish(payload, server.getUrl());
+  }
+}
@@ -0,0 +1,31 @@
+/*
+ * Copyright 2017 Cisco Systems, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package com.cisco.gerrit.plugins.slack.metrics;
+
+/** Records the stages of the notification pipeline as Java Flight Recorder events. */
+final class JfrStageRecorder implements StageRecorder {
+  @Override
+  public Object begin() {
+    return StageEvent.start();
+  }
+
+  @Override
+  public void end(Object handle, String stage, String project, String eventType) {
+    ((StageEvent) handle).finish(stage, project, eventType);
+  }
+}
@@ -0,0 +1,78 @@
+/*
+ * Copyright 2017 Cisco Systems, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package com.cisco.gerrit.plugins.slack.metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * A Java Flight Recorder event spanning one stage of the notification pipeline. Only referenced
+ * through JfrStageRecorder, so the plugin still loads on JVMs without JFR.
+ */
+@Name("com.cisco.gerrit.plugins.slack.Stage")
+@Label("Slack Integration Stage")
+@Category({"Gerrit", "Slack Integration"})
+@Description("A stage of publishing a Gerrit event to a webhook")
+@Enabled(false)
+@StackTrace(false)
+final class StageEvent extends Event {
+  /** Whether the event is enabled does not depend on the instance, so one is kept to ask. */
+  private static final StageEvent PROBE = new StageEvent();
+
+  @Label("Stage")
+  String stage;
+
+  @Label("Project")
+  String project;
+
+  @Label("Event Type")
+  String eventType;
+
+  /**
+   * Starts timing a stage.
+   *
+   * @return The started event, null if no recording has the event enabled.
+   */
+  static StageEvent start() {
+    // Escape analysis does not remove an event that is returned, so only allocate when recording
+    if (!PROBE.isEnabled()) {
+      return null;
+    }
+
+    StageEvent event;
+    event = new StageEvent();
+
+    event.begin();
+    return event;
+  }
+
+  void finish(String stage, String project, String eventType) {
+    end();
+    if (shouldCommit()) {
+      this.stage = stage;
+      this.project = project;
+      this.eventType = eventType;
+      commit();
+    }
+  }
+}
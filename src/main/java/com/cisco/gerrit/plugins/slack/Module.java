@@ -0,0 +1,63 @@
+/*
+ * Copyright 2017 Cisco Systems, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package com.cisco.gerrit.plugins.slack;
+
+import static com.google.gerrit.server.config.ConfigResource.CONFIG_KIND;
+
+import com.cisco.gerrit.plugins.slack.admin.GetStatus;
+import com.cisco.gerrit.plugins.slack.client.LoadShedder;
+import com.cisco.gerrit.plugins.slack.client.ShadowCapture;
+import com.cisco.gerrit.plugins.slack.client.WebhookDispatcher;
+import com.cisco.gerrit.plugins.slack.cluster.ClaimLog;
+import com.cisco.gerrit.plugins.slack.cluster.ShardRouter;
+import com.cisco.gerrit.plugins.slack.config.ProjectConfigCache;
+import com.cisco.gerrit.plugins.slack.config.ServerConfigWatcher;
+import com.cisco.gerrit.plugins.slack.util.TimingWheel;
+import com.google.gerrit.extensions.events.GitReferenceUpdatedListener;
+import com.google.gerrit.extensions.registration.DynamicSet;
+import com.google.gerrit.extensions.restapi.RestApiModule;
+import com.google.gerrit.lifecycle.LifecycleModule;
+import com.google.gerrit.server.events.EventListener;
+
+/** Binds the plugin's event listener and the background services it delivers through. */
+public class Module extends LifecycleModule {
+  @Override
+  protected void configure() {
+    DynamicSet.bind(binder(), EventListener.class).to(PublishEventListener.class);
+    DynamicSet.bind(binder(), GitReferenceUpdatedListener.class).to(ProjectConfigCache.class);
+
+    // Listeners are stopped in reverse order, so the timer, capture and claims outlive the
+    // dispatcher. The shards start once the dispatcher can take over messages, and the load
+    // shedder stops first so its last digests still reach the dispatcher.
+    listener().to(TimingWheel.class);
+    listener().to(ServerConfigWatcher.class);
+    listener().to(ShadowCapture.class);
+    listener().to(ClaimLog.class);
+    listener().to(WebhookDispatcher.class);
+    listener().to(ShardRouter.class);
+    listener().to(LoadShedder.class);
+
+    install(
+        new RestApiModule() {
+          @Override
+          protected void configure() {
+            get(CONFIG_KIND, "status").to(GetStatus.class);
+          }
+        });
+  }
+}
@@ -17,17 +17,34 @@
 
 package com.cisco.gerrit.plugins.slack;
 
-import com.cisco.gerrit.plugins.slack.client.WebhookClient;
+import com.cisco.gerrit.plugins.slack.client.LoadShedder;
+import com.cisco.gerrit.plugins.slack.client.OutboundMessage;
+import com.cisco.gerrit.plugins.slack.client.Payload;
+import com.cisco.gerrit.plugins.slack.client.WebhookDispatcher;
+import com.cisco.gerrit.plugins.slack.config.Destination;
+import com.cisco.gerrit.plugins.slack.config.Priority;
 import com.cisco.gerrit.plugins.slack.config.ProjectConfig;
+import com.cisco.gerrit.plugins.slack.config.ProjectConfigCache;
+import com.cisco.gerrit.plugins.slack.message.CommentAddedMessageGenerator;
+import com.cisco.gerrit.plugins.slack.message.LabelStateCache;
 import com.cisco.gerrit.plugins.slack.message.MessageGenerator;
 import com.cisco.gerrit.plugins.slack.message.MessageGeneratorFactory;
-import com.google.gerrit.extensions.annotations.Listen;
-import com.google.gerrit.server.config.PluginConfigFactory;
+import com.cisco.gerrit.plugins.slack.metrics.PipelineMetrics;
+import com.cisco.gerrit.plugins.slack.metrics.PipelineStage;
+import com.cisco.gerrit.plugins.slack.util.DeduplicationCache;
+import com.cisco.gerrit.plugins.slack.util.EventAttributes;
+import com.cisco.gerrit.plugins.slack.util.EventFingerprint;
+import com.cisco.gerrit.plugins.slack.util.ThrottledLogger;
+import com.google.gerrit.reviewdb.client.Project;
+import com.google.gerrit.server.data.ChangeAttribute;
+import com.google.gerrit.server.events.ChangeAbandonedEvent;
 import com.google.gerrit.server.events.ChangeMergedEvent;
 import com.google.gerrit.server.events.CommentAddedEvent;
 import com.google.gerrit.server.events.Event;
 import com.google.gerrit.server.events.EventListener;
 import com.google.gerrit.server.events.PatchSetCreatedEvent;
+import com.google.gerrit.server.events.PrivateStateChangedEvent;
+import com.google.gerrit.server.events.ProjectEvent;
 import com.google.gerrit.server.events.ReviewerAddedEvent;
 import com.google.gerrit.server.events.WorkInProgressStateChangedEvent;
 import com.google.inject.Inject;
@@ -36,72 +53,295 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 /** Listens for Gerrit change events and publishes messages to Slack. */
-@Listen
 @Singleton
 public class PublishEventListener implements EventListener {
   private static final Logger LOGGER = LoggerFactory.getLogger(PublishEventListener.class);
+  private static final ThrottledLogger THROTTLED_LOGGER = new ThrottledLogger(LOGGER);
 
-  private static final String ALL_PROJECTS = "All-Projects";
+  private final ProjectConfigCache configCache;
+  private final WebhookDispatcher dispatcher;
+  private final DeduplicationCache deduplicationCache;
+  private final LabelStateCache labelStateCache;
+  private final PipelineMetrics metrics;
+  private final LoadShedder shedder;
 
-  @Inject private PluginConfigFactory configFactory;
+  @Inject
+  PublishEventListener(
+      ProjectConfigCache configCache,
+      WebhookDispatcher dispatcher,
+      DeduplicationCache deduplicationCache,
+      LabelStateCache labelStateCache,
+      PipelineMetrics metrics,
+      LoadShedder shedder) {
+    this.configCache = configCache;
+    this.dispatcher = dispatcher;
+    this.deduplicationCache = deduplicationCache;
+    this.labelStateCache = labelStateCache;
+    this.metrics = metrics;
+    this.shedder = shedder;
+  }
 
   @Override
   public void onEvent(Event event) {
+    String type;
+    type = event.getType() != null ? event.getType() : "unknown";
+
     try {
+      metrics.eventReceived(type);
+
+      String project;
+      project = getProjectName(event);
+      if (project == null) {
+        metrics.eventFiltered(type, PipelineMetrics.NO_PROJECT);
+        return;
+      }
+
+      long start;
+      start = System.nanoTime();
+
+      Object stage;
+      stage = PipelineStage.begin();
+
+      // Most projects leave the plugin disabled, so drop their events before any other work
+      if (!configCache.isEnabled(project)) {
+        PipelineStage.end(stage, PipelineStage.CONFIG, project, type);
+        metrics.eventFiltered(type, PipelineMetrics.DISABLED);
+        return;
+      }
+
       ProjectConfig config;
+      config = configCache.get(project);
+
+      PipelineStage.end(stage, PipelineStage.CONFIG, project, type);
+      metrics.recordConfigResolution(System.nanoTime() - start);
+
+      stage = PipelineStage.begin();
+
+      // Votes on closed changes can no longer transition
+      if (event instanceof ChangeMergedEvent || event instanceof ChangeAbandonedEvent) {
+        labelStateCache.evict(EventAttributes.getChange(event));
+      }
+
       MessageGenerator messageGenerator;
+      messageGenerator = newMessageGenerator(event, config);
 
-      if (event instanceof PatchSetCreatedEvent) {
-        PatchSetCreatedEvent patchSetCreatedEvent;
-        patchSetCreatedEvent = (PatchSetCreatedEvent) event;
+      PipelineStage.end(stage, PipelineStage.GENERATOR, project, type);
 
-        config = new ProjectConfig(configFactory, patchSetCreatedEvent.change.get().project);
+      start = System.nanoTime();
+      stage = PipelineStage.begin();
 
-        messageGenerator = MessageGeneratorFactory.newInstance(patchSetCreatedEvent, config);
-      } else if (event instanceof ChangeMergedEvent) {
-        ChangeMergedEvent changeMergedEvent;
-        changeMergedEvent = (ChangeMergedEvent) event;
+      boolean publish;
+      publish = messageGenerator.shouldPublish();
 
-        config = new ProjectConfig(configFactory, changeMergedEvent.change.get().project);
+      PipelineStage.end(stage, PipelineStage.SHOULD_PUBLISH, project, type);
 
-        messageGenerator = MessageGeneratorFactory.newInstance(changeMergedEvent, config);
-      } else if (event instanceof CommentAddedEvent) {
-        CommentAddedEvent commentAddedEvent;
-        commentAddedEvent = (CommentAddedEvent) event;
+      long fingerprint;
+      fingerprint = publish ? EventFingerprint.compute(event) : 0;
 
-        config = new ProjectConfig(configFactory, commentAddedEvent.change.get().project);
+      boolean duplicate;
+      duplicate = publish && deduplicationCache.isDuplicate(fingerprint);
 
-        messageGenerator = MessageGeneratorFactory.newInstance(commentAddedEvent, config);
-      } else if (event instanceof ReviewerAddedEvent) {
-        ReviewerAddedEvent reviewerAddedEvent;
-        reviewerAddedEvent = (ReviewerAddedEvent) event;
+      metrics.recordFilter(type, System.nanoTime() - start);
 
-        config = new ProjectConfig(configFactory, reviewerAddedEvent.change.get().project);
+      if (!publish) {
+        metrics.eventFiltered(type, PipelineMetrics.NOT_PUBLISHABLE);
+        return;
+      }
 
-        messageGenerator = MessageGeneratorFactory.newInstance(reviewerAddedEvent, config);
-      } else if (event instanceof WorkInProgressStateChangedEvent) {
-        WorkInProgressStateChangedEvent wipStateChangedEvent;
-        wipStateChangedEvent = (WorkInProgressStateChangedEvent) event;
+      if (duplicate) {
+        if (LOGGER.isDebugEnabled()) {
+          LOGGER.debug("Dropping duplicate " + type + " event");
+        }
+        metrics.eventFiltered(type, PipelineMetrics.DUPLICATE);
+        return;
+      }
 
-        config = new ProjectConfig(configFactory, wipStateChangedEvent.change.get().project);
+      // A project may post to its destinations only
+      boolean primary;
+      primary = config.isShadow() || !config.getWebhookUrl().isEmpty();
 
-        messageGenerator = MessageGeneratorFactory.newInstance(wipStateChangedEvent, config);
-      } else {
-        LOGGER.debug("Event " + event + " not currently supported");
+      if (!primary && config.getDestinations().isEmpty()) {
+        THROTTLED_LOGGER.warn("webhookurl", () -> "Project " + project + " has no webhookurl");
+        metrics.eventFiltered(type, PipelineMetrics.NO_WEBHOOK);
+        return;
+      }
+
+      Priority priority;
+      priority = config.getPriority(type);
+
+      // While the backlog is high, events are degraded before any rendering work is spent on them
+      LoadShedder.Decision decision;
+      decision = shedder.decide(type, priority, config.getWebhookHost());
 
-        config = new ProjectConfig(configFactory, ALL_PROJECTS);
+      if (decision == LoadShedder.Decision.SKIP) {
+        metrics.eventFiltered(type, PipelineMetrics.SHED);
+        return;
+      }
+
+      if (decision == LoadShedder.Decision.DIGEST) {
+        shedder.digest(project, type, config);
+        return;
+      }
 
-        messageGenerator = MessageGeneratorFactory.newInstance(event, config);
+      if (decision == LoadShedder.Decision.TRUNCATE
+          && messageGenerator instanceof CommentAddedMessageGenerator) {
+        ((CommentAddedMessageGenerator) messageGenerator)
+            .setMaxCommentLength(LoadShedder.TRUNCATED_COMMENT_LENGTH);
       }
 
-      if (messageGenerator.shouldPublish()) {
-        WebhookClient client;
-        client = new WebhookClient();
+      start = System.nanoTime();
+      stage = PipelineStage.begin();
+
+      String message;
+      message = messageGenerator.generate();
+
+      PipelineStage.end(stage, PipelineStage.RENDER, project, type);
+
+      // Encoded once, every destination posts the same bytes
+      Payload payload;
+      payload = Payload.of(message);
+
+      long renderNanos;
+      renderNanos = System.nanoTime() - start;
+
+      metrics.recordRender(type, renderNanos, payload.length());
+      if (config.isShadow()) {
+        metrics.recordShadowRender(type, renderNanos);
+      }
+
+      ChangeAttribute change;
+      change = EventAttributes.getChange(event);
+
+      OutboundMessage outbound;
+      outbound =
+          OutboundMessage.builder()
+              .project(project)
+              .eventType(type)
+              .eventCreatedOn(event.eventCreatedOn)
+              .fingerprint(fingerprint)
+              .changeKey(EventFingerprint.changeKey(project, change != null ? change.number : 0))
+              .priority(priority)
+              .weight(config.getWeight())
+              .ttlMillis(config.getTtl(type))
+              .payload(payload)
+              // Without a webhook of the project's own, every destination has one
+              .webhookUrl(
+                  primary
+                      ? config.getWebhookUrl()
+                      : config.getDestinations().get(0).getWebhookUrl())
+              .shadow(config.isShadow())
+              .build();
 
-        client.publish(messageGenerator.generate(), config.getWebhookUrl());
+      if (primary) {
+        dispatcher.dispatch(outbound);
+      }
+
+      if (!config.getDestinations().isEmpty()) {
+        fanOut(outbound, primary, config, change);
       }
     } catch (Throwable e) {
-      LOGGER.error("Event " + event + " processing failed", e);
+      THROTTLED_LOGGER.error("process", () -> "Event " + event + " processing failed", e);
+    }
+  }
+
+  /**
+   * Posts a message to the project's other destinations as well. The copies only patch the channel
+   * of the rendered payload, and go out in parallel on other delivery threads.
+   *
+   * @param message The message for the project's channel.
+   * @param primary Whether the message was posted to the project's channel.
+   * @param config The project's config.
+   * @param change The change the event refers to, may be null.
+   */
+  private void fanOut(
+      OutboundMessage message, boolean primary, ProjectConfig config, ChangeAttribute change) {
+    for (Destination destination : config.getDestinations()) {
+      if (!destination.matches(message.getEventType(), change != null ? change.branch : null)) {
+        continue;
+      }
+
+      String webhookUrl;
+      webhookUrl =
+          destination.getWebhookUrl() != null
+              ? destination.getWebhookUrl()
+              : config.getWebhookUrl();
+
+      // Already posted there
+      if (primary
+          && webhookUrl.equals(config.getWebhookUrl())
+          && destination.getChannel().equals(config.getChannel())) {
+        continue;
+      }
+
+      dispatcher.dispatch(message.withDestination(webhookUrl, destination.getChannel()));
+    }
+  }
+
+  private MessageGenerator newMessageGenerator(Event event, ProjectConfig config) {
+    MessageGenerator messageGenerator;
+
+    if (event instanceof PatchSetCreatedEvent) {
+      PatchSetCreatedEvent patchSetCreatedEvent;
+      patchSetCreatedEvent = (PatchSetCreatedEvent) event;
+
+      messageGenerator = MessageGeneratorFactory.newInstance(patchSetCreatedEvent, config);
+    } else if (event instanceof ChangeMergedEvent) {
+      ChangeMergedEvent changeMergedEvent;
+      changeMergedEvent = (ChangeMergedEvent) event;
+
+      messageGenerator = MessageGeneratorFactory.newInstance(changeMergedEvent, config);
+    } else if (event instanceof CommentAddedEvent) {
+      CommentAddedEvent commentAddedEvent;
+      commentAddedEvent = (CommentAddedEvent) event;
+
+      messageGenerator =
+          MessageGeneratorFactory.newInstance(commentAddedEvent, config, labelStateCache);
+    } else if (event instanceof ReviewerAddedEvent) {
+      ReviewerAddedEvent reviewerAddedEvent;
+      reviewerAddedEvent = (ReviewerAddedEvent) event;
+
+      messageGenerator = MessageGeneratorFactory.newInstance(reviewerAddedEvent, config);
+    } else if (event instanceof WorkInProgressStateChangedEvent) {
+      WorkInProgressStateChangedEvent wipStateChangedEvent;
+      wipStateChangedEvent = (WorkInProgressStateChangedEvent) event;
+
+      messageGenerator = MessageGeneratorFactory.newInstance(wipStateChangedEvent, config);
+    } else if (event instanceof PrivateStateChangedEvent) {
+      PrivateStateChangedEvent privateStateChangedEvent;
+      privateStateChangedEvent = (PrivateStateChangedEvent) event;
+
+      messageGenerator = MessageGeneratorFactory.newInstance(privateStateChangedEvent, config);
+    } else {
+      if (LOGGER.isDebugEnabled()) {
+        LOGGER.debug("Event " + event + " not currently supported");
+      }
+
+      messageGenerator = MessageGeneratorFactory.newInstance(event, config);
     }
+
+    return messageGenerator;
+  }
+
+  /**
+   * Gets the name of the project an event belongs to without building the event's change
+   * attribute, which Gerrit computes lazily.
+   *
+   * @param event The event.
+   * @return The project name, null if the event does not belong to a project.
+   */
+  private static String getProjectName(Event event) {
+    if (!(event instanceof ProjectEvent)) {
+      return null;
+    }
+
+    Project.NameKey projectNameKey;
+    projectNameKey = ((ProjectEvent) event).getProjectNameKey();
+    if (projectNameKey != null) {
+      return projectNameKey.get();
+    }
+
+    ChangeAttribute change;
+    change = EventAttributes.getChange(event);
+    return change != null ? change.project : null;
   }
 }
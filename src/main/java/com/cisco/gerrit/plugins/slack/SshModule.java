@@ -0,0 +1,31 @@
+/*
+ * Copyright 2017 Cisco Systems, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package com.cisco.gerrit.plugins.slack;
+
+import com.cisco.gerrit.plugins.slack.admin.LatencyCommand;
+import com.cisco.gerrit.plugins.slack.admin.StatusCommand;
+import com.google.gerrit.sshd.PluginCommandModule;
+
+/** Registers the plugin's administrative SSH commands. */
+public class SshModule extends PluginCommandModule {
+  @Override
+  protected void configureCommands() {
+    command(LatencyCommand.class);
+    command(StatusCommand.class);
+  }
+}
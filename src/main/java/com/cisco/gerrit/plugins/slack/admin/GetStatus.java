@@ -0,0 +1,93 @@
+/*
+ * Copyright 2017 Cisco Systems, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package com.cisco.gerrit.plugins.slack.admin;
+
+import com.cisco.gerrit.plugins.slack.config.Priority;
+import com.cisco.gerrit.plugins.slack.metrics.PipelineMetrics;
+import com.cisco.gerrit.plugins.slack.metrics.PipelineStatus;
+import com.google.gerrit.common.data.GlobalCapability;
+import com.google.gerrit.extensions.annotations.RequiresCapability;
+import com.google.gerrit.extensions.restapi.RestReadView;
+import com.google.gerrit.server.config.ConfigResource;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Returns the live state of the delivery pipeline. Served at
+ * /config/server/slack-integration~status and shared with the status SSH command. Only counters
+ * are read, never the queues or limiters themselves, so polling the status cannot stall delivery.
+ */
+@Singleton
+@RequiresCapability(GlobalCapability.ADMINISTRATE_SERVER)
+public class GetStatus implements RestReadView<ConfigResource> {
+  private static final int TOP_PROJECTS = 10;
+
+  private final PipelineMetrics metrics;
+  private final PipelineStatus status;
+
+  @Inject
+  GetStatus(PipelineMetrics metrics, PipelineStatus status) {
+    this.metrics = metrics;
+    this.status = status;
+  }
+
+  @Override
+  public StatusInfo apply(ConfigResource resource) {
+    long now;
+    now = System.currentTimeMillis();
+
+    StatusInfo info;
+    info = new StatusInfo();
+    info.queueDepth = metrics.getQueueDepth();
+    info.inFlight = metrics.getInFlight();
+
+    info.queuedByPriority = new LinkedHashMap<>();
+    for (Map.Entry<Priority, Integer> entry : status.getQueuedByPriority().entrySet()) {
+      info.queuedByPriority.put(entry.getKey().name().toLowerCase(Locale.ROOT), entry.getValue());
+    }
+
+    info.destinations = new LinkedHashMap<>();
+    for (Map.Entry<String, PipelineStatus.Destination> entry :
+        status.getDestinations().entrySet()) {
+      PipelineStatus.Destination destination;
+      destination = entry.getValue();
+
+      StatusInfo.DestinationInfo destinationInfo;
+      destinationInfo = new StatusInfo.DestinationInfo();
+      destinationInfo.queued = destination.getQueued();
+      destinationInfo.inFlight = destination.getInFlight();
+      destinationInfo.limit = destination.getLimit();
+      destinationInfo.pending = destination.getPending();
+      destinationInfo.oldestPendingMillis = destination.getOldestPendingAge(now);
+
+      info.destinations.put(entry.getKey(), destinationInfo);
+    }
+
+    info.recentErrors = status.getRecentErrors();
+
+    info.topProjects = new LinkedHashMap<>();
+    for (Map.Entry<String, Long> entry : status.getTopProjects(TOP_PROJECTS)) {
+      info.topProjects.put(entry.getKey(), entry.getValue());
+    }
+
+    return info;
+  }
+}
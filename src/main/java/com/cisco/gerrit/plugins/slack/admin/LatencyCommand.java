@@ -0,0 +1,61 @@
+/*
+ * Copyright 2017 Cisco Systems, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package com.cisco.gerrit.plugins.slack.admin;
+
+import com.cisco.gerrit.plugins.slack.metrics.DeliveryLatency;
+import com.cisco.gerrit.plugins.slack.metrics.LatencyHistogram;
+import com.google.gerrit.common.data.GlobalCapability;
+import com.google.gerrit.extensions.annotations.RequiresCapability;
+import com.google.gerrit.sshd.CommandMetaData;
+import com.google.gerrit.sshd.SshCommand;
+import com.google.inject.Inject;
+import java.util.Map;
+
+/** Prints the end-to-end delivery latency percentiles per project and event type. */
+@RequiresCapability(GlobalCapability.ADMINISTRATE_SERVER)
+@CommandMetaData(
+    name = "latency",
+    description = "Show event-to-Slack delivery latency per project and event type")
+public final class LatencyCommand extends SshCommand {
+  private static final String FORMAT = "%-40s %-24s %8s %8s %8s %8s %8s%n";
+
+  @Inject private DeliveryLatency latency;
+
+  @Override
+  protected void run() {
+    stdout.printf(FORMAT, "Project", "Event type", "Count", "p50 ms", "p95 ms", "p99 ms", "Max ms");
+
+    for (Map.Entry<String, LatencyHistogram> entry : latency.getProjectHistograms().entrySet()) {
+      String[] key;
+      key = entry.getKey().split(" ", 2);
+
+      LatencyHistogram histogram;
+      histogram = entry.getValue();
+
+      stdout.printf(
+          FORMAT,
+          key[0],
+          key[1],
+          histogram.getCount(),
+          histogram.getPercentile(50),
+          histogram.getPercentile(95),
+          histogram.getPercentile(99),
+          histogram.getMax());
+    }
+  }
+}
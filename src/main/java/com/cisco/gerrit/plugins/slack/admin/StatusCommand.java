@@ -0,0 +1,75 @@
+/*
+ * Copyright 2017 Cisco Systems, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package com.cisco.gerrit.plugins.slack.admin;
+
+import com.google.gerrit.common.data.GlobalCapability;
+import com.google.gerrit.extensions.annotations.RequiresCapability;
+import com.google.gerrit.server.config.ConfigResource;
+import com.google.gerrit.sshd.CommandMetaData;
+import com.google.gerrit.sshd.SshCommand;
+import com.google.inject.Inject;
+import java.util.Map;
+
+/** Prints the live state of the delivery pipeline. */
+@RequiresCapability(GlobalCapability.ADMINISTRATE_SERVER)
+@CommandMetaData(name = "status", description = "Show the live state of the delivery pipeline")
+public final class StatusCommand extends SshCommand {
+  private static final String DESTINATION_FORMAT = "%-60s %8s %9s %6s %8s %10s%n";
+  private static final String COUNT_FORMAT = "  %-58s %8d%n";
+
+  @Inject private GetStatus getStatus;
+
+  @Override
+  protected void run() {
+    StatusInfo info;
+    info = getStatus.apply(new ConfigResource());
+
+    stdout.printf("Queue depth: %d%n", info.queueDepth);
+    stdout.printf("In flight:   %d%n", info.inFlight);
+    for (Map.Entry<String, Integer> entry : info.queuedByPriority.entrySet()) {
+      stdout.printf("  queued %-8s %d%n", entry.getKey(), entry.getValue());
+    }
+    stdout.printf("%n");
+
+    stdout.printf(
+        DESTINATION_FORMAT, "Destination", "Queued", "In flight", "Limit", "Pending", "Oldest ms");
+    for (Map.Entry<String, StatusInfo.DestinationInfo> entry : info.destinations.entrySet()) {
+      StatusInfo.DestinationInfo destination;
+      destination = entry.getValue();
+
+      stdout.printf(
+          DESTINATION_FORMAT,
+          entry.getKey(),
+          destination.queued,
+          destination.inFlight,
+          destination.limit,
+          destination.pending,
+          destination.oldestPendingMillis);
+    }
+
+    stdout.printf("%nRecent errors:%n");
+    for (Map.Entry<String, Integer> entry : info.recentErrors.entrySet()) {
+      stdout.printf(COUNT_FORMAT, entry.getKey(), entry.getValue());
+    }
+
+    stdout.printf("%nTop projects:%n");
+    for (Map.Entry<String, Long> entry : info.topProjects.entrySet()) {
+      stdout.printf(COUNT_FORMAT, entry.getKey(), entry.getValue());
+    }
+  }
+}
@@ -0,0 +1,59 @@
+/*
+ * Copyright 2017 Cisco Systems, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package com.cisco.gerrit.plugins.slack.admin;
+
+import java.util.Map;
+
+/** The live state of the delivery pipeline, as returned by the status REST view. */
+public class StatusInfo {
+  /** Messages waiting for a delivery thread. */
+  public int queueDepth;
+
+  /** Requests currently being posted to a webhook. */
+  public int inFlight;
+
+  /** Messages waiting for a delivery thread, by priority, highest first. */
+  public Map<String, Integer> queuedByPriority;
+
+  /** The state of each destination, keyed by the webhook URL with its secret masked. */
+  public Map<String, DestinationInfo> destinations;
+
+  /** The number of occurrences of each error class among the most recent errors. */
+  public Map<String, Integer> recentErrors;
+
+  /** The projects that have sent the most messages, busiest first. */
+  public Map<String, Long> topProjects;
+
+  /** The live state of a single destination. */
+  public static class DestinationInfo {
+    /** Messages waiting for a delivery thread. */
+    public int queued;
+
+    /** Requests currently being posted. */
+    public int inFlight;
+
+    /** Requests that may be in flight at once, adapted to the destination's latency and errors. */
+    public int limit;
+
+    /** Messages not yet delivered, including those waiting to be retried. */
+    public int pending;
+
+    /** The age of the oldest pending message, in milliseconds. */
+    public long oldestPendingMillis;
+  }
+}
@@ -0,0 +1,222 @@
+/*
+ * Copyright 2017 Cisco Systems, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package com.cisco.gerrit.plugins.slack.client;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.ToIntFunction;
+
+/**
+ * An adaptive limit on the requests in flight to one destination, adjusted by additive increase
+ * and multiplicative decrease. The limit grows by one per limit's worth of requests completed while
+ * it was fully used, shrinks by a tenth when a request takes more than twice the destination's
+ * baseline latency and halves when a request fails in transport, so a fast webhook is given every
+ * delivery thread while a slowing one is left with a single request in flight.
+ *
+ * <p>Requests over the limit wait in a lane per priority, lane 0 being handed permits first, and
+ * within a lane in the order they arrived. A request that arrives with others waiting queues behind
+ * them, so the messages of a lane, such as those of one change, keep their order.
+ */
+public class ConcurrencyLimiter {
+  /** How much slower than the baseline a request may be before it counts as queueing. */
+  private static final double LATENCY_TOLERANCE = 2.0;
+  /** The factor the limit is multiplied with when requests slow down. */
+  private static final double SLOWDOWN_BACKOFF = 0.9;
+  /** The factor the limit is multiplied with when a request fails. */
+  private static final double FAILURE_BACKOFF = 0.5;
+  /** How fast the baseline follows latencies above it, as a fraction of the difference. */
+  private static final double BASELINE_DRIFT = 0.01;
+
+  private final int maxLimit;
+  private final ToIntFunction<? super Runnable> laneOf;
+  private final ArrayDeque<Runnable>[] waiting;
+
+  private int waiters;
+
+  private double limit;
+  private int inFlight;
+  private long baselineNanos;
+
+  /**
+   * Creates a new ConcurrencyLimiter.
+   *
+   * @param initialLimit The limit before any request completed.
+   * @param maxLimit The highest limit, e.g. the number of threads that can make requests.
+   */
+  public ConcurrencyLimiter(int initialLimit, int maxLimit) {
+    this(initialLimit, maxLimit, 1, waiter -> 0);
+  }
+
+  /**
+   * Creates a new ConcurrencyLimiter.
+   *
+   * @param initialLimit The limit before any request completed.
+   * @param maxLimit The highest limit, e.g. the number of threads that can make requests.
+   * @param lanes The number of lanes waiters are kept in.
+   * @param laneOf Gets the lane of a waiter, clamped to the lanes there are.
+   */
+  @SuppressWarnings("unchecked")
+  public ConcurrencyLimiter(
+      int initialLimit, int maxLimit, int lanes, ToIntFunction<? super Runnable> laneOf) {
+    if (initialLimit < 1 || maxLimit < initialLimit) {
+      throw new IllegalArgumentException("maxLimit must not be below a positive initialLimit");
+    }
+
+    if (lanes < 1) {
+      throw new IllegalArgumentException("lanes must be positive");
+    }
+
+    if (laneOf == null) {
+      throw new NullPointerException("laneOf cannot be null");
+    }
+
+    this.limit = initialLimit;
+    this.maxLimit = maxLimit;
+    this.laneOf = laneOf;
+    this.waiting = new ArrayDeque[lanes];
+
+    for (int i = 0; i < lanes; i++) {
+      waiting[i] = new ArrayDeque<>();
+    }
+  }
+
+  /**
+   * Takes a permit to make a request, or queues the waiter to be handed one once a request
+   * completes.
+   *
+   * @param waiter Resumed by whoever takes it from {@link #next()}, holding a permit.
+   * @return True if a permit was taken, false if the waiter was queued.
+   */
+  public synchronized boolean acquire(Runnable waiter) {
+    if (waiters == 0 && inFlight < (int) limit) {
+      inFlight++;
+      return true;
+    }
+
+    int lane;
+    lane = Math.min(Math.max(laneOf.applyAsInt(waiter), 0), waiting.length - 1);
+
+    waiting[lane].addLast(waiter);
+    waiters++;
+    return false;
+  }
+
+  /**
+   * Hands a permit to the oldest waiter of the first lane that has one, if the limit leaves room
+   * for it. Call it after every release until it returns null, as a grown limit may leave room for
+   * several waiters.
+   *
+   * @return The waiter now holding a permit, which the caller must resume; null if none.
+   */
+  public synchronized Runnable next() {
+    if (waiters == 0 || inFlight >= (int) limit) {
+      return null;
+    }
+
+    for (ArrayDeque<Runnable> lane : waiting) {
+      if (!lane.isEmpty()) {
+        inFlight++;
+        waiters--;
+        return lane.removeFirst();
+      }
+    }
+
+    return null;
+  }
+
+  /**
+   * Returns the permit of a request that got a response, whether or not the payload was accepted.
+   *
+   * @param latencyNanos How long the request took.
+   * @return The limit after adapting to the request.
+   */
+  public synchronized int succeeded(long latencyNanos) {
+    boolean saturated;
+    saturated = inFlight >= (int) limit;
+
+    if (baselineNanos == 0 || latencyNanos < baselineNanos) {
+      baselineNanos = latencyNanos;
+    } else {
+      // Follow a lasting change of the route or the server, slowly
+      baselineNanos += (long) ((latencyNanos - baselineNanos) * BASELINE_DRIFT);
+    }
+
+    if (latencyNanos > baselineNanos * LATENCY_TOLERANCE) {
+      limit = Math.max(1, limit * SLOWDOWN_BACKOFF);
+    } else if (saturated) {
+      limit = Math.min(maxLimit, limit + 1 / limit);
+    }
+
+    inFlight--;
+    return (int) limit;
+  }
+
+  /**
+   * Returns the permit of a request that failed in transport, e.g. timed out or was refused.
+   *
+   * @return The limit after adapting to the failure.
+   */
+  public synchronized int failed() {
+    limit = Math.max(1, limit * FAILURE_BACKOFF);
+
+    inFlight--;
+    return (int) limit;
+  }
+
+  /** Returns a permit without a request having been made. */
+  public synchronized void cancelled() {
+    inFlight--;
+  }
+
+  /**
+   * Removes every waiter, e.g. when delivery stops.
+   *
+   * @return The waiters by lane, oldest first.
+   */
+  public synchronized List<Runnable> drain() {
+    List<Runnable> result;
+    result = new ArrayList<>(waiters);
+
+    for (ArrayDeque<Runnable> lane : waiting) {
+      result.addAll(lane);
+      lane.clear();
+    }
+
+    waiters = 0;
+    return result;
+  }
+
+  /**
+   * Gets the number of requests currently allowed in flight.
+   *
+   * @return The limit.
+   */
+  public synchronized int getLimit() {
+    return (int) limit;
+  }
+
+  /**
+   * Gets the number of requests waiting for a permit.
+   *
+   * @return The number of waiters.
+   */
+  public synchronized int getWaiting() {
+    return waiters;
+  }
+}
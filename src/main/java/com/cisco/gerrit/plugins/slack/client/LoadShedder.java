@@ -0,0 +1,420 @@
+/*
+ * Copyright 2017 Cisco Systems, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package com.cisco.gerrit.plugins.slack.client;
+
+import com.cisco.gerrit.plugins.slack.config.Destination;
+import com.cisco.gerrit.plugins.slack.config.LoadSheddingConfig;
+import com.cisco.gerrit.plugins.slack.config.Priority;
+import com.cisco.gerrit.plugins.slack.config.ProjectConfig;
+import com.cisco.gerrit.plugins.slack.config.ProjectConfigCache;
+import com.cisco.gerrit.plugins.slack.metrics.PipelineMetrics;
+import com.cisco.gerrit.plugins.slack.util.EventFingerprint;
+import com.cisco.gerrit.plugins.slack.util.ThrottledLogger;
+import com.cisco.gerrit.plugins.slack.util.TimingWheel;
+import com.google.gerrit.extensions.events.LifecycleListener;
+import com.google.gson.JsonObject;
+import com.google.inject.Inject;
+import com.google.inject.Provider;
+import com.google.inject.Singleton;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.ToIntFunction;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Degrades delivery gracefully when the backlog of queued messages grows, instead of letting the
+ * queues grow without bound. Above the degrade watermark, low priority events are only counted in
+ * a periodic digest per project and comments are shortened. Above the shed watermark, low priority
+ * events are skipped and normal priority events are counted in the digest. High priority events
+ * are always delivered.
+ *
+ * <p>The backlog is that of the bulkhead the message is delivered in, so a webhook host that stops
+ * responding only degrades its own messages.
+ *
+ * <p>Each level is left once the backlog drains below half of its watermark, so delivery does not
+ * flap between levels around a watermark.
+ *
+ * <p>Messages that outlived their time to live while queued, e.g. during an outage of the webhook,
+ * are counted in the same digests, which then serve as a catch-up summary.
+ */
+@Singleton
+public class LoadShedder implements LifecycleListener {
+  /** The class logger instance. */
+  private static final Logger LOGGER = LoggerFactory.getLogger(LoadShedder.class);
+  private static final ThrottledLogger THROTTLED_LOGGER = new ThrottledLogger(LOGGER);
+
+  /** The event type digests are posted as. */
+  public static final String DIGEST_EVENT_TYPE = "digest";
+
+  /** The number of characters comments are shortened to while delivery is degraded. */
+  public static final int TRUNCATED_COMMENT_LENGTH = 200;
+
+  private static final long DEFAULT_DIGEST_MILLIS = TimeUnit.MINUTES.toMillis(1);
+
+  /** How far delivery is degraded. */
+  public enum Level {
+    NORMAL,
+    DEGRADED,
+    SHEDDING
+  }
+
+  /** What happens to an event. */
+  public enum Decision {
+    /** The event is delivered as usual. */
+    DELIVER,
+    /** The event is delivered with its comment shortened. */
+    TRUNCATE,
+    /** The event is only counted in the next digest of its project. */
+    DIGEST,
+    /** The event is dropped. */
+    SKIP;
+
+    private final String field = name().toLowerCase(Locale.ROOT);
+  }
+
+  private final int degradeWatermark;
+  private final int shedWatermark;
+  private final ToIntFunction<String> backlog;
+  private final TimingWheel timer;
+  private final PipelineMetrics metrics;
+  private final ProjectConfigCache configCache;
+  private final Consumer<OutboundMessage> sink;
+  private final long digestMillis;
+
+  /** The events counted since the last digest, by project. */
+  private final Map<String, Digest> digests = new ConcurrentHashMap<>();
+
+  /** The level by webhook host, with the default delivery threads under the empty host. */
+  private final Map<String, Level> levels = new ConcurrentHashMap<>();
+
+  private volatile boolean running;
+
+  @Inject
+  LoadShedder(
+      LoadSheddingConfig config,
+      TimingWheel timer,
+      PipelineMetrics metrics,
+      ProjectConfigCache configCache,
+      Provider<WebhookDispatcher> dispatcher) {
+    this(
+        config.getDegradeWatermark(),
+        config.getShedWatermark(),
+        host -> dispatcher.get().getBacklog(host),
+        timer,
+        metrics,
+        configCache,
+        message -> dispatcher.get().dispatch(message),
+        DEFAULT_DIGEST_MILLIS);
+  }
+
+  /**
+   * Creates a new LoadShedder.
+   *
+   * @param degradeWatermark The backlog at which delivery is degraded.
+   * @param shedWatermark The backlog at which events are shed.
+   * @param backlog Supplies the number of messages waiting for delivery in the bulkhead of a
+   *     webhook host, or of the default delivery threads for a null host.
+   * @param timer The timer driving the digests.
+   * @param metrics The metrics to count decisions in.
+   * @param configCache The project configs, deciding where the summaries of expired messages go.
+   * @param sink Where the digests are delivered.
+   * @param digestMillis How often the digests are posted.
+   */
+  public LoadShedder(
+      int degradeWatermark,
+      int shedWatermark,
+      ToIntFunction<String> backlog,
+      TimingWheel timer,
+      PipelineMetrics metrics,
+      ProjectConfigCache configCache,
+      Consumer<OutboundMessage> sink,
+      long digestMillis) {
+    if (degradeWatermark < 1 || shedWatermark < degradeWatermark) {
+      throw new IllegalArgumentException(
+          "shedWatermark must not be below a positive degradeWatermark");
+    }
+
+    if (digestMillis <= 0) {
+      throw new IllegalArgumentException("digestMillis must be positive");
+    }
+
+    this.degradeWatermark = degradeWatermark;
+    this.shedWatermark = shedWatermark;
+    this.backlog = backlog;
+    this.timer = timer;
+    this.metrics = metrics;
+    this.configCache = configCache;
+    this.sink = sink;
+    this.digestMillis = digestMillis;
+  }
+
+  @Override
+  public void start() {
+    running = true;
+    scheduleFlush(System.currentTimeMillis() / digestMillis);
+  }
+
+  @Override
+  public void stop() {
+    running = false;
+
+    // The dispatcher is stopped after this listener, so the last counts still go out. The current
+    // window has not been flushed yet, its end has not passed.
+    long now;
+    now = System.currentTimeMillis();
+
+    flush(now / digestMillis, now);
+  }
+
+  /**
+   * Decides what happens to an event that is about to be rendered, counting every event that is not
+   * delivered as usual.
+   *
+   * @param eventType The type of the Gerrit event.
+   * @param priority The priority of the event's message.
+   * @param host The host of the webhook the message is posted through, null for the default
+   *     delivery threads.
+   * @return The decision.
+   */
+  public Decision decide(String eventType, Priority priority, String host) {
+    Decision decision;
+    decision = decide(update(host, backlog.applyAsInt(host)), eventType, priority);
+
+    if (decision != Decision.DELIVER) {
+      metrics.eventShed(eventType, decision.field);
+    }
+
+    return decision;
+  }
+
+  private static Decision decide(Level level, String eventType, Priority priority) {
+    if (level == Level.NORMAL) {
+      return Decision.DELIVER;
+    }
+
+    if (priority == Priority.LOW) {
+      return level == Level.SHEDDING ? Decision.SKIP : Decision.DIGEST;
+    }
+
+    if (priority == Priority.NORMAL && level == Level.SHEDDING) {
+      return Decision.DIGEST;
+    }
+
+    return "comment-added".equals(eventType) ? Decision.TRUNCATE : Decision.DELIVER;
+  }
+
+  private Level update(String host, int queued) {
+    String key;
+    key = host != null ? host : "";
+
+    Level current;
+    current = levels.getOrDefault(key, Level.NORMAL);
+
+    Level next;
+    if (queued >= shedWatermark || (current == Level.SHEDDING && queued >= shedWatermark / 2)) {
+      next = Level.SHEDDING;
+    } else if (queued >= degradeWatermark
+        || (current != Level.NORMAL && queued >= degradeWatermark / 2)) {
+      next = Level.DEGRADED;
+    } else {
+      next = Level.NORMAL;
+    }
+
+    if (next != current) {
+      levels.put(key, next);
+      metrics.setSheddingLevel(getLevel().ordinal());
+
+      String name;
+      name = host != null ? " of " + host : "";
+
+      if (next.compareTo(current) > 0) {
+        LOGGER.warn("Backlog" + name + " of " + queued + " messages, delivery is now " + next);
+      } else {
+        LOGGER.info(
+            "Backlog" + name + " drained to " + queued + " messages, delivery is now " + next);
+      }
+    }
+
+    return next;
+  }
+
+  /**
+   * Gets how far delivery is currently degraded for the most backed up webhook host.
+   *
+   * @return The level.
+   */
+  public Level getLevel() {
+    Level result;
+    result = Level.NORMAL;
+
+    for (Level level : levels.values()) {
+      if (level.compareTo(result) > 0) {
+        result = level;
+      }
+    }
+
+    return result;
+  }
+
+  /**
+   * Counts an event in the next digest of its project.
+   *
+   * @param project The project of the event.
+   * @param eventType The type of the Gerrit event.
+   * @param config The project's config, which decides where the digest is posted.
+   */
+  public void digest(String project, String eventType, ProjectConfig config) {
+    digests.computeIfAbsent(project, Digest::new).add(eventType, config);
+  }
+
+  /**
+   * Counts a message that outlived its time to live in the next digest of its project, unless the
+   * project drops expired messages without a summary.
+   *
+   * @param message The expired message.
+   */
+  public void expired(OutboundMessage message) {
+    ProjectConfig config;
+    config = configCache.get(message.getProject());
+
+    if (config.isEnabled() && config.shouldSummarizeExpired()) {
+      digest(message.getProject(), message.getEventType(), config);
+    }
+  }
+
+  /**
+   * Schedules the flush of a digest window for when it ends. Windows are aligned to the epoch, so
+   * every node closes the same windows and derives the same fingerprints from them.
+   *
+   * @param window The window, the number of digest periods since the epoch.
+   */
+  private void scheduleFlush(long window) {
+    long delay;
+    delay = (window + 1) * digestMillis - System.currentTimeMillis();
+
+    timer.schedule(
+        () -> {
+          if (!running) {
+            return;
+          }
+
+          try {
+            flush(window, System.currentTimeMillis());
+          } finally {
+            scheduleFlush(window + 1);
+          }
+        },
+        Math.max(delay, 0),
+        TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * Posts a digest for every project that had events counted since the last flush.
+   *
+   * @param window The window being closed, the number of digest periods since the epoch.
+   * @param now The current time in milliseconds since the epoch.
+   */
+  void flush(long window, long now) {
+    for (Digest digest : digests.values()) {
+      try {
+        OutboundMessage message;
+        message = digest.drain(window, now);
+
+        if (message == null) {
+          continue;
+        }
+
+        sink.accept(message);
+        metrics.digestPosted();
+      } catch (RuntimeException e) {
+        THROTTLED_LOGGER.error("digest", () -> "Cannot post digest for " + digest.project, e);
+      }
+    }
+  }
+
+  /** The events of one project counted since its last digest. */
+  private static final class Digest {
+    private final String project;
+    private final Map<String, Integer> counts = new TreeMap<>();
+
+    private ProjectConfig config;
+
+    Digest(String project) {
+      this.project = project;
+    }
+
+    synchronized void add(String eventType, ProjectConfig config) {
+      counts.merge(eventType, 1, Integer::sum);
+      this.config = config;
+    }
+
+    /**
+     * Turns the counts into a message and resets them.
+     *
+     * @param window The digest window being closed, identical on every node, so peers post the
+     *     same digest.
+     * @param now The current time in milliseconds since the epoch.
+     * @return The message, null if nothing was counted.
+     */
+    synchronized OutboundMessage drain(long window, long now) {
+      if (counts.isEmpty()) {
+        return null;
+      }
+
+      StringBuilder text;
+      text = new StringBuilder("Notifications for ").append(project);
+      text.append(" are backed up, these events were summarized:");
+
+      for (Map.Entry<String, Integer> count : counts.entrySet()) {
+        text.append("\n").append(count.getValue()).append(" ").append(count.getKey());
+      }
+      counts.clear();
+
+      // Without a webhook of the project's own, the digest goes to its first destination
+      Destination destination;
+      destination =
+          config.isShadow() || !config.getWebhookUrl().isEmpty()
+              ? null
+              : config.getDestinations().get(0);
+
+      JsonObject payload;
+      payload = new JsonObject();
+      payload.addProperty(
+          "channel", "#" + (destination != null ? destination.getChannel() : config.getChannel()));
+      payload.addProperty("text", text.toString());
+
+      return OutboundMessage.builder()
+          .project(project)
+          .eventType(DIGEST_EVENT_TYPE)
+          .eventCreatedOn(TimeUnit.MILLISECONDS.toSeconds(now))
+          .fingerprint(EventFingerprint.hash(DIGEST_EVENT_TYPE + "/" + project + "/" + window))
+          .changeKey(EventFingerprint.changeKey(project, 0))
+          .priority(Priority.NORMAL)
+          .weight(config.getWeight())
+          .payload(payload.toString())
+          .webhookUrl(destination != null ? destination.getWebhookUrl() : config.getWebhookUrl())
+          .shadow(config.isShadow())
+          .build();
+    }
+  }
+}
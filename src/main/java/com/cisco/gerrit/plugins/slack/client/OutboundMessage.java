@@ -0,0 +1,408 @@
+/*
+ * Copyright 2017 Cisco Systems, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package com.cisco.gerrit.plugins.slack.client;
+
+import com.cisco.gerrit.plugins.slack.config.Priority;
+import com.cisco.gerrit.plugins.slack.util.EventFingerprint;
+import java.net.URI;
+import java.net.URISyntaxException;
+
+/** A rendered message on its way to a webhook, along with the event it was rendered from. */
+public class OutboundMessage {
+  private static final String SHADOW_PREFIX = "shadow:";
+
+  private final String project;
+  private final String eventType;
+  private final long eventCreatedOn;
+  private final long fingerprint;
+  private final long changeKey;
+  private final Priority priority;
+  private final int weight;
+  private final long ttlMillis;
+  private final Payload payload;
+  private final String webhookUrl;
+  private final boolean shadow;
+  private final String host;
+  private final String destination;
+
+  private OutboundMessage(Builder builder) {
+    if (builder.weight < 1) {
+      throw new IllegalArgumentException("weight must be at least 1");
+    }
+
+    if (builder.ttlMillis < 0) {
+      throw new IllegalArgumentException("ttlMillis cannot be negative");
+    }
+
+    if (builder.payload == null || builder.payload.length() == 0) {
+      throw new IllegalArgumentException("payload cannot be null or empty");
+    }
+
+    if (!builder.shadow && (builder.webhookUrl == null || builder.webhookUrl.equals(""))) {
+      throw new IllegalArgumentException("webhookUrl cannot be null or empty");
+    }
+
+    this.project = builder.project;
+    this.eventType = builder.eventType;
+    this.eventCreatedOn = builder.eventCreatedOn;
+    this.fingerprint = builder.fingerprint;
+    this.changeKey = builder.changeKey;
+    this.priority =
+        builder.priority != null ? builder.priority : Priority.defaultFor(builder.eventType);
+    this.weight = builder.weight;
+    this.ttlMillis = builder.ttlMillis;
+    this.payload = builder.payload;
+    this.webhookUrl = builder.webhookUrl != null ? builder.webhookUrl : "";
+    this.shadow = builder.shadow;
+
+    URI uri;
+    uri = parse(this.webhookUrl);
+
+    this.host = uri != null ? uri.getHost() : null;
+    this.destination = (shadow ? SHADOW_PREFIX : "") + describe(this.webhookUrl, uri);
+  }
+
+  /**
+   * Starts a new OutboundMessage. Only the payload and, unless the message is a shadow message,
+   * the webhook URL must be set.
+   *
+   * @return The builder.
+   */
+  public static Builder builder() {
+    return new Builder();
+  }
+
+  public String getProject() {
+    return project;
+  }
+
+  public String getEventType() {
+    return eventType;
+  }
+
+  public long getEventCreatedOn() {
+    return eventCreatedOn;
+  }
+
+  public long getFingerprint() {
+    return fingerprint;
+  }
+
+  public long getChangeKey() {
+    return changeKey;
+  }
+
+  public Priority getPriority() {
+    return priority;
+  }
+
+  public int getWeight() {
+    return weight;
+  }
+
+  public long getTtlMillis() {
+    return ttlMillis;
+  }
+
+  /**
+   * Whether the message has outlived its time to live, so posting it would only be noise. Messages
+   * of events without a creation time never expire.
+   *
+   * @param now The current time in milliseconds since the epoch.
+   * @return True if the message should no longer be posted, otherwise false
+   */
+  public boolean isExpired(long now) {
+    return ttlMillis > 0 && eventCreatedOn > 0 && now - eventCreatedOn * 1000 > ttlMillis;
+  }
+
+  /**
+   * Creates a copy of the message for another destination, sharing the rendered payload with only
+   * its channel patched. The copy gets a fingerprint and change key of its own, so it is claimed,
+   * stored and retried independently of the original, and is posted on its own delivery thread.
+   *
+   * @param webhookUrl The web hook URL to publish the copy to.
+   * @param channel The channel to publish the copy to, without a leading #.
+   * @return The copy.
+   */
+  public OutboundMessage withDestination(String webhookUrl, String channel) {
+    String key;
+    key = webhookUrl + "#" + channel;
+
+    return builder()
+        .project(project)
+        .eventType(eventType)
+        .eventCreatedOn(eventCreatedOn)
+        .fingerprint(fingerprint != 0 ? EventFingerprint.forDestination(fingerprint, key) : 0)
+        .changeKey(changeKey != 0 ? EventFingerprint.forDestination(changeKey, key) : 0)
+        .priority(priority)
+        .weight(weight)
+        .ttlMillis(ttlMillis)
+        .payload(payload.withChannel("#" + channel))
+        .webhookUrl(webhookUrl)
+        .shadow(shadow)
+        .build();
+  }
+
+  /**
+   * Gets the rendered message as text, e.g. to store it.
+   *
+   * @return The JSON message.
+   */
+  public String getPayload() {
+    return payload.toString();
+  }
+
+  /**
+   * Gets the rendered message as posted.
+   *
+   * @return The encoded message, possibly sharing its bytes with the copies posted elsewhere.
+   */
+  public Payload getBody() {
+    return payload;
+  }
+
+  public String getWebhookUrl() {
+    return webhookUrl;
+  }
+
+  /**
+   * Whether the message belongs to a project in shadow mode and is captured instead of posted.
+   *
+   * @return True for a shadow message, otherwise false
+   */
+  public boolean isShadow() {
+    return shadow;
+  }
+
+  /**
+   * Gets a description of the webhook URL that is safe to display. Slack carries the webhook's
+   * secret in the last path segment, so that segment is masked.
+   *
+   * @return The host and path of the webhook URL with the last path segment masked, prefixed with
+   *     "shadow:" for shadow messages.
+   */
+  public String getDestination() {
+    return destination;
+  }
+
+  /**
+   * Gets the host of the webhook URL, which decides the bulkhead the message is delivered in.
+   *
+   * @return The host, null for a missing or invalid URL.
+   */
+  public String getHost() {
+    return host;
+  }
+
+  private static URI parse(String webhookUrl) {
+    if (webhookUrl.isEmpty()) {
+      return null;
+    }
+
+    try {
+      return new URI(webhookUrl);
+    } catch (URISyntaxException e) {
+      return null;
+    }
+  }
+
+  private static String describe(String webhookUrl, URI uri) {
+    if (webhookUrl.isEmpty()) {
+      return "(none)";
+    }
+
+    if (uri == null) {
+      return "(invalid URL)";
+    }
+
+    String host;
+    host = uri.getPort() != -1 ? uri.getHost() + ":" + uri.getPort() : uri.getHost();
+
+    String path;
+    path = uri.getRawPath() != null ? uri.getRawPath() : "";
+
+    int slash;
+    slash = path.lastIndexOf('/');
+    if (slash != -1 && slash < path.length() - 1) {
+      path = path.substring(0, slash + 1) + "***";
+    }
+
+    return host + path;
+  }
+
+  /** Collects the parts of an OutboundMessage. */
+  public static final class Builder {
+    private String project;
+    private String eventType;
+    private long eventCreatedOn;
+    private long fingerprint;
+    private long changeKey;
+    private Priority priority;
+    private int weight = 1;
+    private long ttlMillis;
+    private Payload payload;
+    private String webhookUrl;
+    private boolean shadow;
+
+    private Builder() {}
+
+    /**
+     * Sets the project the event belongs to.
+     *
+     * @param project The project name.
+     * @return This builder.
+     */
+    public Builder project(String project) {
+      this.project = project;
+      return this;
+    }
+
+    /**
+     * Sets the type of the Gerrit event.
+     *
+     * @param eventType The event type.
+     * @return This builder.
+     */
+    public Builder eventType(String eventType) {
+      this.eventType = eventType;
+      return this;
+    }
+
+    /**
+     * Sets when Gerrit created the event.
+     *
+     * @param eventCreatedOn The creation time in seconds since the epoch, 0 if unknown.
+     * @return This builder.
+     */
+    public Builder eventCreatedOn(long eventCreatedOn) {
+      this.eventCreatedOn = eventCreatedOn;
+      return this;
+    }
+
+    /**
+     * Sets the fingerprint of the event, or of its copy for one of several destinations.
+     *
+     * @param fingerprint The fingerprint, the same on every node; 0 if unknown.
+     * @return This builder.
+     */
+    public Builder fingerprint(long fingerprint) {
+      this.fingerprint = fingerprint;
+      return this;
+    }
+
+    /**
+     * Sets the key of the change the event refers to, which keeps the messages of a change on one
+     * node and in order.
+     *
+     * @param changeKey The change key; 0 if unknown.
+     * @return This builder.
+     */
+    public Builder changeKey(long changeKey) {
+      this.changeKey = changeKey;
+      return this;
+    }
+
+    /**
+     * Sets the delivery lane of the message.
+     *
+     * @param priority The priority, null for the default of the event type.
+     * @return This builder.
+     */
+    public Builder priority(Priority priority) {
+      this.priority = priority;
+      return this;
+    }
+
+    /**
+     * Sets the project's share of the delivery threads relative to other projects.
+     *
+     * @param weight The weight, at least 1; 1 by default.
+     * @return This builder.
+     */
+    public Builder weight(int weight) {
+      this.weight = weight;
+      return this;
+    }
+
+    /**
+     * Sets how long after its event the message is still worth posting.
+     *
+     * @param ttlMillis The time to live in milliseconds, 0 for ever.
+     * @return This builder.
+     */
+    public Builder ttlMillis(long ttlMillis) {
+      this.ttlMillis = ttlMillis;
+      return this;
+    }
+
+    /**
+     * Sets the rendered message.
+     *
+     * @param payload The JSON message.
+     * @return This builder.
+     */
+    public Builder payload(String payload) {
+      this.payload = payload != null ? Payload.of(payload) : null;
+      return this;
+    }
+
+    /**
+     * Sets the rendered message, already encoded.
+     *
+     * @param payload The encoded message.
+     * @return This builder.
+     */
+    public Builder payload(Payload payload) {
+      this.payload = payload;
+      return this;
+    }
+
+    /**
+     * Sets the web hook URL to publish to.
+     *
+     * @param webhookUrl The URL, may be empty for a shadow message.
+     * @return This builder.
+     */
+    public Builder webhookUrl(String webhookUrl) {
+      this.webhookUrl = webhookUrl;
+      return this;
+    }
+
+    /**
+     * Sets whether the message is captured locally instead of posted.
+     *
+     * @param shadow Whether the message is a shadow message.
+     * @return This builder.
+     */
+    public Builder shadow(boolean shadow) {
+      this.shadow = shadow;
+      return this;
+    }
+
+    /**
+     * Creates the message.
+     *
+     * @return The message.
+     * @throws IllegalArgumentException if the payload is missing, the webhook URL is missing for a
+     *     message that is posted, or the weight or time to live is out of range.
+     */
+    public OutboundMessage build() {
+      return new OutboundMessage(this);
+    }
+  }
+}
@@ -0,0 +1,213 @@
+/*
+ * Copyright 2017 Cisco Systems, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package com.cisco.gerrit.plugins.slack.client;
+
+import com.google.gson.Gson;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A rendered message encoded once as UTF-8, ready to be written to any number of webhooks. The
+ * bytes are never modified after rendering, so the copies of a message posted to other channels
+ * share them and only carry the channel they are patched with.
+ */
+public final class Payload {
+  /** Escapes the patched channel names, the same way the digests are written. */
+  private static final Gson GSON = new Gson();
+
+  private static final byte[] CHANNEL_KEY = "\"channel\"".getBytes(StandardCharsets.UTF_8);
+
+  private final byte[] bytes;
+  /** Where the quoted value of the top-level channel field starts, -1 if there is none. */
+  private final int channelStart;
+  /** Where the quoted value of the top-level channel field ends, exclusive. */
+  private final int channelEnd;
+  /** The quoted channel replacing the rendered one, null if the channel is not patched. */
+  private final byte[] channel;
+
+  private Payload(byte[] bytes, int channelStart, int channelEnd, byte[] channel) {
+    this.bytes = bytes;
+    this.channelStart = channelStart;
+    this.channelEnd = channelEnd;
+    this.channel = channel;
+  }
+
+  /**
+   * Encodes a rendered message.
+   *
+   * @param json The rendered JSON message.
+   * @return The payload.
+   */
+  public static Payload of(String json) {
+    if (json == null) {
+      throw new NullPointerException("json cannot be null");
+    }
+
+    byte[] bytes;
+    bytes = json.getBytes(StandardCharsets.UTF_8);
+
+    int start;
+    start = findChannel(bytes);
+
+    return new Payload(bytes, start, start != -1 ? skipString(bytes, start) : -1, null);
+  }
+
+  /**
+   * Gets a copy of the payload posting to another channel, sharing the rendered bytes.
+   *
+   * @param channel The new value of the channel field, e.g. "#releases".
+   * @return The patched payload.
+   * @throws IllegalStateException if the payload has no channel field.
+   */
+  public Payload withChannel(String channel) {
+    if (channel == null) {
+      throw new NullPointerException("channel cannot be null");
+    }
+
+    if (channelStart == -1) {
+      throw new IllegalStateException("payload has no channel field");
+    }
+
+    return new Payload(
+        bytes, channelStart, channelEnd, GSON.toJson(channel).getBytes(StandardCharsets.UTF_8));
+  }
+
+  /**
+   * Gets the size of the payload as posted.
+   *
+   * @return The number of bytes.
+   */
+  public int length() {
+    if (channel == null) {
+      return bytes.length;
+    }
+
+    return bytes.length - (channelEnd - channelStart) + channel.length;
+  }
+
+  /**
+   * Writes the payload as posted.
+   *
+   * @param out The stream to write to.
+   * @throws IOException if the stream cannot be written.
+   */
+  public void writeTo(OutputStream out) throws IOException {
+    if (channel == null) {
+      out.write(bytes);
+    } else {
+      out.write(bytes, 0, channelStart);
+      out.write(channel);
+      out.write(bytes, channelEnd, bytes.length - channelEnd);
+    }
+  }
+
+  @Override
+  public String toString() {
+    if (channel == null) {
+      return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    return new String(bytes, 0, channelStart, StandardCharsets.UTF_8)
+        + new String(channel, StandardCharsets.UTF_8)
+        + new String(bytes, channelEnd, bytes.length - channelEnd, StandardCharsets.UTF_8);
+  }
+
+  /**
+   * Finds the quoted value of the channel field of the top-level object. Every byte of a multi-byte
+   * UTF-8 character is above 0x7f, so the JSON structure can be followed byte by byte.
+   *
+   * @param bytes The JSON message.
+   * @return The index of the opening quote of the value, -1 if there is no such string field.
+   */
+  private static int findChannel(byte[] bytes) {
+    int depth;
+    depth = 0;
+
+    int i;
+    i = 0;
+    while (i < bytes.length) {
+      byte b;
+      b = bytes[i];
+
+      if (b == '"') {
+        int end;
+        end = skipString(bytes, i);
+
+        if (depth == 1 && isChannelKey(bytes, i, end)) {
+          int value;
+          value = skipWhitespace(bytes, end);
+
+          if (value < bytes.length && bytes[value] == ':') {
+            value = skipWhitespace(bytes, value + 1);
+            return value < bytes.length && bytes[value] == '"' ? value : -1;
+          }
+        }
+        i = end;
+      } else {
+        if (b == '{' || b == '[') {
+          depth++;
+        } else if (b == '}' || b == ']') {
+          depth--;
+        }
+        i++;
+      }
+    }
+
+    return -1;
+  }
+
+  private static boolean isChannelKey(byte[] bytes, int start, int end) {
+    if (end - start != CHANNEL_KEY.length) {
+      return false;
+    }
+
+    for (int i = 0; i < CHANNEL_KEY.length; i++) {
+      if (bytes[start + i] != CHANNEL_KEY[i]) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Skips a JSON string.
+   *
+   * @param bytes The JSON message.
+   * @param start The index of the opening quote.
+   * @return The index after the closing quote.
+   */
+  private static int skipString(byte[] bytes, int start) {
+    int i;
+    i = start + 1;
+    while (i < bytes.length && bytes[i] != '"') {
+      i += bytes[i] == '\\' ? 2 : 1;
+    }
+    return Math.min(i + 1, bytes.length);
+  }
+
+  private static int skipWhitespace(byte[] bytes, int start) {
+    int i;
+    i = start;
+    while (i < bytes.length
+        && (bytes[i] == ' ' || bytes[i] == '\t' || bytes[i] == '\n' || bytes[i] == '\r')) {
+      i++;
+    }
+    return i;
+  }
+}
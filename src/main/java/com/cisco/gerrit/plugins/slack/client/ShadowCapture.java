@@ -0,0 +1,167 @@
+/*
+ * Copyright 2017 Cisco Systems, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package com.cisco.gerrit.plugins.slack.client;
+
+import com.google.gerrit.extensions.annotations.PluginData;
+import com.google.gerrit.extensions.events.LifecycleListener;
+import com.google.gson.JsonObject;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Writes the messages of projects in shadow mode to a rolling capture file in the plugin's data
+ * directory instead of posting them. Each line is a JSON object holding the payload and where it
+ * would have gone. When the file would grow past its limit it is rotated, keeping a few old ones
+ * as shadow-capture.json.1, .2 and so on.
+ */
+@Singleton
+public class ShadowCapture implements LifecycleListener {
+  /** The name of the current capture file. */
+  public static final String FILE_NAME = "shadow-capture.json";
+
+  private static final long DEFAULT_MAX_FILE_BYTES = 16 * 1024 * 1024;
+  private static final int DEFAULT_MAX_FILES = 4;
+
+  private final Path directory;
+  private final long maxFileBytes;
+  private final int maxFiles;
+
+  private OutputStream out;
+  private long written;
+
+  @Inject
+  ShadowCapture(@PluginData Path directory) {
+    this(directory, DEFAULT_MAX_FILE_BYTES, DEFAULT_MAX_FILES);
+  }
+
+  /**
+   * Creates a new ShadowCapture.
+   *
+   * @param directory The directory to write the capture files to.
+   * @param maxFileBytes The size a capture file may grow to before it is rotated.
+   * @param maxFiles The number of capture files to keep, including the current one.
+   */
+  public ShadowCapture(Path directory, long maxFileBytes, int maxFiles) {
+    if (directory == null) {
+      throw new NullPointerException("directory cannot be null");
+    }
+
+    if (maxFileBytes <= 0 || maxFiles <= 0) {
+      throw new IllegalArgumentException("maxFileBytes and maxFiles must be positive");
+    }
+
+    this.directory = directory;
+    this.maxFileBytes = maxFileBytes;
+    this.maxFiles = maxFiles;
+  }
+
+  @Override
+  public void start() {}
+
+  @Override
+  public synchronized void stop() {
+    close();
+  }
+
+  /**
+   * Appends a message to the capture, rotating the file first if the message would not fit.
+   *
+   * @param message The message that would have been posted.
+   * @throws IOException if the capture cannot be written.
+   */
+  public synchronized void write(OutboundMessage message) throws IOException {
+    byte[] record;
+    record = (toRecord(message).toString() + "\n").getBytes(StandardCharsets.UTF_8);
+
+    if (out == null) {
+      open();
+    }
+
+    if (written > 0 && written + record.length > maxFileBytes) {
+      rotate();
+    }
+
+    try {
+      out.write(record);
+      out.flush();
+      written += record.length;
+    } catch (IOException e) {
+      // Reopen on the next write rather than keep writing to a broken stream
+      close();
+      throw e;
+    }
+  }
+
+  private static JsonObject toRecord(OutboundMessage message) {
+    JsonObject record;
+    record = new JsonObject();
+    record.addProperty("capturedOn", System.currentTimeMillis());
+    record.addProperty("project", message.getProject());
+    record.addProperty("eventType", message.getEventType());
+    record.addProperty("eventCreatedOn", message.getEventCreatedOn());
+    record.addProperty("destination", message.getDestination());
+    record.addProperty("payload", message.getPayload());
+
+    return record;
+  }
+
+  private void open() throws IOException {
+    Files.createDirectories(directory);
+
+    Path file;
+    file = directory.resolve(FILE_NAME);
+
+    out = Files.newOutputStream(file, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+    written = Files.size(file);
+  }
+
+  private void rotate() throws IOException {
+    close();
+
+    for (int i = maxFiles - 1; i > 0; i--) {
+      Path source;
+      source = directory.resolve(i > 1 ? FILE_NAME + "." + (i - 1) : FILE_NAME);
+
+      if (Files.exists(source)) {
+        Files.move(
+            source, directory.resolve(FILE_NAME + "." + i), StandardCopyOption.REPLACE_EXISTING);
+      }
+    }
+    Files.deleteIfExists(directory.resolve(FILE_NAME));
+
+    open();
+  }
+
+  private void close() {
+    if (out != null) {
+      try {
+        out.close();
+      } catch (IOException e) {
+        // Nothing was buffered, every record is flushed as it is written
+      }
+      out = null;
+    }
+  }
+}
@@ -17,14 +17,21 @@
 
 package com.cisco.gerrit.plugins.slack.client;
 
-import java.io.DataOutputStream;
+import com.cisco.gerrit.plugins.slack.config.ProjectConfig;
+import com.cisco.gerrit.plugins.slack.metrics.PipelineStage;
+import com.cisco.gerrit.plugins.slack.util.ThrottledLogger;
+import com.google.gerrit.server.config.PluginConfig;
+import com.google.gerrit.server.config.PluginConfigFactory;
+import com.google.inject.Inject;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.net.HttpURLConnection;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.nio.charset.StandardCharsets;
 import java.util.Scanner;
+import java.util.concurrent.TimeUnit;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -37,6 +44,52 @@ import org.slf4j.LoggerFactory;
 public class WebhookClient {
   /** The class logger instance. */
   private static final Logger LOGGER = LoggerFactory.getLogger(WebhookClient.class);
+  private static final ThrottledLogger THROTTLED_LOGGER = new ThrottledLogger(LOGGER);
+
+  /** The default time to wait for a connection to the webhook, in milliseconds. */
+  public static final int DEFAULT_CONNECT_TIMEOUT = 5000;
+
+  /** The default time to wait for the webhook to respond, in milliseconds. */
+  public static final int DEFAULT_READ_TIMEOUT = 10000;
+
+  private final int connectTimeout;
+  private final int readTimeout;
+
+  @Inject
+  WebhookClient(PluginConfigFactory configFactory) {
+    this(configFactory.getFromGerritConfig(ProjectConfig.CONFIG_NAME));
+  }
+
+  /** Creates a new WebhookClient with the default timeouts. */
+  public WebhookClient() {
+    this(DEFAULT_CONNECT_TIMEOUT, DEFAULT_READ_TIMEOUT);
+  }
+
+  /**
+   * Creates a new WebhookClient with the timeouts of the plugin section of gerrit.config.
+   *
+   * @param config The plugin section of gerrit.config, may be null.
+   */
+  public WebhookClient(PluginConfig config) {
+    this(
+        getTimeout(config, "webhook-connect-timeout", DEFAULT_CONNECT_TIMEOUT),
+        getTimeout(config, "webhook-read-timeout", DEFAULT_READ_TIMEOUT));
+  }
+
+  /**
+   * Creates a new WebhookClient.
+   *
+   * @param connectTimeout The time to wait for a connection to the webhook, in milliseconds.
+   * @param readTimeout The time to wait for the webhook to respond, in milliseconds.
+   */
+  public WebhookClient(int connectTimeout, int readTimeout) {
+    if (connectTimeout < 1 || readTimeout < 1) {
+      throw new IllegalArgumentException("timeouts must be at least 1");
+    }
+
+    this.connectTimeout = connectTimeout;
+    this.readTimeout = readTimeout;
+  }
 
   /**
    * Publish a message to the provided Slack webhook URL.
@@ -50,38 +103,59 @@ public class WebhookClient {
       throw new IllegalArgumentException("message cannot be null or empty");
     }
 
+    return publish(Payload.of(message), webhookUrl, null, null).isOk();
+  }
+
+  /**
+   * Publish a queued message to its Slack webhook URL.
+   *
+   * @param message The message to publish.
+   * @return What the webhook answered.
+   */
+  public WebhookResponse publish(OutboundMessage message) {
+    return publish(
+        message.getBody(),
+        message.getWebhookUrl(),
+        message.getProject(),
+        message.getEventType());
+  }
+
+  private WebhookResponse publish(
+      Payload message, String webhookUrl, String project, String eventType) {
     if (webhookUrl == null || webhookUrl.equals("")) {
       throw new IllegalArgumentException("webhookUrl cannot be null or empty");
     }
 
-    boolean result;
-    result = false;
-
-    String response;
-    response = postRequest(message, webhookUrl);
+    WebhookResponse response;
+    response = postRequest(message, webhookUrl, project, eventType);
 
-    if ("ok".equals(response)) {
-      result = true;
-    } else {
-      LOGGER.error("Unexpected response: [" + response + "].");
+    if (!response.isOk()) {
+      THROTTLED_LOGGER.error("response", () -> "Unexpected response: [" + response + "].");
     }
 
-    return result;
+    return response;
   }
 
   /**
-   * Initiates an HTTP POST to the provided Webhook URL.
+   * Initiates an HTTP POST to the provided Webhook URL. The connect, write and read phases are
+   * recorded as separate pipeline stages.
    *
    * @param message The message payload.
    * @param webhookUrl The URL to post to.
-   * @return The response payload from Slack.
+   * @param project The project the message belongs to, used to label stage events.
+   * @param eventType The type of the event that triggered the message.
+   * @return The response from Slack.
    */
-  private String postRequest(String message, String webhookUrl) {
-    String response;
+  private WebhookResponse postRequest(
+      Payload message, String webhookUrl, String project, String eventType) {
+    WebhookResponse response;
 
     HttpURLConnection connection;
     connection = null;
     try {
+      Object stage;
+      stage = PipelineStage.begin();
+
       connection = openConnection(webhookUrl);
       try {
         connection.setRequestMethod("POST");
@@ -91,17 +165,42 @@ public class WebhookClient {
         connection.setDoInput(true);
         connection.setDoOutput(true);
 
-        DataOutputStream request;
-        request = new DataOutputStream(connection.getOutputStream());
+        // Streamed as it is written instead of buffered in another copy
+        connection.setFixedLengthStreamingMode(message.length());
+
+        connection.connect();
+        PipelineStage.end(stage, PipelineStage.CONNECT, project, eventType);
+
+        stage = PipelineStage.begin();
+
+        OutputStream request;
+        request = connection.getOutputStream();
 
-        request.write(message.getBytes("UTF-8"));
+        message.writeTo(request);
         request.flush();
         request.close();
+
+        PipelineStage.end(stage, PipelineStage.WRITE, project, eventType);
       } catch (IOException e) {
         throw new RuntimeException("Error posting message to Slack: [" + e.getMessage() + "].", e);
       }
 
-      response = getResponse(connection);
+      stage = PipelineStage.begin();
+
+      String body;
+      body = getResponse(connection);
+
+      try {
+        response =
+            new WebhookResponse(
+                connection.getResponseCode(),
+                body,
+                getRetryAfterMillis(connection.getHeaderField("Retry-After")));
+      } catch (IOException e) {
+        throw new RuntimeException(
+            "Error reading response from Slack: [" + e.getMessage() + "].", e);
+      }
+      PipelineStage.end(stage, PipelineStage.READ, project, eventType);
     } finally {
       if (connection != null) {
         connection.disconnect();
@@ -119,7 +218,14 @@ public class WebhookClient {
    */
   private HttpURLConnection openConnection(String webhookUrl) {
     try {
-      return (HttpURLConnection) new URL(webhookUrl).openConnection();
+      HttpURLConnection connection;
+      connection = (HttpURLConnection) new URL(webhookUrl).openConnection();
+
+      // Without timeouts a webhook that stops responding holds its delivery thread forever
+      connection.setConnectTimeout(connectTimeout);
+      connection.setReadTimeout(readTimeout);
+
+      return connection;
     } catch (MalformedURLException e) {
       throw new RuntimeException("Unable to create webhook URL: " + webhookUrl, e);
     } catch (IOException e) {
@@ -128,11 +234,51 @@ public class WebhookClient {
     }
   }
 
+  private static int getTimeout(PluginConfig config, String name, int defaultTimeout) {
+    int timeout;
+    timeout = config != null ? config.getInt(name, defaultTimeout) : defaultTimeout;
+
+    if (timeout < 1) {
+      LOGGER.warn("Ignoring " + name + " " + timeout + ", it must be at least 1");
+      timeout = defaultTimeout;
+    }
+
+    return timeout;
+  }
+
+  /**
+   * Parses a Retry-After header given in seconds, the form Slack sends.
+   *
+   * @param retryAfter The value of the header, may be null.
+   * @return The delay in milliseconds, 0 if there is none or it is not a number of seconds.
+   */
+  static long getRetryAfterMillis(String retryAfter) {
+    if (retryAfter == null) {
+      return 0;
+    }
+
+    try {
+      return TimeUnit.SECONDS.toMillis(Math.max(0, Long.parseLong(retryAfter.trim())));
+    } catch (NumberFormatException e) {
+      LOGGER.debug("Ignoring Retry-After: " + retryAfter);
+      return 0;
+    }
+  }
+
   private InputStream getResponseStream(HttpURLConnection connection) {
     try {
       return connection.getInputStream();
     } catch (IOException e) {
-      return connection.getErrorStream();
+      InputStream errorStream;
+      errorStream = connection.getErrorStream();
+
+      // There is no error stream when the connection was dropped before a response was sent.
+      if (errorStream == null) {
+        throw new RuntimeException(
+            "Error reading response from Slack: [" + e.getMessage() + "].", e);
+      }
+
+      return errorStream;
     }
   }
 
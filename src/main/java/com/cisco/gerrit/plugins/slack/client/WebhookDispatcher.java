@@ -0,0 +1,697 @@
+/*
+ * Copyright 2017 Cisco Systems, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package com.cisco.gerrit.plugins.slack.client;
+
+import com.cisco.gerrit.plugins.slack.cluster.ClaimLog;
+import com.cisco.gerrit.plugins.slack.cluster.ShardRouter;
+import com.cisco.gerrit.plugins.slack.config.BulkheadConfig;
+import com.cisco.gerrit.plugins.slack.config.Priority;
+import com.cisco.gerrit.plugins.slack.metrics.DeliveryLatency;
+import com.cisco.gerrit.plugins.slack.metrics.PipelineMetrics;
+import com.cisco.gerrit.plugins.slack.metrics.PipelineStatus;
+import com.cisco.gerrit.plugins.slack.util.PriorityLaneQueue;
+import com.cisco.gerrit.plugins.slack.util.ThrottledLogger;
+import com.cisco.gerrit.plugins.slack.util.TimingWheel;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.gerrit.extensions.events.LifecycleListener;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Delivers rendered messages off the Gerrit event thread. Failed posts are retried with an
+ * exponential backoff scheduled on the plugin's TimingWheel. Messages that outlive their time to
+ * live before they are posted are dropped and summarized by the LoadShedder. Messages of projects
+ * in shadow mode take the same path but are written to the ShadowCapture instead of posted. When
+ * several nodes share a ClaimLog, a message is only queued once this node has claimed its event,
+ * and when they share the work through a ShardRouter, only the node owning the message's change
+ * delivers it.
+ *
+ * <p>Each delivery thread has its own queue and the messages of a change always go to the same one,
+ * so they are posted in the order they were dispatched unless a post has to be retried. A queue
+ * has a lane per Priority and serves the higher lanes first, with aging so the lower ones still
+ * drain under load; the order of a change's messages is kept within a lane. Within a lane the
+ * projects take turns by their weight, so a noisy project cannot starve the others.
+ *
+ * <p>The requests in flight to each destination are capped by a ConcurrencyLimiter that adapts to
+ * the destination's latency and errors. A message over its destination's limit waits aside without
+ * holding up its delivery thread, so a slowing webhook cannot take every thread from the others.
+ *
+ * <p>The webhook hosts grouped into a bulkhead by the BulkheadConfig get delivery threads and
+ * queues of their own, so a destination that hangs altogether can only hold up its own bulkhead.
+ * All other destinations share the default one.
+ */
+@Singleton
+public class WebhookDispatcher implements LifecycleListener {
+  /** The class logger instance. */
+  private static final Logger LOGGER = LoggerFactory.getLogger(WebhookDispatcher.class);
+  private static final ThrottledLogger THROTTLED_LOGGER = new ThrottledLogger(LOGGER);
+
+  /** The number of default delivery threads, a power of two. */
+  private static final int DELIVERY_THREADS = 8;
+  /** The requests a destination may have in flight before its latency has been observed. */
+  private static final int INITIAL_CONCURRENCY = 2;
+  private static final int MAX_ATTEMPTS = 4;
+  private static final long INITIAL_BACKOFF_MILLIS = 1000;
+  /** How long a message waits before it ranks with the messages of the next higher priority. */
+  private static final long PRIORITY_AGING_MILLIS = 2000;
+  /** The name the default delivery threads are kept under. */
+  private static final String DEFAULT_BULKHEAD = "";
+
+  private final TimingWheel timer;
+  private final PipelineMetrics metrics;
+  private final DeliveryLatency latency;
+  private final PipelineStatus status;
+  private final WebhookClient client;
+  private final ShadowCapture capture;
+  private final ClaimLog claims;
+  private final ShardRouter shards;
+  private final LoadShedder shedder;
+  private final BulkheadConfig bulkheadConfig;
+  private final long initialBackoffMillis;
+
+  /** The delivery threads by bulkhead name, with the default ones under the empty name. */
+  private volatile Map<String, Bulkhead> bulkheads;
+
+  private final ConcurrentMap<String, ConcurrencyLimiter> limiters = new ConcurrentHashMap<>();
+
+  /** The messages waiting for delivery by bulkhead name, including those waiting for a permit. */
+  private final ConcurrentMap<String, AtomicInteger> backlogs = new ConcurrentHashMap<>();
+
+  @Inject
+  WebhookDispatcher(
+      TimingWheel timer,
+      PipelineMetrics metrics,
+      DeliveryLatency latency,
+      PipelineStatus status,
+      WebhookClient client,
+      ShadowCapture capture,
+      ClaimLog claims,
+      ShardRouter shards,
+      LoadShedder shedder,
+      BulkheadConfig bulkheadConfig) {
+    this(
+        timer,
+        metrics,
+        latency,
+        status,
+        client,
+        capture,
+        claims,
+        shards,
+        shedder,
+        bulkheadConfig,
+        INITIAL_BACKOFF_MILLIS);
+  }
+
+  /**
+   * Creates a new WebhookDispatcher.
+   *
+   * @param timer The timer the retries are scheduled on.
+   * @param metrics The metrics to count deliveries in.
+   * @param latency The delivery latency by event type.
+   * @param status The live state of the destinations.
+   * @param client The client posting to the webhooks.
+   * @param capture Where the messages of projects in shadow mode are written.
+   * @param claims The claims coordinating the delivery with peers.
+   * @param shards The router sharing the work with peers.
+   * @param shedder Where expired messages are summarized.
+   * @param bulkheadConfig The webhook hosts delivered by bulkheads of their own.
+   * @param initialBackoffMillis The backoff before the first retry, doubled for every further one.
+   */
+  public WebhookDispatcher(
+      TimingWheel timer,
+      PipelineMetrics metrics,
+      DeliveryLatency latency,
+      PipelineStatus status,
+      WebhookClient client,
+      ShadowCapture capture,
+      ClaimLog claims,
+      ShardRouter shards,
+      LoadShedder shedder,
+      BulkheadConfig bulkheadConfig,
+      long initialBackoffMillis) {
+    if (initialBackoffMillis < 1) {
+      throw new IllegalArgumentException("initialBackoffMillis must be at least 1");
+    }
+
+    this.timer = timer;
+    this.metrics = metrics;
+    this.latency = latency;
+    this.status = status;
+    this.client = client;
+    this.capture = capture;
+    this.claims = claims;
+    this.shards = shards;
+    this.shedder = shedder;
+    this.bulkheadConfig = bulkheadConfig;
+    this.initialBackoffMillis = initialBackoffMillis;
+  }
+
+  @Override
+  public void start() {
+    Map<String, Bulkhead> started;
+    started = new HashMap<>();
+    started.put(DEFAULT_BULKHEAD, new Bulkhead("slack-integration-delivery-%d", DELIVERY_THREADS));
+
+    for (String name : bulkheadConfig.getBulkheads()) {
+      started.put(
+          name,
+          new Bulkhead(
+              "slack-integration-delivery-" + name + "-%d", bulkheadConfig.getThreads()));
+    }
+
+    bulkheads = started;
+  }
+
+  @Override
+  public void stop() {
+    Map<String, Bulkhead> current;
+    current = bulkheads;
+
+    if (current != null) {
+      for (Bulkhead bulkhead : current.values()) {
+        for (ExecutorService executor : bulkhead.executors) {
+          executor.shutdown();
+        }
+      }
+
+      long deadline;
+      deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+      try {
+        for (Bulkhead bulkhead : current.values()) {
+          for (ExecutorService executor : bulkhead.executors) {
+            executor.awaitTermination(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+          }
+        }
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+      bulkheads = null;
+
+      for (ConcurrencyLimiter limiter : limiters.values()) {
+        for (Runnable waiter : limiter.drain()) {
+          Attempt attempt;
+          attempt = (Attempt) waiter;
+
+          dequeued(attempt.message);
+          abandon(attempt);
+        }
+      }
+    }
+  }
+
+  /**
+   * Counts the messages waiting for delivery through the bulkhead of a webhook host, so a host that
+   * stops responding only backs up its own bulkhead.
+   *
+   * @param host The host of a webhook URL, null for the default delivery threads.
+   * @return The number of waiting messages.
+   */
+  public int getBacklog(String host) {
+    AtomicInteger backlog;
+    backlog = backlogs.get(bulkheadName(host));
+
+    return backlog != null ? backlog.get() : 0;
+  }
+
+  /**
+   * Queues a message for delivery to its webhook URL, unless a peer delivers it.
+   *
+   * @param message The message to publish.
+   */
+  public void dispatch(OutboundMessage message) {
+    if (message == null) {
+      throw new NullPointerException("message cannot be null");
+    }
+
+    if (!shards.accept(message)) {
+      return;
+    }
+
+    long ticket;
+    ticket = status.messageAccepted(message.getDestination(), message.getProject());
+
+    claims.claim(
+        message.getFingerprint(), message.getEventCreatedOn(), new Attempt(message, ticket, 1));
+  }
+
+  /**
+   * Queues a message that this node already claimed, e.g. one taken over from a departed peer.
+   *
+   * @param message The message to publish.
+   */
+  public void resume(OutboundMessage message) {
+    if (message == null) {
+      throw new NullPointerException("message cannot be null");
+    }
+
+    long ticket;
+    ticket = status.messageAccepted(message.getDestination(), message.getProject());
+
+    submit(new Attempt(message, ticket, 1));
+  }
+
+  private void submit(Attempt attempt) {
+    Bulkhead current;
+    current = bulkhead(attempt.message);
+
+    if (current == null) {
+      THROTTLED_LOGGER.warn(
+          "stopped",
+          () -> "Delivery stopped, dropping message for " + attempt.message.getProject());
+      abandon(attempt);
+      return;
+    }
+
+    queued(attempt.message);
+    try {
+      current.execute(attempt);
+    } catch (RejectedExecutionException e) {
+      dequeued(attempt.message);
+      THROTTLED_LOGGER.warn(
+          "stopped",
+          () -> "Delivery stopped, dropping message for " + attempt.message.getProject());
+      abandon(attempt);
+    }
+  }
+
+  /**
+   * Gives up on a message. A message abandoned because delivery stopped stays in the outbox of a
+   * sharded node, so a peer or the next start of this node delivers it.
+   */
+  private void abandon(Attempt attempt) {
+    metrics.deliveryFailed(PipelineMetrics.ABANDONED);
+    status.messageCompleted(attempt.message.getDestination(), attempt.ticket);
+  }
+
+  /**
+   * Picks the delivery threads of a message by the bulkhead of its webhook host.
+   *
+   * @param message The message.
+   * @return The bulkhead, null if delivery stopped.
+   */
+  private Bulkhead bulkhead(OutboundMessage message) {
+    Map<String, Bulkhead> current;
+    current = bulkheads;
+
+    if (current == null) {
+      return null;
+    }
+
+    return current.get(bulkheadName(message));
+  }
+
+  private String bulkheadName(OutboundMessage message) {
+    return message.isShadow() ? DEFAULT_BULKHEAD : bulkheadName(message.getHost());
+  }
+
+  private String bulkheadName(String host) {
+    String name;
+    name = bulkheadConfig.getBulkhead(host);
+
+    return name != null ? name : DEFAULT_BULKHEAD;
+  }
+
+  private void queued(OutboundMessage message) {
+    metrics.messageQueued();
+    status.messageQueued(message.getDestination(), message.getPriority());
+    backlogs.computeIfAbsent(bulkheadName(message), n -> new AtomicInteger()).incrementAndGet();
+  }
+
+  private void dequeued(OutboundMessage message) {
+    metrics.messageDequeued();
+    status.messageDequeued(message.getDestination(), message.getPriority());
+    backlogs.get(bulkheadName(message)).decrementAndGet();
+  }
+
+  private ConcurrencyLimiter limiter(OutboundMessage message) {
+    ConcurrencyLimiter limiter;
+    limiter = limiters.get(message.getDestination());
+
+    if (limiter == null) {
+      String bulkhead;
+      bulkhead = bulkheadConfig.getBulkhead(message.getHost());
+
+      // A destination never needs more permits than its bulkhead has threads
+      int maxLimit;
+      maxLimit = bulkhead != null ? bulkheadConfig.getThreads() : DELIVERY_THREADS;
+
+      limiter =
+          limiters.computeIfAbsent(
+              message.getDestination(),
+              d -> {
+                status.limitChanged(d, Math.min(INITIAL_CONCURRENCY, maxLimit));
+
+                return new ConcurrencyLimiter(
+                    Math.min(INITIAL_CONCURRENCY, maxLimit),
+                    maxLimit,
+                    Priority.values().length,
+                    WebhookDispatcher::lane);
+              });
+    }
+
+    return limiter;
+  }
+
+  /**
+   * Puts the attempts a limiter has room for back on their delivery threads. The attempts are
+   * still counted as queued.
+   *
+   * @param limiter The limiter of a destination that just had a permit returned.
+   */
+  private void resume(ConcurrencyLimiter limiter) {
+    Runnable waiter;
+    while ((waiter = limiter.next()) != null) {
+      Attempt attempt;
+      attempt = (Attempt) waiter;
+      attempt.permitted = true;
+
+      Bulkhead current;
+      current = bulkhead(attempt.message);
+
+      if (current == null) {
+        dequeued(attempt.message);
+        abandon(attempt);
+        limiter.cancelled();
+        continue;
+      }
+
+      try {
+        current.execute(attempt);
+      } catch (RejectedExecutionException e) {
+        // Stopping while the queues drain, so deliver it on this thread
+        attempt.deliver();
+      }
+    }
+  }
+
+  private void complete(Attempt attempt) {
+    status.messageCompleted(attempt.message.getDestination(), attempt.ticket);
+    shards.release(attempt.message);
+  }
+
+  /**
+   * Picks the delivery thread of a message, the same one for every message of a change.
+   *
+   * @param message The message.
+   * @param stripes The number of delivery threads, a power of two.
+   * @return The index of the delivery thread.
+   */
+  private static int stripe(OutboundMessage message, int stripes) {
+    long key;
+    key = message.getChangeKey() != 0 ? message.getChangeKey() : message.getFingerprint();
+
+    return (int) (key ^ (key >>> 32)) & (stripes - 1);
+  }
+
+  private static int lane(Runnable task) {
+    return task instanceof Attempt ? ((Attempt) task).message.getPriority().ordinal() : 0;
+  }
+
+  private static Object flow(Runnable task) {
+    return task instanceof Attempt ? ((Attempt) task).message.getProject() : null;
+  }
+
+  private static int weight(Runnable task) {
+    return task instanceof Attempt ? ((Attempt) task).message.getWeight() : 1;
+  }
+
+  /**
+   * Computes the backoff before the next attempt, doubling each time with up to 20% jitter.
+   *
+   * @param attempt The number of the attempt that just failed, starting at 1.
+   * @return The backoff in milliseconds.
+   */
+  long backoffMillis(int attempt) {
+    long backoff;
+    backoff = initialBackoffMillis << (attempt - 1);
+
+    return backoff + ThreadLocalRandom.current().nextLong(backoff / 5 + 1);
+  }
+
+  /**
+   * Names the class of a transport error after the underlying exception, since WebhookClient wraps
+   * I/O errors in a RuntimeException.
+   *
+   * @param e The error thrown by the client.
+   * @return The simple class name of the underlying exception.
+   */
+  private static String errorClass(RuntimeException e) {
+    Throwable cause;
+    cause = e.getCause() != null ? e.getCause() : e;
+
+    return cause.getClass().getSimpleName();
+  }
+
+  /** Delivery threads of their own, each with its own queue, and the messages striped over them. */
+  private static final class Bulkhead {
+    private final ExecutorService[] executors;
+
+    private Bulkhead(String nameFormat, int threads) {
+      ThreadFactory threadFactory;
+      threadFactory = new ThreadFactoryBuilder().setNameFormat(nameFormat).setDaemon(true).build();
+
+      executors = new ExecutorService[threads];
+
+      for (int i = 0; i < threads; i++) {
+        PriorityLaneQueue<Runnable> queue;
+        queue =
+            new PriorityLaneQueue<>(
+                Priority.values().length,
+                WebhookDispatcher::lane,
+                WebhookDispatcher::flow,
+                WebhookDispatcher::weight,
+                PRIORITY_AGING_MILLIS,
+                TimeUnit.MILLISECONDS);
+
+        executors[i] = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS, queue, threadFactory);
+      }
+    }
+
+    private void execute(Attempt attempt) {
+      executors[stripe(attempt.message, executors.length)].execute(attempt);
+    }
+  }
+
+  private final class Attempt implements Runnable, ClaimLog.Callback {
+    private final OutboundMessage message;
+    private final long ticket;
+    private final int number;
+
+    /** Whether the attempt was handed a permit by its destination's limiter while waiting. */
+    private boolean permitted;
+
+    private Attempt(OutboundMessage message, long ticket, int number) {
+      this.message = message;
+      this.ticket = ticket;
+      this.number = number;
+    }
+
+    @Override
+    public void claimed(boolean won) {
+      if (won) {
+        shards.persist(message);
+        submit(this);
+      } else {
+        // A peer delivers the message
+        status.messageCompleted(message.getDestination(), ticket);
+      }
+    }
+
+    @Override
+    public void run() {
+      ConcurrencyLimiter limiter;
+      limiter = deliver();
+
+      if (limiter != null) {
+        resume(limiter);
+      }
+    }
+
+    /**
+     * Posts the message unless it expired, or its destination is at its concurrency limit, in which
+     * case the attempt waits aside until it is resumed with a permit.
+     *
+     * @return The limiter the attempt returned its permit to, null if it held none.
+     */
+    private ConcurrencyLimiter deliver() {
+      String destination;
+      destination = message.getDestination();
+
+      ConcurrencyLimiter limiter;
+      limiter = message.isShadow() ? null : limiter(message);
+
+      // Posting a message long after its event is noise, and only delays the fresh ones
+      if (message.isExpired(System.currentTimeMillis())) {
+        expire();
+
+        if (permitted) {
+          permitted = false;
+          limiter.cancelled();
+          return limiter;
+        }
+        return null;
+      }
+
+      if (limiter != null && !permitted && !limiter.acquire(this)) {
+        return null;
+      }
+      permitted = false;
+
+      dequeued(message);
+      metrics.requestStarted();
+      status.requestStarted(destination);
+
+      long start;
+      start = System.nanoTime();
+
+      boolean responded;
+      responded = false;
+
+      try {
+        WebhookResponse response;
+        response = null;
+
+        if (message.isShadow()) {
+          capture();
+        } else {
+          response = client.publish(message);
+        }
+
+        if (response == null) {
+          responded = true;
+          complete(this);
+        } else if (response.isOk()) {
+          metrics.messagePublished(message.getEventType());
+          latency.record(
+              message.getProject(),
+              message.getEventType(),
+              message.getEventCreatedOn(),
+              System.currentTimeMillis());
+          responded = true;
+          complete(this);
+        } else if (response.isRetryable()) {
+          String reason;
+          reason =
+              response.isRateLimited()
+                  ? PipelineMetrics.RATE_LIMITED
+                  : PipelineMetrics.SERVER_ERROR;
+
+          metrics.deliveryFailed(reason);
+          status.errorOccurred(reason);
+          retry(response.getRetryAfterMillis(), "Slack answered " + response, null);
+        } else {
+          // A rejected payload, such as one for an unknown channel, will not be accepted on a retry
+          metrics.deliveryFailed(PipelineMetrics.REJECTED);
+          status.errorOccurred(PipelineMetrics.REJECTED);
+          responded = true;
+          complete(this);
+        }
+      } catch (RuntimeException e) {
+        metrics.deliveryFailed(PipelineMetrics.TRANSPORT);
+        status.errorOccurred(errorClass(e));
+        retry(0, e.getMessage(), e);
+      } finally {
+        long elapsed;
+        elapsed = System.nanoTime() - start;
+
+        if (!message.isShadow()) {
+          metrics.recordRoundTrip(elapsed);
+        }
+        metrics.requestFinished();
+        status.requestFinished(destination);
+
+        if (limiter != null) {
+          if (responded) {
+            status.limitChanged(destination, limiter.succeeded(elapsed));
+          } else {
+            status.limitChanged(destination, limiter.failed());
+          }
+        }
+      }
+
+      return limiter;
+    }
+
+    /**
+     * Posts the message again after a backoff, unless it ran out of attempts.
+     *
+     * @param retryAfterMillis The delay the webhook asked for, the backoff is at least as long.
+     * @param reason Why the attempt failed.
+     * @param e The error the attempt failed with, may be null.
+     */
+    private void retry(long retryAfterMillis, String reason, RuntimeException e) {
+      if (number >= MAX_ATTEMPTS) {
+        THROTTLED_LOGGER.error(
+            "abandon", () -> "Giving up on message after " + number + " attempts: " + reason, e);
+        abandon(this);
+        shards.release(message);
+        return;
+      }
+
+      long backoff;
+      backoff = Math.max(backoffMillis(number), retryAfterMillis);
+
+      THROTTLED_LOGGER.warn(
+          "retry",
+          () -> "Attempt " + number + " failed, retrying in " + backoff + "ms: " + reason);
+
+      final Attempt next;
+      next = new Attempt(message, ticket, number + 1);
+
+      timer.schedule(() -> submit(next), backoff, TimeUnit.MILLISECONDS);
+    }
+
+    private void expire() {
+      dequeued(message);
+      metrics.eventFiltered(message.getEventType(), PipelineMetrics.EXPIRED);
+      complete(this);
+
+      try {
+        shedder.expired(message);
+      } catch (RuntimeException e) {
+        THROTTLED_LOGGER.error("expired", "Cannot summarize expired message", e);
+      }
+    }
+
+    private void capture() {
+      try {
+        capture.write(message);
+        metrics.messageCaptured(message.getDestination(), message.getBody().length());
+      } catch (IOException e) {
+        THROTTLED_LOGGER.error("capture", "Cannot write the shadow capture", e);
+        metrics.deliveryFailed(PipelineMetrics.CAPTURE);
+        status.errorOccurred(e.getClass().getSimpleName());
+      }
+    }
+  }
+}
@@ -0,0 +1,92 @@
+/*
+ * Copyright 2017 Cisco Systems, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package com.cisco.gerrit.plugins.slack.client;
+
+/**
+ * What a webhook answered to a post. Slack answers "ok" to an accepted message, rate limits with a
+ * 429 and a Retry-After header, and rejects a payload it will never accept, such as one with an
+ * unknown channel, with a 4xx and the reason in the body.
+ */
+public final class WebhookResponse {
+  private final int status;
+  private final String body;
+  private final long retryAfterMillis;
+
+  /**
+   * Creates a new WebhookResponse.
+   *
+   * @param status The HTTP status code.
+   * @param body The response body, may be null.
+   * @param retryAfterMillis The delay the webhook asked for before the next post, 0 if none.
+   */
+  public WebhookResponse(int status, String body, long retryAfterMillis) {
+    this.status = status;
+    this.body = body;
+    this.retryAfterMillis = retryAfterMillis;
+  }
+
+  /**
+   * Gets whether the webhook accepted the message.
+   *
+   * @return true, if the webhook answered "ok"; otherwise false
+   */
+  public boolean isOk() {
+    return "ok".equals(body);
+  }
+
+  /**
+   * Gets whether the post failed for a reason that may pass, being rate limited or a server error,
+   * so the message is worth posting again later.
+   *
+   * @return true, if the post should be retried; otherwise false
+   */
+  public boolean isRetryable() {
+    return !isOk() && (status == 429 || status >= 500);
+  }
+
+  /**
+   * Gets whether the post was rate limited.
+   *
+   * @return true, if the webhook answered with a 429; otherwise false
+   */
+  public boolean isRateLimited() {
+    return status == 429;
+  }
+
+  public int getStatus() {
+    return status;
+  }
+
+  public String getBody() {
+    return body;
+  }
+
+  /**
+   * Gets the delay the webhook asked for before the next post, from its Retry-After header.
+   *
+   * @return The delay in milliseconds, 0 if the webhook did not ask for one.
+   */
+  public long getRetryAfterMillis() {
+    return retryAfterMillis;
+  }
+
+  @Override
+  public String toString() {
+    return status + " " + body;
+  }
+}
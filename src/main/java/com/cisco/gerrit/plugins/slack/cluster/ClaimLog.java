@@ -0,0 +1,410 @@
+/*
+ * Copyright 2017 Cisco Systems, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package com.cisco.gerrit.plugins.slack.cluster;
+
+import com.cisco.gerrit.plugins.slack.metrics.PipelineMetrics;
+import com.cisco.gerrit.plugins.slack.util.ThrottledLogger;
+import com.cisco.gerrit.plugins.slack.util.TimingWheel;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.gerrit.extensions.events.LifecycleListener;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Elects a single node to deliver each event when several Gerrit nodes receive the same events.
+ * Every node tries to create a claim file named after the event's fingerprint in a shared
+ * directory, and only the node whose create succeeds delivers the message. File creation is atomic
+ * on local and NFS file systems, so no locks or leases are needed.
+ *
+ * <p>Claims are collected for a short window and created together on a single thread, so the
+ * added latency is bounded by the window plus the file system round trips of one batch. Claim files
+ * are grouped in one directory per minute of event creation time, and directories older than the
+ * retention are deleted as a whole.
+ *
+ * <p>Without a shared directory every claim is granted immediately. If the shared directory cannot
+ * be written, claims are granted as well: a duplicate message is better than a lost one.
+ */
+@Singleton
+public class ClaimLog implements LifecycleListener {
+  /** The class logger instance. */
+  private static final Logger LOGGER = LoggerFactory.getLogger(ClaimLog.class);
+  private static final ThrottledLogger THROTTLED_LOGGER = new ThrottledLogger(LOGGER);
+
+  /** The name of the directory holding the claims below the shared directory. */
+  public static final String DIRECTORY_NAME = "claims";
+
+  private static final long DEFAULT_BATCH_MILLIS = 20;
+  private static final long DEFAULT_RETENTION_MILLIS = TimeUnit.HOURS.toMillis(1);
+  private static final long MINUTE_MILLIS = TimeUnit.MINUTES.toMillis(1);
+
+  /** Receives the outcome of a claim. */
+  public interface Callback {
+    /**
+     * Called once the claim is decided, on the claim thread.
+     *
+     * @param won True if this node should deliver the event, false if a peer already claimed it.
+     */
+    void claimed(boolean won);
+  }
+
+  private final Path directory;
+  private final byte[] node;
+  private final TimingWheel timer;
+  private final PipelineMetrics metrics;
+  private final long batchMillis;
+  private final long retentionMillis;
+
+  private final Queue<Claim> batch = new ConcurrentLinkedQueue<>();
+  private final AtomicBoolean flushScheduled = new AtomicBoolean();
+
+  /** The last minute directory known to exist, only touched on the claim thread. */
+  private Path lastBucket;
+
+  private volatile ExecutorService executor;
+  private volatile TimingWheel.Timeout collection;
+
+  @Inject
+  ClaimLog(ClusterConfig config, TimingWheel timer, PipelineMetrics metrics) {
+    this(
+        config.getSharedDirectory() != null
+            ? config.getSharedDirectory().resolve(DIRECTORY_NAME)
+            : null,
+        config.getNodeName(),
+        timer,
+        metrics,
+        DEFAULT_BATCH_MILLIS,
+        DEFAULT_RETENTION_MILLIS);
+  }
+
+  /**
+   * Creates a new ClaimLog.
+   *
+   * @param directory The directory shared by all nodes to create claims in, null to grant every
+   *     claim without coordination.
+   * @param node The name of this node, written into its claims to help diagnose duplicates.
+   * @param timer The timer driving the batch window and the garbage collection.
+   * @param metrics The metrics to count claim outcomes in.
+   * @param batchMillis How long claims are collected before they are created together.
+   * @param retentionMillis How long claims are kept after the minute of their event ended.
+   */
+  public ClaimLog(
+      Path directory,
+      String node,
+      TimingWheel timer,
+      PipelineMetrics metrics,
+      long batchMillis,
+      long retentionMillis) {
+    if (node == null) {
+      throw new NullPointerException("node cannot be null");
+    }
+
+    if (batchMillis < 0 || retentionMillis <= 0) {
+      throw new IllegalArgumentException("batchMillis and retentionMillis must be positive");
+    }
+
+    this.directory = directory;
+    this.node = node.getBytes(StandardCharsets.UTF_8);
+    this.timer = timer;
+    this.metrics = metrics;
+    this.batchMillis = batchMillis;
+    this.retentionMillis = retentionMillis;
+  }
+
+  @Override
+  public void start() {
+    if (directory == null) {
+      return;
+    }
+
+    executor =
+        Executors.newSingleThreadExecutor(
+            new ThreadFactoryBuilder()
+                .setNameFormat("slack-integration-claims-%d")
+                .setDaemon(true)
+                .build());
+
+    scheduleCollection(MINUTE_MILLIS);
+  }
+
+  @Override
+  public void stop() {
+    TimingWheel.Timeout current;
+    current = collection;
+    if (current != null) {
+      current.cancel();
+    }
+
+    ExecutorService previous;
+    previous = executor;
+    if (previous != null) {
+      executor = null;
+      previous.shutdown();
+      try {
+        previous.awaitTermination(5, TimeUnit.SECONDS);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }
+
+    // Whoever stops last still decides the claims queued in the meantime
+    flush();
+  }
+
+  /**
+   * Whether claims are coordinated through a shared directory.
+   *
+   * @return True if a shared directory is configured, otherwise false
+   */
+  public boolean isEnabled() {
+    return directory != null;
+  }
+
+  /**
+   * Claims an event for delivery by this node. The callback is invoked directly when claims are
+   * not coordinated, otherwise on the claim thread once the batch holding the claim is flushed.
+   *
+   * @param fingerprint The fingerprint of the event, identical on every node; 0 if the event has no
+   *     identity, which is always granted.
+   * @param eventCreatedOn When Gerrit created the event, in seconds since the epoch.
+   * @param callback Receives the outcome.
+   */
+  public void claim(long fingerprint, long eventCreatedOn, Callback callback) {
+    if (callback == null) {
+      throw new NullPointerException("callback cannot be null");
+    }
+
+    if (directory == null || fingerprint == 0) {
+      callback.claimed(true);
+      return;
+    }
+
+    batch.add(new Claim(fingerprint, eventCreatedOn, callback));
+
+    if (flushScheduled.compareAndSet(false, true)) {
+      timer.schedule(this::submitFlush, batchMillis, TimeUnit.MILLISECONDS);
+    }
+  }
+
+  /** Hands the batch to the claim thread, the timer thread must not block on the file system. */
+  private void submitFlush() {
+    ExecutorService current;
+    current = executor;
+
+    try {
+      if (current != null) {
+        current.execute(this::flush);
+        return;
+      }
+    } catch (RejectedExecutionException e) {
+      // Stopping, flush below
+    }
+    flush();
+  }
+
+  private synchronized void flush() {
+    // Cleared first, so a claim added while draining schedules the next flush
+    flushScheduled.set(false);
+
+    Claim claim;
+    while ((claim = batch.poll()) != null) {
+      boolean won;
+      won = tryClaim(claim);
+
+      try {
+        claim.callback.claimed(won);
+      } catch (RuntimeException e) {
+        THROTTLED_LOGGER.error("callback", "Claim callback failed", e);
+      }
+    }
+  }
+
+  private boolean tryClaim(Claim claim) {
+    long createdOnMillis;
+    createdOnMillis =
+        claim.eventCreatedOn > 0
+            ? TimeUnit.SECONDS.toMillis(claim.eventCreatedOn)
+            : System.currentTimeMillis();
+
+    Path bucket;
+    bucket = directory.resolve(Long.toString(createdOnMillis / MINUTE_MILLIS));
+
+    Path file;
+    file = bucket.resolve(toFileName(claim.fingerprint));
+
+    try {
+      if (!bucket.equals(lastBucket)) {
+        Files.createDirectories(bucket);
+        lastBucket = bucket;
+      }
+
+      try {
+        create(file);
+      } catch (NoSuchFileException e) {
+        // A peer collected the directory of an event older than the retention
+        Files.createDirectories(bucket);
+        create(file);
+      }
+
+      metrics.claimResolved(PipelineMetrics.CLAIM_WON);
+      return true;
+    } catch (FileAlreadyExistsException e) {
+      if (LOGGER.isDebugEnabled()) {
+        LOGGER.debug("Event " + toFileName(claim.fingerprint) + " already claimed by a peer");
+      }
+      metrics.claimResolved(PipelineMetrics.CLAIM_LOST);
+      return false;
+    } catch (IOException e) {
+      lastBucket = null;
+      THROTTLED_LOGGER.warn(
+          "claim", () -> "Cannot claim event in " + directory + ", delivering anyway: " + e);
+      metrics.claimResolved(PipelineMetrics.CLAIM_ERROR);
+      return true;
+    }
+  }
+
+  private void create(Path file) throws IOException {
+    Files.write(file, node, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+  }
+
+  private static String toFileName(long fingerprint) {
+    String hex;
+    hex = Long.toHexString(fingerprint);
+
+    return "0000000000000000".substring(hex.length()) + hex;
+  }
+
+  private void scheduleCollection(long delayMillis) {
+    collection =
+        timer.schedule(
+            () -> {
+              ExecutorService current;
+              current = executor;
+
+              if (current != null) {
+                try {
+                  current.execute(this::collectAndReschedule);
+                } catch (RejectedExecutionException e) {
+                  // Stopping
+                }
+              }
+            },
+            delayMillis,
+            TimeUnit.MILLISECONDS);
+  }
+
+  private void collectAndReschedule() {
+    try {
+      collect(System.currentTimeMillis());
+    } finally {
+      if (executor != null) {
+        scheduleCollection(MINUTE_MILLIS);
+      }
+    }
+  }
+
+  /**
+   * Deletes the minute directories whose claims have passed the retention. Every node collects, so
+   * files and directories a peer deleted first are skipped.
+   *
+   * @param nowMillis The current time in milliseconds since the epoch.
+   * @return The number of claims deleted.
+   */
+  int collect(long nowMillis) {
+    if (directory == null || !Files.isDirectory(directory)) {
+      return 0;
+    }
+
+    long oldestMinute;
+    oldestMinute = (nowMillis - retentionMillis) / MINUTE_MILLIS;
+
+    int deleted;
+    deleted = 0;
+
+    try (DirectoryStream<Path> buckets = Files.newDirectoryStream(directory)) {
+      for (Path bucket : buckets) {
+        long minute;
+        try {
+          minute = Long.parseLong(bucket.getFileName().toString());
+        } catch (NumberFormatException e) {
+          continue;
+        }
+
+        if (minute < oldestMinute) {
+          deleted += delete(bucket);
+        }
+      }
+    } catch (IOException e) {
+      THROTTLED_LOGGER.warn(
+          "collect", () -> "Cannot collect old claims in " + directory + ": " + e);
+    }
+
+    return deleted;
+  }
+
+  private static int delete(Path bucket) throws IOException {
+    int deleted;
+    deleted = 0;
+
+    try (DirectoryStream<Path> claims = Files.newDirectoryStream(bucket)) {
+      for (Path claim : claims) {
+        if (Files.deleteIfExists(claim)) {
+          deleted++;
+        }
+      }
+    } catch (NoSuchFileException e) {
+      return deleted;
+    }
+
+    try {
+      Files.deleteIfExists(bucket);
+    } catch (IOException e) {
+      // A peer is still claiming a late event in it, the next collection gets it
+    }
+
+    return deleted;
+  }
+
+  private static final class Claim {
+    private final long fingerprint;
+    private final long eventCreatedOn;
+    private final Callback callback;
+
+    private Claim(long fingerprint, long eventCreatedOn, Callback callback) {
+      this.fingerprint = fingerprint;
+      this.eventCreatedOn = eventCreatedOn;
+      this.callback = callback;
+    }
+  }
+}
@@ -0,0 +1,132 @@
+/*
+ * Copyright 2017 Cisco Systems, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package com.cisco.gerrit.plugins.slack.cluster;
+
+import com.cisco.gerrit.plugins.slack.config.ProjectConfig;
+import com.google.common.collect.ImmutableSet;
+import com.google.gerrit.server.config.PluginConfig;
+import com.google.gerrit.server.config.PluginConfigFactory;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Set;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The server-wide settings for running the plugin on several Gerrit nodes, read from the [plugin
+ * "slack-integration"] section of gerrit.config.
+ */
+@Singleton
+public class ClusterConfig {
+  /** The class logger instance. */
+  private static final Logger LOGGER = LoggerFactory.getLogger(ClusterConfig.class);
+
+  private final Path sharedDirectory;
+  private final String nodeName;
+  private final ImmutableSet<String> nodes;
+
+  @Inject
+  ClusterConfig(PluginConfigFactory configFactory) {
+    this(configFactory.getFromGerritConfig(ProjectConfig.CONFIG_NAME));
+  }
+
+  /**
+   * Creates a new ClusterConfig.
+   *
+   * @param config The plugin section of gerrit.config, may be null.
+   */
+  public ClusterConfig(PluginConfig config) {
+    String directory;
+    directory = config != null ? config.getString("shared-directory", "") : "";
+
+    String node;
+    node = config != null ? config.getString("node-name", "") : "";
+
+    this.sharedDirectory = parseDirectory(directory);
+    this.nodeName = node != null && !node.trim().isEmpty() ? node.trim() : getHostName();
+    this.nodes = parseNodes(config != null ? config.getStringList("cluster-node") : null);
+  }
+
+  private static ImmutableSet<String> parseNodes(String[] values) {
+    ImmutableSet.Builder<String> result;
+    result = ImmutableSet.builder();
+
+    if (values != null) {
+      for (String value : values) {
+        if (value != null && !value.trim().isEmpty()) {
+          result.add(value.trim());
+        }
+      }
+    }
+
+    return result.build();
+  }
+
+  private static Path parseDirectory(String directory) {
+    if (directory == null || directory.trim().isEmpty()) {
+      return null;
+    }
+
+    try {
+      return Paths.get(directory.trim());
+    } catch (InvalidPathException e) {
+      LOGGER.warn("Ignoring invalid shared-directory " + directory + ", nodes will not coordinate");
+      return null;
+    }
+  }
+
+  private static String getHostName() {
+    try {
+      return InetAddress.getLocalHost().getHostName();
+    } catch (UnknownHostException e) {
+      return "unknown";
+    }
+  }
+
+  /**
+   * Gets the directory all nodes of the cluster can read and write, used to coordinate delivery.
+   *
+   * @return The shared directory, null if the nodes do not coordinate.
+   */
+  public Path getSharedDirectory() {
+    return sharedDirectory;
+  }
+
+  /**
+   * Gets the name of this node, defaulting to its host name.
+   *
+   * @return The node name.
+   */
+  public String getNodeName() {
+    return nodeName;
+  }
+
+  /**
+   * Gets the names of all nodes that share the delivery work, including this one.
+   *
+   * @return The node names, empty if the work is not sharded.
+   */
+  public Set<String> getNodes() {
+    return nodes;
+  }
+}
@@ -0,0 +1,118 @@
+/*
+ * Copyright 2017 Cisco Systems, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package com.cisco.gerrit.plugins.slack.cluster;
+
+import com.cisco.gerrit.plugins.slack.util.EventFingerprint;
+import com.google.common.collect.ImmutableSortedSet;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Set;
+
+/**
+ * An immutable consistent hash ring. Every node is placed on the ring at a number of pseudo-random
+ * points and a key belongs to the node of the first point at or after it, so adding or removing a
+ * node only moves the keys of that node's arcs and the rest keep their owner.
+ */
+public final class HashRing {
+  /** The number of points per node, enough to keep the shares within a few percent. */
+  public static final int DEFAULT_REPLICAS = 160;
+
+  private final ImmutableSortedSet<String> nodes;
+  private final long[] points;
+  private final String[] owners;
+
+  /**
+   * Creates a new HashRing.
+   *
+   * @param nodes The names of the nodes, at least one.
+   * @param replicas The number of points per node.
+   */
+  public HashRing(Collection<String> nodes, int replicas) {
+    if (nodes == null || nodes.isEmpty()) {
+      throw new IllegalArgumentException("nodes cannot be null or empty");
+    }
+
+    if (replicas <= 0) {
+      throw new IllegalArgumentException("replicas must be positive");
+    }
+
+    this.nodes = ImmutableSortedSet.copyOf(nodes);
+
+    Point[] ring;
+    ring = new Point[this.nodes.size() * replicas];
+
+    int i;
+    i = 0;
+    for (String node : this.nodes) {
+      for (int replica = 0; replica < replicas; replica++) {
+        ring[i++] = new Point(EventFingerprint.hash(node + "#" + replica), node);
+      }
+    }
+
+    // Ties are broken by node name, so every node builds the same ring
+    Arrays.sort(
+        ring, (a, b) -> a.key != b.key ? Long.compare(a.key, b.key) : a.node.compareTo(b.node));
+
+    this.points = new long[ring.length];
+    this.owners = new String[ring.length];
+    for (i = 0; i < ring.length; i++) {
+      points[i] = ring[i].key;
+      owners[i] = ring[i].node;
+    }
+  }
+
+  /**
+   * Gets the node a key belongs to.
+   *
+   * @param key The key, e.g. from EventFingerprint.changeKey.
+   * @return The name of the owning node.
+   */
+  public String owner(long key) {
+    int index;
+    index = Arrays.binarySearch(points, key);
+    if (index < 0) {
+      index = -index - 1;
+    } else {
+      // Equal points are ordered by node, take the first of them
+      while (index > 0 && points[index - 1] == key) {
+        index--;
+      }
+    }
+
+    return owners[index < points.length ? index : 0];
+  }
+
+  /**
+   * Gets the nodes on the ring.
+   *
+   * @return The node names in sorted order.
+   */
+  public Set<String> getNodes() {
+    return nodes;
+  }
+
+  private static final class Point {
+    private final long key;
+    private final String node;
+
+    private Point(long key, String node) {
+      this.key = key;
+      this.node = node;
+    }
+  }
+}
@@ -0,0 +1,267 @@
+/*
+ * Copyright 2017 Cisco Systems, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package com.cisco.gerrit.plugins.slack.cluster;
+
+import com.cisco.gerrit.plugins.slack.client.OutboundMessage;
+import com.cisco.gerrit.plugins.slack.config.Priority;
+import com.cisco.gerrit.plugins.slack.util.ThrottledLogger;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Predicate;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The messages a node has taken on but not yet completed, one JSON file per message in a directory
+ * of the shared directory named after the node. When a node departs, its peers move the files they
+ * now own into their own outbox with an atomic rename, so each message is taken over by exactly one
+ * of them.
+ */
+public class Outbox {
+  /** The class logger instance. */
+  private static final Logger LOGGER = LoggerFactory.getLogger(Outbox.class);
+  private static final ThrottledLogger THROTTLED_LOGGER = new ThrottledLogger(LOGGER);
+
+  /** The name of the directory holding the outboxes below the shared directory. */
+  public static final String DIRECTORY_NAME = "outbox";
+
+  private static final String SUFFIX = ".json";
+  private static final String TEMPORARY_SUFFIX = ".tmp";
+
+  private final Path root;
+  private final Path directory;
+
+  /**
+   * Creates a new Outbox.
+   *
+   * @param root The directory holding the outboxes of all nodes.
+   * @param node The name of this node.
+   */
+  public Outbox(Path root, String node) {
+    if (root == null) {
+      throw new NullPointerException("root cannot be null");
+    }
+
+    this.root = root;
+    this.directory = root.resolve(node);
+  }
+
+  /**
+   * Stores a message until it is removed.
+   *
+   * @param message The message, which must have a fingerprint.
+   * @throws IOException if the message cannot be written.
+   */
+  public void write(OutboundMessage message) throws IOException {
+    Path file;
+    file = directory.resolve(toFileName(message));
+
+    byte[] record;
+    record = toRecord(message).toString().getBytes(StandardCharsets.UTF_8);
+
+    // Written aside and renamed, so a peer taking over never reads a partial file
+    Path temporary;
+    temporary = directory.resolve(toFileName(message) + TEMPORARY_SUFFIX);
+
+    try {
+      Files.write(temporary, record);
+    } catch (NoSuchFileException e) {
+      Files.createDirectories(directory);
+      Files.write(temporary, record);
+    }
+    Files.move(temporary, file, StandardCopyOption.ATOMIC_MOVE);
+  }
+
+  /**
+   * Removes a completed message.
+   *
+   * @param message The message.
+   * @throws IOException if the message cannot be removed.
+   */
+  public void remove(OutboundMessage message) throws IOException {
+    Files.deleteIfExists(directory.resolve(toFileName(message)));
+  }
+
+  /**
+   * Reads the messages left in this node's own outbox, e.g. by a previous run that was killed.
+   *
+   * @return The messages.
+   * @throws IOException if the outbox cannot be listed.
+   */
+  public List<OutboundMessage> recover() throws IOException {
+    List<OutboundMessage> result;
+    result = new ArrayList<>();
+
+    if (!Files.isDirectory(directory)) {
+      return result;
+    }
+
+    try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "*" + SUFFIX)) {
+      for (Path file : files) {
+        OutboundMessage message;
+        message = read(file);
+
+        if (message != null) {
+          result.add(message);
+        }
+      }
+    }
+
+    return result;
+  }
+
+  /**
+   * Moves the messages of a peer's outbox that this node now owns into its own outbox.
+   *
+   * @param peer The name of the departed peer.
+   * @param owned Decides which messages this node now owns.
+   * @return The messages taken over.
+   * @throws IOException if the outboxes cannot be listed.
+   */
+  public List<OutboundMessage> takeOver(String peer, Predicate<OutboundMessage> owned)
+      throws IOException {
+    List<OutboundMessage> result;
+    result = new ArrayList<>();
+
+    Path source;
+    source = root.resolve(peer);
+
+    if (source.equals(directory) || !Files.isDirectory(source)) {
+      return result;
+    }
+
+    try (DirectoryStream<Path> files = Files.newDirectoryStream(source, "*" + SUFFIX)) {
+      for (Path file : files) {
+        OutboundMessage message;
+        message = read(file);
+
+        if (message == null || !owned.test(message)) {
+          continue;
+        }
+
+        Files.createDirectories(directory);
+        try {
+          Files.move(
+              file, directory.resolve(file.getFileName()), StandardCopyOption.ATOMIC_MOVE);
+          result.add(message);
+        } catch (NoSuchFileException e) {
+          // Another node took it over, or the peer came back and completed it
+        }
+      }
+    }
+
+    return result;
+  }
+
+  /**
+   * Lists the nodes that have an outbox.
+   *
+   * @return The node names.
+   * @throws IOException if the outboxes cannot be listed.
+   */
+  public List<String> listNodes() throws IOException {
+    List<String> result;
+    result = new ArrayList<>();
+
+    if (!Files.isDirectory(root)) {
+      return result;
+    }
+
+    try (DirectoryStream<Path> nodes = Files.newDirectoryStream(root, Files::isDirectory)) {
+      for (Path node : nodes) {
+        result.add(node.getFileName().toString());
+      }
+    }
+
+    return result;
+  }
+
+  private static String toFileName(OutboundMessage message) {
+    if (message.getFingerprint() == 0) {
+      throw new IllegalArgumentException("message must have a fingerprint");
+    }
+
+    return Long.toHexString(message.getFingerprint()) + SUFFIX;
+  }
+
+  private static JsonObject toRecord(OutboundMessage message) {
+    JsonObject record;
+    record = new JsonObject();
+    record.addProperty("project", message.getProject());
+    record.addProperty("eventType", message.getEventType());
+    record.addProperty("eventCreatedOn", message.getEventCreatedOn());
+    record.addProperty("fingerprint", message.getFingerprint());
+    record.addProperty("changeKey", message.getChangeKey());
+    record.addProperty("priority", message.getPriority().name());
+    record.addProperty("weight", message.getWeight());
+    record.addProperty("ttlMillis", message.getTtlMillis());
+    record.addProperty("payload", message.getPayload());
+    record.addProperty("webhookUrl", message.getWebhookUrl());
+    record.addProperty("shadow", message.isShadow());
+
+    return record;
+  }
+
+  private static OutboundMessage read(Path file) {
+    try {
+      JsonObject record;
+      record =
+          new JsonParser()
+              .parse(new String(Files.readAllBytes(file), StandardCharsets.UTF_8))
+              .getAsJsonObject();
+
+      String eventType;
+      eventType = record.get("eventType").getAsString();
+
+      // Entries written before priorities, weights and TTLs existed get the defaults
+      Priority priority;
+      priority =
+          record.has("priority")
+              ? Priority.parse(record.get("priority").getAsString())
+              : Priority.defaultFor(eventType);
+
+      return OutboundMessage.builder()
+          .project(record.get("project").getAsString())
+          .eventType(eventType)
+          .eventCreatedOn(record.get("eventCreatedOn").getAsLong())
+          .fingerprint(record.get("fingerprint").getAsLong())
+          .changeKey(record.get("changeKey").getAsLong())
+          .priority(priority)
+          .weight(record.has("weight") ? record.get("weight").getAsInt() : 1)
+          .ttlMillis(record.has("ttlMillis") ? record.get("ttlMillis").getAsLong() : 0)
+          .payload(record.get("payload").getAsString())
+          .webhookUrl(record.get("webhookUrl").getAsString())
+          .shadow(record.get("shadow").getAsBoolean())
+          .build();
+    } catch (NoSuchFileException e) {
+      return null;
+    } catch (IOException | RuntimeException e) {
+      THROTTLED_LOGGER.warn("read", () -> "Skipping unreadable outbox entry " + file + ": " + e);
+      return null;
+    }
+  }
+}
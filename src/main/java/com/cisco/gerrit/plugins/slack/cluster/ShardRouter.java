@@ -0,0 +1,523 @@
+/*
+ * Copyright 2017 Cisco Systems, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package com.cisco.gerrit.plugins.slack.cluster;
+
+import com.cisco.gerrit.plugins.slack.client.OutboundMessage;
+import com.cisco.gerrit.plugins.slack.client.WebhookDispatcher;
+import com.cisco.gerrit.plugins.slack.metrics.PipelineMetrics;
+import com.cisco.gerrit.plugins.slack.util.ThrottledLogger;
+import com.cisco.gerrit.plugins.slack.util.TimingWheel;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.gerrit.extensions.events.LifecycleListener;
+import com.google.inject.Inject;
+import com.google.inject.Provider;
+import com.google.inject.Singleton;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Shares the delivery work between the nodes listed as cluster-node in gerrit.config. Every node
+ * receives every event, and a message is only delivered by the live node its change hashes to on a
+ * consistent hash ring, so all messages of a change go through one node and a membership change
+ * only moves the changes of the node that joined or left.
+ *
+ * <p>Nodes announce themselves with a heartbeat file in the shared directory. Each node keeps the
+ * messages it takes on in its outbox there until they are completed, and a short standby copy of
+ * the messages it routed to peers. When a peer stops beating, the nodes that now own its changes
+ * move its outbox over and deliver the standby copies of messages the peer never took on.
+ */
+@Singleton
+public class ShardRouter implements LifecycleListener {
+  /** The class logger instance. */
+  private static final Logger LOGGER = LoggerFactory.getLogger(ShardRouter.class);
+  private static final ThrottledLogger THROTTLED_LOGGER = new ThrottledLogger(LOGGER);
+
+  /** The name of the directory holding the heartbeats below the shared directory. */
+  public static final String NODES_DIRECTORY_NAME = "nodes";
+
+  private static final long DEFAULT_HEARTBEAT_MILLIS = TimeUnit.SECONDS.toMillis(5);
+  private static final long DEFAULT_TIMEOUT_MILLIS = TimeUnit.SECONDS.toMillis(30);
+  private static final int MAX_STANDBY = 8192;
+
+  /** Where the messages this node owns are delivered. */
+  public interface Handler {
+    /**
+     * Delivers a message of a departed peer that this node now owns and that still needs to be
+     * claimed.
+     *
+     * @param message The message.
+     */
+    void dispatch(OutboundMessage message);
+
+    /**
+     * Delivers a message that was already claimed and is in this node's outbox.
+     *
+     * @param message The message.
+     */
+    void resume(OutboundMessage message);
+  }
+
+  private final String node;
+  private final ImmutableSet<String> nodes;
+  private final Path heartbeats;
+  private final Outbox outbox;
+  private final TimingWheel timer;
+  private final PipelineMetrics metrics;
+  private final Handler handler;
+  private final long heartbeatMillis;
+  private final long timeoutMillis;
+
+  /** Messages routed to peers, oldest first, kept until a departure of their owner is noticed. */
+  private final Deque<Standby> standby = new ArrayDeque<>();
+
+  private volatile HashRing ring;
+  private boolean recovered;
+
+  private volatile ExecutorService executor;
+
+  @Inject
+  ShardRouter(
+      ClusterConfig config,
+      TimingWheel timer,
+      PipelineMetrics metrics,
+      Provider<WebhookDispatcher> dispatcher) {
+    this(
+        isSharded(config) ? config.getSharedDirectory() : null,
+        config.getNodeName(),
+        config.getNodes(),
+        timer,
+        metrics,
+        new Handler() {
+          @Override
+          public void dispatch(OutboundMessage message) {
+            dispatcher.get().dispatch(message);
+          }
+
+          @Override
+          public void resume(OutboundMessage message) {
+            dispatcher.get().resume(message);
+          }
+        },
+        DEFAULT_HEARTBEAT_MILLIS,
+        DEFAULT_TIMEOUT_MILLIS);
+  }
+
+  /**
+   * Creates a new ShardRouter.
+   *
+   * @param directory The directory shared by all nodes, null if the work is not sharded.
+   * @param node The name of this node.
+   * @param nodes The names of all nodes sharing the work, including this one.
+   * @param timer The timer driving the heartbeats.
+   * @param metrics The metrics to count routes in.
+   * @param handler Where to deliver the messages of departed peers.
+   * @param heartbeatMillis How often the node beats and checks on its peers.
+   * @param timeoutMillis How long a peer may miss its heartbeat before it is considered departed.
+   */
+  public ShardRouter(
+      Path directory,
+      String node,
+      Set<String> nodes,
+      TimingWheel timer,
+      PipelineMetrics metrics,
+      Handler handler,
+      long heartbeatMillis,
+      long timeoutMillis) {
+    if (node == null) {
+      throw new NullPointerException("node cannot be null");
+    }
+
+    if (heartbeatMillis <= 0 || timeoutMillis <= heartbeatMillis) {
+      throw new IllegalArgumentException("timeoutMillis must exceed a positive heartbeatMillis");
+    }
+
+    this.node = node;
+    this.nodes = ImmutableSet.copyOf(nodes);
+    this.heartbeats = directory != null ? directory.resolve(NODES_DIRECTORY_NAME) : null;
+    this.outbox =
+        directory != null ? new Outbox(directory.resolve(Outbox.DIRECTORY_NAME), node) : null;
+    this.timer = timer;
+    this.metrics = metrics;
+    this.handler = handler;
+    this.heartbeatMillis = heartbeatMillis;
+    this.timeoutMillis = timeoutMillis;
+
+    // Until the first heartbeat every node is assumed to be alive
+    this.ring = directory != null ? new HashRing(this.nodes, HashRing.DEFAULT_REPLICAS) : null;
+  }
+
+  private static boolean isSharded(ClusterConfig config) {
+    if (config.getNodes().isEmpty()) {
+      return false;
+    }
+
+    if (config.getSharedDirectory() == null) {
+      LOGGER.warn("cluster-node is set without a shared-directory, delivering every message");
+      return false;
+    }
+
+    if (!config.getNodes().contains(config.getNodeName())) {
+      LOGGER.warn(
+          "This node "
+              + config.getNodeName()
+              + " is not listed as a cluster-node, delivering every message");
+      return false;
+    }
+
+    return true;
+  }
+
+  @Override
+  public void start() {
+    if (ring == null) {
+      return;
+    }
+
+    executor =
+        Executors.newSingleThreadExecutor(
+            new ThreadFactoryBuilder()
+                .setNameFormat("slack-integration-shards-%d")
+                .setDaemon(true)
+                .build());
+
+    schedulePoll(0);
+  }
+
+  @Override
+  public void stop() {
+    ExecutorService previous;
+    previous = executor;
+
+    if (previous != null) {
+      executor = null;
+      previous.shutdown();
+      try {
+        previous.awaitTermination(5, TimeUnit.SECONDS);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }
+  }
+
+  /**
+   * Whether the delivery work is shared between several nodes.
+   *
+   * @return True if messages are routed by change, otherwise false
+   */
+  public boolean isEnabled() {
+    return ring != null;
+  }
+
+  /**
+   * Decides whether this node delivers a message. Messages owned by a peer are kept on standby in
+   * case the peer departs before it takes them on.
+   *
+   * @param message The message.
+   * @return True if this node delivers the message, otherwise false
+   */
+  public boolean accept(OutboundMessage message) {
+    HashRing current;
+    current = ring;
+
+    if (current == null || key(message) == 0) {
+      return true;
+    }
+
+    String owner;
+    owner = current.owner(key(message));
+
+    if (owner.equals(node)) {
+      metrics.messageRouted(PipelineMetrics.ROUTE_OWNED);
+      return true;
+    }
+
+    synchronized (standby) {
+      if (standby.size() >= MAX_STANDBY) {
+        standby.removeFirst();
+      }
+      standby.addLast(new Standby(System.currentTimeMillis(), owner, message));
+    }
+
+    metrics.messageRouted(PipelineMetrics.ROUTE_PEER);
+    return false;
+  }
+
+  /**
+   * Keeps a message this node took on in its outbox until it is released.
+   *
+   * @param message The message.
+   */
+  public void persist(OutboundMessage message) {
+    if (ring == null || message.getFingerprint() == 0) {
+      return;
+    }
+
+    try {
+      outbox.write(message);
+    } catch (IOException e) {
+      THROTTLED_LOGGER.warn(
+          "persist", () -> "Cannot write outbox, the message is lost if this node departs: " + e);
+    }
+  }
+
+  /**
+   * Removes a message that was delivered, rejected or abandoned from the outbox.
+   *
+   * @param message The message.
+   */
+  public void release(OutboundMessage message) {
+    if (ring == null || message.getFingerprint() == 0) {
+      return;
+    }
+
+    try {
+      outbox.remove(message);
+    } catch (IOException e) {
+      THROTTLED_LOGGER.warn("release", () -> "Cannot remove message from outbox: " + e);
+    }
+  }
+
+  private void schedulePoll(long delayMillis) {
+    timer.schedule(
+        () -> {
+          ExecutorService current;
+          current = executor;
+
+          if (current != null) {
+            try {
+              current.execute(this::pollAndReschedule);
+            } catch (RejectedExecutionException e) {
+              // Stopping
+            }
+          }
+        },
+        delayMillis,
+        TimeUnit.MILLISECONDS);
+  }
+
+  private void pollAndReschedule() {
+    try {
+      poll(System.currentTimeMillis());
+    } catch (RuntimeException e) {
+      THROTTLED_LOGGER.error("poll", "Cannot check on cluster nodes", e);
+    } finally {
+      if (executor != null) {
+        schedulePoll(heartbeatMillis);
+      }
+    }
+  }
+
+  /**
+   * Beats, rebuilds the ring when peers joined or departed, and takes over the work of departed
+   * peers. Runs on a single thread.
+   *
+   * @param nowMillis The current time in milliseconds since the epoch.
+   */
+  void poll(long nowMillis) {
+    beat(nowMillis);
+
+    Set<String> live;
+    live = new TreeSet<>();
+    live.add(node);
+    for (String peer : nodes) {
+      if (!peer.equals(node) && isAlive(peer, nowMillis)) {
+        live.add(peer);
+      }
+    }
+
+    HashRing current;
+    current = ring;
+
+    Set<String> departed;
+    departed = new HashSet<>(current.getNodes());
+    departed.removeAll(live);
+
+    if (!live.equals(current.getNodes())) {
+      LOGGER.info("Sharing delivery between " + live + ", previously " + current.getNodes());
+      current = new HashRing(live, HashRing.DEFAULT_REPLICAS);
+      ring = current;
+    }
+    metrics.setLiveNodes(live.size());
+
+    Set<Long> takenOver;
+    takenOver = new HashSet<>();
+
+    if (!recovered) {
+      recovered = true;
+      takenOver.addAll(recover());
+    }
+
+    takenOver.addAll(takeOver(current, live));
+    replay(current, departed, takenOver, nowMillis);
+  }
+
+  private void beat(long nowMillis) {
+    Path file;
+    file = heartbeats.resolve(node);
+
+    Path temporary;
+    temporary = heartbeats.resolve("." + node + ".tmp");
+
+    try {
+      Files.createDirectories(heartbeats);
+      Files.write(temporary, Long.toString(nowMillis).getBytes(StandardCharsets.UTF_8));
+      Files.move(temporary, file, StandardCopyOption.ATOMIC_MOVE);
+    } catch (IOException e) {
+      THROTTLED_LOGGER.warn("beat", () -> "Cannot write heartbeat to " + file + ": " + e);
+    }
+  }
+
+  private boolean isAlive(String peer, long nowMillis) {
+    try {
+      long beat;
+      beat =
+          Long.parseLong(
+              new String(Files.readAllBytes(heartbeats.resolve(peer)), StandardCharsets.UTF_8)
+                  .trim());
+
+      return nowMillis - beat <= timeoutMillis;
+    } catch (NoSuchFileException e) {
+      return false;
+    } catch (IOException | NumberFormatException e) {
+      THROTTLED_LOGGER.warn("heartbeat", () -> "Cannot read heartbeat of " + peer + ": " + e);
+      return false;
+    }
+  }
+
+  /** Resumes the messages a previous run of this node left in its outbox. */
+  private Set<Long> recover() {
+    Set<Long> result;
+    result = new HashSet<>();
+
+    try {
+      for (OutboundMessage message : outbox.recover()) {
+        result.add(message.getFingerprint());
+        handler.resume(message);
+      }
+    } catch (IOException e) {
+      THROTTLED_LOGGER.warn("recover", () -> "Cannot read outbox: " + e);
+    }
+
+    return result;
+  }
+
+  /** Moves over the outbox messages of every node that is not alive and that this node owns. */
+  private Set<Long> takeOver(HashRing current, Set<String> live) {
+    Set<Long> result;
+    result = new HashSet<>();
+
+    try {
+      Set<String> peers;
+      peers = new TreeSet<>(outbox.listNodes());
+      peers.addAll(nodes);
+      peers.removeAll(live);
+
+      for (String peer : peers) {
+        List<OutboundMessage> messages;
+        messages = outbox.takeOver(peer, message -> node.equals(current.owner(key(message))));
+
+        if (!messages.isEmpty()) {
+          LOGGER.info("Taking over " + messages.size() + " messages of departed node " + peer);
+        }
+
+        for (OutboundMessage message : messages) {
+          result.add(message.getFingerprint());
+          metrics.messageRouted(PipelineMetrics.ROUTE_TAKEN_OVER);
+          handler.resume(message);
+        }
+      }
+    } catch (IOException e) {
+      THROTTLED_LOGGER.warn("takeover", () -> "Cannot take over outboxes of departed nodes: " + e);
+    }
+
+    return result;
+  }
+
+  /**
+   * Delivers the standby copies of messages routed to departed peers that this node now owns,
+   * unless they were just taken over from the peer's outbox. Messages the peer already delivered
+   * are dropped by the claim log. Standby copies older than the heartbeat timeout are discarded,
+   * their owner would have been noticed departing by now.
+   */
+  private void replay(HashRing current, Set<String> departed, Set<Long> takenOver, long nowMillis) {
+    List<OutboundMessage> messages;
+    messages = new ArrayList<>();
+
+    synchronized (standby) {
+      Iterator<Standby> entries;
+      entries = standby.iterator();
+
+      while (entries.hasNext()) {
+        Standby entry;
+        entry = entries.next();
+
+        if (departed.contains(entry.owner)) {
+          entries.remove();
+
+          if (node.equals(current.owner(key(entry.message)))
+              && !takenOver.contains(entry.message.getFingerprint())) {
+            messages.add(entry.message);
+          }
+        } else if (nowMillis - entry.routedOn > timeoutMillis + 2 * heartbeatMillis) {
+          entries.remove();
+        }
+      }
+    }
+
+    for (OutboundMessage message : messages) {
+      metrics.messageRouted(PipelineMetrics.ROUTE_REPLAYED);
+      handler.dispatch(message);
+    }
+  }
+
+  /** Routes by change, falling back to the event for messages that do not refer to a change. */
+  private static long key(OutboundMessage message) {
+    return message.getChangeKey() != 0 ? message.getChangeKey() : message.getFingerprint();
+  }
+
+  private static final class Standby {
+    private final long routedOn;
+    private final String owner;
+    private final OutboundMessage message;
+
+    private Standby(long routedOn, String owner, OutboundMessage message) {
+      this.routedOn = routedOn;
+      this.owner = owner;
+      this.message = message;
+    }
+  }
+}
@@ -0,0 +1,150 @@
+/*
+ * Copyright 2017 Cisco Systems, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package com.cisco.gerrit.plugins.slack.config;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.gerrit.server.config.PluginConfig;
+import com.google.gerrit.server.config.PluginConfigFactory;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The server-wide grouping of webhook hosts into bulkheads, read from the [plugin
+ * "slack-integration"] section of gerrit.config. Each bulkhead gets delivery threads and queues of
+ * its own, so a destination that hangs can only hold up the destinations in its own bulkhead.
+ */
+@Singleton
+public class BulkheadConfig {
+  /** The class logger instance. */
+  private static final Logger LOGGER = LoggerFactory.getLogger(BulkheadConfig.class);
+
+  /** The default number of delivery threads of each configured bulkhead. */
+  public static final int DEFAULT_THREADS = 2;
+
+  private static final String PREFIX = "bulkhead-";
+  private static final String THREADS = PREFIX + "threads";
+
+  private final Map<String, String> groups;
+  private final int threads;
+
+  @Inject
+  BulkheadConfig(PluginConfigFactory configFactory) {
+    this(configFactory.getFromGerritConfig(ProjectConfig.CONFIG_NAME));
+  }
+
+  /**
+   * Creates a new BulkheadConfig.
+   *
+   * @param config The plugin section of gerrit.config, may be null.
+   */
+  public BulkheadConfig(PluginConfig config) {
+    this.groups = config != null ? parseGroups(config) : ImmutableMap.of();
+    this.threads =
+        parseThreads(config != null ? config.getInt(THREADS, DEFAULT_THREADS) : DEFAULT_THREADS);
+  }
+
+  private static Map<String, String> parseGroups(PluginConfig config) {
+    Map<String, String> result;
+    result = new HashMap<>();
+
+    if (config.getNames() == null) {
+      return ImmutableMap.of();
+    }
+
+    for (String name : config.getNames()) {
+      if (!name.startsWith(PREFIX) || name.equals(THREADS)) {
+        continue;
+      }
+
+      String group;
+      group = name.substring(PREFIX.length());
+
+      for (String value : config.getStringList(name)) {
+        if (value == null || value.trim().isEmpty()) {
+          continue;
+        }
+
+        String host;
+        host = value.trim().toLowerCase(Locale.ROOT);
+
+        String previous;
+        previous = result.putIfAbsent(host, group);
+        if (previous != null && !previous.equals(group)) {
+          LOGGER.warn(
+              "Ignoring " + name + " " + host + ", it is already in bulkhead " + previous);
+        }
+      }
+    }
+
+    return ImmutableMap.copyOf(result);
+  }
+
+  private static int parseThreads(int value) {
+    if (value < 1) {
+      LOGGER.warn("Ignoring " + THREADS + " " + value + ", it must be at least 1");
+      return DEFAULT_THREADS;
+    }
+
+    // The messages of a change are striped over the threads with a mask
+    if (Integer.bitCount(value) != 1) {
+      LOGGER.warn("Rounding " + THREADS + " " + value + " down to a power of two");
+      return Integer.highestOneBit(value);
+    }
+
+    return value;
+  }
+
+  /**
+   * Gets the bulkhead a webhook host belongs to.
+   *
+   * @param host The host of a webhook URL.
+   * @return The name of the bulkhead, null if the host shares the default delivery threads.
+   */
+  public String getBulkhead(String host) {
+    if (host == null || groups.isEmpty()) {
+      return null;
+    }
+
+    return groups.get(host.toLowerCase(Locale.ROOT));
+  }
+
+  /**
+   * Gets the names of the configured bulkheads.
+   *
+   * @return The bulkhead names, empty if all destinations share the default delivery threads.
+   */
+  public Set<String> getBulkheads() {
+    return ImmutableSet.copyOf(groups.values());
+  }
+
+  /**
+   * Gets the number of delivery threads of each configured bulkhead, a power of two.
+   *
+   * @return The number of threads.
+   */
+  public int getThreads() {
+    return threads;
+  }
+}
@@ -0,0 +1,81 @@
+/*
+ * Copyright 2017 Cisco Systems, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package com.cisco.gerrit.plugins.slack.config;
+
+import com.google.gerrit.reviewdb.client.Project;
+import com.google.gerrit.server.config.PluginConfig;
+import com.google.gerrit.server.config.PluginConfigFactory;
+import com.google.gerrit.server.project.NoSuchProjectException;
+
+/**
+ * Where the plugin's settings come from: Gerrit's project configs when running as a plugin, or a
+ * local mirror of them when running as a sidecar.
+ */
+public interface ConfigSource {
+  /**
+   * Gets the plugin section of a project's config, with the values it inherits from its parents.
+   *
+   * @param project The project name.
+   * @return The plugin config.
+   * @throws NoSuchProjectException if the project does not exist.
+   */
+  PluginConfig getProjectConfig(String project) throws NoSuchProjectException;
+
+  /**
+   * Gets the plugin section of gerrit.config.
+   *
+   * @return The plugin config, may be null.
+   */
+  PluginConfig getServerConfig();
+
+  /**
+   * Gets the plugin section of gerrit.config, reading it again first if it changed on disk.
+   *
+   * @return The plugin config, may be null.
+   */
+  default PluginConfig reloadServerConfig() {
+    return getServerConfig();
+  }
+
+  /**
+   * Reads the settings through Gerrit.
+   *
+   * @param configFactory The Gerrit PluginConfigFactory instance to use.
+   * @return The config source.
+   */
+  static ConfigSource of(PluginConfigFactory configFactory) {
+    return new ConfigSource() {
+      @Override
+      public PluginConfig getProjectConfig(String project) throws NoSuchProjectException {
+        return configFactory.getFromProjectConfigWithInheritance(
+            Project.NameKey.parse(project), ProjectConfig.CONFIG_NAME);
+      }
+
+      @Override
+      public PluginConfig getServerConfig() {
+        return configFactory.getFromGerritConfig(ProjectConfig.CONFIG_NAME);
+      }
+
+      @Override
+      public PluginConfig reloadServerConfig() {
+        // Later reads without a refresh also see the reloaded gerrit.config
+        return configFactory.getFromGerritConfig(ProjectConfig.CONFIG_NAME, true);
+      }
+    };
+  }
+}
@@ -0,0 +1,183 @@
+/*
+ * Copyright 2017 Cisco Systems, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package com.cisco.gerrit.plugins.slack.config;
+
+import com.google.common.collect.ImmutableSet;
+import java.util.Set;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * A destination messages are posted to in addition to the project's channel, such as
+ * "releases events=change-merged branch=release/*". Its first word is the channel, followed by
+ * optional filters and the webhook URL to post to when it differs from the project's.
+ */
+public final class Destination {
+  private static final String REFS_HEADS = "refs/heads/";
+
+  private final String channel;
+  private final String webhookUrl;
+  private final ImmutableSet<String> eventTypes;
+  private final Pattern branch;
+
+  private Destination(
+      String channel, String webhookUrl, ImmutableSet<String> eventTypes, Pattern branch) {
+    this.channel = channel;
+    this.webhookUrl = webhookUrl;
+    this.eventTypes = eventTypes;
+    this.branch = branch;
+  }
+
+  /**
+   * Parses a destination from its "channel [events=type,...] [branch=pattern] [webhookurl=url]"
+   * form. A branch pattern starting with ^ is a regular expression, one ending in * matches the
+   * branches starting with the rest of it, any other matches a single branch.
+   *
+   * @param str The string to parse.
+   * @return The parsed destination.
+   * @throws IllegalArgumentException if the string is not a valid destination
+   */
+  public static Destination parse(String str) {
+    String[] words;
+    words = str == null ? new String[0] : str.trim().split("\\s+");
+
+    if (words.length == 0 || words[0].isEmpty() || words[0].contains("=")) {
+      throw new IllegalArgumentException("Invalid destination: no channel");
+    }
+
+    String channel;
+    channel = words[0].startsWith("#") ? words[0].substring(1) : words[0];
+
+    String webhookUrl;
+    webhookUrl = null;
+
+    ImmutableSet<String> eventTypes;
+    eventTypes = ImmutableSet.of();
+
+    Pattern branch;
+    branch = null;
+
+    for (int i = 1; i < words.length; i++) {
+      int equals;
+      equals = words[i].indexOf('=');
+
+      String name;
+      name = equals != -1 ? words[i].substring(0, equals) : words[i];
+
+      String value;
+      value = equals != -1 ? words[i].substring(equals + 1) : "";
+
+      if (value.isEmpty()) {
+        throw invalid(channel);
+      }
+
+      switch (name) {
+        case "webhookurl":
+          webhookUrl = value;
+          break;
+        case "events":
+          eventTypes = ImmutableSet.copyOf(value.split(","));
+          break;
+        case "branch":
+          branch = parseBranch(value, channel);
+          break;
+        default:
+          throw invalid(channel);
+      }
+    }
+
+    return new Destination(channel, webhookUrl, eventTypes, branch);
+  }
+
+  /** Names the destination by its channel only, since its webhook URL carries a secret. */
+  private static IllegalArgumentException invalid(String channel) {
+    return new IllegalArgumentException("Invalid destination for channel " + channel);
+  }
+
+  private static Pattern parseBranch(String value, String channel) {
+    String pattern;
+    pattern = value.startsWith(REFS_HEADS) ? value.substring(REFS_HEADS.length()) : value;
+
+    try {
+      if (pattern.startsWith("^")) {
+        return Pattern.compile(pattern);
+      } else if (pattern.endsWith("*")) {
+        return Pattern.compile(Pattern.quote(pattern.substring(0, pattern.length() - 1)) + ".*");
+      }
+      return Pattern.compile(Pattern.quote(pattern));
+    } catch (PatternSyntaxException e) {
+      IllegalArgumentException invalid;
+      invalid = invalid(channel);
+      invalid.initCause(e);
+      throw invalid;
+    }
+  }
+
+  /**
+   * Gets the channel to post to.
+   *
+   * @return The channel name, without a leading #.
+   */
+  public String getChannel() {
+    return channel;
+  }
+
+  /**
+   * Gets the webhook URL to post to.
+   *
+   * @return The URL, null to post through the project's webhook.
+   */
+  public String getWebhookUrl() {
+    return webhookUrl;
+  }
+
+  /**
+   * Gets the event types posted to the destination.
+   *
+   * @return The event types, empty for all.
+   */
+  public Set<String> getEventTypes() {
+    return eventTypes;
+  }
+
+  /**
+   * Whether the message of an event goes to this destination.
+   *
+   * @param eventType The type of the event.
+   * @param branch The short name of the change's branch, null if the event has no change.
+   * @return True if the message is posted here, otherwise false
+   */
+  public boolean matches(String eventType, String branch) {
+    if (!eventTypes.isEmpty() && !eventTypes.contains(eventType)) {
+      return false;
+    }
+
+    if (this.branch == null) {
+      return true;
+    }
+
+    if (branch == null) {
+      return false;
+    }
+
+    String name;
+    name = branch.startsWith(REFS_HEADS) ? branch.substring(REFS_HEADS.length()) : branch;
+
+    return this.branch.matcher(name).matches();
+  }
+}
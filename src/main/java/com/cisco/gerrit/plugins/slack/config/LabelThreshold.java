@@ -0,0 +1,89 @@
+/*
+ * Copyright 2017 Cisco Systems, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package com.cisco.gerrit.plugins.slack.config;
+
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * A label vote threshold such as "Code-Review+2" or "Verified-1". A positive threshold is crossed
+ * when a vote rises to or above it, a negative threshold when a vote falls to or below it.
+ */
+public final class LabelThreshold {
+  private static final Pattern FORMAT = Pattern.compile("^\\s*(\\S+?)\\s*([+-]?\\d+)\\s*$");
+
+  private final String label;
+  private final int value;
+
+  public LabelThreshold(String label, int value) {
+    this.label = label;
+    this.value = value;
+  }
+
+  /**
+   * Parses a threshold from its "Label+N" or "Label-N" form.
+   *
+   * @param str The string to parse.
+   * @return The parsed threshold.
+   * @throws IllegalArgumentException if the string is not a valid threshold
+   */
+  public static LabelThreshold parse(String str) {
+    Matcher matcher;
+    matcher = FORMAT.matcher(str == null ? "" : str);
+
+    if (!matcher.matches()) {
+      throw new IllegalArgumentException("Invalid label threshold: " + str);
+    }
+
+    return new LabelThreshold(matcher.group(1), Integer.parseInt(matcher.group(2)));
+  }
+
+  public String getLabel() {
+    return label;
+  }
+
+  public int getValue() {
+    return value;
+  }
+
+  /**
+   * Whether a vote on the given label moving from one value to another crosses this threshold.
+   *
+   * @param label The label that was voted on.
+   * @param from The previous vote.
+   * @param to The new vote.
+   * @return True if the threshold was crossed, otherwise false
+   */
+  public boolean isCrossed(String label, int from, int to) {
+    if (!this.label.equalsIgnoreCase(label)) {
+      return false;
+    }
+
+    if (value > 0) {
+      return from < value && to >= value;
+    } else if (value < 0) {
+      return from > value && to <= value;
+    }
+    return from != 0 && to == 0;
+  }
+
+  @Override
+  public String toString() {
+    return label + (value >= 0 ? "+" : "") + value;
+  }
+}
@@ -0,0 +1,105 @@
+/*
+ * Copyright 2017 Cisco Systems, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package com.cisco.gerrit.plugins.slack.config;
+
+import com.google.gerrit.server.config.PluginConfig;
+import com.google.gerrit.server.config.PluginConfigFactory;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The backlog watermarks at which the plugin starts shedding load in a bulkhead, read from the
+ * [plugin "slack-integration"] section of gerrit.config.
+ */
+@Singleton
+public class LoadSheddingConfig {
+  /** The class logger instance. */
+  private static final Logger LOGGER = LoggerFactory.getLogger(LoadSheddingConfig.class);
+
+  /** The default backlog at which low priority events are folded into digests. */
+  public static final int DEFAULT_DEGRADE_WATERMARK = 500;
+
+  /** The default backlog at which low priority events are skipped altogether. */
+  public static final int DEFAULT_SHED_WATERMARK = 2000;
+
+  private final int degradeWatermark;
+  private final int shedWatermark;
+
+  @Inject
+  LoadSheddingConfig(PluginConfigFactory configFactory) {
+    this(configFactory.getFromGerritConfig(ProjectConfig.CONFIG_NAME));
+  }
+
+  /**
+   * Creates a new LoadSheddingConfig.
+   *
+   * @param config The plugin section of gerrit.config, may be null.
+   */
+  public LoadSheddingConfig(PluginConfig config) {
+    int degrade;
+    degrade =
+        config != null
+            ? config.getInt("backlog-degrade-watermark", DEFAULT_DEGRADE_WATERMARK)
+            : DEFAULT_DEGRADE_WATERMARK;
+
+    int shed;
+    shed =
+        config != null
+            ? config.getInt("backlog-shed-watermark", DEFAULT_SHED_WATERMARK)
+            : DEFAULT_SHED_WATERMARK;
+
+    if (degrade < 1) {
+      LOGGER.warn("Ignoring backlog-degrade-watermark " + degrade + ", it must be at least 1");
+      degrade = DEFAULT_DEGRADE_WATERMARK;
+    }
+
+    if (shed < degrade) {
+      LOGGER.warn(
+          "Ignoring backlog-shed-watermark "
+              + shed
+              + ", it must not be below the backlog-degrade-watermark "
+              + degrade);
+      shed = Math.max(degrade, DEFAULT_SHED_WATERMARK);
+    }
+
+    this.degradeWatermark = degrade;
+    this.shedWatermark = shed;
+  }
+
+  /**
+   * Gets the backlog at which low priority events are folded into digests and comments are
+   * shortened.
+   *
+   * @return The number of queued messages.
+   */
+  public int getDegradeWatermark() {
+    return degradeWatermark;
+  }
+
+  /**
+   * Gets the backlog at which low priority events are skipped and normal priority events are
+   * folded into digests.
+   *
+   * @return The number of queued messages.
+   */
+  public int getShedWatermark() {
+    return shedWatermark;
+  }
+}
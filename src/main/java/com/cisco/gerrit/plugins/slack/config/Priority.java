@@ -0,0 +1,67 @@
+/*
+ * Copyright 2017 Cisco Systems, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package com.cisco.gerrit.plugins.slack.config;
+
+import com.google.common.collect.ImmutableMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * The delivery lane of a message. When messages back up, the delivery threads serve the higher
+ * lanes first, so the notifications people act on are not stuck behind comment chatter.
+ */
+public enum Priority {
+  HIGH,
+  NORMAL,
+  LOW;
+
+  /** The lanes of the event types that do not default to normal. */
+  private static final Map<String, Priority> DEFAULTS =
+      ImmutableMap.of(
+          "change-merged", HIGH,
+          "wip-state-changed", HIGH,
+          "comment-added", LOW);
+
+  /**
+   * Gets the lane an event type is delivered in unless configured otherwise.
+   *
+   * @param eventType The type of the Gerrit event.
+   * @return The priority.
+   */
+  public static Priority defaultFor(String eventType) {
+    Priority result;
+    result = DEFAULTS.get(eventType);
+
+    return result != null ? result : NORMAL;
+  }
+
+  /**
+   * Parses a priority from its name, ignoring case.
+   *
+   * @param str The string to parse.
+   * @return The parsed priority.
+   * @throws IllegalArgumentException if the string is not a valid priority
+   */
+  public static Priority parse(String str) {
+    try {
+      return valueOf(str.trim().toUpperCase(Locale.ROOT));
+    } catch (NullPointerException | IllegalArgumentException e) {
+      throw new IllegalArgumentException("Invalid priority: " + str);
+    }
+  }
+}
@@ -17,9 +17,20 @@
 
 package com.cisco.gerrit.plugins.slack.config;
 
-import com.google.gerrit.reviewdb.client.Project;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.gerrit.server.config.ConfigUtil;
+import com.google.gerrit.server.config.PluginConfig;
 import com.google.gerrit.server.config.PluginConfigFactory;
+import com.google.gerrit.server.data.AccountAttribute;
 import com.google.gerrit.server.project.NoSuchProjectException;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -31,12 +42,23 @@ import org.slf4j.LoggerFactory;
 public class ProjectConfig {
   /** The name of the plugin config section to lookup within the gerrit.config file. */
   public static final String CONFIG_NAME = "slack-integration";
+  /** The default mode, messages are posted to the webhook. */
+  public static final String MODE_POST = "post";
+  /** Messages are rendered and measured but written to a local capture instead of posted. */
+  public static final String MODE_SHADOW = "shadow";
+  /** The prefix of the options setting the priority of a single event type. */
+  private static final String PRIORITY_PREFIX = "priority-";
+  /** The prefix of the options setting the time to live of a single event type. */
+  private static final String TTL_PREFIX = "ttl-";
   /** The class logger instance. */
   private static final Logger LOGGER = LoggerFactory.getLogger(ProjectConfig.class);
 
   private boolean enabled;
+  private boolean shadow;
   private String webhookUrl;
   private String channel;
+  private List<Destination> destinations;
+  private String webhookHost;
   private String username;
   private String ignore;
   private boolean ignoreUnchangedPatchSet;
@@ -48,6 +70,14 @@ public class ProjectConfig {
   private boolean publishOnReviewerAdded;
   private boolean publishOnWipReady;
   private boolean publishOnPrivateToPublic;
+  private List<LabelThreshold> labelThresholds;
+  private ImmutableSet<String> suppressedAccounts;
+  private Priority priority;
+  private int weight;
+  private Map<String, Priority> eventPriorities;
+  private long ttlMillis;
+  private Map<String, Long> eventTtls;
+  private boolean summarizeExpired;
 
   /**
    * Creates a new instance of the ProjectConfig class for the given project.
@@ -56,98 +86,307 @@ public class ProjectConfig {
    * @param project The project to use when looking up a configuration.
    */
   public ProjectConfig(PluginConfigFactory configFactory, String project) {
-    enabled = false;
+    this(ConfigSource.of(configFactory), project);
+  }
 
-    Project.NameKey projectNameKey;
-    projectNameKey = Project.NameKey.parse(project);
+  /**
+   * Creates a new instance of the ProjectConfig class for the given project.
+   *
+   * @param configSource Where to read the configuration from.
+   * @param project The project to use when looking up a configuration.
+   */
+  public ProjectConfig(ConfigSource configSource, String project) {
+    enabled = false;
+    labelThresholds = Collections.emptyList();
+    destinations = Collections.emptyList();
+    suppressedAccounts = ImmutableSet.of();
+    eventPriorities = ImmutableMap.of();
+    weight = 1;
+    eventTtls = ImmutableMap.of();
+    summarizeExpired = true;
 
     try {
-      enabled =
-          configFactory
-              .getFromProjectConfigWithInheritance(projectNameKey, CONFIG_NAME)
-              .getBoolean("enabled", false);
-
-      webhookUrl =
-          configFactory
-              .getFromProjectConfigWithInheritance(projectNameKey, CONFIG_NAME)
-              .getString("webhookurl", "");
-
-      channel =
-          configFactory
-              .getFromProjectConfigWithInheritance(projectNameKey, CONFIG_NAME)
-              .getString("channel", "general");
-
-      username =
-          configFactory
-              .getFromProjectConfigWithInheritance(projectNameKey, CONFIG_NAME)
-              .getString("username", "gerrit");
-
-      ignore =
-          configFactory
-              .getFromProjectConfigWithInheritance(projectNameKey, CONFIG_NAME)
-              .getString("ignore", "");
-
-      ignoreUnchangedPatchSet =
-          configFactory
-              .getFromProjectConfigWithInheritance(projectNameKey, CONFIG_NAME)
-              .getBoolean("ignore-unchanged-patch-set", true);
-
-      ignoreWorkInProgressPatchSet =
-          configFactory
-              .getFromProjectConfigWithInheritance(projectNameKey, CONFIG_NAME)
-              .getBoolean("ignore-wip-patch-set", true);
-
-      ignorePrivatePatchSet =
-          configFactory
-              .getFromProjectConfigWithInheritance(projectNameKey, CONFIG_NAME)
-              .getBoolean("ignore-private-patch-set", true);
-
-      publishOnPatchSetCreated =
-          configFactory
-              .getFromProjectConfigWithInheritance(projectNameKey, CONFIG_NAME)
-              .getBoolean("publish-on-patch-set-created", true);
-
-      publishOnChangeMerged =
-          configFactory
-              .getFromProjectConfigWithInheritance(projectNameKey, CONFIG_NAME)
-              .getBoolean("publish-on-change-merged", true);
-
-      publishOnCommentAdded =
-          configFactory
-              .getFromProjectConfigWithInheritance(projectNameKey, CONFIG_NAME)
-              .getBoolean("publish-on-comment-added", true);
-
-      publishOnReviewerAdded =
-          configFactory
-              .getFromProjectConfigWithInheritance(projectNameKey, CONFIG_NAME)
-              .getBoolean("publish-on-reviewer-added", true);
-
-      publishOnWipReady =
-          configFactory
-              .getFromProjectConfigWithInheritance(projectNameKey, CONFIG_NAME)
-              .getBoolean("publish-on-wip-ready", publishOnPatchSetCreated);
+      PluginConfig pluginConfig;
+      pluginConfig = configSource.getProjectConfig(project);
+
+      enabled = pluginConfig.getBoolean("enabled", false);
+
+      shadow = parseShadow(project, pluginConfig.getString("mode", MODE_POST));
+
+      webhookUrl = pluginConfig.getString("webhookurl", "");
+
+      channel = pluginConfig.getString("channel", "general");
+
+      destinations =
+          parseDestinations(
+              project, pluginConfig.getStringList("destination"), shadow || !webhookUrl.isEmpty());
+
+      // Shadow messages are captured on the default delivery threads
+      if (!shadow && !webhookUrl.isEmpty()) {
+        webhookHost = parseHost(webhookUrl);
+      } else if (!shadow && !destinations.isEmpty()) {
+        webhookHost = parseHost(destinations.get(0).getWebhookUrl());
+      }
+
+      username = pluginConfig.getString("username", "gerrit");
+
+      ignore = pluginConfig.getString("ignore", "");
+
+      ignoreUnchangedPatchSet = pluginConfig.getBoolean("ignore-unchanged-patch-set", true);
+
+      ignoreWorkInProgressPatchSet = pluginConfig.getBoolean("ignore-wip-patch-set", true);
+
+      ignorePrivatePatchSet = pluginConfig.getBoolean("ignore-private-patch-set", true);
+
+      publishOnPatchSetCreated = pluginConfig.getBoolean("publish-on-patch-set-created", true);
+
+      publishOnChangeMerged = pluginConfig.getBoolean("publish-on-change-merged", true);
+
+      publishOnCommentAdded = pluginConfig.getBoolean("publish-on-comment-added", true);
+
+      publishOnReviewerAdded = pluginConfig.getBoolean("publish-on-reviewer-added", true);
+
+      publishOnWipReady = pluginConfig.getBoolean("publish-on-wip-ready", publishOnPatchSetCreated);
 
       publishOnPrivateToPublic =
-          configFactory
-              .getFromProjectConfigWithInheritance(projectNameKey, CONFIG_NAME)
-              .getBoolean("publish-on-private-to-public", publishOnPatchSetCreated);
+          pluginConfig.getBoolean("publish-on-private-to-public", publishOnPatchSetCreated);
+
+      labelThresholds = parseLabelThresholds(pluginConfig.getStringList("publish-on-label"));
+
+      suppressedAccounts = compileSuppressedAccounts(configSource.getServerConfig(), pluginConfig);
+
+      priority = parsePriority(project, "priority", pluginConfig.getString("priority"));
+
+      eventPriorities = parseEventPriorities(project, pluginConfig);
+
+      weight = parseWeight(project, pluginConfig.getInt("weight", 1));
+
+      Long ttl;
+      ttl = parseTtl(project, "ttl", pluginConfig.getString("ttl"));
+
+      ttlMillis = ttl != null ? ttl : 0;
+
+      eventTtls = parseEventTtls(project, pluginConfig);
+
+      summarizeExpired = pluginConfig.getBoolean("summarize-expired", true);
     } catch (NoSuchProjectException e) {
       LOGGER.warn("The specified project could not be found: " + project);
     }
   }
 
+  private static String parseHost(String webhookUrl) {
+    try {
+      return new URI(webhookUrl).getHost();
+    } catch (URISyntaxException e) {
+      return null;
+    }
+  }
+
+  private static boolean parseShadow(String project, String mode) {
+    if (mode == null || mode.trim().equalsIgnoreCase(MODE_POST)) {
+      return false;
+    }
+
+    if (mode.trim().equalsIgnoreCase(MODE_SHADOW)) {
+      return true;
+    }
+
+    LOGGER.warn("Ignoring invalid mode " + mode + " for " + project + ", posting messages");
+    return false;
+  }
+
+  private static Priority parsePriority(String project, String name, String value) {
+    if (value == null || value.trim().isEmpty()) {
+      return null;
+    }
+
+    try {
+      return Priority.parse(value);
+    } catch (IllegalArgumentException e) {
+      LOGGER.warn("Ignoring invalid " + name + " value " + value + " for " + project);
+      return null;
+    }
+  }
+
+  private static int parseWeight(String project, int value) {
+    if (value < 1) {
+      LOGGER.warn("Ignoring invalid weight " + value + " for " + project + ", using 1");
+      return 1;
+    }
+
+    return value;
+  }
+
+  private static Map<String, Priority> parseEventPriorities(
+      String project, PluginConfig pluginConfig) {
+    ImmutableMap.Builder<String, Priority> result;
+    result = ImmutableMap.builder();
+
+    if (pluginConfig.getNames() != null) {
+      for (String name : pluginConfig.getNames()) {
+        if (name.startsWith(PRIORITY_PREFIX)) {
+          Priority value;
+          value = parsePriority(project, name, pluginConfig.getString(name));
+
+          if (value != null) {
+            result.put(name.substring(PRIORITY_PREFIX.length()), value);
+          }
+        }
+      }
+    }
+
+    return result.build();
+  }
+
+  private static Long parseTtl(String project, String name, String value) {
+    if (value == null || value.trim().isEmpty()) {
+      return null;
+    }
+
+    try {
+      return ConfigUtil.getTimeUnit(value, 0, TimeUnit.MILLISECONDS);
+    } catch (IllegalArgumentException e) {
+      LOGGER.warn("Ignoring invalid " + name + " value " + value + " for " + project);
+      return null;
+    }
+  }
+
+  private static Map<String, Long> parseEventTtls(String project, PluginConfig pluginConfig) {
+    ImmutableMap.Builder<String, Long> result;
+    result = ImmutableMap.builder();
+
+    if (pluginConfig.getNames() != null) {
+      for (String name : pluginConfig.getNames()) {
+        if (name.startsWith(TTL_PREFIX)) {
+          Long value;
+          value = parseTtl(project, name, pluginConfig.getString(name));
+
+          if (value != null) {
+            result.put(name.substring(TTL_PREFIX.length()), value);
+          }
+        }
+      }
+    }
+
+    return result.build();
+  }
+
+  private static List<LabelThreshold> parseLabelThresholds(String[] values) {
+    if (values == null || values.length == 0) {
+      return Collections.emptyList();
+    }
+
+    List<LabelThreshold> result;
+    result = new ArrayList<>(values.length);
+
+    for (String value : values) {
+      try {
+        result.add(LabelThreshold.parse(value));
+      } catch (IllegalArgumentException e) {
+        LOGGER.warn("Ignoring invalid publish-on-label value: " + value);
+      }
+    }
+
+    return Collections.unmodifiableList(result);
+  }
+
+  private static List<Destination> parseDestinations(
+      String project, String[] values, boolean hasWebhookUrl) {
+    if (values == null || values.length == 0) {
+      return Collections.emptyList();
+    }
+
+    List<Destination> result;
+    result = new ArrayList<>(values.length);
+
+    for (String value : values) {
+      Destination destination;
+      try {
+        destination = Destination.parse(value);
+      } catch (IllegalArgumentException e) {
+        // The value may carry a webhook secret
+        LOGGER.warn("Ignoring destination of " + project + ": " + e.getMessage());
+        continue;
+      }
+
+      // Without a webhook of its own, a destination is reached through the project's
+      if (destination.getWebhookUrl() == null && !hasWebhookUrl) {
+        LOGGER.warn(
+            "Ignoring destination #"
+                + destination.getChannel()
+                + " of "
+                + project
+                + ": neither it nor the project has a webhookurl");
+        continue;
+      }
+
+      result.add(destination);
+    }
+
+    return Collections.unmodifiableList(result);
+  }
+
+  private static ImmutableSet<String> compileSuppressedAccounts(PluginConfig... configs) {
+    ImmutableSet.Builder<String> result;
+    result = ImmutableSet.builder();
+
+    for (PluginConfig config : configs) {
+      String[] values;
+      values = config != null ? config.getStringList("suppress-account") : null;
+
+      if (values != null) {
+        for (String value : values) {
+          if (value != null && !value.trim().isEmpty()) {
+            result.add(value.trim());
+          }
+        }
+      }
+    }
+
+    return result.build();
+  }
+
   public boolean isEnabled() {
     return enabled;
   }
 
+  /**
+   * Whether the project is in shadow mode, where messages go through the whole pipeline but are
+   * written to a local capture instead of being posted.
+   *
+   * @return True if messages should be captured, otherwise false
+   */
+  public boolean isShadow() {
+    return shadow;
+  }
+
   public String getWebhookUrl() {
     return webhookUrl;
   }
 
+  /**
+   * Gets the host of the webhook the project's messages are posted through, which decides the
+   * bulkhead whose backlog they are shed by.
+   *
+   * @return The host, null for shadow mode or a missing or invalid URL.
+   */
+  public String getWebhookHost() {
+    return webhookHost;
+  }
+
   public String getChannel() {
     return channel;
   }
 
+  /**
+   * Gets the destinations the project's messages are posted to in addition to its channel.
+   *
+   * @return The destinations, empty if messages only go to the channel.
+   */
+  public List<Destination> getDestinations() {
+    return destinations;
+  }
+
   public String getUsername() {
     return username;
   }
@@ -191,4 +430,76 @@ public class ProjectConfig {
   public boolean shouldPublishOnPrivateToPublic() {
     return publishOnPrivateToPublic;
   }
+
+  /**
+   * Gets the delivery lane of the project's messages of an event type, set by priority-TYPE, else
+   * by priority, else the event type's default.
+   *
+   * @param eventType The type of the Gerrit event.
+   * @return The priority.
+   */
+  public Priority getPriority(String eventType) {
+    Priority result;
+    result = eventPriorities.get(eventType);
+
+    if (result == null) {
+      result = priority != null ? priority : Priority.defaultFor(eventType);
+    }
+
+    return result;
+  }
+
+  /**
+   * Gets the project's share of the delivery threads relative to other projects with messages of
+   * the same priority waiting.
+   *
+   * @return The weight, at least 1.
+   */
+  public int getWeight() {
+    return weight;
+  }
+
+  /**
+   * Gets how long after their event the project's messages of an event type are still worth
+   * posting, set by ttl-TYPE, else by ttl. Older messages are dropped before they are posted.
+   *
+   * @param eventType The type of the Gerrit event.
+   * @return The time to live in milliseconds, 0 if the messages never expire.
+   */
+  public long getTtl(String eventType) {
+    Long result;
+    result = eventTtls.get(eventType);
+
+    return result != null ? result : ttlMillis;
+  }
+
+  /**
+   * Whether expired messages are counted in a catch-up summary posted to the channel instead of
+   * being dropped silently.
+   *
+   * @return True if expired messages are summarized, otherwise false
+   */
+  public boolean shouldSummarizeExpired() {
+    return summarizeExpired;
+  }
+
+  public List<LabelThreshold> getLabelThresholds() {
+    return labelThresholds;
+  }
+
+  /**
+   * Whether events caused by the given account should never be published, either because the
+   * project or the global gerrit.config lists its username or email under suppress-account.
+   *
+   * @param account The account that caused the event, may be null.
+   * @return True if the account is suppressed, otherwise false
+   */
+  public boolean isSuppressed(AccountAttribute account) {
+    if (account == null || suppressedAccounts.isEmpty()) {
+      return false;
+    }
+
+    return (account.username != null && suppressedAccounts.contains(account.username))
+        || (account.email != null && suppressedAccounts.contains(account.email));
+  }
 }
@@ -0,0 +1,168 @@
+/*
+ * Copyright 2017 Cisco Systems, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package com.cisco.gerrit.plugins.slack.config;
+
+import com.google.gerrit.extensions.events.GitReferenceUpdatedListener;
+import com.google.gerrit.reviewdb.client.RefNames;
+import com.google.gerrit.server.config.PluginConfig;
+import com.google.gerrit.server.config.PluginConfigFactory;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Holds an immutable ProjectConfig snapshot per project, doubling as the index of projects that
+ * have the plugin enabled. Because settings are inherited, any update to a refs/meta/config branch
+ * drops every snapshot and they are rebuilt on next use. So does a change of the plugin's section
+ * of gerrit.config, which the ServerConfigWatcher checks for every few seconds.
+ *
+ * <p>Invalidating swaps in an empty map, so a snapshot that was being loaded while the configs
+ * changed only lands in the discarded map and is not served afterwards.
+ */
+@Singleton
+public class ProjectConfigCache implements GitReferenceUpdatedListener {
+  private static final int DEFAULT_CAPACITY = 16384;
+
+  private final ConfigSource configSource;
+  private final int capacity;
+
+  private volatile ConcurrentMap<String, ProjectConfig> configs = new ConcurrentHashMap<>();
+  private volatile String serverSettings;
+
+  @Inject
+  public ProjectConfigCache(PluginConfigFactory configFactory) {
+    this(ConfigSource.of(configFactory));
+  }
+
+  /**
+   * Creates a new ProjectConfigCache.
+   *
+   * @param configSource Where to read the project configs from.
+   */
+  public ProjectConfigCache(ConfigSource configSource) {
+    this(configSource, DEFAULT_CAPACITY);
+  }
+
+  /**
+   * Creates a new ProjectConfigCache.
+   *
+   * @param configSource Where to read the project configs from.
+   * @param capacity The number of projects to keep snapshots of, beyond which arbitrary ones are
+   *     dropped.
+   */
+  public ProjectConfigCache(ConfigSource configSource, int capacity) {
+    if (capacity < 1) {
+      throw new IllegalArgumentException("capacity must be positive");
+    }
+
+    this.configSource = configSource;
+    this.capacity = capacity;
+  }
+
+  /**
+   * Whether the plugin is enabled for the project, directly or through inheritance. Once the
+   * project's config is cached this is a single map lookup that allocates nothing.
+   *
+   * @param project The project name.
+   * @return True if the plugin is enabled, otherwise false
+   */
+  public boolean isEnabled(String project) {
+    return get(project).isEnabled();
+  }
+
+  /**
+   * Gets the config snapshot for the project, loading it if needed.
+   *
+   * @param project The project name.
+   * @return The project's config.
+   */
+  public ProjectConfig get(String project) {
+    ConcurrentMap<String, ProjectConfig> current;
+    current = configs;
+
+    ProjectConfig config;
+    config = current.get(project);
+
+    if (config == null) {
+      config = new ProjectConfig(configSource, project);
+
+      if (current.size() >= capacity) {
+        Iterator<String> projects;
+        projects = current.keySet().iterator();
+
+        if (projects.hasNext()) {
+          projects.next();
+          projects.remove();
+        }
+      }
+
+      ProjectConfig existing;
+      existing = current.putIfAbsent(project, config);
+      if (existing != null) {
+        config = existing;
+      }
+    }
+
+    return config;
+  }
+
+  /** Drops every snapshot, they are rebuilt on next use. */
+  public void invalidateAll() {
+    configs = new ConcurrentHashMap<>();
+  }
+
+  @Override
+  public void onGitReferenceUpdated(Event event) {
+    if (RefNames.REFS_CONFIG.equals(event.getRefName())) {
+      invalidateAll();
+    }
+  }
+
+  /**
+   * Reads the plugin's section of gerrit.config again, dropping every snapshot if it changed since
+   * last checked. This reads from disk, so it is called from the timer rather than with events.
+   */
+  public void checkServerConfig() {
+    String settings;
+    settings = describe(configSource.reloadServerConfig());
+
+    if (!settings.equals(serverSettings)) {
+      serverSettings = settings;
+      invalidateAll();
+    }
+  }
+
+  private static String describe(PluginConfig config) {
+    if (config == null) {
+      return "";
+    }
+
+    StringBuilder result;
+    result = new StringBuilder();
+
+    for (String name : config.getNames()) {
+      result.append(name).append('=').append(Arrays.toString(config.getStringList(name)));
+      result.append('\n');
+    }
+
+    return result.toString();
+  }
+}
@@ -0,0 +1,87 @@
+/*
+ * Copyright 2017 Cisco Systems, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package com.cisco.gerrit.plugins.slack.config;
+
+import com.cisco.gerrit.plugins.slack.util.ThrottledLogger;
+import com.cisco.gerrit.plugins.slack.util.TimingWheel;
+import com.google.gerrit.extensions.events.LifecycleListener;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import java.util.concurrent.TimeUnit;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Checks the plugin's section of gerrit.config for changes every few seconds from the timer
+ * thread, so that reading it from disk never delays the handling of an event.
+ */
+@Singleton
+public class ServerConfigWatcher implements LifecycleListener {
+  /** The class logger instance. */
+  private static final Logger LOGGER = LoggerFactory.getLogger(ServerConfigWatcher.class);
+  private static final ThrottledLogger THROTTLED_LOGGER = new ThrottledLogger(LOGGER);
+
+  private static final long CHECK_MILLIS = TimeUnit.SECONDS.toMillis(10);
+
+  private final ProjectConfigCache configCache;
+  private final TimingWheel timer;
+
+  private volatile boolean running;
+
+  /**
+   * Creates a new ServerConfigWatcher.
+   *
+   * @param configCache The cache to invalidate when the settings change.
+   * @param timer The timer driving the checks.
+   */
+  @Inject
+  public ServerConfigWatcher(ProjectConfigCache configCache, TimingWheel timer) {
+    this.configCache = configCache;
+    this.timer = timer;
+  }
+
+  @Override
+  public void start() {
+    running = true;
+    scheduleCheck();
+  }
+
+  @Override
+  public void stop() {
+    running = false;
+  }
+
+  private void scheduleCheck() {
+    timer.schedule(
+        () -> {
+          if (!running) {
+            return;
+          }
+
+          try {
+            configCache.checkServerConfig();
+          } catch (RuntimeException e) {
+            THROTTLED_LOGGER.warn("check", "Cannot check gerrit.config for changes", e);
+          } finally {
+            scheduleCheck();
+          }
+        },
+        CHECK_MILLIS,
+        TimeUnit.MILLISECONDS);
+  }
+}
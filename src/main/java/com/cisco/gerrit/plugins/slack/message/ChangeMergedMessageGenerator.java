@@ -20,6 +20,8 @@ package com.cisco.gerrit.plugins.slack.message;
 import static org.apache.commons.lang.StringUtils.substringBefore;
 
 import com.cisco.gerrit.plugins.slack.config.ProjectConfig;
+import com.cisco.gerrit.plugins.slack.util.EventAttributes;
+import com.cisco.gerrit.plugins.slack.util.ThrottledLogger;
 import com.google.gerrit.server.events.ChangeMergedEvent;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -32,6 +34,7 @@ import org.slf4j.LoggerFactory;
 public class ChangeMergedMessageGenerator implements MessageGenerator {
   /** The class logger instance. */
   private static final Logger LOGGER = LoggerFactory.getLogger(ChangeMergedMessageGenerator.class);
+  private static final ThrottledLogger THROTTLED_LOGGER = new ThrottledLogger(LOGGER);
 
   private ProjectConfig config;
   private ChangeMergedEvent event;
@@ -53,7 +56,9 @@ public class ChangeMergedMessageGenerator implements MessageGenerator {
 
   @Override
   public boolean shouldPublish() {
-    return config.isEnabled() && config.shouldPublishOnChangeMerged();
+    return config.isEnabled()
+        && config.shouldPublishOnChangeMerged()
+        && !config.isSuppressed(EventAttributes.getActor(event));
   }
 
   @Override
@@ -76,7 +81,7 @@ public class ChangeMergedMessageGenerator implements MessageGenerator {
 
       message = template.render();
     } catch (Exception e) {
-      LOGGER.error("Error generating message: " + e.getMessage(), e);
+      THROTTLED_LOGGER.error("generate", () -> "Error generating message: " + e.getMessage(), e);
     }
 
     return message;
@@ -19,7 +19,12 @@ package com.cisco.gerrit.plugins.slack.message;
 
 import static org.apache.commons.lang.StringUtils.substringBefore;
 
+import com.cisco.gerrit.plugins.slack.config.LabelThreshold;
 import com.cisco.gerrit.plugins.slack.config.ProjectConfig;
+import com.cisco.gerrit.plugins.slack.util.EventAttributes;
+import com.cisco.gerrit.plugins.slack.util.ThrottledLogger;
+import com.google.gerrit.server.data.AccountAttribute;
+import com.google.gerrit.server.data.ApprovalAttribute;
 import com.google.gerrit.server.data.ChangeAttribute;
 import com.google.gerrit.server.events.CommentAddedEvent;
 import org.slf4j.Logger;
@@ -34,23 +39,42 @@ import org.slf4j.LoggerFactory;
 public class CommentAddedMessageGenerator implements MessageGenerator {
   /** The class logger instance. */
   private static final Logger LOGGER = LoggerFactory.getLogger(CommentAddedMessageGenerator.class);
+  private static final ThrottledLogger THROTTLED_LOGGER = new ThrottledLogger(LOGGER);
 
   private ProjectConfig config;
   private CommentAddedEvent event;
+  private LabelStateCache labelStates;
+  private int maxCommentLength;
 
   /**
    * Creates a new CommentAddedMessageGenerator instance using the provided CommentAddedEvent
    * instance.
    *
    * @param event The CommentAddedEvent instance to generate a message for.
+   * @param labelStates The cache of previous votes, may be null.
    */
-  CommentAddedMessageGenerator(CommentAddedEvent event, ProjectConfig config) {
+  CommentAddedMessageGenerator(
+      CommentAddedEvent event, ProjectConfig config, LabelStateCache labelStates) {
     if (event == null) {
       throw new NullPointerException("event cannot be null");
     }
 
     this.event = event;
     this.config = config;
+    this.labelStates = labelStates;
+  }
+
+  /**
+   * Shortens the comment in the generated message, e.g. while delivery is backed up.
+   *
+   * @param maxCommentLength The number of characters to keep, 0 to keep the whole comment.
+   */
+  public void setMaxCommentLength(int maxCommentLength) {
+    if (maxCommentLength < 0) {
+      throw new IllegalArgumentException("maxCommentLength cannot be negative");
+    }
+
+    this.maxCommentLength = maxCommentLength;
   }
 
   @Override
@@ -59,6 +83,10 @@ public class CommentAddedMessageGenerator implements MessageGenerator {
       return false;
     }
 
+    if (config.isSuppressed(EventAttributes.getActor(event))) {
+      return false;
+    }
+
     try {
       ChangeAttribute change;
       change = event.change.get();
@@ -69,19 +97,117 @@ public class CommentAddedMessageGenerator implements MessageGenerator {
         return false;
       }
     } catch (Exception e) {
-      LOGGER.warn("Error checking private and work-in-progress status", e);
+      THROTTLED_LOGGER.warn("status", "Error checking private and work-in-progress status", e);
+    }
+
+    // With label thresholds configured only comments carrying a vote transition are published
+    if (!config.getLabelThresholds().isEmpty()) {
+      return crossesLabelThreshold();
     }
 
     return true;
   }
 
+  /**
+   * Records the votes carried by the comment and checks them against the configured thresholds.
+   * The previous vote is taken from the event when Gerrit reports it, then from the cache, and
+   * is otherwise assumed to be 0.
+   *
+   * @return True if any vote crossed a configured threshold, otherwise false
+   */
+  private boolean crossesLabelThreshold() {
+    ApprovalAttribute[] approvals;
+    approvals = event.approvals != null ? event.approvals.get() : null;
+
+    if (approvals == null) {
+      return false;
+    }
+
+    ChangeAttribute change;
+    change = event.change.get();
+
+    String voter;
+    voter = voter();
+
+    boolean result;
+    result = false;
+
+    for (ApprovalAttribute approval : approvals) {
+      Integer value;
+      value = parseVote(approval.value);
+      if (value == null) {
+        continue;
+      }
+
+      Integer previous;
+      previous = null;
+      if (labelStates != null) {
+        previous = labelStates.record(change, approval.type, voter, value);
+      }
+
+      Integer old;
+      old = parseVote(approval.oldValue);
+      if (old == null) {
+        old = previous != null ? previous : 0;
+      }
+
+      for (LabelThreshold threshold : config.getLabelThresholds()) {
+        if (threshold.isCrossed(approval.type, old, value)) {
+          result = true;
+        }
+      }
+    }
+
+    return result;
+  }
+
+  private String voter() {
+    AccountAttribute author;
+    author = event.author != null ? event.author.get() : null;
+
+    if (author == null) {
+      return "";
+    }
+    return author.username != null ? author.username : String.valueOf(author.email);
+  }
+
+  private String truncate(String comment) {
+    if (maxCommentLength == 0 || comment == null || comment.length() <= maxCommentLength) {
+      return comment;
+    }
+
+    int end;
+    end = maxCommentLength;
+
+    // Never split a surrogate pair
+    if (Character.isHighSurrogate(comment.charAt(end - 1))) {
+      end--;
+    }
+
+    return comment.substring(0, end) + "...";
+  }
+
+  private static Integer parseVote(String value) {
+    if (value == null || value.isEmpty()) {
+      return null;
+    }
+
+    try {
+      return Integer.valueOf(value.trim());
+    } catch (NumberFormatException e) {
+      return null;
+    }
+  }
+
   @Override
   public String generate() {
     String message;
     message = "";
 
-    LOGGER.info(substringBefore(event.change.get().commitMessage, "\n"));
-    LOGGER.info(event.comment);
+    if (LOGGER.isDebugEnabled()) {
+      LOGGER.debug(substringBefore(event.change.get().commitMessage, "\n"));
+      LOGGER.debug(event.comment);
+    }
 
     try {
       MessageTemplate template;
@@ -95,11 +221,11 @@ public class CommentAddedMessageGenerator implements MessageGenerator {
       template.setUrl(event.change.get().url);
       template.setNumber(event.change.get().number);
       template.setTitle(substringBefore(event.change.get().commitMessage, "\n"));
-      template.setMessage(event.comment);
+      template.setMessage(truncate(event.comment));
 
       message = template.render();
     } catch (Exception e) {
-      LOGGER.error("Error generating message: " + e.getMessage(), e);
+      THROTTLED_LOGGER.error("generate", () -> "Error generating message: " + e.getMessage(), e);
     }
 
     return message;
@@ -0,0 +1,78 @@
+/*
+ * Copyright 2017 Cisco Systems, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package com.cisco.gerrit.plugins.slack.message;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.gerrit.server.data.ChangeAttribute;
+import com.google.inject.Singleton;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Remembers the last vote each account cast on each label of an open change, so a repeated vote
+ * (e.g. CI re-voting Verified+1 on every patch set) can be told apart from a real transition.
+ * Changes are evicted once merged or abandoned, and the cache is bounded in size.
+ */
+@Singleton
+public class LabelStateCache {
+  private static final int MAX_CHANGES = 20000;
+
+  private final Cache<String, Map<String, Integer>> votes =
+      CacheBuilder.newBuilder()
+          .maximumSize(MAX_CHANGES)
+          .expireAfterAccess(30, TimeUnit.DAYS)
+          .build();
+
+  /**
+   * Records a vote and returns the vote it replaces.
+   *
+   * @param change The change voted on.
+   * @param label The label voted on.
+   * @param voter The account that voted.
+   * @param value The new vote.
+   * @return The previous vote by the same account on the same label, null if unknown.
+   */
+  public Integer record(ChangeAttribute change, String label, String voter, int value) {
+    try {
+      Map<String, Integer> changeVotes;
+      changeVotes = votes.get(key(change), ConcurrentHashMap::new);
+
+      return changeVotes.put(label + '\n' + voter, value);
+    } catch (ExecutionException e) {
+      return null;
+    }
+  }
+
+  /**
+   * Forgets all votes on a change.
+   *
+   * @param change The change to forget.
+   */
+  public void evict(ChangeAttribute change) {
+    if (change != null) {
+      votes.invalidate(key(change));
+    }
+  }
+
+  private static String key(ChangeAttribute change) {
+    return change.project + '~' + change.number;
+  }
+}
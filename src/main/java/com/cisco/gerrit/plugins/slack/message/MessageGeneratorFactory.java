@@ -71,8 +71,21 @@ public class MessageGeneratorFactory {
    * @return A MessageGenerator instance capable of generating a message for a CommentAddedEvent.
    */
   public static MessageGenerator newInstance(CommentAddedEvent event, ProjectConfig config) {
+    return newInstance(event, config, null);
+  }
+
+  /**
+   * Creates a new MessageGenerator for comment added events that tracks label votes across events.
+   *
+   * @param event A CommentAddedEvent instance
+   * @param config A ProjectConfig instance for the given event
+   * @param labelStates The cache of previous votes used to detect label transitions
+   * @return A MessageGenerator instance capable of generating a message for a CommentAddedEvent.
+   */
+  public static MessageGenerator newInstance(
+      CommentAddedEvent event, ProjectConfig config, LabelStateCache labelStates) {
     CommentAddedMessageGenerator messageGenerator;
-    messageGenerator = new CommentAddedMessageGenerator(event, config);
+    messageGenerator = new CommentAddedMessageGenerator(event, config, labelStates);
 
     return messageGenerator;
   }
@@ -18,6 +18,7 @@
 package com.cisco.gerrit.plugins.slack.message;
 
 import com.cisco.gerrit.plugins.slack.util.ResourceHelper;
+import com.cisco.gerrit.plugins.slack.util.ThrottledLogger;
 import java.io.IOException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -30,6 +31,7 @@ import org.slf4j.LoggerFactory;
 public class MessageTemplate {
   /** The class logger instance. */
   private static final Logger LOGGER = LoggerFactory.getLogger(MessageTemplate.class);
+  private static final ThrottledLogger THROTTLED_LOGGER = new ThrottledLogger(LOGGER);
 
   private String channel;
   private String name;
@@ -140,7 +142,7 @@ public class MessageTemplate {
               getMessage(),
               "good");
     } catch (IOException e) {
-      LOGGER.error("Error rendering template: " + e.getMessage(), e);
+      THROTTLED_LOGGER.error("render", () -> "Error rendering template: " + e.getMessage(), e);
     }
 
     return result;
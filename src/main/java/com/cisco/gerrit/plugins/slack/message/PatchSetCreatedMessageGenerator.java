@@ -20,6 +20,8 @@ package com.cisco.gerrit.plugins.slack.message;
 import static org.apache.commons.lang.StringUtils.substringBefore;
 
 import com.cisco.gerrit.plugins.slack.config.ProjectConfig;
+import com.cisco.gerrit.plugins.slack.util.EventAttributes;
+import com.cisco.gerrit.plugins.slack.util.ThrottledLogger;
 import com.google.gerrit.extensions.client.ChangeKind;
 import com.google.gerrit.server.data.ChangeAttribute;
 import com.google.gerrit.server.events.PatchSetCreatedEvent;
@@ -37,6 +39,7 @@ import org.slf4j.LoggerFactory;
 public class PatchSetCreatedMessageGenerator implements MessageGenerator {
   private static final Logger LOGGER =
       LoggerFactory.getLogger(PatchSetCreatedMessageGenerator.class);
+  private static final ThrottledLogger THROTTLED_LOGGER = new ThrottledLogger(LOGGER);
 
   private PatchSetCreatedEvent event;
   private ProjectConfig config;
@@ -69,7 +72,7 @@ public class PatchSetCreatedMessageGenerator implements MessageGenerator {
       case REWORK:
         return false;
       default:
-        LOGGER.warn("Unknown ChangeKind", kind);
+        THROTTLED_LOGGER.warn("change-kind", () -> "Unknown ChangeKind " + kind);
     }
     // Default unknown ChangeKind's to changed
     return false;
@@ -81,13 +84,17 @@ public class PatchSetCreatedMessageGenerator implements MessageGenerator {
       return false;
     }
 
+    if (config.isSuppressed(EventAttributes.getActor(event))) {
+      return false;
+    }
+
     // Ignore rebases or no code changes
     try {
       if (config.getIgnoreUnchangedPatchSet() && unchangedChangeKind(event.patchSet.get().kind)) {
         return false;
       }
     } catch (Exception e) {
-      LOGGER.warn("Error checking patch set kind", e);
+      THROTTLED_LOGGER.warn("kind", "Error checking patch set kind", e);
     }
 
     try {
@@ -100,7 +107,7 @@ public class PatchSetCreatedMessageGenerator implements MessageGenerator {
         return false;
       }
     } catch (Exception e) {
-      LOGGER.warn("Error checking private and work-in-progress status", e);
+      THROTTLED_LOGGER.warn("status", "Error checking private and work-in-progress status", e);
     }
 
     boolean result;
@@ -116,7 +123,7 @@ public class PatchSetCreatedMessageGenerator implements MessageGenerator {
       // If the ignore pattern matches, publishing should not happen
       result = !matcher.matches();
     } catch (Exception e) {
-      LOGGER.warn("The specified ignore pattern was invalid", e);
+      THROTTLED_LOGGER.warn("ignore", "The specified ignore pattern was invalid", e);
     }
 
     return result;
@@ -142,7 +149,7 @@ public class PatchSetCreatedMessageGenerator implements MessageGenerator {
 
       message = template.render();
     } catch (Exception e) {
-      LOGGER.error("Error generating message: " + e.getMessage(), e);
+      THROTTLED_LOGGER.error("generate", () -> "Error generating message: " + e.getMessage(), e);
     }
 
     return message;
@@ -20,6 +20,8 @@ package com.cisco.gerrit.plugins.slack.message;
 import static org.apache.commons.lang.StringUtils.substringBefore;
 
 import com.cisco.gerrit.plugins.slack.config.ProjectConfig;
+import com.cisco.gerrit.plugins.slack.util.EventAttributes;
+import com.cisco.gerrit.plugins.slack.util.ThrottledLogger;
 import com.google.gerrit.server.events.PrivateStateChangedEvent;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -33,6 +35,7 @@ import org.slf4j.LoggerFactory;
 public class PrivateStateChangedGenerator implements MessageGenerator {
   /** The class logger instance. */
   private static final Logger LOGGER = LoggerFactory.getLogger(PrivateStateChangedGenerator.class);
+  private static final ThrottledLogger THROTTLED_LOGGER = new ThrottledLogger(LOGGER);
 
   private ProjectConfig config;
   private PrivateStateChangedEvent event;
@@ -58,6 +61,10 @@ public class PrivateStateChangedGenerator implements MessageGenerator {
       return false;
     }
 
+    if (config.isSuppressed(EventAttributes.getActor(event))) {
+      return false;
+    }
+
     // If the change is still private then ignore
     if (Boolean.TRUE.equals(event.change.get().isPrivate)) {
       return false;
@@ -85,7 +92,7 @@ public class PrivateStateChangedGenerator implements MessageGenerator {
 
       message = template.render();
     } catch (Exception e) {
-      LOGGER.error("Error generating message: " + e.getMessage(), e);
+      THROTTLED_LOGGER.error("generate", () -> "Error generating message: " + e.getMessage(), e);
     }
 
     return message;
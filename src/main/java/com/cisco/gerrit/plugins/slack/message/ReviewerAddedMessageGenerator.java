@@ -20,6 +20,8 @@ package com.cisco.gerrit.plugins.slack.message;
 import static org.apache.commons.lang.StringUtils.substringBefore;
 
 import com.cisco.gerrit.plugins.slack.config.ProjectConfig;
+import com.cisco.gerrit.plugins.slack.util.EventAttributes;
+import com.cisco.gerrit.plugins.slack.util.ThrottledLogger;
 import com.google.gerrit.server.data.ChangeAttribute;
 import com.google.gerrit.server.events.ReviewerAddedEvent;
 import org.slf4j.Logger;
@@ -34,6 +36,7 @@ import org.slf4j.LoggerFactory;
 public class ReviewerAddedMessageGenerator implements MessageGenerator {
   /** The class logger instance. */
   private static final Logger LOGGER = LoggerFactory.getLogger(ReviewerAddedMessageGenerator.class);
+  private static final ThrottledLogger THROTTLED_LOGGER = new ThrottledLogger(LOGGER);
 
   private ProjectConfig config;
   private ReviewerAddedEvent event;
@@ -59,6 +62,10 @@ public class ReviewerAddedMessageGenerator implements MessageGenerator {
       return false;
     }
 
+    if (config.isSuppressed(EventAttributes.getActor(event))) {
+      return false;
+    }
+
     try {
       ChangeAttribute change;
       change = event.change.get();
@@ -69,7 +76,7 @@ public class ReviewerAddedMessageGenerator implements MessageGenerator {
         return false;
       }
     } catch (Exception e) {
-      LOGGER.warn("Error checking private and work-in-progress status", e);
+      THROTTLED_LOGGER.warn("status", "Error checking private and work-in-progress status", e);
     }
 
     return true;
@@ -95,7 +102,7 @@ public class ReviewerAddedMessageGenerator implements MessageGenerator {
 
       message = template.render();
     } catch (Exception e) {
-      LOGGER.error("Error generating message: " + e.getMessage(), e);
+      THROTTLED_LOGGER.error("generate", () -> "Error generating message: " + e.getMessage(), e);
     }
 
     return message;
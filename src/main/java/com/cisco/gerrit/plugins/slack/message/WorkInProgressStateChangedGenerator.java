@@ -20,6 +20,8 @@ package com.cisco.gerrit.plugins.slack.message;
 import static org.apache.commons.lang.StringUtils.substringBefore;
 
 import com.cisco.gerrit.plugins.slack.config.ProjectConfig;
+import com.cisco.gerrit.plugins.slack.util.EventAttributes;
+import com.cisco.gerrit.plugins.slack.util.ThrottledLogger;
 import com.google.gerrit.server.events.WorkInProgressStateChangedEvent;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -34,6 +36,7 @@ public class WorkInProgressStateChangedGenerator implements MessageGenerator {
   /** The class logger instance. */
   private static final Logger LOGGER =
       LoggerFactory.getLogger(WorkInProgressStateChangedGenerator.class);
+  private static final ThrottledLogger THROTTLED_LOGGER = new ThrottledLogger(LOGGER);
 
   private ProjectConfig config;
   private WorkInProgressStateChangedEvent event;
@@ -59,6 +62,10 @@ public class WorkInProgressStateChangedGenerator implements MessageGenerator {
       return false;
     }
 
+    if (config.isSuppressed(EventAttributes.getActor(event))) {
+      return false;
+    }
+
     // If the change is still work-in-progress then ignore
     if (Boolean.TRUE.equals(event.change.get().wip)) {
       return false;
@@ -86,7 +93,7 @@ public class WorkInProgressStateChangedGenerator implements MessageGenerator {
 
       message = template.render();
     } catch (Exception e) {
-      LOGGER.error("Error generating message: " + e.getMessage(), e);
+      THROTTLED_LOGGER.error("generate", () -> "Error generating message: " + e.getMessage(), e);
     }
 
     return message;
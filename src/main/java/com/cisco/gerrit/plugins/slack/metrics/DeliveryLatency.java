@@ -0,0 +1,190 @@
+/*
+ * Copyright 2017 Cisco Systems, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package com.cisco.gerrit.plugins.slack.metrics;
+
+import com.google.common.collect.ImmutableSet;
+import com.google.gerrit.metrics.CallbackMetric;
+import com.google.gerrit.metrics.CallbackMetric1;
+import com.google.gerrit.metrics.Description;
+import com.google.gerrit.metrics.Description.Units;
+import com.google.gerrit.metrics.Field;
+import com.google.gerrit.metrics.MetricMaker;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Tracks how long it takes from Gerrit creating an event (its eventCreatedOn timestamp) until the
+ * webhook acknowledges the resulting message. Latencies are kept per event type, exported as
+ * percentile gauges, and per project and event type for the admin command. The number of tracked
+ * project histograms is capped so memory stays bounded.
+ */
+@Singleton
+public class DeliveryLatency {
+  /** The project name used once the per-project cap has been reached. */
+  public static final String OTHER_PROJECTS = "(other)";
+
+  private static final int MAX_PROJECT_HISTOGRAMS = 1024;
+
+  private final ConcurrentMap<String, LatencyHistogram> byType = new ConcurrentHashMap<>();
+  private final ConcurrentMap<Key, LatencyHistogram> byProject = new ConcurrentHashMap<>();
+
+  @Inject
+  public DeliveryLatency(MetricMaker metricMaker) {
+    Field<String> eventType;
+    eventType = Field.ofString("event_type", "The type of the Gerrit event");
+
+    CallbackMetric1<String, Long> p50;
+    p50 = newGauge(metricMaker, "latency/end_to_end/p50", "Median", eventType);
+
+    CallbackMetric1<String, Long> p95;
+    p95 = newGauge(metricMaker, "latency/end_to_end/p95", "95th percentile", eventType);
+
+    CallbackMetric1<String, Long> p99;
+    p99 = newGauge(metricMaker, "latency/end_to_end/p99", "99th percentile", eventType);
+
+    CallbackMetric1<String, Long> max;
+    max = newGauge(metricMaker, "latency/end_to_end/max", "Maximum", eventType);
+
+    metricMaker.newTrigger(
+        ImmutableSet.<CallbackMetric<?>>of(p50, p95, p99, max),
+        () -> {
+          for (Map.Entry<String, LatencyHistogram> entry : byType.entrySet()) {
+            LatencyHistogram histogram;
+            histogram = entry.getValue();
+
+            p50.set(entry.getKey(), histogram.getPercentile(50));
+            p95.set(entry.getKey(), histogram.getPercentile(95));
+            p99.set(entry.getKey(), histogram.getPercentile(99));
+            max.set(entry.getKey(), histogram.getMax());
+          }
+        });
+  }
+
+  private static CallbackMetric1<String, Long> newGauge(
+      MetricMaker metricMaker, String name, String statistic, Field<String> eventType) {
+    return metricMaker.newCallbackMetric(
+        name,
+        Long.class,
+        new Description(statistic + " time from event creation to webhook acknowledgement")
+            .setGauge()
+            .setUnit(Units.MILLISECONDS),
+        eventType);
+  }
+
+  /**
+   * Records the end-to-end latency of a delivered message.
+   *
+   * @param project The project the event belongs to.
+   * @param eventType The type of the event.
+   * @param eventCreatedOn When Gerrit created the event, in seconds since the epoch.
+   * @param acknowledgedAt When the webhook acknowledged the message, in milliseconds since the
+   *     epoch.
+   */
+  public void record(String project, String eventType, long eventCreatedOn, long acknowledgedAt) {
+    if (eventCreatedOn <= 0) {
+      return;
+    }
+
+    long latency;
+    latency = acknowledgedAt - eventCreatedOn * 1000;
+
+    histogram(byType, eventType).record(latency);
+    projectHistogram(project, eventType).record(latency);
+  }
+
+  /**
+   * Gets a snapshot of the tracked histograms, sorted by project and event type.
+   *
+   * @return The histograms keyed by "project event-type".
+   */
+  public Map<String, LatencyHistogram> getProjectHistograms() {
+    Map<String, LatencyHistogram> result;
+    result = new TreeMap<>();
+
+    for (Map.Entry<Key, LatencyHistogram> entry : byProject.entrySet()) {
+      result.put(entry.getKey().project + " " + entry.getKey().eventType, entry.getValue());
+    }
+
+    return result;
+  }
+
+  private LatencyHistogram projectHistogram(String project, String eventType) {
+    Key key;
+    key = new Key(project, eventType);
+
+    LatencyHistogram histogram;
+    histogram = byProject.get(key);
+
+    if (histogram == null) {
+      if (byProject.size() >= MAX_PROJECT_HISTOGRAMS) {
+        key = new Key(OTHER_PROJECTS, eventType);
+      }
+      histogram = histogram(byProject, key);
+    }
+
+    return histogram;
+  }
+
+  private static <K> LatencyHistogram histogram(ConcurrentMap<K, LatencyHistogram> map, K key) {
+    LatencyHistogram histogram;
+    histogram = map.get(key);
+
+    if (histogram == null) {
+      histogram = new LatencyHistogram();
+
+      LatencyHistogram existing;
+      existing = map.putIfAbsent(key, histogram);
+      if (existing != null) {
+        histogram = existing;
+      }
+    }
+
+    return histogram;
+  }
+
+  private static final class Key {
+    private final String project;
+    private final String eventType;
+
+    private Key(String project, String eventType) {
+      this.project = project;
+      this.eventType = eventType;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (!(o instanceof Key)) {
+        return false;
+      }
+
+      Key other;
+      other = (Key) o;
+
+      return project.equals(other.project) && eventType.equals(other.eventType);
+    }
+
+    @Override
+    public int hashCode() {
+      return project.hashCode() * 31 + eventType.hashCode();
+    }
+  }
+}
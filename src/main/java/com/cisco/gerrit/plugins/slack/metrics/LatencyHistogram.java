@@ -0,0 +1,125 @@
+/*
+ * Copyright 2017 Cisco Systems, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package com.cisco.gerrit.plugins.slack.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A fixed-memory, lock-free histogram of latencies in milliseconds. Buckets are log-linear in the
+ * manner of an HDR histogram: every power of two is split into 16 linear sub-buckets, so any
+ * recorded value is reported within about 6% of its true value. Values of 2^28 ms (about 74.5
+ * hours) or more are clamped into the last bucket, while the exact maximum is tracked separately.
+ */
+public class LatencyHistogram {
+  private static final int SUB_BUCKET_BITS = 4;
+  private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+  private static final int MAX_EXPONENT = 27;
+  private static final long MAX_TRACKABLE = (1L << (MAX_EXPONENT + 1)) - 1;
+
+  private static final int BUCKETS = (MAX_EXPONENT - SUB_BUCKET_BITS + 2) * SUB_BUCKETS;
+
+  private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+  private final AtomicLong total = new AtomicLong();
+  private final AtomicLong max = new AtomicLong();
+
+  /**
+   * Records a latency.
+   *
+   * @param millis The latency in milliseconds, negative values are recorded as 0.
+   */
+  public void record(long millis) {
+    long value;
+    value = Math.max(0, millis);
+
+    counts.incrementAndGet(indexOf(Math.min(value, MAX_TRACKABLE)));
+    total.incrementAndGet();
+
+    long current;
+    while (value > (current = max.get())) {
+      if (max.compareAndSet(current, value)) {
+        break;
+      }
+    }
+  }
+
+  public long getCount() {
+    return total.get();
+  }
+
+  public long getMax() {
+    return max.get();
+  }
+
+  /**
+   * Gets the value at the given percentile.
+   *
+   * @param percentile The percentile, between 0 and 100.
+   * @return The upper bound of the bucket holding the percentile, 0 if nothing was recorded.
+   */
+  public long getPercentile(double percentile) {
+    long count;
+    count = total.get();
+
+    if (count == 0) {
+      return 0;
+    }
+
+    long rank;
+    rank = Math.max(1, (long) Math.ceil(count * percentile / 100.0));
+
+    long seen;
+    seen = 0;
+
+    for (int i = 0; i < BUCKETS; i++) {
+      seen += counts.get(i);
+      if (seen >= rank) {
+        return Math.min(upperBoundOf(i), max.get());
+      }
+    }
+    return max.get();
+  }
+
+  static int indexOf(long value) {
+    if (value < SUB_BUCKETS) {
+      return (int) value;
+    }
+
+    int exponent;
+    exponent = 63 - Long.numberOfLeadingZeros(value);
+
+    int subBucket;
+    subBucket = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+
+    return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + subBucket;
+  }
+
+  static long upperBoundOf(int index) {
+    if (index < SUB_BUCKETS) {
+      return index;
+    }
+
+    int exponent;
+    exponent = index / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+
+    long width;
+    width = 1L << (exponent - SUB_BUCKET_BITS);
+
+    return (1L << exponent) + (index % SUB_BUCKETS) * width + width - 1;
+  }
+}
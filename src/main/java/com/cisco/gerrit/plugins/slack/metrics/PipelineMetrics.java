@@ -0,0 +1,381 @@
+/*
+ * Copyright 2017 Cisco Systems, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package com.cisco.gerrit.plugins.slack.metrics;
+
+import com.google.gerrit.metrics.Counter0;
+import com.google.gerrit.metrics.Counter1;
+import com.google.gerrit.metrics.Counter2;
+import com.google.gerrit.metrics.Description;
+import com.google.gerrit.metrics.Description.Units;
+import com.google.gerrit.metrics.Field;
+import com.google.gerrit.metrics.Histogram1;
+import com.google.gerrit.metrics.MetricMaker;
+import com.google.gerrit.metrics.Timer0;
+import com.google.gerrit.metrics.Timer1;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The plugin's metrics, registered through Gerrit's metrics API so they show up alongside the
+ * server's own metrics under plugins/slack-integration.
+ */
+@Singleton
+public class PipelineMetrics {
+  /** Filter reason for events of projects without the plugin enabled. */
+  public static final String DISABLED = "disabled";
+  /** Filter reason for events that do not belong to a project. */
+  public static final String NO_PROJECT = "no_project";
+  /** Filter reason for events the generator declined to publish. */
+  public static final String NOT_PUBLISHABLE = "not_publishable";
+  /** Filter reason for redelivered events. */
+  public static final String DUPLICATE = "duplicate";
+  /** Filter reason for events of projects with neither a webhook URL nor destinations. */
+  public static final String NO_WEBHOOK = "no_webhook";
+  /** Filter reason for events skipped while the backlog is high. */
+  public static final String SHED = "shed";
+  /** Filter reason for messages that outlived their time to live before they could be posted. */
+  public static final String EXPIRED = "expired";
+
+  /** Failure reason for payloads Slack answered with something other than ok. */
+  public static final String REJECTED = "rejected";
+  /** Failure reason for posts the webhook rate limited, which will be retried. */
+  public static final String RATE_LIMITED = "rate_limited";
+  /** Failure reason for posts the webhook answered with a server error, which will be retried. */
+  public static final String SERVER_ERROR = "server_error";
+  /** Failure reason for posts that failed in transport and will be retried. */
+  public static final String TRANSPORT = "transport";
+  /** Failure reason for messages dropped after running out of attempts. */
+  public static final String ABANDONED = "abandoned";
+  /** Failure reason for shadow messages that could not be written to the capture. */
+  public static final String CAPTURE = "capture";
+
+  /** Claim outcome when this node delivers the event. */
+  public static final String CLAIM_WON = "won";
+  /** Claim outcome when a peer already claimed the event. */
+  public static final String CLAIM_LOST = "lost";
+  /** Claim outcome when the shared directory failed and the event is delivered anyway. */
+  public static final String CLAIM_ERROR = "error";
+
+  /** Route of messages whose change this node owns. */
+  public static final String ROUTE_OWNED = "owned";
+  /** Route of messages whose change a peer owns. */
+  public static final String ROUTE_PEER = "peer";
+  /** Route of messages a departed peer never took on, delivered from the standby copy. */
+  public static final String ROUTE_REPLAYED = "replayed";
+  /** Route of messages moved over from the outbox of a departed peer. */
+  public static final String ROUTE_TAKEN_OVER = "taken_over";
+
+  private final Counter1<String> received;
+  private final Counter2<String, String> filtered;
+  private final Counter1<String> published;
+  private final Counter1<String> failed;
+
+  private final Timer0 configResolution;
+  private final Timer1<String> filtering;
+  private final Timer1<String> rendering;
+  private final Timer0 roundTrip;
+  private final Histogram1<String> payloadSize;
+
+  private final Counter1<String> shadowMessages;
+  private final Histogram1<String> shadowPayloadSize;
+  private final Timer1<String> shadowRendering;
+
+  private final Counter1<String> claims;
+  private final Counter1<String> routes;
+
+  private final Counter2<String, String> shed;
+  private final Counter0 digests;
+
+  private final AtomicInteger queueDepth = new AtomicInteger();
+  private final AtomicInteger inFlight = new AtomicInteger();
+  private final AtomicInteger liveNodes = new AtomicInteger();
+  private final AtomicInteger sheddingLevel = new AtomicInteger();
+
+  @Inject
+  public PipelineMetrics(MetricMaker metricMaker) {
+    Field<String> eventType;
+    eventType = Field.ofString("event_type", "The type of the Gerrit event");
+
+    received =
+        metricMaker.newCounter(
+            "events/received",
+            new Description("Events received from Gerrit").setRate().setUnit("events"),
+            eventType);
+
+    filtered =
+        metricMaker.newCounter(
+            "events/filtered",
+            new Description("Events that were not published").setRate().setUnit("events"),
+            eventType,
+            Field.ofString("reason", "Why the event was not published"));
+
+    published =
+        metricMaker.newCounter(
+            "events/published",
+            new Description("Messages acknowledged by the webhook").setRate().setUnit("messages"),
+            eventType);
+
+    failed =
+        metricMaker.newCounter(
+            "delivery/failures",
+            new Description("Failed delivery attempts").setRate().setUnit("attempts"),
+            Field.ofString("reason", "Why the attempt failed"));
+
+    configResolution =
+        metricMaker.newTimer(
+            "latency/config_resolution",
+            new Description("Time spent resolving the project config")
+                .setCumulative()
+                .setUnit(Units.MILLISECONDS));
+
+    filtering =
+        metricMaker.newTimer(
+            "latency/filter",
+            new Description("Time spent deciding whether to publish an event")
+                .setCumulative()
+                .setUnit(Units.MILLISECONDS),
+            eventType);
+
+    rendering =
+        metricMaker.newTimer(
+            "latency/render",
+            new Description("Time spent rendering a message")
+                .setCumulative()
+                .setUnit(Units.MILLISECONDS),
+            eventType);
+
+    roundTrip =
+        metricMaker.newTimer(
+            "latency/http_round_trip",
+            new Description("Time spent posting a message to the webhook")
+                .setCumulative()
+                .setUnit(Units.MILLISECONDS));
+
+    payloadSize =
+        metricMaker.newHistogram(
+            "message/payload_size",
+            new Description("Size of rendered messages").setCumulative().setUnit(Units.BYTES),
+            eventType);
+
+    Field<String> destination;
+    destination = Field.ofString("destination", "Where the message would have been posted");
+
+    shadowMessages =
+        metricMaker.newCounter(
+            "shadow/messages",
+            new Description("Messages of shadow mode projects written to the capture")
+                .setRate()
+                .setUnit("messages"),
+            destination);
+
+    shadowPayloadSize =
+        metricMaker.newHistogram(
+            "shadow/payload_size",
+            new Description("Size of the messages of shadow mode projects")
+                .setCumulative()
+                .setUnit(Units.BYTES),
+            destination);
+
+    shadowRendering =
+        metricMaker.newTimer(
+            "shadow/render",
+            new Description("Time spent rendering the messages of shadow mode projects")
+                .setCumulative()
+                .setUnit(Units.MILLISECONDS),
+            eventType);
+
+    claims =
+        metricMaker.newCounter(
+            "cluster/claims",
+            new Description("Events claimed for delivery in the shared directory")
+                .setRate()
+                .setUnit("claims"),
+            Field.ofString("outcome", "Whether this node delivers the event"));
+
+    routes =
+        metricMaker.newCounter(
+            "cluster/routed",
+            new Description("Messages routed by the change they refer to")
+                .setRate()
+                .setUnit("messages"),
+            Field.ofString("route", "Which node delivers the message and why"));
+
+    shed =
+        metricMaker.newCounter(
+            "shedding/decisions",
+            new Description("Events degraded because of the delivery backlog")
+                .setRate()
+                .setUnit("events"),
+            eventType,
+            Field.ofString("decision", "How the event was degraded"));
+
+    digests =
+        metricMaker.newCounter(
+            "shedding/digests",
+            new Description("Digests posted in place of shed events")
+                .setRate()
+                .setUnit("messages"));
+
+    metricMaker.newCallbackMetric(
+        "shedding/level",
+        Integer.class,
+        new Description("How far delivery is degraded, 0 while delivering everything")
+            .setGauge()
+            .setUnit("level"),
+        sheddingLevel::get);
+
+    metricMaker.newCallbackMetric(
+        "cluster/live_nodes",
+        Integer.class,
+        new Description("Nodes sharing the delivery work").setGauge().setUnit("nodes"),
+        liveNodes::get);
+
+    metricMaker.newCallbackMetric(
+        "delivery/queue_depth",
+        Integer.class,
+        new Description("Messages waiting for a delivery thread").setGauge().setUnit("messages"),
+        queueDepth::get);
+
+    metricMaker.newCallbackMetric(
+        "delivery/in_flight",
+        Integer.class,
+        new Description("Requests currently being posted").setGauge().setUnit("requests"),
+        inFlight::get);
+  }
+
+  public void eventReceived(String eventType) {
+    received.increment(eventType);
+  }
+
+  public void eventFiltered(String eventType, String reason) {
+    filtered.increment(eventType, reason);
+  }
+
+  public void messagePublished(String eventType) {
+    published.increment(eventType);
+  }
+
+  public void deliveryFailed(String reason) {
+    failed.increment(reason);
+  }
+
+  public void recordConfigResolution(long nanos) {
+    configResolution.record(nanos, TimeUnit.NANOSECONDS);
+  }
+
+  public void recordFilter(String eventType, long nanos) {
+    filtering.record(eventType, nanos, TimeUnit.NANOSECONDS);
+  }
+
+  public void recordRender(String eventType, long nanos, int payloadBytes) {
+    rendering.record(eventType, nanos, TimeUnit.NANOSECONDS);
+    payloadSize.record(eventType, payloadBytes);
+  }
+
+  public void recordShadowRender(String eventType, long nanos) {
+    shadowRendering.record(eventType, nanos, TimeUnit.NANOSECONDS);
+  }
+
+  /**
+   * Records a shadow message written to the capture.
+   *
+   * @param destination The masked destination the message would have been posted to.
+   * @param payloadBytes The size of the payload in bytes.
+   */
+  public void messageCaptured(String destination, int payloadBytes) {
+    String field;
+    field = toFieldValue(destination);
+
+    shadowMessages.increment(field);
+    shadowPayloadSize.record(field, payloadBytes);
+  }
+
+  public void claimResolved(String outcome) {
+    claims.increment(outcome);
+  }
+
+  public void messageRouted(String route) {
+    routes.increment(route);
+  }
+
+  public void setLiveNodes(int nodes) {
+    liveNodes.set(nodes);
+  }
+
+  public void eventShed(String eventType, String decision) {
+    shed.increment(eventType, decision);
+  }
+
+  public void digestPosted() {
+    digests.increment();
+  }
+
+  public void setSheddingLevel(int level) {
+    sheddingLevel.set(level);
+  }
+
+  /**
+   * Turns a destination into a metric field value, which becomes part of a metric name and may
+   * only hold letters, digits, dashes and underscores.
+   *
+   * @param destination The destination.
+   * @return The destination with every other character replaced by an underscore.
+   */
+  private static String toFieldValue(String destination) {
+    StringBuilder result;
+    result = new StringBuilder(destination.length());
+
+    for (int i = 0; i < destination.length(); i++) {
+      char c;
+      c = destination.charAt(i);
+      result.append(Character.isLetterOrDigit(c) || c == '-' ? c : '_');
+    }
+
+    return result.toString();
+  }
+
+  public void recordRoundTrip(long nanos) {
+    roundTrip.record(nanos, TimeUnit.NANOSECONDS);
+  }
+
+  public void messageQueued() {
+    queueDepth.incrementAndGet();
+  }
+
+  public void messageDequeued() {
+    queueDepth.decrementAndGet();
+  }
+
+  public void requestStarted() {
+    inFlight.incrementAndGet();
+  }
+
+  public void requestFinished() {
+    inFlight.decrementAndGet();
+  }
+
+  public int getQueueDepth() {
+    return queueDepth.get();
+  }
+
+  public int getInFlight() {
+    return inFlight.get();
+  }
+}
@@ -0,0 +1,83 @@
+/*
+ * Copyright 2017 Cisco Systems, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package com.cisco.gerrit.plugins.slack.metrics;
+
+/**
+ * Emits Java Flight Recorder events around the stages of the notification pipeline, annotated
+ * with the project and event type, so slow deliveries can be correlated with GC and I/O stalls in
+ * a recording. When no recording is running, or the JVM has no JFR, the cost is a null check.
+ *
+ * <p>The plugin is compiled for Java 8, so the events live in an optional source set built on JDKs
+ * with JFR and are only loaded by name when the running JVM has it too.
+ */
+public final class PipelineStage {
+  public static final String CONFIG = "config";
+  public static final String GENERATOR = "generator";
+  public static final String SHOULD_PUBLISH = "should-publish";
+  public static final String RENDER = "render";
+  public static final String CONNECT = "connect";
+  public static final String WRITE = "write";
+  public static final String READ = "read";
+
+  /** The name of the recorder in the optional JFR source set. */
+  private static final String JFR_RECORDER =
+      "com.cisco.gerrit.plugins.slack.metrics.JfrStageRecorder";
+
+  /** Null when the plugin was built without JFR or the JVM has none, making every stage a no-op. */
+  private static final StageRecorder RECORDER = loadRecorder();
+
+  // Made private to prevent instantiation.
+  private PipelineStage() {}
+
+  /**
+   * Starts a stage.
+   *
+   * @return A handle to pass to end, null if the stage is not being recorded.
+   */
+  public static Object begin() {
+    return RECORDER != null ? RECORDER.begin() : null;
+  }
+
+  /**
+   * Ends a stage started with begin.
+   *
+   * @param handle The handle returned by begin, may be null.
+   * @param stage The name of the stage.
+   * @param project The project the event belongs to.
+   * @param eventType The type of the event.
+   */
+  public static void end(Object handle, String stage, String project, String eventType) {
+    if (handle != null) {
+      RECORDER.end(handle, stage, project, eventType);
+    }
+  }
+
+  private static StageRecorder loadRecorder() {
+    ClassLoader classLoader;
+    classLoader = PipelineStage.class.getClassLoader();
+
+    try {
+      Class.forName("jdk.jfr.Event", false, classLoader);
+
+      return (StageRecorder)
+          Class.forName(JFR_RECORDER, true, classLoader).getDeclaredConstructor().newInstance();
+    } catch (ReflectiveOperationException | LinkageError e) {
+      return null;
+    }
+  }
+}
@@ -0,0 +1,251 @@
+/*
+ * Copyright 2017 Cisco Systems, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package com.cisco.gerrit.plugins.slack.metrics;
+
+import com.cisco.gerrit.plugins.slack.config.Priority;
+import com.google.inject.Singleton;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Live state of the delivery pipeline for the admin status views. Every update is a lock-free
+ * counter or concurrent map operation, so reading the state never holds up delivery threads.
+ */
+@Singleton
+public class PipelineStatus {
+  /** The name used once the per-project or per-destination cap has been reached. */
+  public static final String OTHER = "(other)";
+
+  private static final int MAX_KEYS = 1024;
+  private static final int RECENT_ERRORS = 64;
+
+  private final ConcurrentMap<String, Destination> destinations = new ConcurrentHashMap<>();
+  private final ConcurrentMap<String, LongAdder> projectVolume = new ConcurrentHashMap<>();
+  private final AtomicIntegerArray queuedByPriority =
+      new AtomicIntegerArray(Priority.values().length);
+  private final AtomicReferenceArray<String> recentErrors =
+      new AtomicReferenceArray<>(RECENT_ERRORS);
+  private final AtomicLong errorSequence = new AtomicLong();
+  private final AtomicLong ticketSequence = new AtomicLong();
+
+  /**
+   * Records a message accepted for delivery. The message stays pending until it is completed.
+   *
+   * @param destination The destination the message is sent to.
+   * @param project The project the message belongs to.
+   * @return The ticket to complete the message with.
+   */
+  public long messageAccepted(String destination, String project) {
+    bounded(projectVolume, project, LongAdder::new).increment();
+
+    long ticket;
+    ticket = ticketSequence.incrementAndGet();
+
+    getDestination(destination).pending.put(ticket, System.currentTimeMillis());
+    return ticket;
+  }
+
+  /**
+   * Records that a message was delivered, rejected or abandoned.
+   *
+   * @param destination The destination the message was sent to.
+   * @param ticket The ticket returned when the message was accepted.
+   */
+  public void messageCompleted(String destination, long ticket) {
+    getDestination(destination).pending.remove(ticket);
+  }
+
+  public void messageQueued(String destination, Priority priority) {
+    getDestination(destination).queued.incrementAndGet();
+    queuedByPriority.incrementAndGet(priority.ordinal());
+  }
+
+  public void messageDequeued(String destination, Priority priority) {
+    getDestination(destination).queued.decrementAndGet();
+    queuedByPriority.decrementAndGet(priority.ordinal());
+  }
+
+  /**
+   * Records the new concurrency limit of a destination.
+   *
+   * @param destination The destination.
+   * @param limit The number of requests that may be in flight at once.
+   */
+  public void limitChanged(String destination, int limit) {
+    getDestination(destination).limit.set(limit);
+  }
+
+  public void requestStarted(String destination) {
+    getDestination(destination).inFlight.incrementAndGet();
+  }
+
+  public void requestFinished(String destination) {
+    getDestination(destination).inFlight.decrementAndGet();
+  }
+
+  /**
+   * Records a failed delivery attempt in the ring of recent errors.
+   *
+   * @param errorClass The class of error, such as the exception type or a failure reason.
+   */
+  public void errorOccurred(String errorClass) {
+    int slot;
+    slot = (int) (errorSequence.getAndIncrement() % RECENT_ERRORS);
+
+    recentErrors.set(slot, errorClass);
+  }
+
+  /**
+   * Gets the state of every destination that has seen traffic.
+   *
+   * @return The destinations, sorted by name.
+   */
+  public Map<String, Destination> getDestinations() {
+    return new TreeMap<>(destinations);
+  }
+
+  /**
+   * Counts the messages waiting for a delivery thread by priority.
+   *
+   * @return The number of waiting messages of each priority.
+   */
+  public Map<Priority, Integer> getQueuedByPriority() {
+    Map<Priority, Integer> result;
+    result = new EnumMap<>(Priority.class);
+
+    for (Priority priority : Priority.values()) {
+      result.put(priority, queuedByPriority.get(priority.ordinal()));
+    }
+
+    return result;
+  }
+
+  /**
+   * Counts the most recent errors by error class.
+   *
+   * @return The number of occurrences of each error class among the last 64 errors.
+   */
+  public Map<String, Integer> getRecentErrors() {
+    Map<String, Integer> counts;
+    counts = new TreeMap<>();
+
+    for (int i = 0; i < RECENT_ERRORS; i++) {
+      String errorClass;
+      errorClass = recentErrors.get(i);
+
+      if (errorClass != null) {
+        counts.merge(errorClass, 1, Integer::sum);
+      }
+    }
+
+    return counts;
+  }
+
+  /**
+   * Gets the projects that have sent the most messages since the plugin started.
+   *
+   * @param limit The maximum number of projects to return.
+   * @return The project names and message counts, busiest first.
+   */
+  public List<Map.Entry<String, Long>> getTopProjects(int limit) {
+    List<Map.Entry<String, Long>> projects;
+    projects = new ArrayList<>(projectVolume.size());
+
+    for (Map.Entry<String, LongAdder> entry : projectVolume.entrySet()) {
+      projects.add(new AbstractMap.SimpleImmutableEntry<>(entry.getKey(), entry.getValue().sum()));
+    }
+
+    projects.sort(
+        Collections.reverseOrder(Map.Entry.<String, Long>comparingByValue())
+            .thenComparing(Map.Entry.comparingByKey()));
+
+    return projects.subList(0, Math.min(limit, projects.size()));
+  }
+
+  private Destination getDestination(String destination) {
+    return bounded(destinations, destination, Destination::new);
+  }
+
+  private static <V> V bounded(ConcurrentMap<String, V> map, String key, Supplier<V> factory) {
+    String name;
+    name = key != null ? key : OTHER;
+
+    V value;
+    value = map.get(name);
+    if (value == null) {
+      if (map.size() >= MAX_KEYS) {
+        name = OTHER;
+      }
+      value = map.computeIfAbsent(name, k -> factory.get());
+    }
+
+    return value;
+  }
+
+  /** The live state of a single destination. */
+  public static final class Destination {
+    private final AtomicInteger queued = new AtomicInteger();
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicInteger limit = new AtomicInteger();
+    private final ConcurrentSkipListMap<Long, Long> pending = new ConcurrentSkipListMap<>();
+
+    public int getQueued() {
+      return queued.get();
+    }
+
+    public int getInFlight() {
+      return inFlight.get();
+    }
+
+    public int getLimit() {
+      return limit.get();
+    }
+
+    public int getPending() {
+      return pending.size();
+    }
+
+    /**
+     * Gets the age of the oldest message not yet delivered, including messages waiting to be
+     * retried. Tickets increase with time, so the oldest message has the lowest ticket.
+     *
+     * @param now The current time in milliseconds since the epoch.
+     * @return The age in milliseconds, 0 if nothing is pending.
+     */
+    public long getOldestPendingAge(long now) {
+      Map.Entry<Long, Long> oldest;
+      oldest = pending.firstEntry();
+
+      return oldest != null ? Math.max(0, now - oldest.getValue()) : 0;
+    }
+  }
+}
@@ -0,0 +1,41 @@
+/*
+ * Copyright 2017 Cisco Systems, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package com.cisco.gerrit.plugins.slack.metrics;
+
+/**
+ * Records the stages of the notification pipeline. Implemented with Java Flight Recorder in a
+ * source set of its own, which is only built on JDKs that have JFR, and loaded by name.
+ */
+interface StageRecorder {
+  /**
+   * Starts a stage.
+   *
+   * @return A handle to pass to end, null if the stage is not being recorded.
+   */
+  Object begin();
+
+  /**
+   * Ends a stage.
+   *
+   * @param handle The handle returned by begin, not null.
+   * @param stage The name of the stage.
+   * @param project The project the event belongs to.
+   * @param eventType The type of the event.
+   */
+  void end(Object handle, String stage, String project, String eventType);
+}
@@ -0,0 +1,213 @@
+/*
+ * Copyright 2017 Cisco Systems, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package com.cisco.gerrit.plugins.slack.sidecar;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * The lines written by Gerrit's stream-events command, read from a pipe or from a file it is
+ * redirected to. A followed file is read from its end like tail -F, and read again from the start
+ * once it is truncated or replaced by log rotation.
+ */
+public class EventStream implements AutoCloseable {
+  /** How long to wait for a followed file to grow. */
+  public static final long DEFAULT_POLL_MILLIS = 250;
+
+  private static final int BUFFER_SIZE = 64 * 1024;
+
+  private final InputStream input;
+  private final Path file;
+  private final boolean follow;
+  private final long pollMillis;
+
+  private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+  private final ByteArrayOutputStream line = new ByteArrayOutputStream();
+
+  private volatile boolean closed;
+
+  /**
+   * Creates a new EventStream reading a pipe until it ends.
+   *
+   * @param input The input, such as System.in.
+   */
+  public EventStream(InputStream input) {
+    if (input == null) {
+      throw new NullPointerException("input cannot be null");
+    }
+
+    this.input = input;
+    this.file = null;
+    this.follow = false;
+    this.pollMillis = DEFAULT_POLL_MILLIS;
+  }
+
+  /**
+   * Creates a new EventStream reading a file.
+   *
+   * @param file The file.
+   * @param follow Whether to wait for lines appended to the file instead of stopping at its end.
+   * @param pollMillis How long to wait for a followed file to grow.
+   */
+  public EventStream(Path file, boolean follow, long pollMillis) {
+    if (file == null) {
+      throw new NullPointerException("file cannot be null");
+    }
+
+    this.input = null;
+    this.file = file;
+    this.follow = follow;
+    this.pollMillis = pollMillis;
+  }
+
+  /**
+   * Hands every line to the consumer until the input ends, or until the stream is closed when
+   * following a file.
+   *
+   * @param consumer The consumer, called on the reading thread.
+   * @throws IOException if the input cannot be read.
+   * @throws InterruptedException if interrupted while waiting for a followed file to grow.
+   */
+  public void forEach(Consumer<String> consumer) throws IOException, InterruptedException {
+    if (input != null) {
+      try (ReadableByteChannel channel = Channels.newChannel(input)) {
+        while (!closed && read(channel, consumer) >= 0) {
+          // Keep reading
+        }
+      }
+      flush(consumer);
+      return;
+    }
+
+    boolean first;
+    first = true;
+
+    while (!closed) {
+      FileChannel channel;
+      try {
+        channel = FileChannel.open(file, StandardOpenOption.READ);
+      } catch (NoSuchFileException e) {
+        if (!follow) {
+          throw e;
+        }
+        // Rotated away and not recreated yet
+        TimeUnit.MILLISECONDS.sleep(pollMillis);
+        continue;
+      }
+
+      try {
+        Object key;
+        key = getFileKey();
+
+        if (first && follow) {
+          channel.position(channel.size());
+        }
+        first = false;
+
+        while (!closed) {
+          if (read(channel, consumer) > 0) {
+            continue;
+          }
+
+          if (!follow) {
+            flush(consumer);
+            return;
+          }
+
+          if (channel.size() < channel.position() || !Objects.equals(key, getFileKey())) {
+            // Truncated or replaced, whatever is left of a line was lost with it
+            line.reset();
+            break;
+          }
+
+          TimeUnit.MILLISECONDS.sleep(pollMillis);
+        }
+      } finally {
+        channel.close();
+      }
+    }
+  }
+
+  /** Stops following the file, forEach returns after its next poll. */
+  @Override
+  public void close() {
+    closed = true;
+  }
+
+  private int read(ReadableByteChannel channel, Consumer<String> consumer) throws IOException {
+    buffer.clear();
+
+    int count;
+    count = channel.read(buffer);
+
+    buffer.flip();
+    while (buffer.hasRemaining()) {
+      byte value;
+      value = buffer.get();
+
+      if (value == '\n') {
+        flush(consumer);
+      } else {
+        line.write(value);
+      }
+    }
+
+    return count;
+  }
+
+  private void flush(Consumer<String> consumer) {
+    if (line.size() == 0) {
+      return;
+    }
+
+    String text;
+    text = new String(line.toByteArray(), StandardCharsets.UTF_8);
+    line.reset();
+
+    text = text.trim();
+    if (!text.isEmpty()) {
+      consumer.accept(text);
+    }
+  }
+
+  private Object getFileKey() {
+    try {
+      BasicFileAttributes attributes;
+      attributes = Files.readAttributes(file, BasicFileAttributes.class);
+
+      // Not every file system has keys, the creation time tells a new file apart as well
+      return attributes.fileKey() != null ? attributes.fileKey() : attributes.creationTime();
+    } catch (IOException e) {
+      return null;
+    }
+  }
+}
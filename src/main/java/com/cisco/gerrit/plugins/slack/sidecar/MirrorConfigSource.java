@@ -0,0 +1,183 @@
+/*
+ * Copyright 2017 Cisco Systems, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package com.cisco.gerrit.plugins.slack.sidecar;
+
+import com.cisco.gerrit.plugins.slack.config.ConfigSource;
+import com.cisco.gerrit.plugins.slack.config.ProjectConfig;
+import com.google.gerrit.reviewdb.client.Project;
+import com.google.gerrit.server.config.PluginConfig;
+import com.google.gerrit.server.project.NoSuchProjectException;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.stream.Stream;
+import org.eclipse.jgit.errors.ConfigInvalidException;
+import org.eclipse.jgit.lib.Config;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Reads the plugin's settings from a local mirror of the projects' refs/meta/config branches, laid
+ * out as {@code <mirror>/<project>/project.config}. Projects inherit the values they do not set
+ * from their parent, named by access.inheritFrom and defaulting to All-Projects, as in Gerrit. The
+ * mirror only needs the projects that set something, any other project just inherits.
+ */
+public class MirrorConfigSource implements ConfigSource {
+  /** The class logger instance. */
+  private static final Logger LOGGER = LoggerFactory.getLogger(MirrorConfigSource.class);
+
+  /** The project every other project inherits from in the end. */
+  public static final String ALL_PROJECTS = "All-Projects";
+
+  private static final String PROJECT_CONFIG = "project.config";
+
+  private final Path mirror;
+  private final PluginConfig serverConfig;
+
+  /**
+   * Creates a new MirrorConfigSource.
+   *
+   * @param mirror The directory holding a project.config per project.
+   * @param gerritConfig The gerrit.config file, may be null.
+   * @throws IOException if gerrit.config cannot be read.
+   */
+  public MirrorConfigSource(Path mirror, Path gerritConfig) throws IOException {
+    if (mirror == null) {
+      throw new NullPointerException("mirror cannot be null");
+    }
+
+    this.mirror = mirror.toAbsolutePath().normalize();
+    this.serverConfig =
+        gerritConfig != null
+            ? new PluginConfig(ProjectConfig.CONFIG_NAME, read(gerritConfig))
+            : new PluginConfig(ProjectConfig.CONFIG_NAME, new Config());
+  }
+
+  @Override
+  public PluginConfig getProjectConfig(String project) throws NoSuchProjectException {
+    Config merged;
+    merged = new Config();
+
+    Set<String> visited;
+    visited = new HashSet<>();
+
+    String current;
+    current = project;
+
+    if (!resolve(project).startsWith(mirror)) {
+      throw new NoSuchProjectException(Project.NameKey.parse(project));
+    }
+
+    while (current != null && visited.add(current)) {
+      Config config;
+      config = readProject(current);
+
+      // Values already set further down the hierarchy win
+      for (String name : config.getNames("plugin", ProjectConfig.CONFIG_NAME)) {
+        if (merged.getStringList("plugin", ProjectConfig.CONFIG_NAME, name).length == 0) {
+          merged.setStringList(
+              "plugin",
+              ProjectConfig.CONFIG_NAME,
+              name,
+              Arrays.asList(config.getStringList("plugin", ProjectConfig.CONFIG_NAME, name)));
+        }
+      }
+
+      current = getParent(current, config);
+    }
+
+    return new PluginConfig(ProjectConfig.CONFIG_NAME, merged);
+  }
+
+  @Override
+  public PluginConfig getServerConfig() {
+    return serverConfig;
+  }
+
+  /**
+   * Gets the time the mirror last changed, to tell when the configs need to be read again.
+   *
+   * @return The latest modification time of any project.config, in milliseconds.
+   * @throws IOException if the mirror cannot be listed.
+   */
+  public long getLastModified() throws IOException {
+    long result;
+    result = 0;
+
+    try (Stream<Path> files = Files.walk(mirror)) {
+      for (Path file : (Iterable<Path>) files::iterator) {
+        if (file.getFileName().toString().equals(PROJECT_CONFIG)) {
+          result = Math.max(result, Files.getLastModifiedTime(file).toMillis());
+        }
+      }
+    }
+
+    return result;
+  }
+
+  private static String getParent(String project, Config config) {
+    if (project.equals(ALL_PROJECTS)) {
+      return null;
+    }
+
+    String parent;
+    parent = config.getString("access", null, "inheritFrom");
+
+    return parent != null && !parent.trim().isEmpty() ? parent.trim() : ALL_PROJECTS;
+  }
+
+  private Path resolve(String project) {
+    return mirror.resolve(project).resolve(PROJECT_CONFIG).normalize();
+  }
+
+  private Config readProject(String project) {
+    Path file;
+    file = resolve(project);
+
+    if (!file.startsWith(mirror)) {
+      return new Config();
+    }
+
+    try {
+      return read(file);
+    } catch (NoSuchFileException e) {
+      return new Config();
+    } catch (IOException e) {
+      LOGGER.warn("Cannot read the config of " + project + ": " + e);
+      return new Config();
+    }
+  }
+
+  private static Config read(Path file) throws IOException {
+    Config config;
+    config = new Config();
+
+    try {
+      config.fromText(new String(Files.readAllBytes(file), StandardCharsets.UTF_8));
+    } catch (ConfigInvalidException e) {
+      throw new IOException("Invalid config " + file, e);
+    }
+
+    return config;
+  }
+}
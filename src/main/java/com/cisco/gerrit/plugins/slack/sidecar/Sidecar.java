@@ -0,0 +1,195 @@
+/*
+ * Copyright 2017 Cisco Systems, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package com.cisco.gerrit.plugins.slack.sidecar;
+
+import com.cisco.gerrit.plugins.slack.PublishEventListener;
+import com.cisco.gerrit.plugins.slack.config.ProjectConfigCache;
+import com.cisco.gerrit.plugins.slack.util.ThrottledLogger;
+import com.google.gerrit.lifecycle.LifecycleManager;
+import com.google.gerrit.server.events.Event;
+import com.google.gerrit.server.events.EventListener;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
+import com.google.inject.Guice;
+import com.google.inject.Injector;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Runs the notification pipeline outside of Gerrit, fed by the output of its stream-events
+ * command, so delivery problems never reach the Gerrit JVM.
+ *
+ * <pre>
+ * --config-mirror DIR  the mirror of refs/meta/config, a DIR/project/project.config per project
+ * --gerrit-config FILE the gerrit.config holding the server-wide settings (optional)
+ * --data DIR           where to keep shadow captures (default data)
+ * --events FILE        read events from FILE instead of standard input
+ * --follow true|false  wait for events appended to FILE, like tail -F (default true)
+ * </pre>
+ */
+public class Sidecar {
+  /** The class logger instance. */
+  private static final Logger LOGGER = LoggerFactory.getLogger(Sidecar.class);
+  private static final ThrottledLogger THROTTLED_LOGGER = new ThrottledLogger(LOGGER);
+
+  /** How often the mirror is checked for changed configs. */
+  private static final long MIRROR_CHECK_MILLIS = TimeUnit.SECONDS.toMillis(10);
+
+  private final MirrorConfigSource configSource;
+  private final ProjectConfigCache configCache;
+  private final EventListener listener;
+  private final EventParser parser = new EventParser();
+  private final JsonParser jsonParser = new JsonParser();
+
+  private long lastModified;
+  private long lastChecked;
+
+  Sidecar(MirrorConfigSource configSource, ProjectConfigCache configCache, EventListener listener)
+      throws IOException {
+    this.configSource = configSource;
+    this.configCache = configCache;
+    this.listener = listener;
+    this.lastModified = configSource.getLastModified();
+    this.lastChecked = System.currentTimeMillis();
+  }
+
+  public static void main(String[] args) throws Exception {
+    Map<String, String> options;
+    options = parseOptions(args);
+
+    if (!options.containsKey("config-mirror")) {
+      throw new IllegalArgumentException("--config-mirror is required");
+    }
+
+    MirrorConfigSource configSource;
+    configSource =
+        new MirrorConfigSource(
+            Paths.get(options.get("config-mirror")),
+            options.containsKey("gerrit-config") ? Paths.get(options.get("gerrit-config")) : null);
+
+    Path dataDirectory;
+    dataDirectory = Paths.get(options.getOrDefault("data", "data"));
+
+    Injector injector;
+    injector = Guice.createInjector(new SidecarModule(configSource, dataDirectory));
+
+    LifecycleManager manager;
+    manager = new LifecycleManager();
+    manager.add(injector);
+    manager.start();
+
+    EventStream stream;
+    if (options.containsKey("events")) {
+      stream =
+          new EventStream(
+              Paths.get(options.get("events")),
+              Boolean.parseBoolean(options.getOrDefault("follow", "true")),
+              EventStream.DEFAULT_POLL_MILLIS);
+    } else {
+      stream = new EventStream(System.in);
+    }
+
+    Runtime.getRuntime()
+        .addShutdownHook(
+            new Thread(
+                () -> {
+                  stream.close();
+                  manager.stop();
+                },
+                "slack-integration-shutdown"));
+
+    Sidecar sidecar;
+    sidecar =
+        new Sidecar(
+            configSource,
+            injector.getInstance(ProjectConfigCache.class),
+            injector.getInstance(PublishEventListener.class));
+
+    LOGGER.info("Publishing events from " + options.getOrDefault("events", "standard input"));
+
+    try {
+      stream.forEach(sidecar::handle);
+    } finally {
+      manager.stop();
+    }
+  }
+
+  /**
+   * Publishes a single stream-events record.
+   *
+   * @param line The record.
+   */
+  void handle(String line) {
+    refreshConfigs(System.currentTimeMillis());
+
+    Event event;
+    try {
+      JsonObject json;
+      json = jsonParser.parse(line).getAsJsonObject();
+
+      event = parser.parse(json);
+    } catch (JsonParseException | IllegalStateException e) {
+      THROTTLED_LOGGER.warn("parse", () -> "Skipping unreadable event: " + e.getMessage());
+      return;
+    }
+
+    if (event != null) {
+      listener.onEvent(event);
+    }
+  }
+
+  private void refreshConfigs(long nowMillis) {
+    if (nowMillis - lastChecked < MIRROR_CHECK_MILLIS) {
+      return;
+    }
+    lastChecked = nowMillis;
+
+    try {
+      long modified;
+      modified = configSource.getLastModified();
+
+      if (modified != lastModified) {
+        lastModified = modified;
+        configCache.invalidateAll();
+      }
+    } catch (IOException e) {
+      THROTTLED_LOGGER.warn("mirror", () -> "Cannot check the config mirror for changes: " + e);
+    }
+  }
+
+  private static Map<String, String> parseOptions(String[] args) {
+    Map<String, String> options;
+    options = new HashMap<>();
+
+    for (int i = 0; i < args.length; i++) {
+      if (!args[i].startsWith("--") || i + 1 == args.length) {
+        throw new IllegalArgumentException("Expected --option value pairs, got: " + args[i]);
+      }
+      options.put(args[i].substring(2), args[++i]);
+    }
+
+    return options;
+  }
+}
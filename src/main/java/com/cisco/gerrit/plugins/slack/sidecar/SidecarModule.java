@@ -0,0 +1,76 @@
+/*
+ * Copyright 2017 Cisco Systems, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package com.cisco.gerrit.plugins.slack.sidecar;
+
+import com.cisco.gerrit.plugins.slack.client.LoadShedder;
+import com.cisco.gerrit.plugins.slack.client.ShadowCapture;
+import com.cisco.gerrit.plugins.slack.client.WebhookDispatcher;
+import com.cisco.gerrit.plugins.slack.cluster.ClaimLog;
+import com.cisco.gerrit.plugins.slack.cluster.ClusterConfig;
+import com.cisco.gerrit.plugins.slack.cluster.ShardRouter;
+import com.cisco.gerrit.plugins.slack.config.BulkheadConfig;
+import com.cisco.gerrit.plugins.slack.config.ConfigSource;
+import com.cisco.gerrit.plugins.slack.config.LoadSheddingConfig;
+import com.cisco.gerrit.plugins.slack.config.ProjectConfigCache;
+import com.cisco.gerrit.plugins.slack.config.ServerConfigWatcher;
+import com.cisco.gerrit.plugins.slack.util.TimingWheel;
+import com.google.gerrit.extensions.annotations.PluginData;
+import com.google.gerrit.lifecycle.LifecycleModule;
+import com.google.gerrit.metrics.DisabledMetricMaker;
+import com.google.gerrit.metrics.MetricMaker;
+import java.nio.file.Path;
+
+/**
+ * Binds what Gerrit would otherwise provide to the plugin, so the same pipeline runs outside of
+ * it. Metrics are discarded, as Gerrit's metric system is not available.
+ */
+public class SidecarModule extends LifecycleModule {
+  private final ConfigSource configSource;
+  private final Path dataDirectory;
+
+  /**
+   * Creates a new SidecarModule.
+   *
+   * @param configSource Where to read the settings from.
+   * @param dataDirectory The directory to keep shadow captures in.
+   */
+  public SidecarModule(ConfigSource configSource, Path dataDirectory) {
+    this.configSource = configSource;
+    this.dataDirectory = dataDirectory;
+  }
+
+  @Override
+  protected void configure() {
+    bind(ProjectConfigCache.class).toInstance(new ProjectConfigCache(configSource));
+    bind(ClusterConfig.class).toInstance(new ClusterConfig(configSource.getServerConfig()));
+    bind(LoadSheddingConfig.class)
+        .toInstance(new LoadSheddingConfig(configSource.getServerConfig()));
+    bind(BulkheadConfig.class).toInstance(new BulkheadConfig(configSource.getServerConfig()));
+    bind(MetricMaker.class).to(DisabledMetricMaker.class);
+    bind(Path.class).annotatedWith(PluginData.class).toInstance(dataDirectory);
+
+    // In the same order as the plugin's Module
+    listener().to(TimingWheel.class);
+    listener().to(ServerConfigWatcher.class);
+    listener().to(ShadowCapture.class);
+    listener().to(ClaimLog.class);
+    listener().to(WebhookDispatcher.class);
+    listener().to(ShardRouter.class);
+    listener().to(LoadShedder.class);
+  }
+}
@@ -0,0 +1,135 @@
+/*
+ * Copyright 2017 Cisco Systems, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package com.cisco.gerrit.plugins.slack.util;
+
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * A fixed-capacity cache of recently seen event fingerprints used to drop redelivered events.
+ *
+ * <p>Fingerprints live in primitive open-addressing tables split into independently locked
+ * segments, so a lookup allocates nothing. Each key is probed within a short window; when the
+ * window is full the least recently seen entry is replaced, giving an approximate LRU bound.
+ * Entries older than the expiry are treated as absent.
+ */
+@Singleton
+public class DeduplicationCache {
+  private static final int DEFAULT_CAPACITY = 16384;
+  private static final long DEFAULT_EXPIRY_MILLIS = TimeUnit.MINUTES.toMillis(10);
+
+  private static final int SEGMENTS = 16;
+  private static final int PROBES = 8;
+
+  private final Segment[] segments;
+  private final long expiryMillis;
+  private final LongSupplier clock;
+
+  @Inject
+  public DeduplicationCache() {
+    this(DEFAULT_CAPACITY, DEFAULT_EXPIRY_MILLIS, System::currentTimeMillis);
+  }
+
+  /**
+   * Creates a new DeduplicationCache.
+   *
+   * @param capacity The total number of fingerprints to retain, rounded up to a power of two.
+   * @param expiryMillis How long a fingerprint is remembered after it was last seen.
+   * @param clock The source of the current time in milliseconds.
+   */
+  public DeduplicationCache(int capacity, long expiryMillis, LongSupplier clock) {
+    int perSegment;
+    perSegment = Integer.highestOneBit(Math.max(PROBES, (capacity + SEGMENTS - 1) / SEGMENTS));
+    if (perSegment * SEGMENTS < capacity) {
+      perSegment <<= 1;
+    }
+
+    this.segments = new Segment[SEGMENTS];
+    for (int i = 0; i < SEGMENTS; i++) {
+      segments[i] = new Segment(perSegment);
+    }
+    this.expiryMillis = expiryMillis;
+    this.clock = clock;
+  }
+
+  /**
+   * Records the fingerprint and reports whether it was already seen within the expiry window.
+   *
+   * @param fingerprint A non-zero event fingerprint.
+   * @return True if the fingerprint is a recent duplicate, otherwise false
+   */
+  public boolean isDuplicate(long fingerprint) {
+    if (fingerprint == 0) {
+      throw new IllegalArgumentException("fingerprint cannot be 0");
+    }
+
+    // The low bits pick the slot, the high bits pick the segment.
+    Segment segment;
+    segment = segments[(int) (fingerprint >>> 60) & (SEGMENTS - 1)];
+
+    return segment.check(fingerprint, clock.getAsLong());
+  }
+
+  private final class Segment {
+    private final long[] keys;
+    private final long[] seen;
+    private final int mask;
+
+    private Segment(int size) {
+      keys = new long[size];
+      seen = new long[size];
+      mask = size - 1;
+    }
+
+    private synchronized boolean check(long key, long now) {
+      int start;
+      start = (int) key & mask;
+
+      int victim;
+      victim = start;
+
+      for (int i = 0; i < PROBES; i++) {
+        int slot;
+        slot = (start + i) & mask;
+
+        if (keys[slot] == key) {
+          boolean duplicate;
+          duplicate = now - seen[slot] < expiryMillis;
+
+          seen[slot] = now;
+          return duplicate;
+        }
+
+        if (keys[slot] == 0) {
+          victim = slot;
+          break;
+        }
+
+        if (seen[slot] < seen[victim]) {
+          victim = slot;
+        }
+      }
+
+      keys[victim] = key;
+      seen[victim] = now;
+      return false;
+    }
+  }
+}
@@ -0,0 +1,92 @@
+/*
+ * Copyright 2017 Cisco Systems, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package com.cisco.gerrit.plugins.slack.util;
+
+import com.google.common.base.Supplier;
+import com.google.gerrit.server.data.AccountAttribute;
+import com.google.gerrit.server.data.ChangeAttribute;
+import com.google.gerrit.server.data.PatchSetAttribute;
+import com.google.gerrit.server.events.ChangeEvent;
+import com.google.gerrit.server.events.ChangeMergedEvent;
+import com.google.gerrit.server.events.CommentAddedEvent;
+import com.google.gerrit.server.events.Event;
+import com.google.gerrit.server.events.PatchSetCreatedEvent;
+import com.google.gerrit.server.events.PatchSetEvent;
+import com.google.gerrit.server.events.PrivateStateChangedEvent;
+import com.google.gerrit.server.events.ReviewerAddedEvent;
+import com.google.gerrit.server.events.WorkInProgressStateChangedEvent;
+
+/** Null-safe accessors for the attributes shared by the Gerrit events the plugin handles. */
+public final class EventAttributes {
+  // Made private to prevent instantiation.
+  private EventAttributes() {}
+
+  /**
+   * Gets the change the event refers to.
+   *
+   * @param event The event.
+   * @return The change attribute, null if the event is not a change event.
+   */
+  public static ChangeAttribute getChange(Event event) {
+    if (event instanceof ChangeEvent) {
+      return get(((ChangeEvent) event).change);
+    }
+    return null;
+  }
+
+  /**
+   * Gets the patch set the event refers to.
+   *
+   * @param event The event.
+   * @return The patch set attribute, null if the event is not a patch set event.
+   */
+  public static PatchSetAttribute getPatchSet(Event event) {
+    if (event instanceof PatchSetEvent) {
+      return get(((PatchSetEvent) event).patchSet);
+    }
+    return null;
+  }
+
+  /**
+   * Gets the account that caused the event, e.g. the uploader of a patch set, the author of a
+   * comment or the account that added a reviewer.
+   *
+   * @param event The event.
+   * @return The account attribute, null if unknown.
+   */
+  public static AccountAttribute getActor(Event event) {
+    if (event instanceof PatchSetCreatedEvent) {
+      return get(((PatchSetCreatedEvent) event).uploader);
+    } else if (event instanceof CommentAddedEvent) {
+      return get(((CommentAddedEvent) event).author);
+    } else if (event instanceof ChangeMergedEvent) {
+      return get(((ChangeMergedEvent) event).submitter);
+    } else if (event instanceof ReviewerAddedEvent) {
+      return get(((ReviewerAddedEvent) event).adder);
+    } else if (event instanceof WorkInProgressStateChangedEvent) {
+      return get(((WorkInProgressStateChangedEvent) event).changer);
+    } else if (event instanceof PrivateStateChangedEvent) {
+      return get(((PrivateStateChangedEvent) event).changer);
+    }
+    return null;
+  }
+
+  private static <T> T get(Supplier<T> supplier) {
+    return supplier != null ? supplier.get() : null;
+  }
+}
@@ -0,0 +1,163 @@
+/*
+ * Copyright 2017 Cisco Systems, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package com.cisco.gerrit.plugins.slack.util;
+
+import com.google.gerrit.server.data.AccountAttribute;
+import com.google.gerrit.server.data.ChangeAttribute;
+import com.google.gerrit.server.data.PatchSetAttribute;
+import com.google.gerrit.server.events.CommentAddedEvent;
+import com.google.gerrit.server.events.Event;
+import com.google.gerrit.server.events.ReviewerAddedEvent;
+
+/**
+ * Computes a compact 64-bit identity for an event from its type, change, patch set, actor and
+ * creation time, and from the comment or the added reviewer where those tell events apart.
+ * Redelivered copies of an event produce the same fingerprint.
+ */
+public final class EventFingerprint {
+  private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+  private static final long FNV_PRIME = 0x100000001b3L;
+
+  // Made private to prevent instantiation.
+  private EventFingerprint() {}
+
+  /**
+   * Computes the fingerprint of the provided event without allocating.
+   *
+   * @param event The event.
+   * @return The fingerprint, never 0.
+   */
+  public static long compute(Event event) {
+    long hash;
+    hash = FNV_OFFSET;
+
+    hash = mix(hash, event.getType());
+
+    ChangeAttribute change;
+    change = EventAttributes.getChange(event);
+    if (change != null) {
+      hash = mix(hash, change.project);
+      hash = mix(hash, change.number);
+    }
+
+    PatchSetAttribute patchSet;
+    patchSet = EventAttributes.getPatchSet(event);
+    if (patchSet != null) {
+      hash = mix(hash, patchSet.number);
+    }
+
+    AccountAttribute actor;
+    actor = EventAttributes.getActor(event);
+    if (actor != null) {
+      hash = mix(hash, actor.username != null ? actor.username : actor.email);
+    }
+
+    hash = mix(hash, event.eventCreatedOn);
+
+    // Two different comments can share everything else within the same second.
+    if (event instanceof CommentAddedEvent) {
+      hash = mix(hash, ((CommentAddedEvent) event).comment);
+    }
+
+    // Adding several reviewers at once raises one event per reviewer, all by the same account.
+    if (event instanceof ReviewerAddedEvent) {
+      AccountAttribute reviewer;
+      reviewer = getReviewer((ReviewerAddedEvent) event);
+      if (reviewer != null) {
+        hash = mix(hash, reviewer.username != null ? reviewer.username : reviewer.email);
+      }
+    }
+
+    hash = finish(hash);
+
+    return hash != 0 ? hash : 1;
+  }
+
+  /**
+   * Computes the key that places all events of a change on the same node and delivery thread.
+   *
+   * @param project The project the change belongs to.
+   * @param change The number of the change, 0 if the event does not refer to a change.
+   * @return The key, never 0.
+   */
+  public static long changeKey(String project, int change) {
+    long hash;
+    hash = finish(mix(mix(FNV_OFFSET, project), change));
+
+    return hash != 0 ? hash : 1;
+  }
+
+  /**
+   * Derives the fingerprint or change key of the copy of a message posted to one of several
+   * destinations, so each copy is claimed, stored and kept in order on its own.
+   *
+   * @param key The fingerprint or change key of the event.
+   * @param destination Identifies the destination, e.g. by its webhook URL and channel.
+   * @return The key of the copy, never 0.
+   */
+  public static long forDestination(long key, String destination) {
+    long hash;
+    hash = finish(mix(mix(FNV_OFFSET, key), destination));
+
+    return hash != 0 ? hash : 1;
+  }
+
+  /**
+   * Computes a well spread 64-bit hash of a string.
+   *
+   * @param value The string.
+   * @return The hash.
+   */
+  public static long hash(String value) {
+    return finish(mix(FNV_OFFSET, value));
+  }
+
+  private static AccountAttribute getReviewer(ReviewerAddedEvent event) {
+    return event.reviewer != null ? event.reviewer.get() : null;
+  }
+
+  private static long mix(long hash, String value) {
+    if (value == null) {
+      return mix(hash, 0L);
+    }
+
+    for (int i = 0; i < value.length(); i++) {
+      hash ^= value.charAt(i);
+      hash *= FNV_PRIME;
+    }
+    return mix(hash, value.length());
+  }
+
+  private static long mix(long hash, long value) {
+    for (int i = 0; i < 8; i++) {
+      hash ^= (value >>> (i * 8)) & 0xff;
+      hash *= FNV_PRIME;
+    }
+    return hash;
+  }
+
+  /** The MurmurHash3 finalizer, so nearby inputs spread across the whole table. */
+  private static long finish(long hash) {
+    hash ^= hash >>> 33;
+    hash *= 0xff51afd7ed558ccdL;
+    hash ^= hash >>> 33;
+    hash *= 0xc4ceb9fe1a85ec53L;
+    hash ^= hash >>> 33;
+    return hash;
+  }
+}
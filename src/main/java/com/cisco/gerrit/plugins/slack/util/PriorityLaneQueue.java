@@ -0,0 +1,508 @@
+/*
+ * Copyright 2017 Cisco Systems, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package com.cisco.gerrit.plugins.slack.util;
+
+import java.util.AbstractQueue;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+import java.util.function.LongSupplier;
+import java.util.function.ToIntFunction;
+
+/**
+ * An unbounded blocking queue with a lane per priority, lane 0 being served first. To keep the
+ * lower lanes from starving, the next element of a lane is promoted by one lane for every aging
+ * period it has waited, so an element waiting two periods in lane 2 ranks with a fresh one in lane
+ * 0.
+ *
+ * <p>Within a lane, elements are grouped into flows, such as the messages of a project, which are
+ * served by deficit round-robin: each flow in turn takes as many elements as its weight, so a busy
+ * flow cannot starve the others and a flow of weight 2 gets twice the share of a flow of weight 1.
+ * Each flow keeps its elements in order. Taking an element is O(1), and each flow is a ring buffer
+ * of elements and enqueue times, so offering allocates nothing once a flow has been seen. Meant as
+ * the work queue of a ThreadPoolExecutor.
+ *
+ * @param <E> The type of the elements.
+ */
+public class PriorityLaneQueue<E> extends AbstractQueue<E> implements BlockingQueue<E> {
+  private static final int INITIAL_CAPACITY = 8;
+
+  private final ToIntFunction<? super E> laneOf;
+  private final Function<? super E, ?> flowOf;
+  private final ToIntFunction<? super E> weightOf;
+  private final long agingNanos;
+  private final LongSupplier clock;
+  private final Lane[] lanes;
+
+  private final ReentrantLock lock = new ReentrantLock();
+  private final Condition notEmpty = lock.newCondition();
+
+  private int size;
+
+  /**
+   * Creates a new PriorityLaneQueue.
+   *
+   * @param lanes The number of lanes.
+   * @param laneOf Gets the lane of an element, clamped to the lanes there are.
+   * @param flowOf Gets the key of the flow of an element within its lane.
+   * @param weightOf Gets the weight of the flow of an element, at least 1.
+   * @param aging How long an element waits before it ranks with the next higher lane.
+   * @param unit The unit of the aging period.
+   */
+  public PriorityLaneQueue(
+      int lanes,
+      ToIntFunction<? super E> laneOf,
+      Function<? super E, ?> flowOf,
+      ToIntFunction<? super E> weightOf,
+      long aging,
+      TimeUnit unit) {
+    this(lanes, laneOf, flowOf, weightOf, unit.toNanos(aging), System::nanoTime);
+  }
+
+  /**
+   * Creates a new PriorityLaneQueue.
+   *
+   * @param lanes The number of lanes.
+   * @param laneOf Gets the lane of an element, clamped to the lanes there are.
+   * @param flowOf Gets the key of the flow of an element within its lane.
+   * @param weightOf Gets the weight of the flow of an element, at least 1.
+   * @param agingNanos How long an element waits before it ranks with the next higher lane.
+   * @param clock The source of the current time in nanoseconds.
+   */
+  public PriorityLaneQueue(
+      int lanes,
+      ToIntFunction<? super E> laneOf,
+      Function<? super E, ?> flowOf,
+      ToIntFunction<? super E> weightOf,
+      long agingNanos,
+      LongSupplier clock) {
+    if (lanes < 1) {
+      throw new IllegalArgumentException("lanes must be positive");
+    }
+
+    if (laneOf == null || flowOf == null || weightOf == null) {
+      throw new NullPointerException("laneOf, flowOf and weightOf cannot be null");
+    }
+
+    this.laneOf = laneOf;
+    this.flowOf = flowOf;
+    this.weightOf = weightOf;
+    this.agingNanos = agingNanos;
+    this.clock = clock;
+    this.lanes = new Lane[lanes];
+    for (int i = 0; i < lanes; i++) {
+      this.lanes[i] = new Lane();
+    }
+  }
+
+  @Override
+  public boolean offer(E element) {
+    if (element == null) {
+      throw new NullPointerException("element cannot be null");
+    }
+
+    int lane;
+    lane = Math.max(0, Math.min(lanes.length - 1, laneOf.applyAsInt(element)));
+
+    Object flow;
+    flow = flowOf.apply(element);
+
+    int weight;
+    weight = weightOf.applyAsInt(element);
+
+    lock.lock();
+    try {
+      lanes[lane].add(flow, weight, element, clock.getAsLong());
+      size++;
+      notEmpty.signal();
+    } finally {
+      lock.unlock();
+    }
+
+    return true;
+  }
+
+  @Override
+  public void put(E element) {
+    offer(element);
+  }
+
+  @Override
+  public boolean offer(E element, long timeout, TimeUnit unit) {
+    return offer(element);
+  }
+
+  @Override
+  public E poll() {
+    lock.lock();
+    try {
+      return size > 0 ? dequeue() : null;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  @Override
+  public E take() throws InterruptedException {
+    lock.lockInterruptibly();
+    try {
+      while (size == 0) {
+        notEmpty.await();
+      }
+      return dequeue();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  @Override
+  public E poll(long timeout, TimeUnit unit) throws InterruptedException {
+    long nanos;
+    nanos = unit.toNanos(timeout);
+
+    lock.lockInterruptibly();
+    try {
+      while (size == 0) {
+        if (nanos <= 0) {
+          return null;
+        }
+        nanos = notEmpty.awaitNanos(nanos);
+      }
+      return dequeue();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  @Override
+  @SuppressWarnings("unchecked")
+  public E peek() {
+    lock.lock();
+    try {
+      return size > 0 ? (E) lanes[select()].peek() : null;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  @Override
+  public int size() {
+    lock.lock();
+    try {
+      return size;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Gets the number of elements waiting in each lane.
+   *
+   * @return The sizes, indexed by lane.
+   */
+  public int[] laneSizes() {
+    int[] result;
+    result = new int[lanes.length];
+
+    lock.lock();
+    try {
+      for (int i = 0; i < lanes.length; i++) {
+        result[i] = lanes[i].size;
+      }
+    } finally {
+      lock.unlock();
+    }
+
+    return result;
+  }
+
+  @Override
+  public int remainingCapacity() {
+    return Integer.MAX_VALUE;
+  }
+
+  @Override
+  public boolean remove(Object element) {
+    lock.lock();
+    try {
+      for (Lane lane : lanes) {
+        if (lane.remove(element)) {
+          size--;
+          return true;
+        }
+      }
+      return false;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  @Override
+  public int drainTo(Collection<? super E> target) {
+    return drainTo(target, Integer.MAX_VALUE);
+  }
+
+  @Override
+  public int drainTo(Collection<? super E> target, int maxElements) {
+    int count;
+    count = 0;
+
+    lock.lock();
+    try {
+      while (size > 0 && count < maxElements) {
+        target.add(dequeue());
+        count++;
+      }
+    } finally {
+      lock.unlock();
+    }
+
+    return count;
+  }
+
+  /** Iterates over a snapshot of the elements, in lane order. */
+  @Override
+  @SuppressWarnings("unchecked")
+  public Iterator<E> iterator() {
+    List<Object> snapshot;
+    snapshot = new ArrayList<>();
+
+    lock.lock();
+    try {
+      for (Lane lane : lanes) {
+        lane.copyTo(snapshot);
+      }
+    } finally {
+      lock.unlock();
+    }
+
+    return (Iterator<E>) snapshot.iterator();
+  }
+
+  @SuppressWarnings("unchecked")
+  private E dequeue() {
+    size--;
+    return (E) lanes[select()].poll();
+  }
+
+  /** Picks the lane whose next element ranks highest once promoted, the higher lane on ties. */
+  private int select() {
+    long now;
+    now = clock.getAsLong();
+
+    int best;
+    best = -1;
+
+    long bestRank;
+    bestRank = Long.MAX_VALUE;
+
+    for (int i = 0; i < lanes.length; i++) {
+      if (lanes[i].size == 0) {
+        continue;
+      }
+
+      long rank;
+      rank = i * agingNanos - (now - lanes[i].headTime());
+
+      if (best == -1 || rank < bestRank) {
+        best = i;
+        bestRank = rank;
+      }
+    }
+
+    return best;
+  }
+
+  /** The flows of a lane, served by deficit round-robin. */
+  private static final class Lane {
+    private final Map<Object, Flow> flows = new HashMap<>();
+    private final ArrayDeque<Flow> active = new ArrayDeque<>();
+    private int size;
+
+    private void add(Object flowKey, int weight, Object element, long time) {
+      Flow flow;
+      flow = flows.get(flowKey);
+      if (flow == null) {
+        flow = new Flow();
+        flows.put(flowKey, flow);
+      }
+
+      // The latest weight applies, e.g. after the project config changed
+      flow.weight = Math.max(1, weight);
+      if (flow.size == 0) {
+        active.addLast(flow);
+      }
+      flow.add(element, time);
+      size++;
+    }
+
+    private long headTime() {
+      return active.peekFirst().headTime();
+    }
+
+    private Object peek() {
+      return active.peekFirst().peek();
+    }
+
+    /**
+     * Takes the next element of the flow whose turn it is. A flow is granted its weight in
+     * elements at the start of each turn and goes to the back once it has used them up.
+     */
+    private Object poll() {
+      Flow flow;
+      flow = active.peekFirst();
+
+      if (!flow.inTurn) {
+        flow.deficit += flow.weight;
+        flow.inTurn = true;
+      }
+
+      Object element;
+      element = flow.poll();
+      flow.deficit--;
+      size--;
+
+      if (flow.size == 0) {
+        active.pollFirst();
+        flow.deficit = 0;
+        flow.inTurn = false;
+      } else if (flow.deficit <= 0) {
+        active.pollFirst();
+        flow.inTurn = false;
+        active.addLast(flow);
+      }
+
+      return element;
+    }
+
+    private boolean remove(Object element) {
+      for (Flow flow : active) {
+        if (flow.remove(element)) {
+          size--;
+          if (flow.size == 0) {
+            active.remove(flow);
+            flow.deficit = 0;
+            flow.inTurn = false;
+          }
+          return true;
+        }
+      }
+      return false;
+    }
+
+    private void copyTo(List<Object> target) {
+      for (Flow flow : active) {
+        flow.copyTo(target);
+      }
+    }
+  }
+
+  /** The elements of a single flow, a ring buffer of elements and enqueue times. */
+  private static final class Flow {
+    private Object[] elements = new Object[INITIAL_CAPACITY];
+    private long[] times = new long[INITIAL_CAPACITY];
+    private int head;
+    private int size;
+    private int weight;
+    private int deficit;
+    private boolean inTurn;
+
+    private void add(Object element, long time) {
+      if (size == elements.length) {
+        grow();
+      }
+
+      int tail;
+      tail = (head + size) & (elements.length - 1);
+      elements[tail] = element;
+      times[tail] = time;
+      size++;
+    }
+
+    private long headTime() {
+      return times[head];
+    }
+
+    private Object peek() {
+      return elements[head];
+    }
+
+    private Object poll() {
+      Object element;
+      element = elements[head];
+
+      elements[head] = null;
+      head = (head + 1) & (elements.length - 1);
+      size--;
+
+      return element;
+    }
+
+    private boolean remove(Object element) {
+      int mask;
+      mask = elements.length - 1;
+
+      for (int i = 0; i < size; i++) {
+        if (elements[(head + i) & mask].equals(element)) {
+          // Close the gap by shifting the later elements forward
+          for (int j = i; j < size - 1; j++) {
+            elements[(head + j) & mask] = elements[(head + j + 1) & mask];
+            times[(head + j) & mask] = times[(head + j + 1) & mask];
+          }
+          elements[(head + size - 1) & mask] = null;
+          size--;
+          return true;
+        }
+      }
+
+      return false;
+    }
+
+    private void copyTo(List<Object> target) {
+      for (int i = 0; i < size; i++) {
+        target.add(elements[(head + i) & (elements.length - 1)]);
+      }
+    }
+
+    private void grow() {
+      Object[] grownElements;
+      grownElements = new Object[elements.length * 2];
+
+      long[] grownTimes;
+      grownTimes = new long[times.length * 2];
+
+      for (int i = 0; i < size; i++) {
+        grownElements[i] = elements[(head + i) & (elements.length - 1)];
+        grownTimes[i] = times[(head + i) & (times.length - 1)];
+      }
+
+      elements = grownElements;
+      times = grownTimes;
+      head = 0;
+    }
+  }
+}
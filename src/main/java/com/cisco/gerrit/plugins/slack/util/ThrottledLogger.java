@@ -0,0 +1,217 @@
+/*
+ * Copyright 2017 Cisco Systems, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package com.cisco.gerrit.plugins.slack.util;
+
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+import org.slf4j.Logger;
+
+/**
+ * Wraps a logger so that messages on the notification path cannot flood the Gerrit logs. Each
+ * message is logged under a key naming its call site. The first few messages per key are logged
+ * in each window; past those, one in every N is sampled and the rest are counted, with the count
+ * reported on the next message that gets through ("suppressed 4,512 similar messages").
+ *
+ * <p>Messages that need building can be passed as a {@link Supplier}, which is only called when
+ * the message is logged.
+ *
+ * <p>Keys should be a fixed set of constants, one state object is kept for each key.
+ */
+public class ThrottledLogger {
+  private static final int DEFAULT_PERMITS = 1;
+  private static final int DEFAULT_SAMPLE_EVERY = 1000;
+  private static final long DEFAULT_WINDOW_MILLIS = TimeUnit.MINUTES.toMillis(1);
+
+  private final Logger logger;
+  private final int permits;
+  private final int sampleEvery;
+  private final long windowMillis;
+  private final LongSupplier clock;
+  private final ConcurrentMap<String, Window> windows = new ConcurrentHashMap<>();
+
+  /**
+   * Creates a ThrottledLogger that logs the first message per key each minute and one in every
+   * thousand after that.
+   *
+   * @param logger The logger to write to.
+   */
+  public ThrottledLogger(Logger logger) {
+    this(
+        logger,
+        DEFAULT_PERMITS,
+        DEFAULT_SAMPLE_EVERY,
+        DEFAULT_WINDOW_MILLIS,
+        System::currentTimeMillis);
+  }
+
+  /**
+   * Creates a new ThrottledLogger.
+   *
+   * @param logger The logger to write to.
+   * @param permits The number of messages logged per key at the start of each window.
+   * @param sampleEvery One in this many of the messages past the permits is logged.
+   * @param windowMillis The length of a window in milliseconds.
+   * @param clock The source of the current time in milliseconds.
+   */
+  public ThrottledLogger(
+      Logger logger, int permits, int sampleEvery, long windowMillis, LongSupplier clock) {
+    if (logger == null) {
+      throw new NullPointerException("logger cannot be null");
+    }
+
+    if (permits <= 0) {
+      throw new IllegalArgumentException("permits must be positive");
+    }
+
+    if (sampleEvery <= 0) {
+      throw new IllegalArgumentException("sampleEvery must be positive");
+    }
+
+    this.logger = logger;
+    this.permits = permits;
+    this.sampleEvery = sampleEvery;
+    this.windowMillis = windowMillis;
+    this.clock = clock;
+  }
+
+  public void warn(String key, String message) {
+    warn(key, message, null);
+  }
+
+  public void warn(String key, String message, Throwable cause) {
+    warn(key, () -> message, cause);
+  }
+
+  public void warn(String key, Supplier<String> message) {
+    warn(key, message, null);
+  }
+
+  /**
+   * Logs a warning unless it is suppressed by the throttle for its key.
+   *
+   * @param key The key identifying similar messages.
+   * @param message Builds the message, only called if the message is logged.
+   * @param cause The error to log with the message, may be null.
+   */
+  public void warn(String key, Supplier<String> message, Throwable cause) {
+    if (!logger.isWarnEnabled()) {
+      return;
+    }
+
+    long suppressed;
+    suppressed = acquire(key);
+    if (suppressed >= 0) {
+      logger.warn(withSuppressed(message.get(), suppressed), cause);
+    }
+  }
+
+  public void error(String key, String message) {
+    error(key, message, null);
+  }
+
+  public void error(String key, String message, Throwable cause) {
+    error(key, () -> message, cause);
+  }
+
+  public void error(String key, Supplier<String> message) {
+    error(key, message, null);
+  }
+
+  /**
+   * Logs an error unless it is suppressed by the throttle for its key.
+   *
+   * @param key The key identifying similar messages.
+   * @param message Builds the message, only called if the message is logged.
+   * @param cause The error to log with the message, may be null.
+   */
+  public void error(String key, Supplier<String> message, Throwable cause) {
+    if (!logger.isErrorEnabled()) {
+      return;
+    }
+
+    long suppressed;
+    suppressed = acquire(key);
+    if (suppressed >= 0) {
+      logger.error(withSuppressed(message.get(), suppressed), cause);
+    }
+  }
+
+  /**
+   * Takes a permit for the key.
+   *
+   * @param key The key identifying similar messages.
+   * @return The number of messages suppressed since the last one logged, or -1 if this message
+   *     should be suppressed too.
+   */
+  long acquire(String key) {
+    Window window;
+    window = windows.computeIfAbsent(key, k -> new Window());
+
+    long now;
+    now = clock.getAsLong();
+
+    synchronized (window) {
+      if (!window.started || now - window.start >= windowMillis) {
+        window.started = true;
+        window.start = now;
+        window.logged = 0;
+        window.skipped = 0;
+      }
+
+      if (window.logged < permits) {
+        window.logged++;
+      } else if (++window.skipped < sampleEvery) {
+        window.suppressed++;
+        return -1;
+      } else {
+        window.skipped = 0;
+      }
+
+      long suppressed;
+      suppressed = window.suppressed;
+      window.suppressed = 0;
+
+      return suppressed;
+    }
+  }
+
+  private static String withSuppressed(String message, long suppressed) {
+    if (suppressed == 0) {
+      return message;
+    }
+
+    return String.format(
+        Locale.ROOT,
+        "%s (suppressed %,d similar message%s)",
+        message,
+        suppressed,
+        suppressed == 1 ? "" : "s");
+  }
+
+  private static final class Window {
+    private boolean started;
+    private long start;
+    private int logged;
+    private int skipped;
+    private long suppressed;
+  }
+}
@@ -0,0 +1,328 @@
+/*
+ * Copyright 2017 Cisco Systems, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package com.cisco.gerrit.plugins.slack.util;
+
+import com.google.gerrit.extensions.events.LifecycleListener;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A hashed timing wheel used for all of the plugin's delayed work (retry backoffs, coalescing
+ * windows, digest flushes). Scheduling and cancellation are O(1) and a single ticker thread drives
+ * the wheel, so holding a very large number of pending timers costs one small object per timer.
+ *
+ * <p>Tasks run on the ticker thread and must therefore be short; anything that blocks should hand
+ * itself off to an executor.
+ */
+@Singleton
+public class TimingWheel implements LifecycleListener {
+  /** The class logger instance. */
+  private static final Logger LOGGER = LoggerFactory.getLogger(TimingWheel.class);
+  private static final ThrottledLogger THROTTLED_LOGGER = new ThrottledLogger(LOGGER);
+
+  private static final long DEFAULT_TICK_MILLIS = 10;
+  private static final int DEFAULT_WHEEL_SIZE = 512;
+
+  private static final int ST_INIT = 0;
+  private static final int ST_CANCELLED = 1;
+  private static final int ST_EXPIRED = 2;
+
+  private static final AtomicIntegerFieldUpdater<Entry> STATE =
+      AtomicIntegerFieldUpdater.newUpdater(Entry.class, "state");
+
+  /** A handle to a scheduled task. */
+  public interface Timeout {
+    /**
+     * Cancels the task if it has not run yet.
+     *
+     * @return true if the task was cancelled by this call, otherwise false
+     */
+    boolean cancel();
+
+    boolean isCancelled();
+
+    boolean isExpired();
+  }
+
+  private final long tickNanos;
+  private final Bucket[] wheel;
+  private final int mask;
+  private final String threadName;
+  private final long startTime;
+
+  /** Timers scheduled since the last tick, pushed as an intrusive lock-free stack. */
+  private final AtomicReference<Entry> incoming = new AtomicReference<>();
+
+  private final AtomicLong pending = new AtomicLong();
+
+  private volatile boolean running;
+  private Thread ticker;
+
+  /** Creates a wheel with a 10ms tick and 512 buckets. */
+  @Inject
+  public TimingWheel() {
+    this(DEFAULT_TICK_MILLIS, TimeUnit.MILLISECONDS, DEFAULT_WHEEL_SIZE, "slack-integration-timer");
+  }
+
+  /**
+   * Creates a new TimingWheel.
+   *
+   * @param tickDuration The duration of a single tick, the resolution of the wheel.
+   * @param unit The unit of the tick duration.
+   * @param wheelSize The number of buckets, rounded up to a power of two.
+   * @param threadName The name of the ticker thread.
+   */
+  public TimingWheel(long tickDuration, TimeUnit unit, int wheelSize, String threadName) {
+    if (tickDuration <= 0) {
+      throw new IllegalArgumentException("tickDuration must be positive");
+    }
+
+    if (wheelSize <= 0 || wheelSize > (1 << 30)) {
+      throw new IllegalArgumentException("wheelSize out of range: " + wheelSize);
+    }
+
+    int size;
+    size = Integer.highestOneBit(wheelSize);
+    if (size < wheelSize) {
+      size <<= 1;
+    }
+
+    this.tickNanos = unit.toNanos(tickDuration);
+    this.wheel = new Bucket[size];
+    for (int i = 0; i < size; i++) {
+      wheel[i] = new Bucket();
+    }
+    this.mask = size - 1;
+    this.threadName = threadName;
+    this.startTime = System.nanoTime();
+  }
+
+  @Override
+  public synchronized void start() {
+    if (running) {
+      return;
+    }
+
+    running = true;
+    ticker = new Thread(this::run, threadName);
+    ticker.setDaemon(true);
+    ticker.start();
+  }
+
+  @Override
+  public synchronized void stop() {
+    if (!running) {
+      return;
+    }
+
+    running = false;
+    LockSupport.unpark(ticker);
+    try {
+      ticker.join(TimeUnit.SECONDS.toMillis(5));
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    ticker = null;
+  }
+
+  /**
+   * Schedules a task to run once after the given delay. Tasks scheduled before the wheel is
+   * started are held until it is.
+   *
+   * @param task The task to run on the ticker thread.
+   * @param delay The delay before running the task.
+   * @param unit The unit of the delay.
+   * @return A handle that can be used to cancel the task.
+   */
+  public Timeout schedule(Runnable task, long delay, TimeUnit unit) {
+    if (task == null) {
+      throw new NullPointerException("task cannot be null");
+    }
+
+    Entry entry;
+    entry = new Entry(task, System.nanoTime() - startTime + unit.toNanos(Math.max(0, delay)));
+
+    pending.incrementAndGet();
+
+    Entry head;
+    do {
+      head = incoming.get();
+      entry.nextIncoming = head;
+    } while (!incoming.compareAndSet(head, entry));
+
+    return entry;
+  }
+
+  /**
+   * Gets the number of timers that are scheduled and neither expired nor cancelled.
+   *
+   * @return The number of pending timers.
+   */
+  public long pendingTimers() {
+    return pending.get();
+  }
+
+  private void run() {
+    long tick;
+    tick = 0;
+
+    while (running) {
+      long deadline;
+      deadline = tickNanos * (tick + 1);
+
+      long sleep;
+      sleep = deadline - (System.nanoTime() - startTime);
+      if (sleep > 0) {
+        LockSupport.parkNanos(this, sleep);
+        continue;
+      }
+
+      transferIncoming(tick);
+      expire(wheel[(int) (tick & mask)], deadline);
+      tick++;
+    }
+  }
+
+  private void transferIncoming(long tick) {
+    Entry entry;
+    entry = incoming.getAndSet(null);
+
+    while (entry != null) {
+      Entry next;
+      next = entry.nextIncoming;
+      entry.nextIncoming = null;
+
+      if (entry.state == ST_INIT) {
+        long expiryTick;
+        expiryTick = entry.deadline / tickNanos;
+
+        entry.remainingRounds = Math.max(0, (expiryTick - tick) / wheel.length);
+        wheel[(int) (Math.max(expiryTick, tick) & mask)].add(entry);
+      }
+
+      entry = next;
+    }
+  }
+
+  private void expire(Bucket bucket, long deadline) {
+    Entry entry;
+    entry = bucket.head;
+
+    while (entry != null) {
+      Entry next;
+      next = entry.next;
+
+      if (entry.state != ST_INIT) {
+        bucket.remove(entry);
+      } else if (entry.remainingRounds <= 0 && entry.deadline <= deadline) {
+        bucket.remove(entry);
+        if (STATE.compareAndSet(entry, ST_INIT, ST_EXPIRED)) {
+          pending.decrementAndGet();
+          try {
+            entry.task.run();
+          } catch (Throwable e) {
+            THROTTLED_LOGGER.error("task", "Scheduled task failed", e);
+          }
+        }
+      } else {
+        entry.remainingRounds--;
+      }
+
+      entry = next;
+    }
+  }
+
+  /** A doubly linked list of entries, only ever touched by the ticker thread. */
+  private static final class Bucket {
+    private Entry head;
+    private Entry tail;
+
+    private void add(Entry entry) {
+      if (head == null) {
+        head = entry;
+        tail = entry;
+      } else {
+        tail.next = entry;
+        entry.prev = tail;
+        tail = entry;
+      }
+    }
+
+    private void remove(Entry entry) {
+      if (entry.prev != null) {
+        entry.prev.next = entry.next;
+      } else {
+        head = entry.next;
+      }
+
+      if (entry.next != null) {
+        entry.next.prev = entry.prev;
+      } else {
+        tail = entry.prev;
+      }
+
+      entry.prev = null;
+      entry.next = null;
+    }
+  }
+
+  private final class Entry implements Timeout {
+    private final Runnable task;
+    private final long deadline;
+    private long remainingRounds;
+
+    // Not private, Java 8 field updaters cannot reach private fields of a nested class
+    volatile int state;
+
+    private Entry nextIncoming;
+    private Entry prev;
+    private Entry next;
+
+    private Entry(Runnable task, long deadline) {
+      this.task = task;
+      this.deadline = deadline;
+    }
+
+    @Override
+    public boolean cancel() {
+      // The entry stays linked until the ticker next visits its bucket, keeping cancel O(1).
+      if (STATE.compareAndSet(this, ST_INIT, ST_CANCELLED)) {
+        pending.decrementAndGet();
+        return true;
+      }
+      return false;
+    }
+
+    @Override
+    public boolean isCancelled() {
+      return state == ST_CANCELLED;
+    }
+
+    @Override
+    public boolean isExpired() {
+      return state == ST_EXPIRED;
+    }
+  }
+}
@@ -0,0 +1,283 @@
+/*
+ * Copyright 2017 Cisco Systems, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package com.cisco.gerrit.plugins.slack;
+
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import com.cisco.gerrit.plugins.slack.client.OutboundMessage;
+import com.cisco.gerrit.plugins.slack.client.WebhookClient;
+import com.cisco.gerrit.plugins.slack.client.WebhookDispatcher;
+import com.cisco.gerrit.plugins.slack.client.WebhookResponse;
+import com.cisco.gerrit.plugins.slack.config.ProjectConfig;
+import com.cisco.gerrit.plugins.slack.sidecar.EventParser;
+import com.cisco.gerrit.plugins.slack.util.DeduplicationCache;
+import com.cisco.gerrit.plugins.slack.util.TimingWheel;
+import com.google.gerrit.extensions.annotations.PluginData;
+import com.google.gerrit.metrics.DisabledMetricMaker;
+import com.google.gerrit.metrics.MetricMaker;
+import com.google.gerrit.reviewdb.client.Project;
+import com.google.gerrit.server.config.PluginConfig;
+import com.google.gerrit.server.config.PluginConfigFactory;
+import com.google.gerrit.server.events.Event;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.google.inject.AbstractModule;
+import com.google.inject.Guice;
+import com.google.inject.Injector;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import org.eclipse.jgit.lib.Config;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * Guards the bytes allocated by a single onEvent call on the Gerrit event thread, which is where
+ * garbage turns into latency for everything else Gerrit does. Each event type has a budget a
+ * little above what it costs today; a change that pushes a type over its budget should either be
+ * reworked or raise the budget on purpose.
+ *
+ * <p>Budgets are set about 20% above what Java 8 allocates, since strings there take two bytes
+ * per character; newer JVMs come in well under them. Config and transport are stubbed, and
+ * delivery happens on the dispatcher's own threads so it is not counted.
+ */
+public class PublishEventListenerAllocationTest {
+  private static final String PROJECT = "allocation-project";
+  private static final String DISABLED_PROJECT = "disabled-project";
+
+  private static final int WARMUP = 20000;
+  private static final int ITERATIONS = 10000;
+
+  // Most of each budget is MessageTemplate reading its template and running String.format
+  private static final long PATCH_SET_CREATED_BUDGET = 30720;
+  private static final long CHANGE_MERGED_BUDGET = 29696;
+  private static final long COMMENT_ADDED_BUDGET = 31232;
+  private static final long REVIEWER_ADDED_BUDGET = 29696;
+  private static final long WIP_STATE_CHANGED_BUDGET = 29696;
+  private static final long PRIVATE_STATE_CHANGED_BUDGET = 29696;
+  private static final long FILTERED_BUDGET = 64;
+
+  private static final com.sun.management.ThreadMXBean THREADS =
+      (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+  private final EventParser parser = new EventParser();
+
+  private Path dataDirectory;
+  private TimingWheel timer;
+  private WebhookDispatcher dispatcher;
+  private PublishEventListener listener;
+
+  @BeforeClass
+  public static void checkSupport() throws Exception {
+    assumeTrue(THREADS.isThreadAllocatedMemorySupported());
+    THREADS.setThreadAllocatedMemoryEnabled(true);
+  }
+
+  @Before
+  public void setup() throws Exception {
+    PluginConfigFactory configFactory;
+    configFactory = mock(PluginConfigFactory.class);
+
+    when(configFactory.getFromProjectConfigWithInheritance(
+            new Project.NameKey(PROJECT), ProjectConfig.CONFIG_NAME))
+        .thenReturn(newPluginConfig(true));
+    when(configFactory.getFromProjectConfigWithInheritance(
+            new Project.NameKey(DISABLED_PROJECT), ProjectConfig.CONFIG_NAME))
+        .thenReturn(newPluginConfig(false));
+
+    dataDirectory = Files.createTempDirectory("slack-integration");
+
+    Injector injector;
+    injector =
+        Guice.createInjector(
+            new AbstractModule() {
+              @Override
+              protected void configure() {
+                bind(PluginConfigFactory.class).toInstance(configFactory);
+                bind(MetricMaker.class).to(DisabledMetricMaker.class);
+                bind(Path.class).annotatedWith(PluginData.class).toInstance(dataDirectory);
+                bind(WebhookClient.class).to(AcceptingWebhookClient.class);
+                // Replaying one event must not be mistaken for redelivery
+                bind(DeduplicationCache.class)
+                    .toInstance(new DeduplicationCache(1024, 0, System::currentTimeMillis));
+              }
+            });
+
+    timer = injector.getInstance(TimingWheel.class);
+    dispatcher = injector.getInstance(WebhookDispatcher.class);
+    listener = injector.getInstance(PublishEventListener.class);
+
+    timer.start();
+    dispatcher.start();
+  }
+
+  @After
+  public void teardown() throws Exception {
+    dispatcher.stop();
+    timer.stop();
+    Files.delete(dataDirectory);
+  }
+
+  @Test
+  public void patchSetCreatedStaysWithinBudget() throws Exception {
+    assertWithinBudget(
+        PATCH_SET_CREATED_BUDGET,
+        event(
+            "{'type': 'patchset-created', 'uploader': " + account() + ", 'patchSet': "
+                + patchSet("REWORK") + ", 'change': " + change(PROJECT) + "}"));
+  }
+
+  @Test
+  public void changeMergedStaysWithinBudget() throws Exception {
+    assertWithinBudget(
+        CHANGE_MERGED_BUDGET,
+        event(
+            "{'type': 'change-merged', 'submitter': " + account() + ", 'patchSet': "
+                + patchSet("REWORK") + ", 'change': " + change(PROJECT) + "}"));
+  }
+
+  @Test
+  public void commentAddedStaysWithinBudget() throws Exception {
+    assertWithinBudget(
+        COMMENT_ADDED_BUDGET,
+        event(
+            "{'type': 'comment-added', 'author': " + account() + ", 'approvals': [{"
+                + "'type': 'Code-Review', 'value': '1', 'oldValue': '0'}], "
+                + "'comment': 'Patch Set 3: Code-Review+1\\n\\nLooks good, one nit inline.', "
+                + "'patchSet': " + patchSet("REWORK") + ", 'change': " + change(PROJECT) + "}"));
+  }
+
+  @Test
+  public void reviewerAddedStaysWithinBudget() throws Exception {
+    assertWithinBudget(
+        REVIEWER_ADDED_BUDGET,
+        event(
+            "{'type': 'reviewer-added', 'reviewer': " + account() + ", 'patchSet': "
+                + patchSet("REWORK") + ", 'change': " + change(PROJECT) + "}"));
+  }
+
+  @Test
+  public void wipStateChangedStaysWithinBudget() throws Exception {
+    assertWithinBudget(
+        WIP_STATE_CHANGED_BUDGET,
+        event(
+            "{'type': 'wip-state-changed', 'changer': " + account() + ", 'patchSet': "
+                + patchSet("REWORK") + ", 'change': " + change(PROJECT) + "}"));
+  }
+
+  @Test
+  public void privateStateChangedStaysWithinBudget() throws Exception {
+    assertWithinBudget(
+        PRIVATE_STATE_CHANGED_BUDGET,
+        event(
+            "{'type': 'private-state-changed', 'changer': " + account() + ", 'patchSet': "
+                + patchSet("REWORK") + ", 'change': " + change(PROJECT) + "}"));
+  }
+
+  @Test
+  public void disabledProjectsAllocateAlmostNothing() throws Exception {
+    assertWithinBudget(
+        FILTERED_BUDGET,
+        event(
+            "{'type': 'patchset-created', 'uploader': " + account() + ", 'patchSet': "
+                + patchSet("REWORK") + ", 'change': " + change(DISABLED_PROJECT) + "}"));
+  }
+
+  @Test
+  public void ignoredPatchSetsAllocateAlmostNothing() throws Exception {
+    assertWithinBudget(
+        FILTERED_BUDGET,
+        event(
+            "{'type': 'patchset-created', 'uploader': " + account() + ", 'patchSet': "
+                + patchSet("NO_CODE_CHANGE") + ", 'change': " + change(PROJECT) + "}"));
+  }
+
+  private void assertWithinBudget(long budget, Event event) {
+    for (int i = 0; i < WARMUP; i++) {
+      listener.onEvent(event);
+    }
+
+    long threadId;
+    threadId = Thread.currentThread().getId();
+
+    long before;
+    before = THREADS.getThreadAllocatedBytes(threadId);
+
+    for (int i = 0; i < ITERATIONS; i++) {
+      listener.onEvent(event);
+    }
+
+    long bytesPerEvent;
+    bytesPerEvent = (THREADS.getThreadAllocatedBytes(threadId) - before) / ITERATIONS;
+
+    assertTrue(
+        event.getType() + " allocated " + bytesPerEvent + " bytes per event, over its budget of "
+            + budget,
+        bytesPerEvent <= budget);
+  }
+
+  private Event event(String json) {
+    JsonObject record;
+    record = new JsonParser().parse(json.replace('\'', '"')).getAsJsonObject();
+
+    return parser.parse(record);
+  }
+
+  private static String account() {
+    return "{'name': 'Allocation User', 'email': 'user@example.com', 'username': 'user'}";
+  }
+
+  private static String patchSet(String kind) {
+    return "{'number': 3, 'revision': '0123456789abcdef0123456789abcdef01234567', "
+        + "'ref': 'refs/changes/45/12345/3', 'kind': '" + kind + "'}";
+  }
+
+  private static String change(String project) {
+    return "{'project': '" + project + "', 'branch': 'master', 'number': 12345, "
+        + "'subject': 'Make the widget frobnicator fast', "
+        + "'url': 'https://gerrit.example.com/c/" + project + "/+/12345', "
+        + "'commitMessage': 'Make the widget frobnicator fast\\n\\n"
+        + "Change-Id: I0123456789abcdef0123456789abcdef01234567\\n', "
+        + "'wip': false, 'isPrivate': false, 'status': 'NEW'}";
+  }
+
+  private static PluginConfig newPluginConfig(boolean enabled) {
+    Config config;
+    config = new Config();
+    config.setBoolean("plugin", ProjectConfig.CONFIG_NAME, "enabled", enabled);
+    config.setString(
+        "plugin", ProjectConfig.CONFIG_NAME, "webhookurl", "https://hooks.example.com/hook");
+
+    return new PluginConfig(ProjectConfig.CONFIG_NAME, config);
+  }
+
+  /** Accepts every message without touching the network. */
+  static class AcceptingWebhookClient extends WebhookClient {
+    private static final WebhookResponse OK = new WebhookResponse(200, "ok", 0);
+
+    @Override
+    public WebhookResponse publish(OutboundMessage message) {
+      return OK;
+    }
+  }
+}
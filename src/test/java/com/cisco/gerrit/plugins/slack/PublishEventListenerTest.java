@@ -17,23 +17,79 @@
 
 package com.cisco.gerrit.plugins.slack;
 
+import static org.hamcrest.core.Is.is;
+import static org.hamcrest.core.IsEqual.equalTo;
+import static org.junit.Assert.assertThat;
 import static org.junit.Assert.assertTrue;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyZeroInteractions;
+import static org.mockito.Mockito.when;
 
+import com.cisco.gerrit.plugins.slack.client.LoadShedder;
+import com.cisco.gerrit.plugins.slack.client.OutboundMessage;
+import com.cisco.gerrit.plugins.slack.client.WebhookDispatcher;
+import com.cisco.gerrit.plugins.slack.config.ConfigSource;
+import com.cisco.gerrit.plugins.slack.config.LoadSheddingConfig;
+import com.cisco.gerrit.plugins.slack.config.ProjectConfig;
+import com.cisco.gerrit.plugins.slack.config.ProjectConfigCache;
+import com.cisco.gerrit.plugins.slack.message.LabelStateCache;
+import com.cisco.gerrit.plugins.slack.metrics.PipelineMetrics;
+import com.cisco.gerrit.plugins.slack.sidecar.EventParser;
+import com.cisco.gerrit.plugins.slack.util.DeduplicationCache;
+import com.cisco.gerrit.plugins.slack.util.TimingWheel;
+import com.google.gerrit.metrics.DisabledMetricMaker;
+import com.google.gerrit.reviewdb.client.Project;
+import com.google.gerrit.server.config.PluginConfig;
 import com.google.gerrit.server.events.ChangeMergedEvent;
+import com.google.gerrit.server.events.Event;
 import com.google.gerrit.server.events.PatchSetCreatedEvent;
+import com.google.gson.JsonParser;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.eclipse.jgit.lib.Config;
 import org.junit.Before;
 import org.junit.Test;
+import org.mockito.ArgumentCaptor;
 
 public class PublishEventListenerTest {
+  private static final String PROJECT = "fan-out-project";
+  private static final String WEBHOOK_URL = "https://hooks.example.com/project";
+  private static final String OTHER_WEBHOOK_URL = "https://hooks.example.com/other";
+  private static final String ACCOUNT =
+      "{'name': 'Fan Out', 'email': 'fan-out@example.com', 'username': 'fan-out'}";
+
   private PatchSetCreatedEvent mockPatchSetCreatedEvent = mock(PatchSetCreatedEvent.class);
   private ChangeMergedEvent mockChangeMergedEvent = mock(ChangeMergedEvent.class);
 
+  private ProjectConfigCache mockConfigCache = mock(ProjectConfigCache.class);
+  private WebhookDispatcher mockDispatcher = mock(WebhookDispatcher.class);
+  private DeduplicationCache deduplicationCache = new DeduplicationCache();
+  private LabelStateCache labelStateCache = new LabelStateCache();
+  private PipelineMetrics metrics = new PipelineMetrics(new DisabledMetricMaker());
+
   private PublishEventListener publishEventListener;
 
   @Before
   public void setup() throws Exception {
-    publishEventListener = new PublishEventListener();
+    publishEventListener =
+        new PublishEventListener(
+            mockConfigCache,
+            mockDispatcher,
+            deduplicationCache,
+            labelStateCache,
+            metrics,
+            new LoadShedder(
+                LoadSheddingConfig.DEFAULT_DEGRADE_WATERMARK,
+                LoadSheddingConfig.DEFAULT_SHED_WATERMARK,
+                host -> metrics.getQueueDepth(),
+                new TimingWheel(),
+                metrics,
+                mockConfigCache,
+                mockDispatcher::dispatch,
+                60000));
   }
 
   @Test
@@ -41,4 +97,129 @@ public class PublishEventListenerTest {
     // TODO: Add actual tests here
     assertTrue(true);
   }
+
+  @Test
+  public void dropsEventsForDisabledProjects() throws Exception {
+    when(mockPatchSetCreatedEvent.getProjectNameKey())
+        .thenReturn(new Project.NameKey("disabled-project"));
+    when(mockConfigCache.isEnabled("disabled-project")).thenReturn(false);
+
+    publishEventListener.onEvent(mockPatchSetCreatedEvent);
+
+    verifyZeroInteractions(mockDispatcher);
+  }
+
+  @Test
+  public void fansOutToMatchingDestinations() throws Exception {
+    enable(
+        WEBHOOK_URL,
+        "merges events=change-merged",
+        "releases branch=release/*",
+        "alerts webhookurl=" + OTHER_WEBHOOK_URL);
+
+    publishEventListener.onEvent(event("change-merged", "master"));
+
+    assertThat(
+        posted(3),
+        is(
+            equalTo(
+                new String[] {
+                  WEBHOOK_URL + "#general", WEBHOOK_URL + "#merges", OTHER_WEBHOOK_URL + "#alerts"
+                })));
+  }
+
+  @Test
+  public void filtersDestinationsByEventAndBranch() throws Exception {
+    enable(
+        WEBHOOK_URL,
+        "merges events=change-merged",
+        "releases branch=release/*",
+        "alerts webhookurl=" + OTHER_WEBHOOK_URL);
+
+    publishEventListener.onEvent(event("patchset-created", "release/1.0"));
+
+    assertThat(
+        posted(3),
+        is(
+            equalTo(
+                new String[] {
+                  WEBHOOK_URL + "#general",
+                  WEBHOOK_URL + "#releases",
+                  OTHER_WEBHOOK_URL + "#alerts"
+                })));
+  }
+
+  @Test
+  public void skipsDestinationsAlreadyPostedTo() throws Exception {
+    enable(WEBHOOK_URL, "general", "general webhookurl=" + OTHER_WEBHOOK_URL);
+
+    publishEventListener.onEvent(event("change-merged", "master"));
+
+    assertThat(
+        posted(2),
+        is(equalTo(new String[] {WEBHOOK_URL + "#general", OTHER_WEBHOOK_URL + "#general"})));
+  }
+
+  @Test
+  public void postsOnlyToDestinationsWithoutProjectWebhook() throws Exception {
+    enable("", "merges", "alerts webhookurl=" + OTHER_WEBHOOK_URL);
+
+    publishEventListener.onEvent(event("change-merged", "master"));
+
+    assertThat(posted(1), is(equalTo(new String[] {OTHER_WEBHOOK_URL + "#alerts"})));
+  }
+
+  private void enable(String webhookUrl, String... destinations) throws Exception {
+    Config config;
+    config = new Config();
+    config.setBoolean("plugin", ProjectConfig.CONFIG_NAME, "enabled", true);
+    config.setString("plugin", ProjectConfig.CONFIG_NAME, "webhookurl", webhookUrl);
+    config.setStringList(
+        "plugin", ProjectConfig.CONFIG_NAME, "destination", Arrays.asList(destinations));
+
+    ConfigSource configSource;
+    configSource = mock(ConfigSource.class);
+    when(configSource.getProjectConfig(PROJECT))
+        .thenReturn(new PluginConfig(ProjectConfig.CONFIG_NAME, config));
+
+    when(mockConfigCache.isEnabled(PROJECT)).thenReturn(true);
+    when(mockConfigCache.get(PROJECT)).thenReturn(new ProjectConfig(configSource, PROJECT));
+  }
+
+  private String[] posted(int count) {
+    ArgumentCaptor<OutboundMessage> captor;
+    captor = ArgumentCaptor.forClass(OutboundMessage.class);
+
+    verify(mockDispatcher, times(count)).dispatch(captor.capture());
+
+    List<String> result;
+    result = new ArrayList<>();
+
+    for (OutboundMessage message : captor.getAllValues()) {
+      String channel;
+      channel =
+          new JsonParser()
+              .parse(message.getPayload())
+              .getAsJsonObject()
+              .get("channel")
+              .getAsString();
+
+      result.add(message.getWebhookUrl() + channel);
+    }
+
+    return result.toArray(new String[0]);
+  }
+
+  private static Event event(String type, String branch) {
+    String json;
+    json =
+        "{'type': '" + type + "', 'uploader': " + ACCOUNT + ", 'submitter': " + ACCOUNT
+            + ", 'patchSet': {'number': 1, 'revision': '0123456789abcdef0123456789abcdef01234567',"
+            + " 'kind': 'REWORK'}, 'change': {'project': '" + PROJECT + "', 'branch': '" + branch
+            + "', 'number': 1, 'subject': 'Fan out', 'url': 'https://gerrit.example.com/c/1',"
+            + " 'commitMessage': 'Fan out', 'status': 'NEW'}}";
+
+    return new EventParser()
+        .parse(new JsonParser().parse(json.replace('\'', '"')).getAsJsonObject());
+  }
 }
@@ -0,0 +1,153 @@
+/*
+ * Copyright 2017 Cisco Systems, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package com.cisco.gerrit.plugins.slack.client;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.notNullValue;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+
+public class ConcurrencyLimiterTest {
+  private static final long FAST = TimeUnit.MILLISECONDS.toNanos(100);
+  private static final long SLOW = TimeUnit.MILLISECONDS.toNanos(500);
+
+  @Test
+  public void handsPermitsToOldestWaiterFirst() throws Exception {
+    ConcurrencyLimiter limiter;
+    limiter = new ConcurrencyLimiter(1, 4);
+
+    Runnable first;
+    first = () -> {};
+
+    Runnable second;
+    second = () -> {};
+
+    assertTrue(limiter.acquire(() -> {}));
+    assertFalse(limiter.acquire(first));
+    assertFalse(limiter.acquire(second));
+    assertThat(limiter.getWaiting(), is(equalTo(2)));
+    assertThat(limiter.next(), is(nullValue()));
+
+    limiter.cancelled();
+    assertThat(limiter.next(), is(equalTo(first)));
+    assertThat(limiter.next(), is(nullValue()));
+
+    limiter.cancelled();
+    assertThat(limiter.next(), is(equalTo(second)));
+
+    limiter.cancelled();
+    assertThat(limiter.next(), is(nullValue()));
+
+    // Nothing is in flight or waiting, so the next request goes ahead
+    assertTrue(limiter.acquire(() -> {}));
+  }
+
+  @Test
+  public void handsPermitsToHigherLanesFirst() throws Exception {
+    Runnable comment;
+    comment = () -> {};
+
+    Runnable otherComment;
+    otherComment = () -> {};
+
+    Runnable merged;
+    merged = () -> {};
+
+    ConcurrencyLimiter limiter;
+    limiter = new ConcurrencyLimiter(1, 4, 3, waiter -> waiter == merged ? 0 : 2);
+
+    assertTrue(limiter.acquire(() -> {}));
+    assertFalse(limiter.acquire(comment));
+    assertFalse(limiter.acquire(otherComment));
+    assertFalse(limiter.acquire(merged));
+
+    // The merge waited least but is handed the first permit, the comments keep their order
+    limiter.cancelled();
+    assertThat(limiter.next(), is(equalTo(merged)));
+
+    limiter.cancelled();
+    assertThat(limiter.next(), is(equalTo(comment)));
+
+    limiter.cancelled();
+    assertThat(limiter.next(), is(equalTo(otherComment)));
+    assertThat(limiter.getWaiting(), is(equalTo(0)));
+  }
+
+  @Test
+  public void makesRoomForSeveralWaitersOnceGrown() throws Exception {
+    ConcurrencyLimiter limiter;
+    limiter = new ConcurrencyLimiter(1, 4);
+
+    assertTrue(limiter.acquire(() -> {}));
+    for (int i = 0; i < 3; i++) {
+      assertFalse(limiter.acquire(() -> {}));
+    }
+
+    // A fast response while fully used raises the limit from 1 to 2
+    limiter.succeeded(FAST);
+
+    assertThat(limiter.getLimit(), is(equalTo(2)));
+    assertThat(limiter.next(), is(notNullValue()));
+    assertThat(limiter.next(), is(notNullValue()));
+    assertThat(limiter.next(), is(nullValue()));
+  }
+
+  @Test
+  public void growsWhileFullyUsedAndFast() throws Exception {
+    ConcurrencyLimiter limiter;
+    limiter = new ConcurrencyLimiter(1, 4);
+
+    for (int i = 0; i < 20; i++) {
+      // Keep every permit taken, then complete one request
+      while (limiter.acquire(() -> {})) {
+        continue;
+      }
+      limiter.drain();
+      limiter.succeeded(FAST);
+    }
+
+    assertThat(limiter.getLimit(), is(equalTo(4)));
+  }
+
+  @Test
+  public void shrinksWhenSlowOrFailing() throws Exception {
+    ConcurrencyLimiter limiter;
+    limiter = new ConcurrencyLimiter(4, 4);
+
+    limiter.acquire(() -> {});
+    limiter.succeeded(FAST);
+
+    limiter.acquire(() -> {});
+    limiter.succeeded(SLOW);
+    assertThat(limiter.getLimit(), is(equalTo(3)));
+
+    limiter.acquire(() -> {});
+    limiter.failed();
+    assertThat(limiter.getLimit(), is(equalTo(1)));
+
+    limiter.acquire(() -> {});
+    limiter.failed();
+    assertThat(limiter.getLimit(), is(equalTo(1)));
+  }
+}
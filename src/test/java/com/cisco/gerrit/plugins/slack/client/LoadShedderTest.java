@@ -0,0 +1,251 @@
+/*
+ * Copyright 2017 Cisco Systems, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package com.cisco.gerrit.plugins.slack.client;
+
+import static org.hamcrest.CoreMatchers.containsString;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.not;
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+
+import com.cisco.gerrit.plugins.slack.client.LoadShedder.Decision;
+import com.cisco.gerrit.plugins.slack.client.LoadShedder.Level;
+import com.cisco.gerrit.plugins.slack.config.ConfigSource;
+import com.cisco.gerrit.plugins.slack.config.Priority;
+import com.cisco.gerrit.plugins.slack.config.ProjectConfig;
+import com.cisco.gerrit.plugins.slack.config.ProjectConfigCache;
+import com.cisco.gerrit.plugins.slack.metrics.PipelineMetrics;
+import com.cisco.gerrit.plugins.slack.util.TimingWheel;
+import com.google.gerrit.metrics.DisabledMetricMaker;
+import com.google.gerrit.server.config.PluginConfig;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.eclipse.jgit.lib.Config;
+import org.junit.Before;
+import org.junit.Test;
+
+public class LoadShedderTest {
+  private static final long DIGEST_MILLIS = 60000;
+
+  private static final String HUNG_HOST = "hung.example.com";
+
+  private AtomicInteger backlog;
+  private AtomicInteger hungBacklog;
+  private List<OutboundMessage> posted;
+  private ConfigSource configSource;
+  private LoadShedder shedder;
+
+  @Before
+  public void setup() throws Exception {
+    backlog = new AtomicInteger();
+    hungBacklog = new AtomicInteger();
+    posted = new ArrayList<>();
+    configSource = newConfigSource();
+    shedder =
+        new LoadShedder(
+            100,
+            1000,
+            host -> HUNG_HOST.equals(host) ? hungBacklog.get() : backlog.get(),
+            new TimingWheel(),
+            new PipelineMetrics(new DisabledMetricMaker()),
+            new ProjectConfigCache(configSource),
+            posted::add,
+            DIGEST_MILLIS);
+  }
+
+  @Test
+  public void degradesWithBacklogAndRecoversOnceDrained() throws Exception {
+    assertThat(shedder.decide("comment-added", Priority.LOW, null), is(equalTo(Decision.DELIVER)));
+
+    backlog.set(100);
+    assertThat(shedder.decide("comment-added", Priority.LOW, null), is(equalTo(Decision.DIGEST)));
+    assertThat(shedder.getLevel(), is(equalTo(Level.DEGRADED)));
+
+    backlog.set(1000);
+    assertThat(shedder.decide("comment-added", Priority.LOW, null), is(equalTo(Decision.SKIP)));
+    assertThat(shedder.getLevel(), is(equalTo(Level.SHEDDING)));
+
+    // Below the watermark but above half of it the level holds
+    backlog.set(600);
+    assertThat(shedder.decide("comment-added", Priority.LOW, null), is(equalTo(Decision.SKIP)));
+
+    backlog.set(400);
+    assertThat(shedder.decide("comment-added", Priority.LOW, null), is(equalTo(Decision.DIGEST)));
+    assertThat(shedder.getLevel(), is(equalTo(Level.DEGRADED)));
+
+    backlog.set(50);
+    assertThat(shedder.decide("comment-added", Priority.LOW, null), is(equalTo(Decision.DIGEST)));
+
+    backlog.set(49);
+    assertThat(shedder.decide("comment-added", Priority.LOW, null), is(equalTo(Decision.DELIVER)));
+    assertThat(shedder.getLevel(), is(equalTo(Level.NORMAL)));
+  }
+
+  @Test
+  public void alwaysDeliversHighPriorityEvents() throws Exception {
+    backlog.set(100);
+    assertThat(
+        shedder.decide("patchset-created", Priority.NORMAL, null), is(equalTo(Decision.DELIVER)));
+    assertThat(
+        shedder.decide("comment-added", Priority.NORMAL, null), is(equalTo(Decision.TRUNCATE)));
+
+    backlog.set(1000);
+    assertThat(
+        shedder.decide("patchset-created", Priority.NORMAL, null), is(equalTo(Decision.DIGEST)));
+    assertThat(shedder.decide("change-merged", Priority.HIGH, null), is(equalTo(Decision.DELIVER)));
+    assertThat(
+        shedder.decide("comment-added", Priority.HIGH, null), is(equalTo(Decision.TRUNCATE)));
+  }
+
+  @Test
+  public void shedsByTheBacklogOfTheMessagesHost() throws Exception {
+    hungBacklog.set(1000);
+    assertThat(
+        shedder.decide("comment-added", Priority.LOW, HUNG_HOST), is(equalTo(Decision.SKIP)));
+    assertThat(shedder.getLevel(), is(equalTo(Level.SHEDDING)));
+
+    // Other hosts are not held back by the one that stopped responding
+    assertThat(
+        shedder.decide("comment-added", Priority.LOW, "hooks.example.com"),
+        is(equalTo(Decision.DELIVER)));
+    assertThat(shedder.decide("comment-added", Priority.LOW, null), is(equalTo(Decision.DELIVER)));
+  }
+
+  @Test
+  public void postsOneDigestPerProject() throws Exception {
+    ProjectConfig config;
+    config = new ProjectConfig(configSource, "first");
+
+    shedder.digest("first", "comment-added", config);
+    shedder.digest("first", "comment-added", config);
+    shedder.digest("first", "reviewer-added", config);
+    shedder.digest("second", "comment-added", config);
+
+    shedder.flush(9, DIGEST_MILLIS * 10);
+
+    assertThat(posted.size(), is(equalTo(2)));
+
+    OutboundMessage first;
+    first = posted.get(0).getProject().equals("first") ? posted.get(0) : posted.get(1);
+
+    assertThat(first.getEventType(), is(equalTo(LoadShedder.DIGEST_EVENT_TYPE)));
+    assertThat(first.getPayload(), containsString("\"channel\":\"#general\""));
+    assertThat(first.getPayload(), containsString("2 comment-added"));
+    assertThat(first.getPayload(), containsString("1 reviewer-added"));
+
+    // Nothing was counted since
+    shedder.flush(10, DIGEST_MILLIS * 11);
+    assertThat(posted.size(), is(equalTo(2)));
+  }
+
+  @Test
+  public void fingerprintsDigestsByTheWindowTheyClose() throws Exception {
+    ProjectConfig config;
+    config = new ProjectConfig(configSource, "first");
+
+    shedder.digest("first", "comment-added", config);
+    shedder.flush(9, DIGEST_MILLIS * 10 + 5);
+
+    // A peer closing the same window a little later posts the same digest
+    shedder.digest("first", "comment-added", config);
+    shedder.flush(9, DIGEST_MILLIS * 10 + 900);
+
+    shedder.digest("first", "comment-added", config);
+    shedder.flush(10, DIGEST_MILLIS * 10 + 950);
+
+    assertThat(posted.size(), is(equalTo(3)));
+    assertThat(posted.get(1).getFingerprint(), is(equalTo(posted.get(0).getFingerprint())));
+    assertThat(posted.get(2).getFingerprint(), is(not(equalTo(posted.get(0).getFingerprint()))));
+  }
+
+  @Test
+  public void summarizesExpiredMessages() throws Exception {
+    shedder.expired(
+        OutboundMessage.builder()
+            .project("first")
+            .eventType("comment-added")
+            .eventCreatedOn(1)
+            .priority(Priority.LOW)
+            .ttlMillis(1000)
+            .payload("{}")
+            .webhookUrl("http://localhost/hook")
+            .build());
+
+    shedder.flush(0, DIGEST_MILLIS);
+
+    assertThat(posted.size(), is(equalTo(1)));
+    assertThat(posted.get(0).getPayload(), containsString("1 comment-added"));
+  }
+
+  @Test
+  public void postsDigestsOfProjectsWithOnlyDestinations() throws Exception {
+    Config gerritConfig;
+    gerritConfig = new Config();
+    gerritConfig.setBoolean("plugin", ProjectConfig.CONFIG_NAME, "enabled", true);
+    gerritConfig.setStringList(
+        "plugin",
+        ProjectConfig.CONFIG_NAME,
+        "destination",
+        Arrays.asList("releases webhookurl=http://localhost/releases"));
+
+    ProjectConfig config;
+    config = new ProjectConfig(newConfigSource(gerritConfig), "first");
+
+    shedder.digest("first", "comment-added", config);
+    shedder.digest("second", "comment-added", new ProjectConfig(configSource, "second"));
+
+    shedder.flush(0, DIGEST_MILLIS);
+
+    assertThat(posted.size(), is(equalTo(2)));
+
+    OutboundMessage first;
+    first = posted.get(0).getProject().equals("first") ? posted.get(0) : posted.get(1);
+
+    assertThat(first.getWebhookUrl(), is(equalTo("http://localhost/releases")));
+    assertThat(first.getPayload(), containsString("\"channel\":\"#releases\""));
+    assertThat(first.getPayload(), containsString("1 comment-added"));
+  }
+
+  private static ConfigSource newConfigSource() {
+    Config config;
+    config = new Config();
+    config.setBoolean("plugin", ProjectConfig.CONFIG_NAME, "enabled", true);
+    config.setString("plugin", ProjectConfig.CONFIG_NAME, "webhookurl", "http://localhost/hook");
+
+    return newConfigSource(config);
+  }
+
+  private static ConfigSource newConfigSource(Config config) {
+    PluginConfig pluginConfig;
+    pluginConfig = new PluginConfig(ProjectConfig.CONFIG_NAME, config);
+
+    return new ConfigSource() {
+      @Override
+      public PluginConfig getProjectConfig(String project) {
+        return pluginConfig;
+      }
+
+      @Override
+      public PluginConfig getServerConfig() {
+        return null;
+      }
+    };
+  }
+}
@@ -0,0 +1,141 @@
+/*
+ * Copyright 2017 Cisco Systems, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package com.cisco.gerrit.plugins.slack.client;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+import com.cisco.gerrit.plugins.slack.config.Priority;
+import org.junit.Test;
+
+public class OutboundMessageTest {
+  private static final String HOOK = "http://localhost/hook";
+
+  @Test
+  public void masksTheWebhookSecretInTheDestination() throws Exception {
+    assertThat(
+        destinationOf("https://hooks.slack.com/services/T000/B000/XXXXXXXX"),
+        is(equalTo("hooks.slack.com/services/T000/B000/***")));
+  }
+
+  @Test
+  public void keepsThePortInTheDestination() throws Exception {
+    assertThat(destinationOf("http://localhost:8080/hook"), is(equalTo("localhost:8080/***")));
+  }
+
+  @Test
+  public void describesUrlsWithoutAPath() throws Exception {
+    assertThat(destinationOf("http://localhost/"), is(equalTo("localhost/")));
+  }
+
+  @Test
+  public void marksShadowDestinations() throws Exception {
+    assertThat(
+        OutboundMessage.builder()
+            .payload("{}")
+            .webhookUrl("http://localhost/hook")
+            .shadow(true)
+            .build()
+            .getDestination(),
+        is(equalTo("shadow:localhost/***")));
+    assertThat(
+        OutboundMessage.builder().payload("{}").shadow(true).build().getDestination(),
+        is(equalTo("shadow:(none)")));
+  }
+
+  @Test
+  public void expiresOnceOlderThanItsTimeToLive() throws Exception {
+    OutboundMessage message;
+    message =
+        OutboundMessage.builder()
+            .eventCreatedOn(100)
+            .ttlMillis(60000)
+            .payload("{}")
+            .webhookUrl(HOOK)
+            .build();
+
+    assertFalse(message.isExpired(160000));
+    assertTrue(message.isExpired(160001));
+
+    // Without a time to live a message never expires
+    assertFalse(
+        OutboundMessage.builder()
+            .eventCreatedOn(100)
+            .payload("{}")
+            .webhookUrl(HOOK)
+            .build()
+            .isExpired(Long.MAX_VALUE));
+  }
+
+  @Test
+  public void copiesForAnotherDestination() throws Exception {
+    OutboundMessage message;
+    message =
+        OutboundMessage.builder()
+            .project("project")
+            .eventType("change-merged")
+            .eventCreatedOn(100)
+            .fingerprint(7)
+            .changeKey(9)
+            .priority(Priority.HIGH)
+            .payload("{\"channel\":\"#general\"}")
+            .webhookUrl(HOOK)
+            .build();
+
+    OutboundMessage copy;
+    copy = message.withDestination("http://localhost/other", "releases");
+
+    assertThat(copy.getPayload(), is(equalTo("{\"channel\":\"#releases\"}")));
+    assertThat(copy.getWebhookUrl(), is(equalTo("http://localhost/other")));
+    assertThat(copy.getPriority(), is(equalTo(Priority.HIGH)));
+    assertFalse(copy.getFingerprint() == message.getFingerprint());
+    assertFalse(copy.getChangeKey() == message.getChangeKey());
+
+    // Every copy for the same destination keeps the same keys
+    assertThat(
+        message.withDestination("http://localhost/other", "releases").getChangeKey(),
+        is(equalTo(copy.getChangeKey())));
+  }
+
+  @Test
+  public void defaultsToThePriorityOfTheEventType() throws Exception {
+    OutboundMessage message;
+    message =
+        OutboundMessage.builder()
+            .eventType("change-merged")
+            .payload("{}")
+            .webhookUrl(HOOK)
+            .build();
+
+    assertThat(message.getPriority(), is(equalTo(Priority.defaultFor("change-merged"))));
+    assertThat(message.getWeight(), is(equalTo(1)));
+    assertThat(message.getTtlMillis(), is(equalTo(0L)));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void requiresAWebhookUrlToPost() throws Exception {
+    OutboundMessage.builder().payload("{}").build();
+  }
+
+  private static String destinationOf(String webhookUrl) {
+    return OutboundMessage.builder().payload("{}").webhookUrl(webhookUrl).build().getDestination();
+  }
+}
@@ -0,0 +1,76 @@
+/*
+ * Copyright 2017 Cisco Systems, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package com.cisco.gerrit.plugins.slack.client;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import org.junit.Test;
+
+public class PayloadTest {
+  private static final String RENDERED =
+      "{\n  \"channel\": \"#general\",\n"
+          + "  \"attachments\": [{\"text\": \"the \\\"channel\\\": \\\"#x\\\" \u00e9t\u00e9\","
+          + " \"channel\": \"#nested\"}]\n}";
+
+  @Test
+  public void patchesTheTopLevelChannel() throws Exception {
+    Payload payload;
+    payload = Payload.of(RENDERED);
+
+    Payload patched;
+    patched = payload.withChannel("#r\u00e9leases");
+
+    String expected;
+    expected = RENDERED.replace("\"#general\"", "\"#r\u00e9leases\"");
+
+    assertThat(patched.toString(), is(equalTo(expected)));
+    assertThat(patched.length(), is(equalTo(expected.getBytes(StandardCharsets.UTF_8).length)));
+    assertThat(written(patched), is(equalTo(expected)));
+
+    // The original is left alone
+    assertThat(payload.toString(), is(equalTo(RENDERED)));
+    assertThat(written(payload), is(equalTo(RENDERED)));
+  }
+
+  @Test
+  public void escapesThePatchedChannel() throws Exception {
+    assertThat(
+        Payload.of("{\"channel\":\"#general\",\"text\":\"hi\"}")
+            .withChannel("#a\"b")
+            .toString(),
+        is(equalTo("{\"channel\":\"#a\\\"b\",\"text\":\"hi\"}")));
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void cannotPatchPayloadWithoutChannel() throws Exception {
+    Payload.of("{\"text\":\"hi\",\"attachments\":[{\"channel\":\"#nested\"}]}")
+        .withChannel("#releases");
+  }
+
+  private static String written(Payload payload) throws Exception {
+    ByteArrayOutputStream out;
+    out = new ByteArrayOutputStream();
+    payload.writeTo(out);
+
+    return new String(out.toByteArray(), StandardCharsets.UTF_8);
+  }
+}
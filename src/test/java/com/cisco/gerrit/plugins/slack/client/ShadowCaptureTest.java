@@ -0,0 +1,106 @@
+/*
+ * Copyright 2017 Cisco Systems, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package com.cisco.gerrit.plugins.slack.client;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ShadowCaptureTest {
+  private Path directory;
+
+  @Before
+  public void setup() throws Exception {
+    directory = Files.createTempDirectory("shadow-capture");
+  }
+
+  @After
+  public void teardown() throws Exception {
+    try (Stream<Path> files = Files.walk(directory)) {
+      files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+    }
+  }
+
+  @Test
+  public void writesOneRecordPerMessage() throws Exception {
+    ShadowCapture capture;
+    capture = new ShadowCapture(directory, 1024 * 1024, 2);
+
+    capture.write(message("{\"text\": \"first\"}"));
+    capture.write(message("{\"text\": \"second\"}"));
+    capture.stop();
+
+    List<String> lines;
+    lines = Files.readAllLines(directory.resolve(ShadowCapture.FILE_NAME), StandardCharsets.UTF_8);
+
+    assertThat(lines.size(), is(equalTo(2)));
+
+    JsonObject record;
+    record = new JsonParser().parse(lines.get(1)).getAsJsonObject();
+
+    assertThat(record.get("project").getAsString(), is(equalTo("project")));
+    assertThat(record.get("eventType").getAsString(), is(equalTo("patchset-created")));
+    assertThat(record.get("destination").getAsString(), is(equalTo("shadow:localhost/***")));
+    assertThat(record.get("payload").getAsString(), is(equalTo("{\"text\": \"second\"}")));
+  }
+
+  @Test
+  public void rotatesFullFiles() throws Exception {
+    ShadowCapture capture;
+    capture = new ShadowCapture(directory, 300, 3);
+
+    for (int i = 0; i < 10; i++) {
+      capture.write(message("{\"text\": \"message " + i + "\"}"));
+    }
+    capture.stop();
+
+    assertTrue(Files.size(directory.resolve(ShadowCapture.FILE_NAME)) <= 300);
+    assertTrue(Files.exists(directory.resolve(ShadowCapture.FILE_NAME + ".1")));
+    assertTrue(Files.exists(directory.resolve(ShadowCapture.FILE_NAME + ".2")));
+    assertFalse(Files.exists(directory.resolve(ShadowCapture.FILE_NAME + ".3")));
+
+    List<String> lines;
+    lines = Files.readAllLines(directory.resolve(ShadowCapture.FILE_NAME), StandardCharsets.UTF_8);
+
+    assertTrue(lines.get(lines.size() - 1).contains("message 9"));
+  }
+
+  private static OutboundMessage message(String payload) {
+    return OutboundMessage.builder()
+        .project("project")
+        .eventType("patchset-created")
+        .payload(payload)
+        .webhookUrl("http://localhost/hook")
+        .shadow(true)
+        .build();
+  }
+}
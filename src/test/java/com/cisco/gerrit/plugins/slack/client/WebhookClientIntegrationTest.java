@@ -17,29 +17,41 @@
 
 package com.cisco.gerrit.plugins.slack.client;
 
+import static org.hamcrest.CoreMatchers.containsString;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThat;
 import static org.junit.Assert.assertTrue;
 
 import com.cisco.gerrit.plugins.slack.message.MessageTemplate;
-import com.cisco.gerrit.plugins.slack.util.ResourceHelper;
-import java.io.InputStream;
-import java.util.Properties;
+import com.cisco.gerrit.plugins.slack.testing.WebhookStubServer;
+import com.cisco.gerrit.plugins.slack.testing.WebhookStubServer.Reply;
+import java.util.concurrent.TimeUnit;
+import javax.net.ssl.HttpsURLConnection;
+import javax.net.ssl.SSLSocketFactory;
+import org.junit.After;
+import org.junit.Before;
 import org.junit.Test;
 
 public class WebhookClientIntegrationTest {
+  private WebhookStubServer stub;
+
+  @Before
+  public void setup() throws Exception {
+    stub = new WebhookStubServer(1);
+  }
+
+  @After
+  public void teardown() throws Exception {
+    stub.close();
+  }
+
   @Test
   public void canPublishMessage() throws Exception {
     WebhookClient client;
     client = new WebhookClient();
 
-    InputStream testProperties;
-    testProperties = ResourceHelper.loadNamedResourceAsStream("test.properties");
-
-    Properties properties;
-    properties = new Properties();
-    properties.load(testProperties);
-
-    testProperties.close();
-
     MessageTemplate template;
     template = new MessageTemplate();
 
@@ -52,10 +64,11 @@ public class WebhookClientIntegrationTest {
     template.setNumber(1234);
     template.setTitle("Adds a test commit message");
 
-    String webhookUrl;
-    webhookUrl = properties.getProperty("webhook-url");
+    String message;
+    message = template.render();
 
-    assertTrue(client.publish(template.render(), webhookUrl));
+    assertTrue(client.publish(message, stub.getUrl()));
+    assertThat(stub.getPayloads().get(0), is(equalTo(message)));
   }
 
   @Test
@@ -63,15 +76,6 @@ public class WebhookClientIntegrationTest {
     WebhookClient client;
     client = new WebhookClient();
 
-    InputStream testProperties;
-    testProperties = ResourceHelper.loadNamedResourceAsStream("test.properties");
-
-    Properties properties;
-    properties = new Properties();
-    properties.load(testProperties);
-
-    testProperties.close();
-
     MessageTemplate template;
     template = new MessageTemplate();
 
@@ -90,9 +94,95 @@ public class WebhookClientIntegrationTest {
             + "but this will be on multiple lines in IRC.\n\n\n\n\n"
             + "This is hidden.");
 
-    String webhookUrl;
-    webhookUrl = properties.getProperty("webhook-url");
+    assertTrue(client.publish(template.render(), stub.getUrl()));
+    assertThat(stub.getPayloads().get(0), containsString("really long comment"));
+  }
+
+  @Test
+  public void canPublishMessageOverHttps() throws Exception {
+    try (WebhookStubServer secure = new WebhookStubServer(1, true)) {
+      SSLSocketFactory defaultFactory;
+      defaultFactory = HttpsURLConnection.getDefaultSSLSocketFactory();
+
+      HttpsURLConnection.setDefaultSSLSocketFactory(secure.getSslContext().getSocketFactory());
+      try {
+        assertTrue(new WebhookClient().publish("{\"text\": \"hello\"}", secure.getUrl()));
+      } finally {
+        HttpsURLConnection.setDefaultSSLSocketFactory(defaultFactory);
+      }
+
+      assertThat(secure.getAccepted(), is(equalTo(1L)));
+    }
+  }
+
+  @Test
+  public void reportsRejectedPayloads() throws Exception {
+    stub.enqueue(Reply.INVALID_PAYLOAD, Reply.CHANNEL_NOT_FOUND);
+
+    WebhookClient client;
+    client = new WebhookClient();
+
+    assertFalse(client.publish("{\"text\": \"hello\"}", stub.getUrl()));
+    assertFalse(client.publish("{\"text\": \"hello\"}", stub.getUrl()));
+    assertThat(stub.getRejected(), is(equalTo(2L)));
+  }
+
+  @Test
+  public void reportsRateLimitingAndServerErrors() throws Exception {
+    stub.enqueue(Reply.RATE_LIMITED, Reply.SERVER_ERROR);
+
+    WebhookClient client;
+    client = new WebhookClient();
+
+    assertFalse(client.publish("{\"text\": \"hello\"}", stub.getUrl()));
+    assertFalse(client.publish("{\"text\": \"hello\"}", stub.getUrl()));
+    assertThat(stub.getThrottled(), is(equalTo(1L)));
+    assertThat(stub.getFailed(), is(equalTo(1L)));
+  }
+
+  @Test
+  public void tellsRetryableFailuresApart() throws Exception {
+    stub.setRetryAfter(3, TimeUnit.SECONDS);
+    stub.enqueue(Reply.RATE_LIMITED, Reply.SERVER_ERROR, Reply.CHANNEL_NOT_FOUND, Reply.OK);
+
+    WebhookClient client;
+    client = new WebhookClient();
+
+    OutboundMessage message;
+    message =
+        OutboundMessage.builder()
+            .payload("{\"text\": \"hello\"}")
+            .webhookUrl(stub.getUrl())
+            .build();
+
+    WebhookResponse response;
+    response = client.publish(message);
+    assertTrue(response.isRetryable());
+    assertThat(response.getRetryAfterMillis(), is(equalTo(3000L)));
+
+    response = client.publish(message);
+    assertTrue(response.isRetryable());
+    assertThat(response.getRetryAfterMillis(), is(equalTo(0L)));
+
+    response = client.publish(message);
+    assertFalse(response.isRetryable());
+    assertFalse(response.isOk());
+
+    assertTrue(client.publish(message).isOk());
+  }
+
+  @Test(expected = RuntimeException.class)
+  public void givesUpOnSlowResponses() throws Exception {
+    stub.setLatency(10, TimeUnit.SECONDS);
+
+    new WebhookClient(1000, 200).publish("{\"text\": \"hello\"}", stub.getUrl());
+  }
+
+  @Test(expected = RuntimeException.class)
+  public void throwsWhenTheConnectionIsDropped() throws Exception {
+    // HttpURLConnection silently retries a POST once when the connection drops.
+    stub.enqueue(Reply.DROP, Reply.DROP);
 
-    assertTrue(client.publish(template.render(), webhookUrl));
+    new WebhookClient().publish("{\"text\": \"hello\"}", stub.getUrl());
   }
 }
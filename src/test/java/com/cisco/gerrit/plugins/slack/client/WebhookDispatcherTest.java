@@ -0,0 +1,257 @@
+/*
+ * Copyright 2017 Cisco Systems, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package com.cisco.gerrit.plugins.slack.client;
+
+import static org.hamcrest.CoreMatchers.containsString;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+import com.cisco.gerrit.plugins.slack.cluster.ClaimLog;
+import com.cisco.gerrit.plugins.slack.cluster.ShardRouter;
+import com.cisco.gerrit.plugins.slack.config.BulkheadConfig;
+import com.cisco.gerrit.plugins.slack.config.ConfigSource;
+import com.cisco.gerrit.plugins.slack.config.ProjectConfig;
+import com.cisco.gerrit.plugins.slack.config.ProjectConfigCache;
+import com.cisco.gerrit.plugins.slack.metrics.DeliveryLatency;
+import com.cisco.gerrit.plugins.slack.metrics.PipelineMetrics;
+import com.cisco.gerrit.plugins.slack.metrics.PipelineStatus;
+import com.cisco.gerrit.plugins.slack.testing.WebhookStubServer;
+import com.cisco.gerrit.plugins.slack.testing.WebhookStubServer.Reply;
+import com.cisco.gerrit.plugins.slack.util.TimingWheel;
+import com.google.common.collect.ImmutableSet;
+import com.google.gerrit.metrics.DisabledMetricMaker;
+import com.google.gerrit.server.config.PluginConfig;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.eclipse.jgit.lib.Config;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class WebhookDispatcherTest {
+  /** The host of the hung webhook, which is delivered by a bulkhead of its own. */
+  private static final String HUNG_HOST = "localhost";
+
+  private WebhookStubServer stub;
+  private WebhookStubServer hung;
+  private Path captureDirectory;
+  private TimingWheel timer;
+  private PipelineStatus status;
+  private List<OutboundMessage> digests;
+  private LoadShedder shedder;
+  private WebhookDispatcher dispatcher;
+
+  @Before
+  public void setup() throws Exception {
+    stub = new WebhookStubServer(4);
+    hung = new WebhookStubServer(1);
+    captureDirectory = Files.createTempDirectory("webhook-dispatcher");
+
+    timer = new TimingWheel(1, TimeUnit.MILLISECONDS, 64, "webhook-dispatcher-test");
+    timer.start();
+
+    PipelineMetrics metrics;
+    metrics = new PipelineMetrics(new DisabledMetricMaker());
+
+    status = new PipelineStatus();
+    digests = new ArrayList<>();
+
+    shedder =
+        new LoadShedder(
+            500,
+            2000,
+            host -> 0,
+            timer,
+            metrics,
+            new ProjectConfigCache(newConfigSource()),
+            digests::add,
+            60000);
+
+    Config gerritConfig;
+    gerritConfig = new Config();
+    gerritConfig.setString("plugin", ProjectConfig.CONFIG_NAME, "bulkhead-hung", HUNG_HOST);
+    gerritConfig.setString("plugin", ProjectConfig.CONFIG_NAME, "bulkhead-threads", "1");
+
+    dispatcher =
+        new WebhookDispatcher(
+            timer,
+            metrics,
+            new DeliveryLatency(new DisabledMetricMaker()),
+            status,
+            new WebhookClient(1000, 30000),
+            new ShadowCapture(captureDirectory, 1024 * 1024, 2),
+            new ClaimLog(null, "node", timer, metrics, 0, 60000),
+            // Without a shared directory no messages of peers are ever handed over
+            new ShardRouter(null, "node", ImmutableSet.of(), timer, metrics, null, 1000, 5000),
+            shedder,
+            new BulkheadConfig(new PluginConfig(ProjectConfig.CONFIG_NAME, gerritConfig)),
+            10);
+    dispatcher.start();
+  }
+
+  @After
+  public void teardown() throws Exception {
+    // Closing the stubs first releases the delivery thread waiting on the hung one
+    stub.close();
+    hung.close();
+    dispatcher.stop();
+    timer.stop();
+    Files.delete(captureDirectory);
+  }
+
+  @Test
+  public void retriesUntilTheWebhookAccepts() throws Exception {
+    stub.setRetryAfter(0, TimeUnit.SECONDS);
+    stub.enqueue(Reply.RATE_LIMITED, Reply.SERVER_ERROR);
+
+    OutboundMessage message;
+    message = message(stub.getUrl(), 1, 0);
+
+    dispatcher.dispatch(message);
+    awaitCompleted(message);
+
+    assertThat(stub.getRequests(), is(equalTo(3L)));
+    assertThat(stub.getAccepted(), is(equalTo(1L)));
+  }
+
+  @Test
+  public void abandonsAfterTheLastAttempt() throws Exception {
+    stub.enqueue(Reply.SERVER_ERROR, Reply.SERVER_ERROR, Reply.SERVER_ERROR, Reply.SERVER_ERROR);
+
+    OutboundMessage message;
+    message = message(stub.getUrl(), 1, 0);
+
+    dispatcher.dispatch(message);
+    awaitCompleted(message);
+
+    assertThat(stub.getRequests(), is(equalTo(4L)));
+    assertThat(stub.getAccepted(), is(equalTo(0L)));
+  }
+
+  @Test
+  public void doesNotRetryRejectedPayloads() throws Exception {
+    stub.enqueue(Reply.CHANNEL_NOT_FOUND);
+
+    OutboundMessage message;
+    message = message(stub.getUrl(), 1, 0);
+
+    dispatcher.dispatch(message);
+    awaitCompleted(message);
+
+    assertThat(stub.getRequests(), is(equalTo(1L)));
+  }
+
+  @Test
+  public void summarizesExpiredMessagesInsteadOfPostingThem() throws Exception {
+    OutboundMessage message;
+    message = message(stub.getUrl(), 1, 1000);
+
+    dispatcher.dispatch(message);
+    awaitCompleted(message);
+
+    // The message is counted in the digest right after it completes
+    long deadline;
+    deadline = System.currentTimeMillis() + 10000;
+
+    while (digests.isEmpty() && System.currentTimeMillis() < deadline) {
+      shedder.flush(0, System.currentTimeMillis());
+      Thread.sleep(10);
+    }
+
+    assertThat(stub.getRequests(), is(equalTo(0L)));
+    assertThat(digests.size(), is(equalTo(1)));
+    assertThat(digests.get(0).getPayload(), containsString("1 comment-added"));
+  }
+
+  @Test
+  public void hungBulkheadDoesNotHoldUpOthers() throws Exception {
+    hung.setLatency(30, TimeUnit.SECONDS);
+
+    CountDownLatch delivered;
+    delivered = new CountDownLatch(1);
+    stub.setListener(payload -> delivered.countDown());
+
+    // Both messages belong to the same change, so they would share a delivery thread
+    dispatcher.dispatch(message(hung.getUrl().replace("127.0.0.1", HUNG_HOST), 1, 0));
+    dispatcher.dispatch(message(stub.getUrl(), 1, 0));
+
+    assertTrue(delivered.await(5, TimeUnit.SECONDS));
+    assertThat(hung.getAccepted(), is(equalTo(0L)));
+  }
+
+  /**
+   * Waits until the dispatcher is done with a message, whether it was posted, dropped or
+   * abandoned.
+   */
+  private void awaitCompleted(OutboundMessage message) throws InterruptedException {
+    long deadline;
+    deadline = System.currentTimeMillis() + 10000;
+
+    while (System.currentTimeMillis() < deadline) {
+      PipelineStatus.Destination destination;
+      destination = status.getDestinations().get(message.getDestination());
+
+      if (destination != null && destination.getPending() == 0) {
+        return;
+      }
+      Thread.sleep(10);
+    }
+    throw new AssertionError("Message to " + message.getDestination() + " still pending");
+  }
+
+  private static OutboundMessage message(String webhookUrl, long changeKey, long ttlMillis) {
+    return OutboundMessage.builder()
+        .project("project")
+        .eventType("comment-added")
+        // Long enough ago to have expired if the message has a time to live
+        .eventCreatedOn(1)
+        .changeKey(changeKey)
+        .ttlMillis(ttlMillis)
+        .payload("{\"channel\":\"#general\",\"text\":\"hello\"}")
+        .webhookUrl(webhookUrl)
+        .build();
+  }
+
+  private static ConfigSource newConfigSource() {
+    Config config;
+    config = new Config();
+    config.setBoolean("plugin", ProjectConfig.CONFIG_NAME, "enabled", true);
+    config.setString("plugin", ProjectConfig.CONFIG_NAME, "webhookurl", "http://localhost/hook");
+
+    PluginConfig pluginConfig;
+    pluginConfig = new PluginConfig(ProjectConfig.CONFIG_NAME, config);
+
+    return new ConfigSource() {
+      @Override
+      public PluginConfig getProjectConfig(String project) {
+        return pluginConfig;
+      }
+
+      @Override
+      public PluginConfig getServerConfig() {
+        return null;
+      }
+    };
+  }
+}
@@ -0,0 +1,161 @@
+/*
+ * Copyright 2017 Cisco Systems, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package com.cisco.gerrit.plugins.slack.cluster;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+import com.cisco.gerrit.plugins.slack.metrics.PipelineMetrics;
+import com.cisco.gerrit.plugins.slack.util.TimingWheel;
+import com.google.gerrit.metrics.DisabledMetricMaker;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ClaimLogTest {
+  private long now;
+  private Path directory;
+  private TimingWheel timer;
+  private PipelineMetrics metrics;
+
+  @Before
+  public void setup() throws Exception {
+    now = TimeUnit.MILLISECONDS.toSeconds(System.currentTimeMillis());
+    directory = Files.createTempDirectory("claims");
+    timer = new TimingWheel(1, TimeUnit.MILLISECONDS, 64, "claim-log-test");
+    timer.start();
+    metrics = new PipelineMetrics(new DisabledMetricMaker());
+  }
+
+  @After
+  public void teardown() throws Exception {
+    timer.stop();
+
+    try (Stream<Path> files = Files.walk(directory)) {
+      files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+    }
+  }
+
+  @Test
+  public void grantsEveryClaimWithoutSharedDirectory() throws Exception {
+    ClaimLog log;
+    log = new ClaimLog(null, "node-a", timer, metrics, 10, 60000);
+
+    AtomicInteger won;
+    won = new AtomicInteger();
+
+    log.claim(42, now, result -> won.addAndGet(result ? 1 : 0));
+    log.claim(42, now, result -> won.addAndGet(result ? 1 : 0));
+
+    assertFalse(log.isEnabled());
+    assertThat(won.get(), is(equalTo(2)));
+  }
+
+  @Test
+  public void electsOneNodePerEvent() throws Exception {
+    ClaimLog first;
+    first = newLog("node-a");
+
+    ClaimLog second;
+    second = newLog("node-b");
+
+    int events;
+    events = 200;
+
+    AtomicInteger won;
+    won = new AtomicInteger();
+
+    CountDownLatch decided;
+    decided = new CountDownLatch(2 * events);
+
+    for (int i = 1; i <= events; i++) {
+      first.claim(i, now - i, counting(won, decided));
+      second.claim(i, now - i, counting(won, decided));
+    }
+
+    assertTrue(decided.await(10, TimeUnit.SECONDS));
+    assertThat(won.get(), is(equalTo(events)));
+
+    first.stop();
+    second.stop();
+  }
+
+  @Test
+  public void collectsExpiredClaims() throws Exception {
+    ClaimLog log;
+    log = newLog("node-a");
+
+    AtomicInteger won;
+    won = new AtomicInteger();
+
+    CountDownLatch decided;
+    decided = new CountDownLatch(3);
+
+    log.claim(1, now - 7200, counting(won, decided));
+    log.claim(2, now - 7200, counting(won, decided));
+    log.claim(3, now, counting(won, decided));
+
+    assertTrue(decided.await(10, TimeUnit.SECONDS));
+    assertThat(won.get(), is(equalTo(3)));
+
+    // The first two are past the one minute retention, the last one is not
+    long nowMillis;
+    nowMillis = TimeUnit.SECONDS.toMillis(now);
+
+    assertThat(log.collect(nowMillis), is(equalTo(2)));
+    assertThat(log.collect(nowMillis), is(equalTo(0)));
+
+    // A collected claim can be made again, the retained one is still taken
+    decided = new CountDownLatch(2);
+
+    log.claim(1, now - 7200, counting(won, decided));
+    log.claim(3, now, counting(won, decided));
+
+    assertTrue(decided.await(10, TimeUnit.SECONDS));
+    assertThat(won.get(), is(equalTo(4)));
+
+    log.stop();
+  }
+
+  private ClaimLog newLog(String node) {
+    ClaimLog log;
+    log = new ClaimLog(directory, node, timer, metrics, 5, 60000);
+    log.start();
+
+    return log;
+  }
+
+  private static ClaimLog.Callback counting(AtomicInteger won, CountDownLatch decided) {
+    return result -> {
+      if (result) {
+        won.incrementAndGet();
+      }
+      decided.countDown();
+    };
+  }
+}
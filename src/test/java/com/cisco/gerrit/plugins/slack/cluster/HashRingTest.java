@@ -0,0 +1,85 @@
+/*
+ * Copyright 2017 Cisco Systems, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package com.cisco.gerrit.plugins.slack.cluster;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+import com.cisco.gerrit.plugins.slack.util.EventFingerprint;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import org.junit.Test;
+
+public class HashRingTest {
+  private static final int KEYS = 40000;
+
+  @Test
+  public void sharesKeysEvenly() throws Exception {
+    HashRing ring;
+    ring = new HashRing(Arrays.asList("a", "b", "c", "d"), HashRing.DEFAULT_REPLICAS);
+
+    Map<String, Integer> shares;
+    shares = new HashMap<>();
+
+    for (int change = 1; change <= KEYS; change++) {
+      shares.merge(ring.owner(EventFingerprint.changeKey("project", change)), 1, Integer::sum);
+    }
+
+    assertThat(shares.size(), is(equalTo(4)));
+    for (int share : shares.values()) {
+      assertTrue("share " + share, share > KEYS / 4 * 0.8 && share < KEYS / 4 * 1.2);
+    }
+  }
+
+  @Test
+  public void onlyMovesKeysOfDepartedNode() throws Exception {
+    HashRing before;
+    before = new HashRing(Arrays.asList("a", "b", "c", "d"), HashRing.DEFAULT_REPLICAS);
+
+    HashRing after;
+    after = new HashRing(Arrays.asList("a", "b", "d"), HashRing.DEFAULT_REPLICAS);
+
+    for (int change = 1; change <= KEYS; change++) {
+      long key;
+      key = EventFingerprint.changeKey("project", change);
+
+      if (!before.owner(key).equals("c")) {
+        assertThat(after.owner(key), is(equalTo(before.owner(key))));
+      }
+    }
+  }
+
+  @Test
+  public void isIndependentOfNodeOrder() throws Exception {
+    HashRing first;
+    first = new HashRing(Arrays.asList("a", "b", "c"), HashRing.DEFAULT_REPLICAS);
+
+    HashRing second;
+    second = new HashRing(Arrays.asList("c", "a", "b"), HashRing.DEFAULT_REPLICAS);
+
+    for (int change = 1; change <= 1000; change++) {
+      long key;
+      key = EventFingerprint.changeKey("project", change);
+
+      assertThat(second.owner(key), is(equalTo(first.owner(key))));
+    }
+  }
+}
@@ -0,0 +1,198 @@
+/*
+ * Copyright 2017 Cisco Systems, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package com.cisco.gerrit.plugins.slack.cluster;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+import com.cisco.gerrit.plugins.slack.client.OutboundMessage;
+import com.cisco.gerrit.plugins.slack.metrics.PipelineMetrics;
+import com.cisco.gerrit.plugins.slack.util.EventFingerprint;
+import com.cisco.gerrit.plugins.slack.util.TimingWheel;
+import com.google.common.collect.ImmutableSet;
+import com.google.gerrit.metrics.DisabledMetricMaker;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ShardRouterTest {
+  private static final long HEARTBEAT_MILLIS = 1000;
+  private static final long TIMEOUT_MILLIS = 5000;
+
+  private Path directory;
+  private TimingWheel timer;
+  private PipelineMetrics metrics;
+
+  @Before
+  public void setup() throws Exception {
+    directory = Files.createTempDirectory("shards");
+    timer = new TimingWheel();
+    metrics = new PipelineMetrics(new DisabledMetricMaker());
+  }
+
+  @After
+  public void teardown() throws Exception {
+    try (Stream<Path> files = Files.walk(directory)) {
+      files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+    }
+  }
+
+  @Test
+  public void routesEachChangeToOneNode() throws Exception {
+    ShardRouter first;
+    first = newRouter("a", new RecordingHandler());
+
+    ShardRouter second;
+    second = newRouter("b", new RecordingHandler());
+
+    long now;
+    now = System.currentTimeMillis();
+
+    // The first node to beat only sees the other on its next poll
+    first.poll(now);
+    second.poll(now);
+    first.poll(now);
+
+    int owned;
+    owned = 0;
+
+    for (int change = 1; change <= 1000; change++) {
+      boolean accepted;
+      accepted = first.accept(message(change, 1));
+
+      // Every message of a change goes to the same node
+      assertThat(first.accept(message(change, 2)), is(equalTo(accepted)));
+      assertThat(second.accept(message(change, 1)), is(equalTo(!accepted)));
+
+      owned += accepted ? 1 : 0;
+    }
+
+    assertTrue("owned " + owned, owned > 400 && owned < 600);
+  }
+
+  @Test
+  public void takesOverWorkOfDepartedPeer() throws Exception {
+    RecordingHandler handler;
+    handler = new RecordingHandler();
+
+    ShardRouter survivor;
+    survivor = newRouter("a", handler);
+
+    ShardRouter departing;
+    departing = newRouter("b", new RecordingHandler());
+
+    long now;
+    now = System.currentTimeMillis();
+
+    departing.poll(now);
+    survivor.poll(now);
+    departing.poll(now);
+
+    // One message the peer took on and one it never got to
+    int change;
+    change = changeOwnedBy(departing, 1);
+
+    OutboundMessage inOutbox;
+    inOutbox = message(change, 1);
+
+    OutboundMessage unseen;
+    unseen = message(changeOwnedBy(departing, change + 1), 1);
+
+    departing.persist(inOutbox);
+
+    assertFalse(survivor.accept(inOutbox));
+    assertFalse(survivor.accept(unseen));
+
+    // The peer stops beating
+    survivor.poll(now + HEARTBEAT_MILLIS);
+    assertTrue(handler.resumed.isEmpty());
+
+    survivor.poll(now + TIMEOUT_MILLIS + HEARTBEAT_MILLIS);
+
+    assertThat(handler.resumed.size(), is(equalTo(1)));
+    assertThat(handler.resumed.get(0).getFingerprint(), is(equalTo(inOutbox.getFingerprint())));
+    assertThat(handler.dispatched.size(), is(equalTo(1)));
+    assertThat(handler.dispatched.get(0).getFingerprint(), is(equalTo(unseen.getFingerprint())));
+
+    // The survivor now owns the change and keeps the message until it is released
+    assertTrue(survivor.accept(message(change, 2)));
+
+    Outbox outbox;
+    outbox = new Outbox(directory.resolve(Outbox.DIRECTORY_NAME), "a");
+
+    assertThat(outbox.recover().size(), is(equalTo(1)));
+    survivor.release(handler.resumed.get(0));
+    assertThat(outbox.recover().size(), is(equalTo(0)));
+  }
+
+  private ShardRouter newRouter(String node, ShardRouter.Handler handler) {
+    return new ShardRouter(
+        directory,
+        node,
+        ImmutableSet.of("a", "b"),
+        timer,
+        metrics,
+        handler,
+        HEARTBEAT_MILLIS,
+        TIMEOUT_MILLIS);
+  }
+
+  private static int changeOwnedBy(ShardRouter router, int first) {
+    int change;
+    change = first;
+    while (!router.accept(message(change, 1))) {
+      change++;
+    }
+    return change;
+  }
+
+  private static OutboundMessage message(int change, int patchSet) {
+    return OutboundMessage.builder()
+        .project("project")
+        .eventType("patchset-created")
+        .fingerprint(EventFingerprint.changeKey("project/" + patchSet, change))
+        .changeKey(EventFingerprint.changeKey("project", change))
+        .payload("{}")
+        .webhookUrl("http://localhost/hook")
+        .build();
+  }
+
+  private static final class RecordingHandler implements ShardRouter.Handler {
+    private final List<OutboundMessage> dispatched = new ArrayList<>();
+    private final List<OutboundMessage> resumed = new ArrayList<>();
+
+    @Override
+    public void dispatch(OutboundMessage message) {
+      dispatched.add(message);
+    }
+
+    @Override
+    public void resume(OutboundMessage message) {
+      resumed.add(message);
+    }
+  }
+}
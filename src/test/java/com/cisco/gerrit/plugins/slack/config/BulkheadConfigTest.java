@@ -0,0 +1,69 @@
+/*
+ * Copyright 2017 Cisco Systems, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package com.cisco.gerrit.plugins.slack.config;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+
+import com.google.common.collect.ImmutableSet;
+import com.google.gerrit.server.config.PluginConfig;
+import java.util.Arrays;
+import org.eclipse.jgit.lib.Config;
+import org.junit.Test;
+
+public class BulkheadConfigTest {
+  @Test
+  public void groupsHostsIntoBulkheads() throws Exception {
+    Config config;
+    config = new Config();
+    config.setStringList(
+        "plugin",
+        ProjectConfig.CONFIG_NAME,
+        "bulkhead-slack",
+        Arrays.asList("hooks.slack.com", "Other.Slack.com"));
+    config.setString(
+        "plugin", ProjectConfig.CONFIG_NAME, "bulkhead-mattermost", "chat.example.com");
+    config.setString("plugin", ProjectConfig.CONFIG_NAME, "bulkhead-threads", "4");
+
+    BulkheadConfig bulkheads;
+    bulkheads = new BulkheadConfig(new PluginConfig(ProjectConfig.CONFIG_NAME, config));
+
+    assertThat(bulkheads.getBulkheads(), is(equalTo(ImmutableSet.of("slack", "mattermost"))));
+    assertThat(bulkheads.getBulkhead("hooks.slack.com"), is(equalTo("slack")));
+    assertThat(bulkheads.getBulkhead("other.slack.com"), is(equalTo("slack")));
+    assertThat(bulkheads.getBulkhead("chat.example.com"), is(equalTo("mattermost")));
+    assertThat(bulkheads.getBulkhead("localhost"), is(nullValue()));
+    assertThat(bulkheads.getThreads(), is(equalTo(4)));
+  }
+
+  @Test
+  public void roundsThreadsDownToPowerOfTwo() throws Exception {
+    Config config;
+    config = new Config();
+    config.setString("plugin", ProjectConfig.CONFIG_NAME, "bulkhead-threads", "6");
+
+    assertThat(
+        new BulkheadConfig(new PluginConfig(ProjectConfig.CONFIG_NAME, config)).getThreads(),
+        is(equalTo(4)));
+    assertThat(
+        new BulkheadConfig((PluginConfig) null).getThreads(),
+        is(equalTo(BulkheadConfig.DEFAULT_THREADS)));
+  }
+}
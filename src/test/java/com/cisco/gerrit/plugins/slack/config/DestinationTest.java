@@ -0,0 +1,72 @@
+/*
+ * Copyright 2017 Cisco Systems, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package com.cisco.gerrit.plugins.slack.config;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class DestinationTest {
+  @Test
+  public void parsesChannelOnly() throws Exception {
+    Destination destination;
+    destination = Destination.parse("#team");
+
+    assertThat(destination.getChannel(), is(equalTo("team")));
+    assertThat(destination.getWebhookUrl(), is(nullValue()));
+    assertTrue(destination.matches("comment-added", null));
+  }
+
+  @Test
+  public void filtersByEventTypeAndBranch() throws Exception {
+    Destination destination;
+    destination =
+        Destination.parse(
+            "releases events=change-merged branch=refs/heads/release/* "
+                + "webhookurl=https://hooks.slack.com/services/T/B/X");
+
+    assertThat(destination.getChannel(), is(equalTo("releases")));
+    assertThat(
+        destination.getWebhookUrl(), is(equalTo("https://hooks.slack.com/services/T/B/X")));
+    assertTrue(destination.matches("change-merged", "release/1.0"));
+    assertFalse(destination.matches("change-merged", "master"));
+    assertFalse(destination.matches("comment-added", "release/1.0"));
+    assertFalse(destination.matches("change-merged", null));
+
+    assertTrue(
+        Destination.parse("ops branch=^stable-\\d+").matches("patchset-created", "stable-3"));
+    assertFalse(Destination.parse("ops branch=master").matches("patchset-created", "master2"));
+  }
+
+  @Test
+  public void rejectsUnknownOptions() throws Exception {
+    for (String value : new String[] {"", "events=change-merged", "ops color=red", "ops branch="}) {
+      try {
+        Destination.parse(value);
+        throw new AssertionError("parsed " + value);
+      } catch (IllegalArgumentException e) {
+        // Expected
+      }
+    }
+  }
+}
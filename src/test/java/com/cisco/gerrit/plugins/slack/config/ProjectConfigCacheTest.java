@@ -0,0 +1,180 @@
+/*
+ * Copyright 2017 Cisco Systems, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package com.cisco.gerrit.plugins.slack.config;
+
+import static org.hamcrest.core.Is.is;
+import static org.hamcrest.core.IsEqual.equalTo;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.google.gerrit.extensions.events.GitReferenceUpdatedListener;
+import com.google.gerrit.reviewdb.client.Project;
+import com.google.gerrit.server.config.PluginConfig;
+import com.google.gerrit.server.config.PluginConfigFactory;
+import java.util.Arrays;
+import org.eclipse.jgit.lib.Config;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.powermock.api.mockito.PowerMockito;
+import org.powermock.core.classloader.annotations.PrepareForTest;
+import org.powermock.modules.junit4.PowerMockRunner;
+
+/** Tests for the ProjectConfigCache class. */
+@RunWith(PowerMockRunner.class)
+@PrepareForTest({Project.NameKey.class})
+public class ProjectConfigCacheTest {
+  private static final String PROJECT_NAME = "test-project";
+
+  private Project.NameKey mockNameKey = mock(Project.NameKey.class);
+
+  private PluginConfigFactory mockConfigFactory = mock(PluginConfigFactory.class);
+
+  private PluginConfig mockPluginConfig = mock(PluginConfig.class);
+
+  private ProjectConfigCache cache;
+
+  @Before
+  public void setup() throws Exception {
+    PowerMockito.mockStatic(Project.NameKey.class);
+    when(Project.NameKey.parse(PROJECT_NAME)).thenReturn(mockNameKey);
+
+    when(mockConfigFactory.getFromProjectConfigWithInheritance(
+            mockNameKey, ProjectConfig.CONFIG_NAME))
+        .thenReturn(mockPluginConfig);
+
+    when(mockPluginConfig.getBoolean("enabled", false)).thenReturn(false);
+
+    cache = new ProjectConfigCache(mockConfigFactory);
+  }
+
+  private GitReferenceUpdatedListener.Event refUpdate(String refName) {
+    GitReferenceUpdatedListener.Event event;
+    event = mock(GitReferenceUpdatedListener.Event.class);
+    when(event.getProjectName()).thenReturn("All-Projects");
+    when(event.getRefName()).thenReturn(refName);
+
+    return event;
+  }
+
+  @Test
+  public void cachesProjectConfig() throws Exception {
+    assertThat(cache.isEnabled(PROJECT_NAME), is(false));
+    assertThat(cache.isEnabled(PROJECT_NAME), is(false));
+
+    verify(mockPluginConfig, times(1)).getBoolean("enabled", false);
+  }
+
+  @Test
+  public void reloadsAfterConfigChange() throws Exception {
+    assertThat(cache.isEnabled(PROJECT_NAME), is(false));
+
+    when(mockPluginConfig.getBoolean("enabled", false)).thenReturn(true);
+
+    cache.onGitReferenceUpdated(refUpdate("refs/heads/master"));
+    assertThat(cache.isEnabled(PROJECT_NAME), is(false));
+
+    cache.onGitReferenceUpdated(refUpdate("refs/meta/config"));
+    assertThat(cache.isEnabled(PROJECT_NAME), is(true));
+  }
+
+  @Test
+  public void dropsSnapshotsLoadedWhileInvalidating() throws Exception {
+    CountingConfigSource configSource;
+    configSource = new CountingConfigSource();
+
+    ProjectConfigCache projectCache;
+    projectCache = new ProjectConfigCache(configSource, 16);
+
+    // The configs change while the first snapshot is being read
+    configSource.onLoad = projectCache::invalidateAll;
+    projectCache.get(PROJECT_NAME);
+
+    configSource.onLoad = null;
+    projectCache.get(PROJECT_NAME);
+    projectCache.get(PROJECT_NAME);
+
+    assertThat(configSource.loads, is(equalTo(2)));
+  }
+
+  @Test
+  public void boundsTheNumberOfSnapshots() throws Exception {
+    CountingConfigSource configSource;
+    configSource = new CountingConfigSource();
+
+    ProjectConfigCache projectCache;
+    projectCache = new ProjectConfigCache(configSource, 1);
+
+    projectCache.get("first");
+    projectCache.get("second");
+    projectCache.get("first");
+
+    assertThat(configSource.loads, is(equalTo(3)));
+  }
+
+  @Test
+  public void reloadsAfterServerConfigChange() throws Exception {
+    CountingConfigSource configSource;
+    configSource = new CountingConfigSource();
+
+    ProjectConfigCache projectCache;
+    projectCache = new ProjectConfigCache(configSource, 16);
+    projectCache.checkServerConfig();
+
+    projectCache.get(PROJECT_NAME);
+    projectCache.checkServerConfig();
+    projectCache.get(PROJECT_NAME);
+    assertThat(configSource.loads, is(equalTo(1)));
+
+    // Only noticed by the next check
+    configSource.serverConfig.setStringList(
+        "plugin", ProjectConfig.CONFIG_NAME, "suppress-account", Arrays.asList("ci-bot"));
+    projectCache.get(PROJECT_NAME);
+    assertThat(configSource.loads, is(equalTo(1)));
+
+    projectCache.checkServerConfig();
+    projectCache.get(PROJECT_NAME);
+    assertThat(configSource.loads, is(equalTo(2)));
+  }
+
+  /** Counts the project configs read, optionally running an action while reading one. */
+  private static class CountingConfigSource implements ConfigSource {
+    private final Config serverConfig = new Config();
+
+    private int loads;
+    private Runnable onLoad;
+
+    @Override
+    public PluginConfig getProjectConfig(String project) {
+      loads++;
+      if (onLoad != null) {
+        onLoad.run();
+      }
+
+      return new PluginConfig(ProjectConfig.CONFIG_NAME, new Config());
+    }
+
+    @Override
+    public PluginConfig getServerConfig() {
+      return new PluginConfig(ProjectConfig.CONFIG_NAME, serverConfig);
+    }
+  }
+}
@@ -19,14 +19,19 @@ package com.cisco.gerrit.plugins.slack.config;
 
 import static org.hamcrest.core.Is.is;
 import static org.hamcrest.core.IsEqual.equalTo;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertThat;
 import static org.junit.Assert.assertTrue;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
 
+import com.google.common.collect.ImmutableSet;
 import com.google.gerrit.reviewdb.client.Project;
 import com.google.gerrit.server.config.PluginConfig;
 import com.google.gerrit.server.config.PluginConfigFactory;
+import com.google.gerrit.server.data.AccountAttribute;
+import java.util.Arrays;
+import org.eclipse.jgit.lib.Config;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
@@ -46,6 +51,8 @@ public class ProjectConfigTest {
 
   private PluginConfig mockPluginConfig = mock(PluginConfig.class);
 
+  private PluginConfig mockGlobalConfig = mock(PluginConfig.class);
+
   private ProjectConfig config;
 
   @Before
@@ -62,6 +69,7 @@ public class ProjectConfigTest {
         .thenReturn(mockPluginConfig);
 
     when(mockPluginConfig.getBoolean("enabled", false)).thenReturn(true);
+    when(mockPluginConfig.getString("mode", "post")).thenReturn("shadow");
     when(mockPluginConfig.getString("webhookurl", "")).thenReturn("https://webook/");
     when(mockPluginConfig.getString("channel", "general")).thenReturn("test-channel");
     when(mockPluginConfig.getString("username", "gerrit")).thenReturn("test-user");
@@ -70,6 +78,25 @@ public class ProjectConfigTest {
     when(mockPluginConfig.getBoolean("publish-on-change-merged", true)).thenReturn(true);
     when(mockPluginConfig.getBoolean("publish-on-comment-added", true)).thenReturn(true);
     when(mockPluginConfig.getBoolean("publish-on-reviewer-added", true)).thenReturn(true);
+    when(mockPluginConfig.getStringList("publish-on-label"))
+        .thenReturn(new String[] {"Code-Review+2", "Verified-1", "not a threshold"});
+    when(mockPluginConfig.getStringList("destination"))
+        .thenReturn(new String[] {"releases events=change-merged", "ops color=red"});
+    when(mockPluginConfig.getStringList("suppress-account"))
+        .thenReturn(new String[] {"bot@example.com"});
+    when(mockPluginConfig.getNames())
+        .thenReturn(
+            ImmutableSet.of(
+                "enabled", "priority", "priority-change-merged", "ttl", "ttl-comment-added"));
+    when(mockPluginConfig.getString("priority")).thenReturn("low");
+    when(mockPluginConfig.getInt("weight", 1)).thenReturn(3);
+    when(mockPluginConfig.getString("priority-change-merged")).thenReturn("High");
+    when(mockPluginConfig.getString("ttl")).thenReturn("2 hours");
+    when(mockPluginConfig.getString("ttl-comment-added")).thenReturn("10 min");
+
+    when(mockConfigFactory.getFromGerritConfig(ProjectConfig.CONFIG_NAME))
+        .thenReturn(mockGlobalConfig);
+    when(mockGlobalConfig.getStringList("suppress-account")).thenReturn(new String[] {"ci-bot"});
 
     config = new ProjectConfig(mockConfigFactory, PROJECT_NAME);
   }
@@ -79,6 +106,11 @@ public class ProjectConfigTest {
     assertTrue(config.isEnabled());
   }
 
+  @Test
+  public void testIsShadow() throws Exception {
+    assertTrue(config.isShadow());
+  }
+
   @Test
   public void testGetWebhookUrl() throws Exception {
     assertThat(config.getWebhookUrl(), is(equalTo("https://webook/")));
@@ -113,4 +145,77 @@ public class ProjectConfigTest {
   public void testShouldPublishOnReviewerAdded() throws Exception {
     assertThat(config.shouldPublishOnReviewerAdded(), is(equalTo(true)));
   }
+
+  @Test
+  public void testGetLabelThresholds() throws Exception {
+    assertThat(config.getLabelThresholds().size(), is(equalTo(2)));
+    assertThat(config.getLabelThresholds().get(0).getLabel(), is(equalTo("Code-Review")));
+    assertThat(config.getLabelThresholds().get(0).getValue(), is(equalTo(2)));
+    assertThat(config.getLabelThresholds().get(1).getLabel(), is(equalTo("Verified")));
+    assertThat(config.getLabelThresholds().get(1).getValue(), is(equalTo(-1)));
+  }
+
+  @Test
+  public void testGetPriority() throws Exception {
+    assertThat(config.getPriority("change-merged"), is(equalTo(Priority.HIGH)));
+    assertThat(config.getPriority("wip-state-changed"), is(equalTo(Priority.LOW)));
+    assertThat(config.getPriority("patchset-created"), is(equalTo(Priority.LOW)));
+  }
+
+  @Test
+  public void testGetWeight() throws Exception {
+    assertThat(config.getWeight(), is(equalTo(3)));
+  }
+
+  @Test
+  public void testGetDestinations() throws Exception {
+    assertThat(config.getDestinations().size(), is(equalTo(1)));
+    assertThat(config.getDestinations().get(0).getChannel(), is(equalTo("releases")));
+  }
+
+  @Test
+  public void testIgnoresDestinationsWithoutWebhookUrl() throws Exception {
+    Config gerritConfig;
+    gerritConfig = new Config();
+    gerritConfig.setStringList(
+        "plugin",
+        ProjectConfig.CONFIG_NAME,
+        "destination",
+        Arrays.asList("releases", "merges webhookurl=https://webhook/merges"));
+
+    ConfigSource configSource;
+    configSource = mock(ConfigSource.class);
+    when(configSource.getProjectConfig(PROJECT_NAME))
+        .thenReturn(new PluginConfig(ProjectConfig.CONFIG_NAME, gerritConfig));
+
+    ProjectConfig projectConfig;
+    projectConfig = new ProjectConfig(configSource, PROJECT_NAME);
+
+    assertThat(projectConfig.getDestinations().size(), is(equalTo(1)));
+    assertThat(projectConfig.getDestinations().get(0).getChannel(), is(equalTo("merges")));
+  }
+
+  @Test
+  public void testGetTtl() throws Exception {
+    assertThat(config.getTtl("comment-added"), is(equalTo(10 * 60 * 1000L)));
+    assertThat(config.getTtl("change-merged"), is(equalTo(2 * 60 * 60 * 1000L)));
+  }
+
+  @Test
+  public void testIsSuppressed() throws Exception {
+    AccountAttribute account;
+    account = new AccountAttribute();
+
+    account.username = "ci-bot";
+    assertTrue(config.isSuppressed(account));
+
+    account.username = "other-bot";
+    account.email = "bot@example.com";
+    assertTrue(config.isSuppressed(account));
+
+    account.username = "developer";
+    account.email = "developer@example.com";
+    assertFalse(config.isSuppressed(account));
+    assertFalse(config.isSuppressed(null));
+  }
 }
@@ -29,6 +29,7 @@ import com.google.gerrit.reviewdb.client.Project;
 import com.google.gerrit.server.config.PluginConfig;
 import com.google.gerrit.server.config.PluginConfigFactory;
 import com.google.gerrit.server.data.AccountAttribute;
+import com.google.gerrit.server.data.ApprovalAttribute;
 import com.google.gerrit.server.data.ChangeAttribute;
 import com.google.gerrit.server.events.CommentAddedEvent;
 import org.junit.Before;
@@ -92,6 +93,34 @@ public class CommentAddedMessageGeneratorTest {
     return new ProjectConfig(mockConfigFactory, PROJECT_NAME);
   }
 
+  private ProjectConfig getConfigWithLabels(String... labels) throws Exception {
+    when(mockPluginConfig.getStringList("publish-on-label")).thenReturn(labels);
+
+    return getConfig();
+  }
+
+  private ApprovalAttribute approval(String label, String value, String oldValue) {
+    ApprovalAttribute approval;
+    approval = new ApprovalAttribute();
+    approval.type = label;
+    approval.value = value;
+    approval.oldValue = oldValue;
+
+    return approval;
+  }
+
+  private MessageGenerator labelGenerator(
+      ProjectConfig config, LabelStateCache labelStates, ApprovalAttribute... approvals) {
+    mockEvent.change = Suppliers.ofInstance(mockChange);
+    mockEvent.author = Suppliers.ofInstance(mockAccount);
+    mockEvent.approvals = Suppliers.ofInstance(approvals);
+    mockChange.project = "testproject";
+    mockChange.number = 1234;
+    mockAccount.username = "ci-bot";
+
+    return MessageGeneratorFactory.newInstance(mockEvent, config, labelStates);
+  }
+
   private ProjectConfig getConfig() throws Exception {
     return getConfig(
         true /* publishOnCommentAdded */,
@@ -279,4 +308,80 @@ public class CommentAddedMessageGeneratorTest {
 
     assertThat(actualResult, is(equalTo(expectedResult)));
   }
+
+  @Test
+  public void shortensCommentWhenTruncated() throws Exception {
+    // Setup mocks
+    ProjectConfig config = getConfig();
+    mockEvent.change = Suppliers.ofInstance(mockChange);
+    mockEvent.author = Suppliers.ofInstance(mockAccount);
+
+    mockEvent.comment = "This is the comment body.";
+
+    mockChange.number = 1234;
+    mockChange.project = "testproject";
+    mockChange.branch = "master";
+    mockChange.url = "https://change/";
+    mockChange.commitMessage = "This is the title\nThis is the message body.";
+
+    mockAccount.name = "Unit Tester";
+
+    // Test
+    CommentAddedMessageGenerator messageGenerator;
+    messageGenerator =
+        (CommentAddedMessageGenerator) MessageGeneratorFactory.newInstance(mockEvent, config);
+    messageGenerator.setMaxCommentLength(11);
+
+    assertThat(
+        messageGenerator.generate().contains("\"text\": \"This is the...\""), is(true));
+  }
+
+  @Test
+  public void publishesWhenLabelCrossesThreshold() throws Exception {
+    ProjectConfig config = getConfigWithLabels("Code-Review+2", "Verified-1");
+
+    assertThat(
+        labelGenerator(config, new LabelStateCache(), approval("Code-Review", "2", "1"))
+            .shouldPublish(),
+        is(true));
+    assertThat(
+        labelGenerator(config, new LabelStateCache(), approval("Verified", "-1", null))
+            .shouldPublish(),
+        is(true));
+  }
+
+  @Test
+  public void doesNotPublishWhenNoLabelCrossesThreshold() throws Exception {
+    ProjectConfig config = getConfigWithLabels("Code-Review+2");
+
+    assertThat(labelGenerator(config, new LabelStateCache()).shouldPublish(), is(false));
+    assertThat(
+        labelGenerator(config, new LabelStateCache(), approval("Code-Review", "1", "0"))
+            .shouldPublish(),
+        is(false));
+    assertThat(
+        labelGenerator(config, new LabelStateCache(), approval("Verified", "2", null))
+            .shouldPublish(),
+        is(false));
+  }
+
+  @Test
+  public void doesNotPublishRepeatedVotes() throws Exception {
+    ProjectConfig config = getConfigWithLabels("Verified+1");
+    LabelStateCache labelStates = new LabelStateCache();
+
+    assertThat(
+        labelGenerator(config, labelStates, approval("Verified", "1", null)).shouldPublish(),
+        is(true));
+    assertThat(
+        labelGenerator(config, labelStates, approval("Verified", "1", null)).shouldPublish(),
+        is(false));
+
+    // Once the change is closed its votes are forgotten
+    labelStates.evict(mockChange);
+
+    assertThat(
+        labelGenerator(config, labelStates, approval("Verified", "1", null)).shouldPublish(),
+        is(true));
+  }
 }
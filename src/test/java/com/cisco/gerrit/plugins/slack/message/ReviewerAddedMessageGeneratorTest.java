@@ -215,6 +215,47 @@ public class ReviewerAddedMessageGeneratorTest {
     assertThat(messageGenerator.shouldPublish(), is(true));
   }
 
+  @Test
+  public void doesNotPublishWhenAddedBySuppressedAccount() throws Exception {
+    // Setup mocks
+    when(mockPluginConfig.getStringList("suppress-account")).thenReturn(new String[] {"ci-bot"});
+    ProjectConfig config = getConfig();
+
+    AccountAttribute adder;
+    adder = new AccountAttribute();
+    adder.username = "ci-bot";
+    mockEvent.adder = Suppliers.ofInstance(adder);
+
+    // Test
+    MessageGenerator messageGenerator;
+    messageGenerator = MessageGeneratorFactory.newInstance(mockEvent, config);
+
+    assertThat(messageGenerator.shouldPublish(), is(false));
+  }
+
+  @Test
+  public void publishesWhenSuppressedAccountIsAdded() throws Exception {
+    // Setup mocks
+    when(mockPluginConfig.getStringList("suppress-account")).thenReturn(new String[] {"ci-bot"});
+    ProjectConfig config = getConfig();
+
+    AccountAttribute reviewer;
+    reviewer = new AccountAttribute();
+    reviewer.username = "ci-bot";
+    mockEvent.reviewer = Suppliers.ofInstance(reviewer);
+
+    AccountAttribute adder;
+    adder = new AccountAttribute();
+    adder.username = "developer";
+    mockEvent.adder = Suppliers.ofInstance(adder);
+
+    // Test
+    MessageGenerator messageGenerator;
+    messageGenerator = MessageGeneratorFactory.newInstance(mockEvent, config);
+
+    assertThat(messageGenerator.shouldPublish(), is(true));
+  }
+
   @Test
   public void generatesExpectedMessage() throws Exception {
     // Setup mocks
@@ -0,0 +1,82 @@
+/*
+ * Copyright 2017 Cisco Systems, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package com.cisco.gerrit.plugins.slack.metrics;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class LatencyHistogramTest {
+  @Test
+  public void reportsZeroWhenEmpty() throws Exception {
+    LatencyHistogram histogram;
+    histogram = new LatencyHistogram();
+
+    assertThat(histogram.getCount(), is(equalTo(0L)));
+    assertThat(histogram.getPercentile(99), is(equalTo(0L)));
+  }
+
+  @Test
+  public void reportsPercentilesWithinBucketPrecision() throws Exception {
+    LatencyHistogram histogram;
+    histogram = new LatencyHistogram();
+
+    for (long i = 1; i <= 10_000; i++) {
+      histogram.record(i);
+    }
+
+    assertThat(histogram.getCount(), is(equalTo(10_000L)));
+    assertThat(histogram.getMax(), is(equalTo(10_000L)));
+    assertWithin(histogram.getPercentile(50), 5_000);
+    assertWithin(histogram.getPercentile(95), 9_500);
+    assertWithin(histogram.getPercentile(99), 9_900);
+    assertThat(histogram.getPercentile(100), is(equalTo(10_000L)));
+  }
+
+  @Test
+  public void clampsOutOfRangeValues() throws Exception {
+    LatencyHistogram histogram;
+    histogram = new LatencyHistogram();
+
+    histogram.record(-5);
+    histogram.record(Long.MAX_VALUE);
+
+    assertThat(histogram.getPercentile(50), is(equalTo(0L)));
+    assertThat(histogram.getMax(), is(equalTo(Long.MAX_VALUE)));
+  }
+
+  @Test
+  public void bucketsCoverEveryValue() throws Exception {
+    for (long value = 0; value < 100_000; value++) {
+      int index;
+      index = LatencyHistogram.indexOf(value);
+
+      assertTrue(LatencyHistogram.upperBoundOf(index) >= value);
+      assertTrue(index == 0 || LatencyHistogram.upperBoundOf(index - 1) < value);
+    }
+  }
+
+  private static void assertWithin(long actual, long expected) {
+    assertTrue(
+        "expected " + expected + " but was " + actual,
+        Math.abs(actual - expected) <= expected * 0.07);
+  }
+}
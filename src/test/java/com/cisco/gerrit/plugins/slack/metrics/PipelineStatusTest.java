@@ -0,0 +1,138 @@
+/*
+ * Copyright 2017 Cisco Systems, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package com.cisco.gerrit.plugins.slack.metrics;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+import com.cisco.gerrit.plugins.slack.config.Priority;
+import java.util.List;
+import java.util.Map;
+import org.junit.Test;
+
+public class PipelineStatusTest {
+  @Test
+  public void tracksPendingMessagesPerDestination() throws Exception {
+    PipelineStatus status;
+    status = new PipelineStatus();
+
+    long first;
+    first = status.messageAccepted("hooks.example.com/a/***", "project");
+    status.messageAccepted("hooks.example.com/a/***", "project");
+    status.messageQueued("hooks.example.com/a/***", Priority.NORMAL);
+    status.requestStarted("hooks.example.com/a/***");
+
+    PipelineStatus.Destination destination;
+    destination = status.getDestinations().get("hooks.example.com/a/***");
+
+    assertThat(destination.getPending(), is(equalTo(2)));
+    assertThat(destination.getQueued(), is(equalTo(1)));
+    assertThat(destination.getInFlight(), is(equalTo(1)));
+    assertTrue(destination.getOldestPendingAge(System.currentTimeMillis() + 1000) >= 1000);
+
+    status.messageCompleted("hooks.example.com/a/***", first);
+
+    assertThat(destination.getPending(), is(equalTo(1)));
+  }
+
+  @Test
+  public void countsQueuedMessagesByPriority() throws Exception {
+    PipelineStatus status;
+    status = new PipelineStatus();
+
+    status.messageQueued("hooks.example.com/a/***", Priority.HIGH);
+    status.messageQueued("hooks.example.com/a/***", Priority.LOW);
+    status.messageQueued("hooks.example.com/b/***", Priority.LOW);
+    status.messageDequeued("hooks.example.com/a/***", Priority.LOW);
+
+    Map<Priority, Integer> queued;
+    queued = status.getQueuedByPriority();
+
+    assertThat(queued.get(Priority.HIGH), is(equalTo(1)));
+    assertThat(queued.get(Priority.NORMAL), is(equalTo(0)));
+    assertThat(queued.get(Priority.LOW), is(equalTo(1)));
+  }
+
+  @Test
+  public void reportsTheLatestConcurrencyLimit() throws Exception {
+    PipelineStatus status;
+    status = new PipelineStatus();
+
+    status.limitChanged("hooks.example.com/a/***", 2);
+    status.limitChanged("hooks.example.com/a/***", 5);
+
+    assertThat(status.getDestinations().get("hooks.example.com/a/***").getLimit(), is(equalTo(5)));
+  }
+
+  @Test
+  public void reportsNoAgeWhenNothingIsPending() throws Exception {
+    PipelineStatus status;
+    status = new PipelineStatus();
+
+    long ticket;
+    ticket = status.messageAccepted("hooks.example.com/a/***", "project");
+    status.messageCompleted("hooks.example.com/a/***", ticket);
+
+    PipelineStatus.Destination destination;
+    destination = status.getDestinations().get("hooks.example.com/a/***");
+
+    assertThat(destination.getOldestPendingAge(System.currentTimeMillis()), is(equalTo(0L)));
+  }
+
+  @Test
+  public void countsOnlyTheMostRecentErrors() throws Exception {
+    PipelineStatus status;
+    status = new PipelineStatus();
+
+    for (int i = 0; i < 100; i++) {
+      status.errorOccurred("SocketTimeoutException");
+    }
+    for (int i = 0; i < 4; i++) {
+      status.errorOccurred("rejected");
+    }
+
+    Map<String, Integer> errors;
+    errors = status.getRecentErrors();
+
+    assertThat(errors.get("SocketTimeoutException"), is(equalTo(60)));
+    assertThat(errors.get("rejected"), is(equalTo(4)));
+  }
+
+  @Test
+  public void ranksProjectsByVolume() throws Exception {
+    PipelineStatus status;
+    status = new PipelineStatus();
+
+    status.messageAccepted("destination", "quiet");
+    for (int i = 0; i < 3; i++) {
+      status.messageAccepted("destination", "busy");
+    }
+    status.messageAccepted("destination", "other");
+    status.messageAccepted("destination", "other");
+
+    List<Map.Entry<String, Long>> projects;
+    projects = status.getTopProjects(2);
+
+    assertThat(projects.size(), is(equalTo(2)));
+    assertThat(projects.get(0).getKey(), is(equalTo("busy")));
+    assertThat(projects.get(0).getValue(), is(equalTo(3L)));
+    assertThat(projects.get(1).getKey(), is(equalTo("other")));
+  }
+}
@@ -0,0 +1,108 @@
+/*
+ * Copyright 2017 Cisco Systems, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package com.cisco.gerrit.plugins.slack.sidecar;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+
+public class EventStreamTest {
+  @Test
+  public void readsLinesUntilTheInputEnds() throws Exception {
+    List<String> lines;
+    lines = new CopyOnWriteArrayList<>();
+
+    byte[] input;
+    input = "{\"a\":1}\n\n{\"b\":2}".getBytes(StandardCharsets.UTF_8);
+
+    new EventStream(new ByteArrayInputStream(input)).forEach(lines::add);
+
+    assertThat(lines, is(equalTo(Arrays.asList("{\"a\":1}", "{\"b\":2}"))));
+  }
+
+  @Test
+  public void followsAppendedAndRotatedFiles() throws Exception {
+    Path file;
+    file = Files.createTempFile("events", ".log");
+    append(file, "old\n");
+
+    List<String> lines;
+    lines = new CopyOnWriteArrayList<>();
+
+    EventStream stream;
+    stream = new EventStream(file, true, 10);
+
+    Thread reader;
+    reader =
+        new Thread(
+            () -> {
+              try {
+                stream.forEach(lines::add);
+              } catch (Exception e) {
+                throw new RuntimeException(e);
+              }
+            });
+    reader.start();
+
+    try {
+      // Lines already in the file are skipped, like tail -F
+      TimeUnit.MILLISECONDS.sleep(100);
+      append(file, "first\nsec");
+      append(file, "ond\n");
+      awaitSize(lines, 2);
+
+      Files.delete(file);
+      append(file, "third\n");
+      awaitSize(lines, 3);
+
+      assertThat(lines, is(equalTo(Arrays.asList("first", "second", "third"))));
+    } finally {
+      stream.close();
+      reader.join(TimeUnit.SECONDS.toMillis(5));
+      Files.deleteIfExists(file);
+    }
+  }
+
+  private static void append(Path file, String text) throws Exception {
+    Files.write(
+        file,
+        text.getBytes(StandardCharsets.UTF_8),
+        StandardOpenOption.CREATE,
+        StandardOpenOption.APPEND);
+  }
+
+  private static void awaitSize(List<String> lines, int size) throws Exception {
+    long deadline;
+    deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(5);
+
+    while (lines.size() < size && System.currentTimeMillis() < deadline) {
+      TimeUnit.MILLISECONDS.sleep(10);
+    }
+  }
+}
@@ -0,0 +1,125 @@
+/*
+ * Copyright 2017 Cisco Systems, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package com.cisco.gerrit.plugins.slack.sidecar;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+
+import com.google.gerrit.server.config.PluginConfig;
+import com.google.gerrit.server.project.NoSuchProjectException;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.stream.Stream;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class MirrorConfigSourceTest {
+  private Path mirror;
+
+  @Before
+  public void setup() throws Exception {
+    mirror = Files.createTempDirectory("mirror");
+  }
+
+  @After
+  public void teardown() throws Exception {
+    try (Stream<Path> files = Files.walk(mirror)) {
+      files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+    }
+  }
+
+  @Test
+  public void inheritsUnsetValuesFromParents() throws Exception {
+    write(
+        "All-Projects",
+        "[plugin \"slack-integration\"]\n"
+            + "  enabled = true\n"
+            + "  channel = general\n"
+            + "  username = gerrit\n");
+    write(
+        "team",
+        "[access]\n"
+            + "  inheritFrom = All-Projects\n"
+            + "[plugin \"slack-integration\"]\n"
+            + "  channel = team\n");
+    write(
+        "team/service",
+        "[access]\n"
+            + "  inheritFrom = team\n"
+            + "[plugin \"slack-integration\"]\n"
+            + "  username = bot\n");
+
+    PluginConfig config;
+    config = new MirrorConfigSource(mirror, null).getProjectConfig("team/service");
+
+    assertThat(config.getBoolean("enabled", false), is(equalTo(true)));
+    assertThat(config.getString("channel"), is(equalTo("team")));
+    assertThat(config.getString("username"), is(equalTo("bot")));
+  }
+
+  @Test
+  public void defaultsParentToAllProjects() throws Exception {
+    write("All-Projects", "[plugin \"slack-integration\"]\n  enabled = true\n");
+    write("project", "[plugin \"slack-integration\"]\n  channel = dev\n");
+
+    PluginConfig config;
+    config = new MirrorConfigSource(mirror, null).getProjectConfig("project");
+
+    assertThat(config.getBoolean("enabled", false), is(equalTo(true)));
+    assertThat(config.getString("channel"), is(equalTo("dev")));
+  }
+
+  @Test
+  public void stopsAtInheritanceCycles() throws Exception {
+    write("a", "[access]\n  inheritFrom = b\n[plugin \"slack-integration\"]\n  channel = a\n");
+    write("b", "[access]\n  inheritFrom = a\n[plugin \"slack-integration\"]\n  username = b\n");
+
+    PluginConfig config;
+    config = new MirrorConfigSource(mirror, null).getProjectConfig("a");
+
+    assertThat(config.getString("channel"), is(equalTo("a")));
+    assertThat(config.getString("username"), is(equalTo("b")));
+  }
+
+  @Test
+  public void inheritsForProjectsNotInTheMirror() throws Exception {
+    write("All-Projects", "[plugin \"slack-integration\"]\n  channel = general\n");
+
+    PluginConfig config;
+    config = new MirrorConfigSource(mirror, null).getProjectConfig("unknown");
+
+    assertThat(config.getString("channel"), is(equalTo("general")));
+  }
+
+  @Test(expected = NoSuchProjectException.class)
+  public void rejectsProjectsOutsideTheMirror() throws Exception {
+    new MirrorConfigSource(mirror, null).getProjectConfig("../outside");
+  }
+
+  private void write(String project, String text) throws IOException {
+    Path directory;
+    directory = Files.createDirectories(mirror.resolve(project));
+
+    Files.write(directory.resolve("project.config"), text.getBytes(StandardCharsets.UTF_8));
+  }
+}
@@ -0,0 +1,418 @@
+/*
+ * Copyright 2017 Cisco Systems, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package com.cisco.gerrit.plugins.slack.testing;
+
+import com.cisco.gerrit.plugins.slack.util.ResourceHelper;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import com.sun.net.httpserver.HttpsConfigurator;
+import com.sun.net.httpserver.HttpsServer;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.KeyStore;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import javax.net.ssl.KeyManagerFactory;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.TrustManagerFactory;
+
+/**
+ * An in-process stand-in for a Slack incoming webhook, listening on the loopback interface over
+ * HTTP or HTTPS. By default every post is answered with "ok". Specific replies can be queued up
+ * for the next posts, and latency, server errors, rate limiting (429) and dropped connections can
+ * be injected at random to see how the plugin behaves when Slack struggles.
+ *
+ * <p>Unless turned off, the payloads of the first {@value #MAX_RECORDED} posts are recorded for
+ * assertions.
+ */
+public class WebhookStubServer implements AutoCloseable {
+  private static final String PATH = "/services/T00000000/B00000000/XXXXXXXXXXXXXXXXXXXXXXXX";
+
+  private static final String KEYSTORE = "webhook-stub.p12";
+  private static final char[] KEYSTORE_PASSWORD = "changeit".toCharArray();
+
+  private static final int MAX_RECORDED = 10000;
+
+  /** The replies Slack gives to an incoming webhook post. */
+  public enum Reply {
+    OK(200, "ok"),
+    INVALID_PAYLOAD(400, "invalid_payload"),
+    CHANNEL_NOT_FOUND(404, "channel_not_found"),
+    RATE_LIMITED(429, "rate_limited"),
+    SERVER_ERROR(500, "internal_error"),
+    /** Closes the connection without sending a response. */
+    DROP(0, null);
+
+    private final int status;
+    private final String body;
+
+    Reply(int status, String body) {
+      this.status = status;
+      this.body = body;
+    }
+
+    public int getStatus() {
+      return status;
+    }
+
+    public String getBody() {
+      return body;
+    }
+  }
+
+  private final HttpServer server;
+  private final ExecutorService executor;
+  private final SSLContext sslContext;
+
+  private final Queue<Reply> scripted = new ConcurrentLinkedQueue<>();
+  private final Queue<String> payloads = new ConcurrentLinkedQueue<>();
+  private final AtomicInteger recorded = new AtomicInteger();
+
+  private final AtomicLong requests = new AtomicLong();
+  private final AtomicLong accepted = new AtomicLong();
+  private final AtomicLong rejected = new AtomicLong();
+  private final AtomicLong failed = new AtomicLong();
+  private final AtomicLong throttled = new AtomicLong();
+  private final AtomicLong dropped = new AtomicLong();
+
+  private volatile long latencyMillis;
+  private volatile double errorRate;
+  private volatile double throttleRate;
+  private volatile double dropRate;
+  private volatile long retryAfterSeconds = 1;
+  private volatile boolean recording = true;
+  private volatile Consumer<String> listener = payload -> {};
+
+  /**
+   * Starts a stub on an ephemeral port.
+   *
+   * @param threads The number of threads answering requests.
+   * @param secure Whether to serve HTTPS with the self-signed certificate from the test resources.
+   * @throws IOException if the server cannot be started.
+   */
+  public WebhookStubServer(int threads, boolean secure) throws IOException {
+    // The stub writes headers and body separately, without this every post waits on delayed ACKs
+    System.setProperty("sun.net.httpserver.nodelay", "true");
+
+    InetSocketAddress address;
+    address = new InetSocketAddress(InetAddress.getLoopbackAddress(), 0);
+
+    if (secure) {
+      sslContext = loadSslContext();
+
+      HttpsServer https;
+      https = HttpsServer.create(address, 0);
+      https.setHttpsConfigurator(new HttpsConfigurator(sslContext));
+      server = https;
+    } else {
+      sslContext = null;
+      server = HttpServer.create(address, 0);
+    }
+    server.createContext(PATH, this::handle);
+
+    executor = Executors.newFixedThreadPool(threads);
+    server.setExecutor(executor);
+    server.start();
+  }
+
+  public WebhookStubServer(int threads) throws IOException {
+    this(threads, false);
+  }
+
+  public WebhookStubServer() throws IOException {
+    this(4);
+  }
+
+  /**
+   * Gets the webhook URL to configure the plugin with.
+   *
+   * @return The URL of the stub.
+   */
+  public String getUrl() {
+    return (sslContext != null ? "https" : "http")
+        + "://127.0.0.1:"
+        + server.getAddress().getPort()
+        + PATH;
+  }
+
+  /**
+   * Gets an SSL context that trusts the stub's self-signed certificate, for use with
+   * HttpsURLConnection.setDefaultSSLSocketFactory.
+   *
+   * @return The SSL context, or null if the stub serves plain HTTP.
+   */
+  public SSLContext getSslContext() {
+    return sslContext;
+  }
+
+  /**
+   * Queues replies for the next posts, ahead of any randomly injected failures.
+   *
+   * @param replies The replies, in the order they are given.
+   */
+  public void enqueue(Reply... replies) {
+    for (Reply reply : replies) {
+      scripted.add(reply);
+    }
+  }
+
+  /**
+   * Delays every response.
+   *
+   * @param latency The delay before responding.
+   * @param unit The unit of the delay.
+   */
+  public void setLatency(long latency, TimeUnit unit) {
+    latencyMillis = unit.toMillis(latency);
+  }
+
+  /**
+   * Answers a fraction of the posts with a 500.
+   *
+   * @param errorRate The fraction of posts that fail, from 0 to 1.
+   */
+  public void setErrorRate(double errorRate) {
+    this.errorRate = errorRate;
+  }
+
+  /**
+   * Answers a fraction of the posts with a 429 and a Retry-After header, as Slack does when a
+   * webhook posts more than about one message per second.
+   *
+   * @param throttleRate The fraction of posts that are rate limited, from 0 to 1.
+   */
+  public void setThrottleRate(double throttleRate) {
+    this.throttleRate = throttleRate;
+  }
+
+  /**
+   * Closes the connection without a response for a fraction of the posts.
+   *
+   * @param dropRate The fraction of posts that are dropped, from 0 to 1.
+   */
+  public void setDropRate(double dropRate) {
+    this.dropRate = dropRate;
+  }
+
+  /**
+   * Sets the Retry-After header sent with every 429.
+   *
+   * @param retryAfter The delay the client is asked to wait.
+   * @param unit The unit of the delay.
+   */
+  public void setRetryAfter(long retryAfter, TimeUnit unit) {
+    retryAfterSeconds = unit.toSeconds(retryAfter);
+  }
+
+  /**
+   * Sets a callback that receives the payload of every post answered with "ok". It is called on
+   * the stub's threads before the response is sent.
+   *
+   * @param listener The callback.
+   */
+  public void setListener(Consumer<String> listener) {
+    this.listener = listener;
+  }
+
+  /**
+   * Turns recording of payloads on or off, load tests turn it off to keep the heap quiet.
+   *
+   * @param recording Whether to record payloads.
+   */
+  public void setRecording(boolean recording) {
+    this.recording = recording;
+  }
+
+  /**
+   * Gets the recorded payloads of all posts, whatever they were answered with.
+   *
+   * @return The payloads in the order they were received.
+   */
+  public List<String> getPayloads() {
+    return new ArrayList<>(payloads);
+  }
+
+  public long getRequests() {
+    return requests.get();
+  }
+
+  public long getAccepted() {
+    return accepted.get();
+  }
+
+  public long getRejected() {
+    return rejected.get();
+  }
+
+  public long getFailed() {
+    return failed.get();
+  }
+
+  public long getThrottled() {
+    return throttled.get();
+  }
+
+  public long getDropped() {
+    return dropped.get();
+  }
+
+  @Override
+  public void close() {
+    server.stop(0);
+    executor.shutdownNow();
+  }
+
+  private void handle(HttpExchange exchange) throws IOException {
+    requests.incrementAndGet();
+
+    try {
+      String payload;
+      payload = readBody(exchange);
+
+      if (recording && recorded.getAndIncrement() < MAX_RECORDED) {
+        payloads.add(payload);
+      }
+
+      if (latencyMillis > 0) {
+        Thread.sleep(latencyMillis);
+      }
+
+      Reply reply;
+      reply = nextReply();
+
+      switch (reply) {
+        case OK:
+          accepted.incrementAndGet();
+          listener.accept(payload);
+          break;
+        case RATE_LIMITED:
+          throttled.incrementAndGet();
+          exchange.getResponseHeaders().set("Retry-After", Long.toString(retryAfterSeconds));
+          break;
+        case SERVER_ERROR:
+          failed.incrementAndGet();
+          break;
+        case DROP:
+          dropped.incrementAndGet();
+          // Closing the exchange before the headers are sent makes the server drop the connection
+          return;
+        default:
+          rejected.incrementAndGet();
+          break;
+      }
+
+      respond(exchange, reply.getStatus(), reply.getBody());
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    } finally {
+      exchange.close();
+    }
+  }
+
+  private Reply nextReply() {
+    Reply reply;
+    reply = scripted.poll();
+    if (reply != null) {
+      return reply;
+    }
+
+    double roll;
+    roll = ThreadLocalRandom.current().nextDouble();
+
+    if (roll < throttleRate) {
+      return Reply.RATE_LIMITED;
+    } else if (roll < throttleRate + errorRate) {
+      return Reply.SERVER_ERROR;
+    } else if (roll < throttleRate + errorRate + dropRate) {
+      return Reply.DROP;
+    }
+    return Reply.OK;
+  }
+
+  private static SSLContext loadSslContext() throws IOException {
+    try (InputStream stream = ResourceHelper.loadNamedResourceAsStream(KEYSTORE)) {
+      if (stream == null) {
+        throw new IOException("Missing test resource " + KEYSTORE);
+      }
+
+      KeyStore keyStore;
+      keyStore = KeyStore.getInstance("PKCS12");
+      keyStore.load(stream, KEYSTORE_PASSWORD);
+
+      KeyManagerFactory keys;
+      keys = KeyManagerFactory.getInstance(KeyManagerFactory.getDefaultAlgorithm());
+      keys.init(keyStore, KEYSTORE_PASSWORD);
+
+      // The certificate is self-signed, so the same store serves as the trust store.
+      TrustManagerFactory trust;
+      trust = TrustManagerFactory.getInstance(TrustManagerFactory.getDefaultAlgorithm());
+      trust.init(keyStore);
+
+      SSLContext context;
+      context = SSLContext.getInstance("TLS");
+      context.init(keys.getKeyManagers(), trust.getTrustManagers(), null);
+
+      return context;
+    } catch (GeneralSecurityException e) {
+      throw new IOException("Cannot load " + KEYSTORE, e);
+    }
+  }
+
+  private static String readBody(HttpExchange exchange) throws IOException {
+    ByteArrayOutputStream body;
+    body = new ByteArrayOutputStream();
+
+    try (InputStream request = exchange.getRequestBody()) {
+      byte[] buffer;
+      buffer = new byte[8192];
+
+      int read;
+      while ((read = request.read(buffer)) != -1) {
+        body.write(buffer, 0, read);
+      }
+    }
+
+    return new String(body.toByteArray(), StandardCharsets.UTF_8);
+  }
+
+  private static void respond(HttpExchange exchange, int status, String body) throws IOException {
+    byte[] bytes;
+    bytes = body.getBytes(StandardCharsets.UTF_8);
+
+    exchange.getResponseHeaders().set("Content-Type", "text/html");
+    exchange.sendResponseHeaders(status, bytes.length);
+    try (OutputStream response = exchange.getResponseBody()) {
+      response.write(bytes);
+    }
+  }
+}
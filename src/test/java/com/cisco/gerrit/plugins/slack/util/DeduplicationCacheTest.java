@@ -0,0 +1,72 @@
+/*
+ * Copyright 2017 Cisco Systems, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package com.cisco.gerrit.plugins.slack.util;
+
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.Before;
+import org.junit.Test;
+
+public class DeduplicationCacheTest {
+  private static final long EXPIRY = 1000;
+
+  private AtomicLong now = new AtomicLong(1_000_000);
+
+  private DeduplicationCache cache;
+
+  @Before
+  public void setup() throws Exception {
+    cache = new DeduplicationCache(256, EXPIRY, now::get);
+  }
+
+  @Test
+  public void detectsDuplicates() throws Exception {
+    assertThat(cache.isDuplicate(42), is(false));
+    assertThat(cache.isDuplicate(42), is(true));
+    assertThat(cache.isDuplicate(43), is(false));
+  }
+
+  @Test
+  public void forgetsExpiredEntries() throws Exception {
+    assertThat(cache.isDuplicate(42), is(false));
+
+    now.addAndGet(EXPIRY);
+
+    assertThat(cache.isDuplicate(42), is(false));
+    assertThat(cache.isDuplicate(42), is(true));
+  }
+
+  @Test
+  public void staysBoundedByEvictingLeastRecentlySeen() throws Exception {
+    for (long key = 1; key <= 10_000; key++) {
+      now.incrementAndGet();
+      cache.isDuplicate(key * 0x9e3779b97f4a7c15L);
+    }
+
+    // The most recent keys are still remembered, the oldest have been evicted.
+    assertThat(cache.isDuplicate(10_000 * 0x9e3779b97f4a7c15L), is(true));
+    assertThat(cache.isDuplicate(1 * 0x9e3779b97f4a7c15L), is(false));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void rejectsZeroFingerprint() throws Exception {
+    cache.isDuplicate(0);
+  }
+}
@@ -0,0 +1,60 @@
+/*
+ * Copyright 2017 Cisco Systems, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package com.cisco.gerrit.plugins.slack.util;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.not;
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+
+import com.cisco.gerrit.plugins.slack.sidecar.EventParser;
+import com.google.gerrit.server.events.Event;
+import com.google.gson.JsonParser;
+import org.junit.Test;
+
+public class EventFingerprintTest {
+  private static final long CREATED_ON = 1500000000L;
+
+  @Test
+  public void redeliveredEventsShareAFingerprint() throws Exception {
+    assertThat(
+        EventFingerprint.compute(reviewerAdded("developer", "reviewer")),
+        is(equalTo(EventFingerprint.compute(reviewerAdded("developer", "reviewer")))));
+  }
+
+  @Test
+  public void tellsApartReviewersAddedTogether() throws Exception {
+    // One action adding two reviewers raises two events within the same second
+    assertThat(
+        EventFingerprint.compute(reviewerAdded("developer", "first-reviewer")),
+        is(not(equalTo(EventFingerprint.compute(reviewerAdded("developer", "second-reviewer"))))));
+  }
+
+  private static Event reviewerAdded(String adder, String reviewer) {
+    String json;
+    json =
+        "{'type': 'reviewer-added', 'eventCreatedOn': " + CREATED_ON
+            + ", 'adder': {'username': '" + adder + "'}"
+            + ", 'reviewer': {'username': '" + reviewer + "'}"
+            + ", 'patchSet': {'number': 1}"
+            + ", 'change': {'project': 'project', 'branch': 'master', 'number': 1}}";
+
+    return new EventParser()
+        .parse(new JsonParser().parse(json.replace('\'', '"')).getAsJsonObject());
+  }
+}
@@ -0,0 +1,161 @@
+/*
+ * Copyright 2017 Cisco Systems, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package com.cisco.gerrit.plugins.slack.util;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.Before;
+import org.junit.Test;
+
+public class PriorityLaneQueueTest {
+  private static final long AGING_NANOS = TimeUnit.SECONDS.toNanos(2);
+
+  private AtomicLong clock;
+  private PriorityLaneQueue<String> queue;
+
+  @Before
+  public void setup() throws Exception {
+    clock = new AtomicLong();
+    queue =
+        new PriorityLaneQueue<>(
+            3,
+            PriorityLaneQueueTest::lane,
+            PriorityLaneQueueTest::flow,
+            PriorityLaneQueueTest::weight,
+            AGING_NANOS,
+            clock::get);
+  }
+
+  @Test
+  public void servesHigherLanesFirstInOrder() throws Exception {
+    queue.offer("2-comment");
+    queue.offer("1-patch-set");
+    queue.offer("0-merged");
+    queue.offer("2-another-comment");
+    queue.offer("0-ready");
+
+    assertThat(
+        drain(),
+        is(
+            equalTo(
+                Arrays.asList(
+                    "0-merged", "0-ready", "1-patch-set", "2-comment", "2-another-comment"))));
+  }
+
+  @Test
+  public void promotesMessagesThatWaited() throws Exception {
+    queue.offer("2-comment");
+
+    // Two aging periods later the comment ranks with a fresh message of the top lane
+    clock.addAndGet(2 * AGING_NANOS + 1);
+    queue.offer("0-merged");
+    queue.offer("1-patch-set");
+
+    assertThat(queue.poll(), is(equalTo("2-comment")));
+    assertThat(queue.poll(), is(equalTo("0-merged")));
+  }
+
+  @Test
+  public void sharesLanesBetweenFlowsByWeight() throws Exception {
+    // A noisy flow queues up before two quiet ones, one of them with weight 2
+    for (int i = 0; i < 5; i++) {
+      queue.offer("1-noisy-" + i);
+    }
+    queue.offer("1-quiet-0");
+    queue.offer("1-quiet-1");
+    queue.offer("1-heavy2-0");
+    queue.offer("1-heavy2-1");
+    queue.offer("1-heavy2-2");
+
+    assertThat(
+        drain(),
+        is(
+            equalTo(
+                Arrays.asList(
+                    "1-noisy-0",
+                    "1-quiet-0",
+                    "1-heavy2-0",
+                    "1-heavy2-1",
+                    "1-noisy-1",
+                    "1-quiet-1",
+                    "1-heavy2-2",
+                    "1-noisy-2",
+                    "1-noisy-3",
+                    "1-noisy-4"))));
+  }
+
+  @Test
+  public void growsLanesAndRemovesElements() throws Exception {
+    for (int i = 0; i < 200; i++) {
+      queue.offer("1-flow-" + i);
+    }
+
+    assertTrue(queue.remove("1-flow-100"));
+    assertThat(queue.size(), is(equalTo(199)));
+    assertThat(queue.laneSizes()[1], is(equalTo(199)));
+
+    List<String> drained;
+    drained = drain();
+
+    assertThat(drained.size(), is(equalTo(199)));
+    assertThat(drained.get(99), is(equalTo("1-flow-99")));
+    assertThat(drained.get(100), is(equalTo("1-flow-101")));
+  }
+
+  @Test
+  public void waitsForElements() throws Exception {
+    assertThat(queue.poll(10, TimeUnit.MILLISECONDS), is(equalTo(null)));
+
+    new Thread(() -> queue.offer("1-late")).start();
+
+    assertThat(queue.take(), is(equalTo("1-late")));
+  }
+
+  private List<String> drain() {
+    List<String> result;
+    result = new ArrayList<>();
+    queue.drainTo(result);
+    return result;
+  }
+
+  private static int lane(String element) {
+    return element.charAt(0) - '0';
+  }
+
+  /** The flow is the second part of an element, "2-comment" and "2-comment-1" share a flow. */
+  private static String flow(String element) {
+    String[] parts;
+    parts = element.split("-");
+    return parts[1];
+  }
+
+  /** A flow ending in a digit has that weight. */
+  private static int weight(String element) {
+    char last;
+    last = flow(element).charAt(flow(element).length() - 1);
+    return Character.isDigit(last) ? last - '0' : 1;
+  }
+}
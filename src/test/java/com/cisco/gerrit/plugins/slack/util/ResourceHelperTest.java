@@ -17,13 +17,15 @@
 
 package com.cisco.gerrit.plugins.slack.util;
 
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.core.Is.is;
 import static org.junit.Assert.assertNotNull;
-import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.assertThat;
 
 import org.junit.Test;
 
 public class ResourceHelperTest {
-  private static final String RESOURCE_NAME = "test.properties";
+  private static final String RESOURCE_NAME = "resource-helper-test.txt";
 
   @Test
   public void testLoadNamedResourceAsStream() throws Exception {
@@ -35,7 +37,6 @@ public class ResourceHelperTest {
     String resource;
     resource = ResourceHelper.loadNamedResourceAsString(RESOURCE_NAME);
 
-    assertNotNull(resource);
-    assertTrue(resource.length() > 0);
+    assertThat(resource, is(equalTo("Loaded by ResourceHelperTest.\n")));
   }
 }
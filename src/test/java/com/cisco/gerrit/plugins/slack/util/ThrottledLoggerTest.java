@@ -0,0 +1,78 @@
+/*
+ * Copyright 2017 Cisco Systems, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package com.cisco.gerrit.plugins.slack.util;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.Test;
+import org.slf4j.LoggerFactory;
+
+public class ThrottledLoggerTest {
+  private AtomicLong now = new AtomicLong(1000);
+
+  private ThrottledLogger logger =
+      new ThrottledLogger(LoggerFactory.getLogger(ThrottledLoggerTest.class), 2, 5, 100, now::get);
+
+  @Test
+  public void logsUpToThePermitsInAWindow() throws Exception {
+    assertThat(logger.acquire("key"), is(equalTo(0L)));
+    assertThat(logger.acquire("key"), is(equalTo(0L)));
+    assertThat(logger.acquire("key"), is(equalTo(-1L)));
+    assertThat(logger.acquire("key"), is(equalTo(-1L)));
+  }
+
+  @Test
+  public void reportsSuppressedMessagesInTheNextWindow() throws Exception {
+    for (int i = 0; i < 6; i++) {
+      logger.acquire("key");
+    }
+
+    now.addAndGet(100);
+
+    assertThat(logger.acquire("key"), is(equalTo(4L)));
+    assertThat(logger.acquire("key"), is(equalTo(0L)));
+  }
+
+  @Test
+  public void samplesOneInEveryNPastThePermits() throws Exception {
+    logger.acquire("key");
+    logger.acquire("key");
+
+    for (int i = 0; i < 4; i++) {
+      assertThat(logger.acquire("key"), is(equalTo(-1L)));
+    }
+    assertThat(logger.acquire("key"), is(equalTo(4L)));
+
+    for (int i = 0; i < 4; i++) {
+      assertThat(logger.acquire("key"), is(equalTo(-1L)));
+    }
+    assertThat(logger.acquire("key"), is(equalTo(4L)));
+  }
+
+  @Test
+  public void throttlesKeysIndependently() throws Exception {
+    logger.acquire("first");
+    logger.acquire("first");
+
+    assertThat(logger.acquire("first"), is(equalTo(-1L)));
+    assertThat(logger.acquire("second"), is(equalTo(0L)));
+  }
+}
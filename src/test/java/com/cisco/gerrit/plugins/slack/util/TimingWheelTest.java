@@ -0,0 +1,110 @@
+/*
+ * Copyright 2017 Cisco Systems, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package com.cisco.gerrit.plugins.slack.util;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TimingWheelTest {
+  private TimingWheel wheel;
+
+  @Before
+  public void setup() throws Exception {
+    wheel = new TimingWheel(1, TimeUnit.MILLISECONDS, 8, "timing-wheel-test");
+    wheel.start();
+  }
+
+  @After
+  public void teardown() throws Exception {
+    wheel.stop();
+  }
+
+  @Test
+  public void runsScheduledTasks() throws Exception {
+    final CountDownLatch latch;
+    latch = new CountDownLatch(3);
+
+    wheel.schedule(latch::countDown, 0, TimeUnit.MILLISECONDS);
+    wheel.schedule(latch::countDown, 5, TimeUnit.MILLISECONDS);
+    // Longer than one revolution of the wheel
+    wheel.schedule(latch::countDown, 30, TimeUnit.MILLISECONDS);
+
+    assertTrue(latch.await(5, TimeUnit.SECONDS));
+    assertThat(wheel.pendingTimers(), is(equalTo(0L)));
+  }
+
+  @Test
+  public void doesNotRunTasksEarly() throws Exception {
+    final CountDownLatch latch;
+    latch = new CountDownLatch(1);
+
+    long start;
+    start = System.nanoTime();
+
+    wheel.schedule(latch::countDown, 50, TimeUnit.MILLISECONDS);
+
+    assertTrue(latch.await(5, TimeUnit.SECONDS));
+    assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(49));
+  }
+
+  @Test
+  public void doesNotRunCancelledTasks() throws Exception {
+    final AtomicInteger runs;
+    runs = new AtomicInteger();
+
+    TimingWheel.Timeout timeout;
+    timeout = wheel.schedule(runs::incrementAndGet, 20, TimeUnit.MILLISECONDS);
+
+    assertThat(timeout.cancel(), is(true));
+    assertThat(timeout.cancel(), is(false));
+    assertThat(wheel.pendingTimers(), is(equalTo(0L)));
+
+    final CountDownLatch latch;
+    latch = new CountDownLatch(1);
+    wheel.schedule(latch::countDown, 40, TimeUnit.MILLISECONDS);
+
+    assertTrue(latch.await(5, TimeUnit.SECONDS));
+    assertThat(timeout.isCancelled(), is(true));
+    assertThat(runs.get(), is(equalTo(0)));
+  }
+
+  @Test
+  public void survivesFailingTasks() throws Exception {
+    final CountDownLatch latch;
+    latch = new CountDownLatch(1);
+
+    wheel.schedule(
+        () -> {
+          throw new IllegalStateException("expected");
+        },
+        0,
+        TimeUnit.MILLISECONDS);
+    wheel.schedule(latch::countDown, 5, TimeUnit.MILLISECONDS);
+
+    assertTrue(latch.await(5, TimeUnit.SECONDS));
+  }
+}